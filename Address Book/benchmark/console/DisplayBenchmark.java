@@ -0,0 +1,105 @@
+package console;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import library.database.Address;
+import library.database.BenchmarkData;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Measures drawing the address table of the console. Output goes to a
+ *         stream that throws it away, so only building the rows is measured and
+ *         not how fast the terminal is. Writing the same values without a table
+ *         through the same kind of buffered writer is measured as a baseline
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DisplayBenchmark {
+	@Param({ "1000", "100000", "1000000" })
+	public int rows;
+
+	private Dialogue dialogue;
+	private List<Address> addresses;
+	private PrintStream console;
+
+	/**
+	 * Makes the addresses and sends the console output nowhere
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		dialogue = new Dialogue();
+		addresses = BenchmarkData.addresses(rows, "reader");
+		console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+	}
+
+	/**
+	 * Sends the console output back to the console
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.setOut(console);
+	}
+
+	/**
+	 * Draws the table of addresses
+	 */
+	@Benchmark
+	public void displayAddresses() {
+		dialogue.displayAddresses(addresses.iterator());
+	}
+
+	/**
+	 * Writes the values of every address with a line break after each address
+	 * 
+	 * @throws IOException Thrown if the output can not be written
+	 */
+	@Benchmark
+	public void rawWrite() throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+		for (Address a : addresses) {
+			out.write(a.getFirstName());
+			out.write(a.getLastName());
+			out.write(a.getStreet());
+			out.write(a.getCity());
+			out.write(a.getState());
+			out.write(a.getZip());
+			out.write('\n');
+		}
+		out.flush();
+	}
+}
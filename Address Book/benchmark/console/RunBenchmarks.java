@@ -0,0 +1,42 @@
+package console;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the benchmarks. Takes the usual JMH options, such as a
+ * pattern of the benchmarks to run, and writes the results as JSON to a file
+ * named after the time of the run under benchmark-results unless -rff names
+ * another file, so runs of different releases can be compared
+ * 
+ * @author Logan Miller
+ * 
+ */
+public class RunBenchmarks {
+	// Folder the results are written to
+	private static final String RESULTFOLDER = "benchmark-results";
+
+	/**
+	 * Runs the benchmarks
+	 * 
+	 * @param args JMH command line options
+	 * @throws Exception Thrown if the options are not valid or a benchmark can not
+	 *                   be run
+	 */
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions options = new CommandLineOptions(args);
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(options).resultFormat(ResultFormatType.JSON);
+		if (!options.getResult().hasValue()) {
+			new File(RESULTFOLDER).mkdirs();
+			String name = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+			builder.result(RESULTFOLDER + "/jmh-" + name + ".json");
+		}
+		new Runner(builder.build()).run();
+	}
+}
@@ -0,0 +1,53 @@
+package library.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Makes up addresses for the benchmarks. The same seed is always used so
+ *         every run measures the same data
+ */
+public class BenchmarkData {
+	private static final String[] FIRSTNAMES = { "James", "Mary", "Robert", "Patricia", "John", "Jennifer",
+			"Michael", "Linda", "David", "Elizabeth", "Zo\u00eb", "Jos\u00e9" };
+	private static final String[] LASTNAMES = { "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia",
+			"Miller", "Davis", "Rodriguez", "Martinez", "Hern\u00e1ndez", "O'Brien" };
+	private static final String[] STREETS = { "Main St", "Oak Ave", "Pine Rd", "Maple Dr", "Cedar Ln",
+			"Elm Blvd" };
+	private static final String[] CITIES = { "Springfield", "Riverside", "Franklin", "Greenville", "Bristol",
+			"Clinton", "Fairview", "Salem" };
+	private static final String[] STATES = { "IL", "CA", "TX", "NY", "OH", "WA" };
+
+	/**
+	 * Makes up addresses
+	 * 
+	 * @param count    Number of addresses
+	 * @param username Username the addresses belong to
+	 * @return New addresses without ids
+	 */
+	public static List<Address> addresses(int count, String username) {
+		Random random = new Random(42);
+		List<Address> out = new ArrayList<Address>(count);
+		for (int i = 0; i < count; i++) {
+			out.add(new Address(pick(random, FIRSTNAMES), pick(random, LASTNAMES) + (i % 97),
+					(1 + random.nextInt(9999)) + " " + pick(random, STREETS), pick(random, CITIES),
+					pick(random, STATES), String.format("%05d", random.nextInt(100000)), username));
+		}
+		return out;
+	}
+
+	/**
+	 * Picks a value at random
+	 * 
+	 * @param random Source of random numbers
+	 * @param values Values to pick from
+	 * @return One of the values
+	 */
+	private static String pick(Random random, String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+}
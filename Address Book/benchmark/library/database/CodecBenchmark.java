@@ -0,0 +1,62 @@
+package library.database;
+
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Measures mapping between stored Documents and Addresses, which every
+ *         engine but the MongoDB one does for each address it reads or writes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+	private Address address;
+	private Document document;
+
+	/**
+	 * Makes the address and document being mapped
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		address = BenchmarkData.addresses(1, "reader").get(0);
+		document = Codecs.toDocument(address, Address.class);
+	}
+
+	/**
+	 * Maps a stored Document to an Address
+	 * 
+	 * @return Address
+	 */
+	@Benchmark
+	public Address documentToAddress() {
+		return Codecs.fromDocument(document, Address.class);
+	}
+
+	/**
+	 * Maps an Address to the Document it is stored as
+	 * 
+	 * @return Document
+	 */
+	@Benchmark
+	public Document addressToDocument() {
+		return Codecs.toDocument(address, Address.class);
+	}
+}
@@ -0,0 +1,101 @@
+package library.database;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Measures finding and adding addresses through the DatabaseManager
+ *         with the in-memory database, so the numbers cover the manager, its
+ *         cache, its indexes, and the codecs but not the network.
+ * 
+ *         The address book being searched holds a set number of addresses, and
+ *         the cache can be turned off to measure reading from the database
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+	@Param({ "100", "10000" })
+	public int addresses;
+
+	@Param({ "true", "false" })
+	public boolean cached;
+
+	private Document bookQuery;
+	private Document nameQuery;
+	private int inserted;
+
+	/**
+	 * Starts the in-memory database and fills one user's address book
+	 * 
+	 * @throws Exception Thrown if the database can not be started
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		DatabaseManager.start("memory:");
+		DatabaseManager.setCacheLimits(cached ? AddressCache.DEFAULTMAXADDRESSES : 0, 0);
+		List<Address> book = BenchmarkData.addresses(addresses, "reader");
+		DatabaseManager.insertAddresses(book);
+		bookQuery = new Document("username", "reader");
+		nameQuery = new Document("username", "reader").append("lastName", book.get(addresses / 2).getLastName());
+	}
+
+	/**
+	 * Stops the database
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		DatabaseManager.stop();
+	}
+
+	/**
+	 * Reads a whole address book
+	 * 
+	 * @return Addresses found
+	 */
+	@Benchmark
+	public List<Address> findAddressBook() {
+		return DatabaseManager.findAddress(new Document(bookQuery));
+	}
+
+	/**
+	 * Finds the addresses with a last name in an address book
+	 * 
+	 * @return Addresses found
+	 */
+	@Benchmark
+	public List<Address> findAddressByName() {
+		return DatabaseManager.findAddress(new Document(nameQuery));
+	}
+
+	/**
+	 * Adds an address to a different user's address book so the book being
+	 * searched does not grow
+	 */
+	@Benchmark
+	public void insertAddress() {
+		int i = inserted++;
+		DatabaseManager.insertAddress(new Address("First" + i, "Last" + i, i + " Main St", "Springfield", "IL",
+				"62701", "writer"));
+	}
+}
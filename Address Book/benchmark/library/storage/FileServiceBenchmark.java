@@ -0,0 +1,90 @@
+package library.storage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Measures saving and loading JSON files in long-term storage. A single
+ *         settings object and a large list of saved sessions are both measured
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileServiceBenchmark {
+	@Param({ "1", "10000" })
+	public int records;
+
+	private String filename;
+	private List<SessionRecord> sessions;
+
+	/**
+	 * Makes the records being saved and writes them once so there is a file to
+	 * load
+	 * 
+	 * @throws Exception Thrown if the file can not be written
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		File file = File.createTempFile("file-service-benchmark", ".json");
+		file.deleteOnExit();
+		filename = file.getPath();
+		sessions = new ArrayList<SessionRecord>(records);
+		for (int i = 0; i < records; i++) {
+			sessions.add(new SessionRecord(String.format("%064x", i), "user" + i, "First" + i, "Last" + i,
+					"user" + i + "@example.com", 1700000000000L + i));
+		}
+		FileService.saveToFile(filename, sessions);
+	}
+
+	/**
+	 * Deletes the file
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		new File(filename).delete();
+	}
+
+	/**
+	 * Saves the records to the file
+	 * 
+	 * @throws Exception Thrown if the file can not be written
+	 */
+	@Benchmark
+	public void saveToFile() throws Exception {
+		FileService.saveToFile(filename, sessions);
+	}
+
+	/**
+	 * Loads the records from the file
+	 * 
+	 * @return Records read
+	 * @throws Exception Thrown if the file can not be read
+	 */
+	@Benchmark
+	public List<SessionRecord> loadFromFile() throws Exception {
+		return FileService.loadFromFile(filename, new TypeReference<List<SessionRecord>>() {
+		});
+	}
+}
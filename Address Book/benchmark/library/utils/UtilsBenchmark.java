@@ -0,0 +1,60 @@
+package library.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Measures the general functions that run for every login, API request,
+ *         and displayed row
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+	public String password = "correct horse battery staple";
+
+	/**
+	 * Width of the padding being made
+	 */
+	@State(Scope.Thread)
+	public static class Padding {
+		@Param({ "1", "16", "128" })
+		public int spaces;
+	}
+
+	/**
+	 * Hashes a password
+	 * 
+	 * @return Hash
+	 */
+	@Benchmark
+	public String hash() {
+		return Utils.hash(password);
+	}
+
+	/**
+	 * Makes the padding of a table cell
+	 * 
+	 * @param padding Width of the padding
+	 * @return Spaces
+	 */
+	@Benchmark
+	public String spaces(Padding padding) {
+		return Utils.spaces(padding.spaces);
+	}
+}
@@ -1,12 +1,29 @@
 package console;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import org.bson.Document;
 import library.database.Address;
+import library.database.AddressMutation;
+import library.database.AddressPage;
 import library.database.DatabaseManager;
+import library.database.PageRequest;
 import library.database.User;
+import library.database.WriteResult;
+import library.query.Filter;
+import library.query.Query;
+import library.query.Sort;
+import library.session.SessionManager;
 import library.storage.StorageManager;
+import library.transfer.AddressExporter;
+import library.transfer.AddressImporter;
+import library.transfer.FileFormat;
+import library.transfer.ImportReport;
+import library.utils.TableRenderer;
 import library.utils.Utils;
 
 /**
@@ -14,12 +31,28 @@ import library.utils.Utils;
  * Everything from logging in, to editing existing addresses
  * 
  * @author Logan Miller
- *
+ * 
  */
 public class Dialogue {
+	// Number of rows used to work out column widths before printing starts
+	private static final int SAMPLESIZE = 100;
+	// Number of addresses shown on each page when browsing
+	private static final int PAGESIZE = 20;
+	// Number of values suggested for each field when searching by prefix
+	private static final int SUGGESTIONS = 5;
+	// Names of the fields that can be searched by prefix, in the order of
+	// DatabaseManager.PREFIXFIELDS
+	private static final String[] PREFIXLABELS = { "First names", "Last names", "Streets", "Cities" };
+	// Names of the fields that conditions can be set on, in the order of
+	// DatabaseManager.LISTFIELDS
+	private static final String[] FIELDLABELS = { "First Name", "Last Name", "Street", "City", "State", "Zip Code" };
+	// Draws the address table
+	private static final TableRenderer<Address> ADDRESSTABLE = createAddressTable();
+
 	private static Scanner scanner;
 	private static boolean running;
 	private static User user;
+	private static String sessionToken;
 
 	/**
 	 * Constructor that sets up the necessary resources
@@ -80,13 +113,15 @@ public class Dialogue {
 	 * Commands:
 	 * 
 	 * - Exit - Switch Account - View Address Book - Search for Address - Add
-	 * Address - Remove Address - Edit Address
+	 * Address - Remove Address - Edit Address - Check Query Plans - Import
+	 * Addresses - Export Addresses
 	 */
 	private void mainLoop() {
 		while (running) {
 			System.out.println("Here is a list of available commands:");
 			System.out.println("" + "0: Exit\n" + "1: Switch Accounts\n" + "2: View Address Book\n"
-					+ "3: Search for Address\n" + "4: Add Address\n" + "5: Remove Address\n" + "6: Edit Address\n");
+					+ "3: Search for Address\n" + "4: Add Address\n" + "5: Remove Address\n" + "6: Edit Address\n"
+					+ "7: Check Query Plans\n" + "8: Import Addresses\n" + "9: Export Addresses\n");
 			switch (scanner.nextLine()) {
 				case ("0"):
 					running = false;
@@ -115,6 +150,18 @@ public class Dialogue {
 					Utils.clearScreen();
 					editAddress();
 					break;
+				case ("7"):
+					Utils.clearScreen();
+					explainQueries();
+					break;
+				case ("8"):
+					Utils.clearScreen();
+					importAddresses();
+					break;
+				case ("9"):
+					Utils.clearScreen();
+					exportAddresses();
+					break;
 				default:
 					System.out.println("Sorry, that is not one of the options. Please try again");
 			}
@@ -127,41 +174,54 @@ public class Dialogue {
 	 * @param list List of Addresses needing to be displayed
 	 */
 	private void displayAddresses(List<Address> list) {
-		int[] lengths = { 12, 11, 8, 6, 7, 10 };
-		for (int i = 0; i < list.size(); i++) {
-			Address a = list.get(i);
-			if (a.getFirstName().length() > lengths[0]) {
-				lengths[0] = a.getFirstName().length() + 1;
-			}
-			if (a.getLastName().length() > lengths[1]) {
-				lengths[1] = a.getLastName().length() + 1;
-			}
-			if (a.getStreet().length() > lengths[2]) {
-				lengths[2] = a.getStreet().length() + 1;
-			}
-			if (a.getCity().length() > lengths[3]) {
-				lengths[3] = a.getCity().length() + 1;
-			}
-			if (a.getState().length() > lengths[4]) {
-				lengths[4] = a.getState().length() + 1;
-			}
-			if (a.getZip().length() > lengths[5]) {
-				lengths[5] = a.getZip().length() + 1;
-			}
-		}
-		System.out.printf("| First Name%s| Last Name%s| Street%s| City%s| State%s| Zip Code%s|\n",
-				Utils.spaces(lengths[0] - 10), Utils.spaces(lengths[1] - 9), Utils.spaces(lengths[2] - 6),
-				Utils.spaces(lengths[3] - 4), Utils.spaces(lengths[4] - 5), Utils.spaces(lengths[5] - 8));
-		System.out.println("-");
-		for (int i = 0; i < list.size(); i++) {
-			Address a = list.get(i);
-			System.out.printf("| %s| %s| %s| %s| %s| %s|\n-\n",
-					a.getFirstName() + Utils.spaces(lengths[0] - a.getFirstName().length()),
-					a.getLastName() + Utils.spaces(lengths[1] - a.getLastName().length()),
-					a.getStreet() + Utils.spaces(lengths[2] - a.getStreet().length()),
-					a.getCity() + Utils.spaces(lengths[3] - a.getCity().length()),
-					a.getState() + Utils.spaces(lengths[4] - a.getState().length()),
-					a.getZip() + Utils.spaces(lengths[5] - a.getZip().length()));
+		displayAddresses(list.iterator());
+	}
+
+	/**
+	 * Formats and displays addresses in easy to read format as they are read
+	 * 
+	 * @param addresses Addresses needing to be displayed
+	 */
+	void displayAddresses(Iterator<Address> addresses) {
+		ADDRESSTABLE.print(addresses);
+	}
+
+	/**
+	 * Creates the renderer of the address table. Column widths are taken from the
+	 * first rows so that printing can start before every address has been read,
+	 * and later values that are too wide are cut short
+	 * 
+	 * @return Address table renderer
+	 */
+	private static TableRenderer<Address> createAddressTable() {
+		TableRenderer<Address> table = new TableRenderer<Address>(Dialogue::addressField, "First Name", "Last Name",
+				"Street", "City", "State", "Zip Code");
+		table.setSampleSize(SAMPLESIZE);
+		table.setRowSeparator("-");
+		return table;
+	}
+
+	/**
+	 * Returns the value of one column of the address table
+	 * 
+	 * @param a      Address being displayed
+	 * @param column Position of the column
+	 * @return Value of the column
+	 */
+	private static String addressField(Address a, int column) {
+		switch (column) {
+			case 0:
+				return a.getFirstName();
+			case 1:
+				return a.getLastName();
+			case 2:
+				return a.getStreet();
+			case 3:
+				return a.getCity();
+			case 4:
+				return a.getState();
+			default:
+				return a.getZip();
 		}
 	}
 
@@ -169,8 +229,48 @@ public class Dialogue {
 	 * Displays all addresses belonging to the user
 	 */
 	private void viewAddressBook() {
+		browseAddresses(new Document().append("username", user.getUsername()));
+	}
 
-		displayAddresses(DatabaseManager.findAddress(new Document().append("username", user.getUsername())));
+	/**
+	 * Displays the addresses matching a query one page at a time, sorted by last
+	 * name and then first name. The user can move to the next or previous page
+	 * until they go back
+	 * 
+	 * @param query Parameters for address search
+	 */
+	private void browseAddresses(Document query) {
+		AddressPage page = DatabaseManager.findAddressPage(new PageRequest(query, PAGESIZE, DatabaseManager.LISTFIELDS));
+		boolean browsing = true;
+		while (browsing) {
+			displayAddresses(page.getAddresses());
+			System.out.println("\n0: Back" + (page.hasNext() ? "\nn: Next page" : "")
+					+ (page.hasPrevious() ? "\np: Previous page" : ""));
+			switch (scanner.nextLine()) {
+				case ("0"):
+					browsing = false;
+					break;
+				case ("n"):
+					Utils.clearScreen();
+					if (page.hasNext()) {
+						page = DatabaseManager.findAddressPage(page.next());
+					} else {
+						System.out.println("This is the last page.");
+					}
+					break;
+				case ("p"):
+					Utils.clearScreen();
+					if (page.hasPrevious()) {
+						page = DatabaseManager.findAddressPage(page.previous());
+					} else {
+						System.out.println("This is the first page.");
+					}
+					break;
+				default:
+					System.out.println("That is not an option.");
+			}
+		}
+		Utils.clearScreen();
 	}
 
 	/**
@@ -222,11 +322,194 @@ public class Dialogue {
 	}
 
 	/**
-	 * Searches for an address given a filter
+	 * Searches for an address given a filter or the start of a value
 	 */
 	private void searchForAddress() {
 		Utils.clearScreen();
-		displayAddresses(DatabaseManager.findAddress(queryGenerator().append("username", user.getUsername())));
+		System.out.println("How would you like to search?\n0: Filter by exact values\n"
+				+ "1: Search by the start of a name, street, or city\n2: Search by how a name or city sounds\n"
+				+ "3: Search with conditions such as ranges, starts with, or one of many values");
+		switch (scanner.nextLine()) {
+			case ("0"):
+				Utils.clearScreen();
+				browseAddresses(queryGenerator().append("username", user.getUsername()));
+				break;
+			case ("1"):
+				Utils.clearScreen();
+				searchByPrefix();
+				break;
+			case ("2"):
+				Utils.clearScreen();
+				searchBySound();
+				break;
+			case ("3"):
+				Utils.clearScreen();
+				searchWithConditions();
+				break;
+			default:
+				System.out.println("That is not an option.");
+		}
+	}
+
+	/**
+	 * Searches the user's addresses with conditions on any of their fields, then
+	 * sorts and limits the addresses that match
+	 */
+	private void searchWithConditions() {
+		List<Filter> filters = new ArrayList<Filter>();
+		filters.add(Filter.eq("username", user.getUsername()));
+		System.out.println("Add conditions and enter 0 when ready.");
+		String field = chooseField("Add a condition on:\n0: Done");
+		while (field != null) {
+			try {
+				filters.add(conditionGenerator(field));
+			} catch (IllegalArgumentException e) {
+				System.out.println("That condition can not be used: " + e.getMessage());
+			}
+			field = chooseField("Add a condition on:\n0: Done");
+		}
+		Query query = new Query(Filter.and(filters));
+		field = chooseField("Sort by:\n0: Last name, then first name");
+		if (field == null) {
+			query.setSorts(Sort.ascending("lastName"), Sort.ascending("firstName"));
+		} else {
+			System.out.println("0: Ascending\n1: Descending");
+			query.setSorts(new Sort(field, scanner.nextLine().equals("1")));
+		}
+		System.out.println("Largest number of addresses to show, or 0 for all of them:");
+		try {
+			query.setLimit(Math.max(0, Integer.parseInt(scanner.nextLine().trim())));
+		} catch (NumberFormatException e) {
+			System.out.println("That is not a number, every address will be shown.");
+		}
+		Utils.clearScreen();
+		List<Address> addresses = DatabaseManager.findAddress(query);
+		if (addresses.isEmpty()) {
+			System.out.println("No addresses match those conditions.\n");
+		} else {
+			displayAddresses(addresses);
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Asks the user to pick a field of an address
+	 * 
+	 * @param prompt Question shown above the fields, with the 0 option
+	 * @return Name of the field, or null if 0 was entered
+	 */
+	private String chooseField(String prompt) {
+		while (true) {
+			System.out.println(prompt);
+			for (int i = 0; i < FIELDLABELS.length; i++) {
+				System.out.println((i + 1) + ": " + FIELDLABELS[i]);
+			}
+			String choice = scanner.nextLine().trim();
+			if (choice.equals("0")) {
+				return null;
+			}
+			for (int i = 0; i < FIELDLABELS.length; i++) {
+				if (choice.equals(String.valueOf(i + 1))) {
+					return DatabaseManager.LISTFIELDS.get(i);
+				}
+			}
+			System.out.println("That is not an option.");
+		}
+	}
+
+	/**
+	 * Goes through the questions for one condition on a field
+	 * 
+	 * @param field Name of the field
+	 * @return Condition the addresses must meet
+	 */
+	private Filter conditionGenerator(String field) {
+		System.out.println("Condition:\n1: Is\n2: Is not\n3: Starts with (ignoring case)\n4: Is between\n"
+				+ "5: Is one of\n6: Is none of\n7: Matches a pattern starting with ^");
+		switch (scanner.nextLine().trim()) {
+			case ("1"):
+				System.out.println("Value:");
+				return Filter.eq(field, scanner.nextLine());
+			case ("2"):
+				System.out.println("Value:");
+				return Filter.ne(field, scanner.nextLine());
+			case ("3"):
+				System.out.println("Start of the value:");
+				return Filter.prefixIgnoreCase(field, scanner.nextLine());
+			case ("4"):
+				System.out.println("From:");
+				String from = scanner.nextLine();
+				System.out.println("To:");
+				return Filter.between(field, from, scanner.nextLine());
+			case ("5"):
+				System.out.println("Values separated by commas:");
+				return Filter.in(field, splitValues(scanner.nextLine()));
+			case ("6"):
+				System.out.println("Values separated by commas:");
+				return Filter.notIn(field, splitValues(scanner.nextLine()));
+			case ("7"):
+				System.out.println("Pattern:");
+				return Filter.regex(field, scanner.nextLine());
+			default:
+				throw new IllegalArgumentException("that is not an option");
+		}
+	}
+
+	/**
+	 * Splits a list of values separated by commas
+	 * 
+	 * @param values Values as typed
+	 * @return Values with the spaces around them removed
+	 */
+	private static List<String> splitValues(String values) {
+		List<String> out = new ArrayList<String>();
+		for (String value : values.split(",")) {
+			out.add(value.trim());
+		}
+		return out;
+	}
+
+	/**
+	 * Searches the user's addresses by the start of a first name, last name,
+	 * street, or city, ignoring case. Values starting with what was typed are
+	 * suggested along with the closest addresses, and the user can keep typing to
+	 * narrow the search
+	 */
+	private void searchByPrefix() {
+		System.out.println("Type the start of a first name, last name, street, or city:");
+		String prefix = scanner.nextLine();
+		while (!prefix.equals("0")) {
+			Utils.clearScreen();
+			for (int i = 0; i < PREFIXLABELS.length; i++) {
+				List<String> values = DatabaseManager.suggestAddressValues(user.getUsername(),
+						DatabaseManager.PREFIXFIELDS.get(i), prefix, SUGGESTIONS);
+				if (!values.isEmpty()) {
+					System.out.println(PREFIXLABELS[i] + ": " + String.join(", ", values));
+				}
+			}
+			System.out.println();
+			displayAddresses(DatabaseManager.searchAddressPrefix(user.getUsername(), null, prefix, PAGESIZE));
+			System.out.println("\nType a longer or different start to search again, or enter 0 to go back:");
+			prefix = scanner.nextLine();
+		}
+		Utils.clearScreen();
+	}
+
+	/**
+	 * Searches the user's addresses for first names, last names, and cities that
+	 * sound like or are spelled close to what was typed, closest spelling first
+	 */
+	private void searchBySound() {
+		System.out.println("Type a first name, last name, or city as it sounds:");
+		String value = scanner.nextLine();
+		Utils.clearScreen();
+		List<Address> addresses = DatabaseManager.searchSimilarAddresses(user.getUsername(), null, value, PAGESIZE);
+		if (addresses.isEmpty()) {
+			System.out.println("Nothing sounds like " + value + ".\n");
+		} else {
+			displayAddresses(addresses);
+			System.out.println();
+		}
 	}
 
 	/**
@@ -259,11 +542,17 @@ public class Dialogue {
 		Document query = queryGenerator().append("username", user.getUsername());
 		Utils.clearScreen();
 		System.out.println("The following addresses will be deleted:");
-		displayAddresses(DatabaseManager.findAddress(query));
+		List<Address> list = DatabaseManager.findAddress(query);
+		displayAddresses(list);
 		System.out.println("Are you sure you want to proceed?\n0: Yes\n1: No");
 		switch (scanner.nextLine()) {
 			case ("0"):
-				DatabaseManager.deleteAddress(query);
+				// Only the addresses that were shown are deleted
+				List<AddressMutation> deletes = new ArrayList<AddressMutation>();
+				for (Address address : list) {
+					deletes.add(AddressMutation.delete(address.getId(), user.getUsername()));
+				}
+				reportWrites(DatabaseManager.mutateAddresses(deletes), "deleted");
 				break;
 			case ("1"):
 				System.out.println("Operation has been cancelled");
@@ -318,8 +607,16 @@ public class Dialogue {
 				System.out.println("\nDo you want to proceed?\n0: Yes\n1: No");
 				switch (scanner.nextLine()) {
 					case ("0"):
-						DatabaseManager.updateAddress(query, update);
-						System.out.println("Address has been updated");
+						if (update.isEmpty()) {
+							System.out.println("Nothing was changed");
+							break;
+						}
+						// Only the addresses that were shown are updated
+						List<AddressMutation> edits = new ArrayList<AddressMutation>();
+						for (Address address : list) {
+							edits.add(AddressMutation.update(address.getId(), user.getUsername(), update));
+						}
+						reportWrites(DatabaseManager.mutateAddresses(edits), "updated");
 						break;
 					case ("1"):
 						System.out.println("Operation has been cancelled");
@@ -338,6 +635,95 @@ public class Dialogue {
 
 	}
 
+	/**
+	 * Tells the user how many addresses a bulk edit or delete changed, which ones
+	 * were skipped, and which ones the database could not confirm
+	 * 
+	 * @param results Outcome of each write
+	 * @param action  What was done to the addresses, such as deleted
+	 */
+	private static void reportWrites(List<WriteResult> results, String action) {
+		int applied = 0;
+		int missing = 0;
+		int unconfirmed = 0;
+		String concernError = null;
+		for (WriteResult result : results) {
+			if (result.getStatus() == WriteResult.Status.NOTFOUND) {
+				missing++;
+			} else if (result.getStatus() == WriteResult.Status.UNCONFIRMED) {
+				unconfirmed++;
+				concernError = result.getMessage();
+			} else if (result.getStatus() == WriteResult.Status.FAILED) {
+				System.out.println(
+						"Address " + result.getId() + " could not be " + action + ": " + result.getMessage());
+			} else {
+				applied++;
+			}
+		}
+		System.out.println(applied + (applied == 1 ? " address has" : " addresses have") + " been " + action);
+		if (missing > 0) {
+			System.out.println(missing + (missing == 1 ? " was" : " were") + " deleted since they were shown and "
+					+ (missing == 1 ? "was" : "were") + " skipped");
+		}
+		if (unconfirmed > 0) {
+			System.out.println(unconfirmed + (unconfirmed == 1 ? " address was" : " addresses were") + " " + action
+					+ " but may not be saved on every server: " + concernError);
+		}
+	}
+
+	/**
+	 * Imports addresses from a CSV or NDJSON file into the user's address book
+	 */
+	private void importAddresses() {
+		System.out.println("Enter the path to a .csv or .ndjson file:\n"
+				+ "(it needs the fields firstName, lastName, street, city, state, and zip)");
+		String file = scanner.nextLine();
+		try {
+			ImportReport report = new AddressImporter().importFile(file, user.getUsername());
+			System.out.println(report);
+			List<String> rejects = report.getRejects();
+			for (int i = 0; i < rejects.size() && i < 10; i++) {
+				System.out.println(rejects.get(i));
+			}
+			if (rejects.size() > 10) {
+				System.out.println("...");
+			}
+		} catch (IllegalArgumentException | IOException e) {
+			System.out.println("The file could not be imported: " + e.getMessage());
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Exports the user's address book to a CSV, NDJSON, or JSON file
+	 */
+	private void exportAddresses() {
+		System.out.println("Enter the path of the file to export to:\n"
+				+ "(.csv, .ndjson, or .json, add .gz to the end to compress it)");
+		String file = scanner.nextLine();
+		try {
+			AddressExporter exporter = new AddressExporter();
+			exporter.setGzip(file.toLowerCase().endsWith(".gz"));
+			long written = exporter.exportUser(user.getUsername(), file, FileFormat.fromFileName(file));
+			System.out.printf("Exported %d addresses to %s\n", written, file);
+		} catch (IllegalArgumentException | IOException e) {
+			System.out.println("The address book could not be exported: " + e.getMessage());
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Displays how the database runs each kind of query the application makes, so
+	 * that queries not served by an index can be found
+	 */
+	private void explainQueries() {
+		System.out.println("Query plans:");
+		for (Map.Entry<String, String> plan : DatabaseManager.explainQueries(user.getUsername()).entrySet()) {
+			System.out.printf("%s:\n    %s\n", plan.getKey(), plan.getValue());
+		}
+		System.out.println();
+	}
+
 	/**
 	 * Used to setup the database and user if the application has never been ran
 	 */
@@ -348,7 +734,7 @@ public class Dialogue {
 
 			System.out.println("First things first, lets get you setup with your database!\n"
 					+ "Plese select one of the following options:\n" + "0: Connect to server using connection string\n"
-					+ "1: Use local machine for database");
+					+ "1: Use local machine for database\n" + "2: Store everything on this machine (no server needed)");
 			switch (scanner.nextLine()) {
 				case ("0"):
 					System.out.println("Please enter your connection string:");
@@ -380,6 +766,20 @@ public class Dialogue {
 						firstStartup();
 					}
 					break;
+				case ("2"):
+					try {
+						StorageManager.setConnectionString(DatabaseManager.EMBEDDEDCONNECTION);
+					} catch (Exception e) {
+						System.out.println("The application was not able to save the connection string.\n"
+								+ "Please contact your system admin for help.");
+						firstStartup();
+					}
+					if (!DatabaseManager.checkConnection(DatabaseManager.EMBEDDEDCONNECTION)) {
+						System.out.println("The application is unable to open its data folder."
+								+ " Please contact your system admin for help.");
+						firstStartup();
+					}
+					break;
 				default:
 					System.out.println("That is not one of the options, please try again...");
 					firstStartup();
@@ -390,16 +790,30 @@ public class Dialogue {
 	}
 
 	/**
-	 * Starts up the database using the connection string stored in the file
+	 * Starts up the database using the connection string stored in the file. If
+	 * it can not be reached, the user can try again or work offline from the
+	 * copy of their address book kept on this computer
 	 */
 	private void startDatabase() {
-		try {
-			DatabaseManager.start();
-		} catch (Exception e) {
-			System.out.println("There was an error when attempting to connect to the database...\n"
-					+ "Make sure you are connected to the internet and press enter when you are ready.");
-			scanner.nextLine();
-			startDatabase();
+		while (true) {
+			try {
+				DatabaseManager.start();
+				return;
+			} catch (Exception e) {
+				System.out.println("There was an error when attempting to connect to the database...\n"
+						+ "0: Try again\n1: Work offline");
+			}
+			if (scanner.nextLine().equals("1")) {
+				try {
+					DatabaseManager.startOffline();
+					System.out.println("You are working offline. Your changes are saved on this computer and sent"
+							+ " to the database once it can be reached.");
+					return;
+				} catch (Exception e) {
+					System.out.println("The application was not able to open the copy of your address book kept on"
+							+ " this computer. Make sure you are connected to the internet and try again.");
+				}
+			}
 		}
 	}
 
@@ -408,8 +822,15 @@ public class Dialogue {
 	 */
 	private void shutDown() {
 		scanner.close();
+		SessionManager.logout(sessionToken);
+		DatabaseManager.stop();
 		Utils.clearScreen();
-		System.out.println("Your address book has been safely stored in the cloud!\nHave a good day!");
+		if (DatabaseManager.getUnsyncedChanges() > 0) {
+			System.out.println("Your address book has been saved on this computer and will be stored in the cloud"
+					+ " the next time you are online!\nHave a good day!");
+		} else {
+			System.out.println("Your address book has been safely stored in the cloud!\nHave a good day!");
+		}
 	}
 
 	/**
@@ -420,10 +841,16 @@ public class Dialogue {
 		String username = scanner.nextLine();
 		System.out.println("Password:");
 		String password = scanner.nextLine();
-		List<User> users = DatabaseManager
-				.findUser(new Document().append("username", username).append("hashedPassword", Utils.hash(password)));
-		if (users.size() > 0) {
-			user = users.get(0);
+		String token = SessionManager.login(username, password);
+		if (token != null) {
+			if (user != null) {
+				SessionManager.logout(sessionToken);
+				DatabaseManager.forgetAddresses(user.getUsername());
+			}
+			sessionToken = token;
+			user = SessionManager.getUser(token);
+			DatabaseManager.replicateAddresses(user.getUsername());
+			DatabaseManager.indexAddresses(user.getUsername());
 		} else {
 			System.out.println(
 					"The username or password you entered is not correct.\n0: Try Again\n1: Create new account");
@@ -444,6 +871,14 @@ public class Dialogue {
 	 * Creates a new user account
 	 */
 	private void createAccount() {
+		if (DatabaseManager.isOffline()) {
+			// A username can only be checked against the database, so one taken
+			// while offline would be found out only once the account is synced
+			System.out.println("Accounts can only be created while connected to the database. Please log in with"
+					+ " an existing account.");
+			login();
+			return;
+		}
 		System.out.println("Enter in a username:");
 		String username = scanner.nextLine();
 		System.out.println("Enter in your first name:");
@@ -0,0 +1,60 @@
+package console;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import library.database.DatabaseManager;
+import library.transfer.AddressExporter;
+import library.transfer.FileFormat;
+
+/**
+ * Entry point for exporting address books without going through the dialogue,
+ * such as from a nightly job. Uses the same connection string as the console
+ * 
+ * @author Logan Miller
+ *
+ */
+public class ExportAddresses {
+	/**
+	 * Exports address books to a folder, one file per user
+	 * 
+	 * @param args folder, format (csv, ndjson, or json), optionally --gzip, and
+	 *             optionally the usernames to export. Every user is exported if
+	 *             no usernames are given
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: ExportAddresses <folder> <csv|ndjson|json> [--gzip] [username...]");
+			System.exit(2);
+		}
+		try {
+			FileFormat format = FileFormat.valueOf(args[1].toUpperCase(Locale.ROOT));
+			AddressExporter exporter = new AddressExporter();
+			List<String> usernames = new ArrayList<String>();
+			for (int i = 2; i < args.length; i++) {
+				if (args[i].equals("--gzip")) {
+					exporter.setGzip(true);
+				} else {
+					usernames.add(args[i]);
+				}
+			}
+			DatabaseManager.start();
+			long start = System.nanoTime();
+			Map<String, Long> written = usernames.isEmpty() ? exporter.exportAll(args[0], format)
+					: exporter.exportUsers(usernames, args[0], format);
+			long total = 0;
+			for (Map.Entry<String, Long> user : written.entrySet()) {
+				System.out.println(user.getKey() + ": " + user.getValue() + " addresses");
+				total += user.getValue();
+			}
+			System.out.printf("Exported %d addresses for %d users in %.2f seconds\n", total, written.size(),
+					(System.nanoTime() - start) / 1e9);
+			System.exit(0);
+		} catch (Exception e) {
+			System.err.println("The export failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package console;
+
+import org.bson.Document;
+
+import library.database.DatabaseManager;
+import library.transfer.AddressImporter;
+import library.transfer.ImportReport;
+
+/**
+ * Entry point for importing addresses without going through the dialogue. Uses
+ * the same connection string as the console
+ * 
+ * @author Logan Miller
+ *
+ */
+public class ImportAddresses {
+	/**
+	 * Imports a CSV or NDJSON file into a user's address book
+	 * 
+	 * @param args username, file, and optionally the batch size and the number of
+	 *             batches allowed in flight
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println(
+					"Usage: ImportAddresses <username> <file.csv|file.ndjson> [batch size] [batches in flight]");
+			System.exit(2);
+		}
+		try {
+			DatabaseManager.start();
+			if (DatabaseManager.findUser(new Document().append("username", args[0])).isEmpty()) {
+				System.err.println("The user " + args[0] + " does not exist");
+				System.exit(1);
+			}
+			AddressImporter importer = new AddressImporter();
+			if (args.length > 2) {
+				importer.setBatchSize(Integer.parseInt(args[2]));
+			}
+			if (args.length > 3) {
+				importer.setMaxInFlight(Integer.parseInt(args[3]));
+			}
+			ImportReport report = importer.importFile(args[1], args[0]);
+			System.out.println(report);
+			for (String reject : report.getRejects()) {
+				System.out.println(reject);
+			}
+			System.exit(report.getRejected() == 0 ? 0 : 1);
+		} catch (Exception e) {
+			System.err.println("The import failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
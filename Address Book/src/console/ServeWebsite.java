@@ -0,0 +1,43 @@
+package console;
+
+import library.database.DatabaseManager;
+import library.server.AddressServer;
+import library.session.SessionManager;
+
+/**
+ * Entry point for serving the website and its JSON API. Uses the same
+ * connection string as the console unless another one is given, such as
+ * memory: to try the website without a database
+ * 
+ * @author Logan Miller
+ * 
+ */
+public class ServeWebsite {
+	/**
+	 * Starts the server and keeps it running until the process is stopped
+	 * 
+	 * @param args port, and optionally the website folder and a connection string
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: ServeWebsite <port> [website folder] [connection string]");
+			System.exit(2);
+		}
+		try {
+			if (args.length > 2) {
+				DatabaseManager.start(args[2]);
+			} else {
+				DatabaseManager.start();
+			}
+			SessionManager.start();
+			AddressServer server = new AddressServer(Integer.parseInt(args[0]),
+					args.length > 1 ? args[1] : "Website");
+			server.start();
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1), "http-shutdown"));
+			System.out.println("Serving the website at http://localhost:" + server.getPort() + "/");
+		} catch (Exception e) {
+			System.err.println("The server could not be started: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
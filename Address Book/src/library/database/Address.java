@@ -2,10 +2,12 @@ package library.database;
 
 import java.util.Date;
 
+import org.bson.types.ObjectId;
+
 /**
  * 
  * @author Logan Miller
- *
+ * 
  */
 public class Address {
 	private String firstName;
@@ -19,6 +21,8 @@ public class Address {
 
 	private String username;
 
+	private ObjectId id;
+
 	/**
 	 * Constructor to create the Address.
 	 * 
@@ -70,6 +74,17 @@ public class Address {
 		this.username = username;
 	}
 
+	/**
+	 * Creates a copy of an address
+	 * 
+	 * @param other Address being copied
+	 */
+	Address(Address other) {
+		this(other.firstName, other.lastName, other.street, other.city, other.state, other.zip, other.dateCreated,
+				other.username);
+		this.id = other.id;
+	}
+
 	/**
 	 * Returns the Person's first name
 	 * 
@@ -142,6 +157,25 @@ public class Address {
 		return username;
 	}
 
+	/**
+	 * Returns the id of the document the address is stored in
+	 * 
+	 * @return Document id, or null if the address has not been read from the
+	 *         database
+	 */
+	public ObjectId getId() {
+		return id;
+	}
+
+	/**
+	 * Sets the id of the document the address is stored in
+	 * 
+	 * @param id Document id
+	 */
+	void setId(ObjectId id) {
+		this.id = id;
+	}
+
 	/**
 	 * Sets addresses first name
 	 * 
@@ -0,0 +1,316 @@
+package library.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.bson.Document;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Holds the address books of recently used users so that viewing and
+ *         searching do not have to go back to the database between screens.
+ * 
+ *         Address books are evicted least recently used first once the cache
+ *         holds more than a set number of addresses, and can also expire after
+ *         a set time. Every write to an address book invalidates or patches it.
+ *         A book that was being loaded while a write happened is thrown away
+ *         instead of cached, so users always read their own writes
+ */
+class AddressCache {
+	// Largest number of addresses held by default
+	static final int DEFAULTMAXADDRESSES = 100000;
+
+	// Fields of an address that queries can be answered from the cache for
+	private static final List<String> FIELDS = Arrays.asList("username", "firstName", "lastName",
+			"street", "city", "state", "zip", "dateCreated");
+
+	// Address books in least recently used order
+	private final Map<String, Book> books = new LinkedHashMap<String, Book>(16, 0.75f, true);
+	private int maxAddresses = DEFAULTMAXADDRESSES;
+	private long ttlMillis;
+	private int size;
+	// Goes up on every invalidation so loads that started before it are dropped
+	private long generation;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	/**
+	 * Sets how large the cache can grow and how long address books stay in it.
+	 * Every cached address book is dropped
+	 * 
+	 * @param maxAddresses Largest number of addresses held, 0 turns the cache off
+	 * @param ttlMillis    Milliseconds an address book stays cached, 0 to keep it
+	 *                     until it is evicted or changed
+	 */
+	synchronized void setLimits(int maxAddresses, long ttlMillis) {
+		if (maxAddresses < 0 || ttlMillis < 0) {
+			throw new IllegalArgumentException("Cache limits can not be negative");
+		}
+		this.maxAddresses = maxAddresses;
+		this.ttlMillis = ttlMillis;
+		invalidateAll();
+	}
+
+	/**
+	 * Returns the largest number of addresses the cache holds
+	 * 
+	 * @return Largest number of addresses
+	 */
+	synchronized int getMaxAddresses() {
+		return maxAddresses;
+	}
+
+	/**
+	 * Returns the cached address book of a user
+	 * 
+	 * @param username User whose address book is wanted
+	 * @return Addresses in sorted order, or null if the book is not cached. The
+	 *         addresses must not be changed
+	 */
+	synchronized List<Address> get(String username) {
+		Book book = books.get(username);
+		if (book != null && ttlMillis > 0 && System.currentTimeMillis() - book.loadedAt > ttlMillis) {
+			remove(username);
+			evictions++;
+			book = null;
+		}
+		if (book == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return book.addresses;
+	}
+
+	/**
+	 * Returns the current generation. It is read before loading an address book
+	 * and handed back to put()
+	 * 
+	 * @return Generation of the cache
+	 */
+	synchronized long generation() {
+		return generation;
+	}
+
+	/**
+	 * Caches a user's address book unless it was invalidated while it was being
+	 * loaded or it is too large to cache
+	 * 
+	 * @param username   User the address book belongs to
+	 * @param addresses  Every address of the user. The list is taken over by the
+	 *                   cache
+	 * @param generation Generation read before the address book was loaded
+	 * @return If the address book was cached
+	 */
+	synchronized boolean put(String username, List<Address> addresses, long generation) {
+		if (generation != this.generation || addresses.size() > maxAddresses) {
+			return false;
+		}
+		remove(username);
+		addresses.sort(PageRequest.ORDER);
+		books.put(username, new Book(Collections.unmodifiableList(addresses), System.currentTimeMillis()));
+		size += addresses.size();
+		evict();
+		return true;
+	}
+
+	/**
+	 * Adds a newly inserted address to its user's address book if it is cached
+	 * 
+	 * @param username User the address belongs to
+	 * @param address  Address that was inserted, with its id set
+	 */
+	synchronized void add(String username, Address address) {
+		generation++;
+		Book book = books.get(username);
+		if (book == null) {
+			return;
+		}
+		List<Address> addresses = new ArrayList<Address>(book.addresses.size() + 1);
+		addresses.addAll(book.addresses);
+		int position = Collections.binarySearch(addresses, address, PageRequest.ORDER);
+		addresses.add(position < 0 ? -position - 1 : position, new Address(address));
+		books.put(username, new Book(Collections.unmodifiableList(addresses), book.loadedAt));
+		size++;
+		evict();
+	}
+
+	/**
+	 * Drops a user's address book after it has been changed
+	 * 
+	 * @param username User whose address book changed
+	 */
+	synchronized void invalidate(String username) {
+		generation++;
+		if (remove(username)) {
+			invalidations++;
+		}
+	}
+
+	/**
+	 * Drops every address book, used when a change could have touched any user
+	 */
+	synchronized void invalidateAll() {
+		generation++;
+		invalidations += books.size();
+		books.clear();
+		size = 0;
+	}
+
+	/**
+	 * Returns the counters of the cache
+	 * 
+	 * @return Snapshot of the counters
+	 */
+	synchronized CacheStats getStats() {
+		return new CacheStats(hits, misses, evictions, invalidations, books.size(), size);
+	}
+
+	/**
+	 * Removes a user's address book
+	 * 
+	 * @param username User whose address book is removed
+	 * @return If the address book was cached
+	 */
+	private boolean remove(String username) {
+		Book book = books.remove(username);
+		if (book == null) {
+			return false;
+		}
+		size -= book.addresses.size();
+		return true;
+	}
+
+	/**
+	 * Evicts the least recently used address books until the cache is back
+	 * within its limit
+	 */
+	private void evict() {
+		Iterator<Book> eldest = books.values().iterator();
+		while (size > maxAddresses && eldest.hasNext()) {
+			size -= eldest.next().addresses.size();
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Returns the user a query can be answered for from the cache. Only queries
+	 * for a single user that compare address fields to strings can be
+	 * 
+	 * @param query Parameters for address search
+	 * @return Username, or null if the query has to go to the database
+	 */
+	static String username(Document query) {
+		if (!(query.get("username") instanceof String)) {
+			return null;
+		}
+		for (Map.Entry<String, Object> entry : query.entrySet()) {
+			if (!FIELDS.contains(entry.getKey()) || !(entry.getValue() instanceof String)) {
+				return null;
+			}
+		}
+		return query.getString("username");
+	}
+
+	/**
+	 * Returns if an address matches every field of a query. The username is not
+	 * checked since a cached address book only holds one user's addresses
+	 * 
+	 * @param address Address being checked
+	 * @param query   Query that username() accepted
+	 * @return If the address matches
+	 */
+	static boolean matches(Address address, Document query) {
+		for (Map.Entry<String, Object> entry : query.entrySet()) {
+			if (!entry.getKey().equals("username") && !Objects.equals(field(address, entry.getKey()),
+					entry.getValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns copies of the addresses of a cached address book that match a query
+	 * 
+	 * @param addresses Cached address book
+	 * @param query     Query that username() accepted
+	 * @return Matching addresses in sorted order
+	 */
+	static List<Address> filter(List<Address> addresses, Document query) {
+		List<Address> out = new ArrayList<Address>();
+		for (Address address : addresses) {
+			if (matches(address, query)) {
+				out.add(new Address(address));
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Returns the value of any field of an address, for queries that are run
+	 * over addresses in memory
+	 * 
+	 * @param address Address
+	 * @param field   Name of the field in the addresses collection
+	 * @return Value of the field, or null if addresses do not have it
+	 */
+	static Object value(Address address, String field) {
+		if (field.equals("_id")) {
+			return address.getId();
+		}
+		return FIELDS.contains(field) ? field(address, field) : null;
+	}
+
+	/**
+	 * Returns the value of a field of an address
+	 * 
+	 * @param address Address
+	 * @param field   Name of the field in the addresses collection
+	 * @return Value of the field
+	 */
+	private static String field(Address address, String field) {
+		switch (field) {
+			case "firstName":
+				return address.getFirstName();
+			case "lastName":
+				return address.getLastName();
+			case "street":
+				return address.getStreet();
+			case "city":
+				return address.getCity();
+			case "state":
+				return address.getState();
+			case "zip":
+				return address.getZip();
+			case "dateCreated":
+				return address.getDateCreated();
+			default:
+				return address.getUsername();
+		}
+	}
+
+	/**
+	 * A cached address book and when it was loaded
+	 */
+	private static class Book {
+		final List<Address> addresses;
+		final long loadedAt;
+
+		Book(List<Address> addresses, long loadedAt) {
+			this.addresses = addresses;
+			this.loadedAt = loadedAt;
+		}
+	}
+}
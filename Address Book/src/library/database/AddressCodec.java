@@ -0,0 +1,177 @@
+package library.database;
+
+import org.bson.BsonObjectId;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.codecs.CollectibleCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+import library.query.MongoCompiler;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Reads and writes addresses straight to and from BSON, so results do
+ *         not have to be decoded into a Document first.
+ * 
+ *         Addresses are only ever written whole when they are inserted, so an
+ *         encoded address is always stored with the deleted flag set to false.
+ *         An address without an id is given one before it is inserted.
+ * 
+ *         Each listed field is stored with a lower-cased copy next to it, which
+ *         searches that ignore case are matched against. The copies are never
+ *         read back
+ */
+class AddressCodec implements CollectibleCodec<Address> {
+	@Override
+	public void encode(BsonWriter writer, Address address, EncoderContext encoderContext) {
+		writer.writeStartDocument();
+		if (address.getId() != null) {
+			writer.writeObjectId("_id", address.getId());
+		}
+		writeString(writer, "firstName", address.getFirstName());
+		writeString(writer, "lastName", address.getLastName());
+		writeString(writer, "street", address.getStreet());
+		writeString(writer, "city", address.getCity());
+		writeString(writer, "state", address.getState());
+		writeString(writer, "zip", address.getZip());
+		writeLowerCase(writer, "firstName", address.getFirstName());
+		writeLowerCase(writer, "lastName", address.getLastName());
+		writeLowerCase(writer, "street", address.getStreet());
+		writeLowerCase(writer, "city", address.getCity());
+		writeLowerCase(writer, "state", address.getState());
+		writeLowerCase(writer, "zip", address.getZip());
+		writeString(writer, "dateCreated", address.getDateCreated());
+		writeString(writer, "username", address.getUsername());
+		writer.writeBoolean("deleted", false);
+		writer.writeEndDocument();
+	}
+
+	@Override
+	public Address decode(BsonReader reader, DecoderContext decoderContext) {
+		ObjectId id = null;
+		String firstName = null;
+		String lastName = null;
+		String street = null;
+		String city = null;
+		String state = null;
+		String zip = null;
+		String dateCreated = null;
+		String username = null;
+
+		reader.readStartDocument();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+			switch (reader.readName()) {
+				case "_id":
+					if (reader.getCurrentBsonType() == BsonType.OBJECT_ID) {
+						id = reader.readObjectId();
+					} else {
+						reader.skipValue();
+					}
+					break;
+				case "firstName":
+					firstName = readString(reader);
+					break;
+				case "lastName":
+					lastName = readString(reader);
+					break;
+				case "street":
+					street = readString(reader);
+					break;
+				case "city":
+					city = readString(reader);
+					break;
+				case "state":
+					state = readString(reader);
+					break;
+				case "zip":
+					zip = readString(reader);
+					break;
+				case "dateCreated":
+					dateCreated = readString(reader);
+					break;
+				case "username":
+					username = readString(reader);
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.readEndDocument();
+
+		Address address = new Address(firstName, lastName, street, city, state, zip, dateCreated, username);
+		address.setId(id);
+		return address;
+	}
+
+	@Override
+	public Class<Address> getEncoderClass() {
+		return Address.class;
+	}
+
+	@Override
+	public Address generateIdIfAbsentFromDocument(Address address) {
+		if (address.getId() == null) {
+			address.setId(new ObjectId());
+		}
+		return address;
+	}
+
+	@Override
+	public boolean documentHasId(Address address) {
+		return address.getId() != null;
+	}
+
+	@Override
+	public BsonValue getDocumentId(Address address) {
+		if (address.getId() == null) {
+			throw new IllegalStateException("The address does not have an id");
+		}
+		return new BsonObjectId(address.getId());
+	}
+
+	/**
+	 * Writes a string field, or null if there is no value
+	 * 
+	 * @param writer Writer of the document
+	 * @param name   Name of the field
+	 * @param value  Value of the field
+	 */
+	static void writeString(BsonWriter writer, String name, String value) {
+		if (value == null) {
+			writer.writeNull(name);
+		} else {
+			writer.writeString(name, value);
+		}
+	}
+
+	/**
+	 * Writes the lower-cased copy of a string field
+	 * 
+	 * @param writer Writer of the document
+	 * @param name   Name of the field the copy is made of
+	 * @param value  Value of the field
+	 */
+	private static void writeLowerCase(BsonWriter writer, String name, String value) {
+		writeString(writer, MongoCompiler.lowerCaseField(name), MongoCompiler.lowerCase(value));
+	}
+
+	/**
+	 * Reads the value of a string field. Values that are not strings are skipped
+	 * 
+	 * @param reader Reader positioned at the value
+	 * @return Value of the field, or null if it is not a string
+	 */
+	static String readString(BsonReader reader) {
+		if (reader.getCurrentBsonType() == BsonType.STRING) {
+			return reader.readString();
+		}
+		reader.skipValue();
+		return null;
+	}
+}
@@ -0,0 +1,116 @@
+package library.database;
+
+import java.util.Map;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         An edit or delete of a single address, picked by its id and the user
+ *         it belongs to. Many of them are applied at once with
+ *         DatabaseManager.mutateAddresses(), so an edit only ever touches the
+ *         addresses that were shown to the user and each address can get its
+ *         own changes
+ */
+public class AddressMutation {
+	private final ObjectId id;
+	private final String username;
+	private final Document fields;
+
+	/**
+	 * Creates a mutation
+	 * 
+	 * @param id       Id of the address
+	 * @param username User the address belongs to
+	 * @param fields   Fields being set, or null to delete the address
+	 */
+	private AddressMutation(ObjectId id, String username, Document fields) {
+		if (id == null || username == null) {
+			throw new IllegalArgumentException("A mutation needs the id and username of its address");
+		}
+		this.id = id;
+		this.username = username;
+		this.fields = fields;
+	}
+
+	/**
+	 * Creates an edit of an address
+	 * 
+	 * @param id       Id of the address
+	 * @param username User the address belongs to
+	 * @param fields   Fields being set and their values. Only the fields in
+	 *                 DatabaseManager.LISTFIELDS can be set
+	 * @return Edit
+	 */
+	public static AddressMutation update(ObjectId id, String username, Document fields) {
+		if (fields.isEmpty()) {
+			throw new IllegalArgumentException("An edit needs at least 1 field");
+		}
+		for (Map.Entry<String, Object> field : fields.entrySet()) {
+			if (!DatabaseManager.LISTFIELDS.contains(field.getKey()) || !(field.getValue() instanceof String)) {
+				throw new IllegalArgumentException("Can not set " + field.getKey() + " to " + field.getValue());
+			}
+		}
+		return new AddressMutation(id, username, new Document(fields));
+	}
+
+	/**
+	 * Creates a delete of an address
+	 * 
+	 * @param id       Id of the address
+	 * @param username User the address belongs to
+	 * @return Delete
+	 */
+	public static AddressMutation delete(ObjectId id, String username) {
+		return new AddressMutation(id, username, null);
+	}
+
+	/**
+	 * Returns the id of the address
+	 * 
+	 * @return Id
+	 */
+	public ObjectId getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the user the address belongs to
+	 * 
+	 * @return Username
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * Returns the fields being set
+	 * 
+	 * @return Fields and their values, or null for a delete
+	 */
+	public Document getFields() {
+		return fields == null ? null : new Document(fields);
+	}
+
+	/**
+	 * Returns if the address is deleted
+	 * 
+	 * @return If this is a delete
+	 */
+	public boolean isDelete() {
+		return fields == null;
+	}
+
+	/**
+	 * Turns the mutation into a write of the addresses collection
+	 * 
+	 * @return Write that only matches the address if it still belongs to the user
+	 */
+	DocumentWrite toWrite() {
+		Document filter = new Document("_id", id).append("username", username);
+		return fields == null ? DocumentWrite.delete(filter)
+				: DocumentWrite.update(filter, DatabaseManager.withLowerCaseCopies(fields));
+	}
+}
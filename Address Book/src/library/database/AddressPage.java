@@ -0,0 +1,84 @@
+package library.database;
+
+import java.util.List;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         A single page of addresses returned for a PageRequest
+ */
+public class AddressPage {
+	private final PageRequest request;
+	private final List<Address> addresses;
+	private final boolean hasNext;
+	private final boolean hasPrevious;
+
+	/**
+	 * Creates a page
+	 * 
+	 * @param request     Request the page was found for
+	 * @param addresses   Addresses on the page in sorted order
+	 * @param hasNext     If there are addresses after this page
+	 * @param hasPrevious If there are addresses before this page
+	 */
+	AddressPage(PageRequest request, List<Address> addresses, boolean hasNext, boolean hasPrevious) {
+		this.request = request;
+		this.addresses = addresses;
+		this.hasNext = hasNext;
+		this.hasPrevious = hasPrevious;
+	}
+
+	/**
+	 * Returns the addresses on the page
+	 * 
+	 * @return Addresses in sorted order
+	 */
+	public List<Address> getAddresses() {
+		return addresses;
+	}
+
+	/**
+	 * Returns if there are addresses after this page
+	 * 
+	 * @return If there is a next page
+	 */
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+	/**
+	 * Returns if there are addresses before this page
+	 * 
+	 * @return If there is a previous page
+	 */
+	public boolean hasPrevious() {
+		return hasPrevious;
+	}
+
+	/**
+	 * Returns the request for the page after this one
+	 * 
+	 * @return Request for the next page
+	 */
+	public PageRequest next() {
+		if (addresses.isEmpty()) {
+			return request;
+		}
+		return new PageRequest(request.getQuery(), request.getPageSize(), request.getFields(),
+				PageRequest.sortKey(addresses.get(addresses.size() - 1)), false);
+	}
+
+	/**
+	 * Returns the request for the page before this one
+	 * 
+	 * @return Request for the previous page
+	 */
+	public PageRequest previous() {
+		if (addresses.isEmpty()) {
+			return new PageRequest(request.getQuery(), request.getPageSize(), request.getFields());
+		}
+		return new PageRequest(request.getQuery(), request.getPageSize(), request.getFields(),
+				PageRequest.sortKey(addresses.get(0)), true);
+	}
+}
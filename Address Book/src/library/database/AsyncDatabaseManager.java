@@ -0,0 +1,281 @@
+package library.database;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.bson.Document;
+
+import library.query.Query;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Runs DatabaseManager calls off the caller's thread and hands back a
+ *         CompletableFuture for each, so a server can keep serving while the
+ *         database works and callers can start many lookups at once.
+ * 
+ *         Calls run on a small pool of daemon threads instead of a thread per
+ *         call. At most a set number run at once, the rest wait in a bounded
+ *         queue, and a call that does not fit in the queue fails right away
+ *         with a RejectedExecutionException instead of piling up. The
+ *         DatabaseManager must be started first
+ */
+public class AsyncDatabaseManager {
+	// Calls that run at once by default
+	public static final int DEFAULTCONCURRENCY = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	// Calls that can wait for a thread by default
+	public static final int DEFAULTQUEUESIZE = 10000;
+
+	private static ThreadPoolExecutor executor;
+
+	/**
+	 * Sets how many calls run at once and how many can wait. Calls already
+	 * running or waiting still finish
+	 * 
+	 * @param concurrency Largest number of calls that run at once
+	 * @param queueSize   Largest number of calls that wait for a thread
+	 */
+	public static synchronized void setConcurrency(int concurrency, int queueSize) {
+		if (concurrency < 1 || queueSize < 1) {
+			throw new IllegalArgumentException("Concurrency and queue size must be at least 1");
+		}
+		if (executor != null) {
+			executor.shutdown();
+		}
+		executor = createExecutor(concurrency, queueSize);
+	}
+
+	/**
+	 * Stops taking calls. Calls already running or waiting still finish
+	 */
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Finds the addresses matching a query
+	 * 
+	 * @param query Parameters for address search
+	 * @return Future of the addresses
+	 */
+	public static CompletableFuture<List<Address>> findAddress(Document query) {
+		return supply(() -> DatabaseManager.findAddress(query));
+	}
+
+	/**
+	 * Finds the addresses matching a query built from filters
+	 * 
+	 * @param query Query for addresses
+	 * @return Future of the addresses in the order the query asks for
+	 */
+	public static CompletableFuture<List<Address>> findAddress(Query query) {
+		return supply(() -> DatabaseManager.findAddress(query));
+	}
+
+	/**
+	 * Finds one page of the addresses matching a query
+	 * 
+	 * @param request Page being asked for
+	 * @return Future of the page
+	 */
+	public static CompletableFuture<AddressPage> findAddressPage(PageRequest request) {
+		return supply(() -> DatabaseManager.findAddressPage(request));
+	}
+
+	/**
+	 * Loads the whole address book of many users at once. Each book is loaded by
+	 * its own call, so the books load in parallel up to the concurrency limit
+	 * 
+	 * @param usernames Users whose address books are loaded
+	 * @return Future of each user's addresses in the order the users were given.
+	 *         It fails if any book can not be loaded
+	 */
+	public static CompletableFuture<Map<String, List<Address>>> findAddressBooks(List<String> usernames) {
+		List<CompletableFuture<List<Address>>> books = new ArrayList<CompletableFuture<List<Address>>>();
+		for (String username : usernames) {
+			books.add(findAddress(new Document("username", username)));
+		}
+		return CompletableFuture.allOf(books.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+			Map<String, List<Address>> out = new LinkedHashMap<String, List<Address>>();
+			for (int i = 0; i < usernames.size(); i++) {
+				out.put(usernames.get(i), books.get(i).join());
+			}
+			return out;
+		});
+	}
+
+	/**
+	 * Finds a user's addresses with a name, street, or city starting with a
+	 * prefix
+	 * 
+	 * @param username User whose addresses are searched
+	 * @param field    One of DatabaseManager.PREFIXFIELDS, or null for all of them
+	 * @param prefix   Start of the value
+	 * @param limit    Largest number of addresses returned
+	 * @return Future of the matching addresses
+	 */
+	public static CompletableFuture<List<Address>> searchAddressPrefix(String username, String field, String prefix,
+			int limit) {
+		return supply(() -> DatabaseManager.searchAddressPrefix(username, field, prefix, limit));
+	}
+
+	/**
+	 * Finds a user's addresses with a name or city that sounds like a value
+	 * 
+	 * @param username User whose addresses are searched
+	 * @param field    One of DatabaseManager.SOUNDFIELDS, or null for all of them
+	 * @param value    Value that was heard
+	 * @param limit    Largest number of addresses returned
+	 * @return Future of the matching addresses
+	 */
+	public static CompletableFuture<List<Address>> searchSimilarAddresses(String username, String field,
+			String value, int limit) {
+		return supply(() -> DatabaseManager.searchSimilarAddresses(username, field, value, limit));
+	}
+
+	/**
+	 * Finds the users matching a query
+	 * 
+	 * @param query Parameters for user search
+	 * @return Future of the users
+	 */
+	public static CompletableFuture<List<User>> findUser(Document query) {
+		return supply(() -> DatabaseManager.findUser(query));
+	}
+
+	/**
+	 * Adds a user
+	 * 
+	 * @param user User being added
+	 * @return Future that completes once the user is added
+	 */
+	public static CompletableFuture<Void> addUser(User user) {
+		return run(() -> DatabaseManager.addUser(user));
+	}
+
+	/**
+	 * Adds an address
+	 * 
+	 * @param address Address being added
+	 * @return Future that completes once the address is added
+	 */
+	public static CompletableFuture<Void> insertAddress(Address address) {
+		return run(() -> DatabaseManager.insertAddress(address));
+	}
+
+	/**
+	 * Adds many addresses in a single bulk insert
+	 * 
+	 * @param addresses Addresses being added
+	 * @return Future of the position of each address that was not added mapped to
+	 *         the reason why
+	 */
+	public static CompletableFuture<Map<Integer, String>> insertAddresses(List<Address> addresses) {
+		return supply(() -> DatabaseManager.insertAddresses(addresses));
+	}
+
+	/**
+	 * Edits and deletes many addresses, each picked by its id
+	 * 
+	 * @param mutations Edits and deletes being made
+	 * @return Future of the outcome of each mutation
+	 */
+	public static CompletableFuture<List<WriteResult>> mutateAddresses(List<AddressMutation> mutations) {
+		return supply(() -> DatabaseManager.mutateAddresses(mutations));
+	}
+
+	/**
+	 * Deletes the addresses matching a query
+	 * 
+	 * @param query Filter of the addresses being deleted
+	 * @return Future that completes once the addresses are deleted
+	 */
+	public static CompletableFuture<Void> deleteAddress(Document query) {
+		return run(() -> DatabaseManager.deleteAddress(query));
+	}
+
+	/**
+	 * Updates the addresses matching a query
+	 * 
+	 * @param query  Filter of the addresses being updated
+	 * @param update Fields being updated and their values
+	 * @return Future that completes once the addresses are updated
+	 */
+	public static CompletableFuture<Void> updateAddress(Document query, Document update) {
+		return run(() -> DatabaseManager.updateAddress(query, update));
+	}
+
+	/**
+	 * Runs a call that returns a value on the pool
+	 * 
+	 * @param call Call being run
+	 * @return Future of the value. It fails with a RejectedExecutionException if
+	 *         the queue is full
+	 */
+	private static <T> CompletableFuture<T> supply(Supplier<T> call) {
+		try {
+			return CompletableFuture.supplyAsync(call, getExecutor());
+		} catch (RejectedExecutionException e) {
+			CompletableFuture<T> failed = new CompletableFuture<T>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	/**
+	 * Runs a call that does not return a value on the pool
+	 * 
+	 * @param call Call being run
+	 * @return Future that completes once the call is done
+	 */
+	private static CompletableFuture<Void> run(Runnable call) {
+		return supply(() -> {
+			call.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Returns the pool, creating it with the default limits the first time
+	 * 
+	 * @return Pool calls run on
+	 */
+	private static synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			executor = createExecutor(DEFAULTCONCURRENCY, DEFAULTQUEUESIZE);
+		}
+		return executor;
+	}
+
+	/**
+	 * Creates a pool of daemon threads. Threads that are idle for a minute are
+	 * stopped so an unused pool holds no threads
+	 * 
+	 * @param concurrency Number of threads
+	 * @param queueSize   Largest number of calls that wait for a thread
+	 * @return New pool
+	 */
+	private static ThreadPoolExecutor createExecutor(int concurrency, int queueSize) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(queueSize), r -> {
+					Thread thread = new Thread(r, "database-async-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+}
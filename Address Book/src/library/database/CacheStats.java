@@ -0,0 +1,97 @@
+package library.database;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Counters of the address book cache at a point in time
+ */
+public class CacheStats {
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long invalidations;
+	private final int users;
+	private final int addresses;
+
+	/**
+	 * Creates a snapshot of the cache counters
+	 * 
+	 * @param hits          Finds answered from the cache
+	 * @param misses        Finds that had to go to the database
+	 * @param evictions     Address books removed to make room or because they
+	 *                      expired
+	 * @param invalidations Address books removed because they were changed
+	 * @param users         Number of address books in the cache
+	 * @param addresses     Number of addresses in the cache
+	 */
+	CacheStats(long hits, long misses, long evictions, long invalidations, int users, int addresses) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.invalidations = invalidations;
+		this.users = users;
+		this.addresses = addresses;
+	}
+
+	/**
+	 * Returns the number of finds answered from the cache
+	 * 
+	 * @return Hits
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of finds that had to go to the database
+	 * 
+	 * @return Misses
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of address books removed to make room or because they
+	 * expired
+	 * 
+	 * @return Evictions
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of address books removed because they were changed
+	 * 
+	 * @return Invalidations
+	 */
+	public long getInvalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * Returns the number of address books in the cache
+	 * 
+	 * @return Cached users
+	 */
+	public int getUsers() {
+		return users;
+	}
+
+	/**
+	 * Returns the number of addresses in the cache
+	 * 
+	 * @return Cached addresses
+	 */
+	public int getAddresses() {
+		return addresses;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d hits, %d misses, %d evictions, %d invalidations, %d users / %d addresses cached",
+				hits, misses, evictions, invalidations, users, addresses);
+	}
+}
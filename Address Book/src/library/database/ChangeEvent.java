@@ -0,0 +1,134 @@
+package library.database;
+
+import org.bson.Document;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         A change made to a collection, handed to every subscriber of the
+ *         change feed. Changes made through this program are published once the
+ *         database has made them. When the feed tails a MongoDB change stream,
+ *         changes made by every program using the database are published
+ *         instead.
+ * 
+ *         Every event is keyed by the _id of one document. A write that picks its
+ *         documents by a filter, such as deleting every address of a user, is
+ *         published as one event for each document it matched
+ */
+public class ChangeEvent {
+	/**
+	 * Kind of change
+	 */
+	public enum Operation {
+		// A document was added
+		INSERT,
+		// Fields of a document were set
+		UPDATE,
+		// A document was marked as deleted
+		DELETE,
+		// A deleted document was removed for good
+		PURGE
+	}
+
+	private final Operation operation;
+	private final String collection;
+	private final String username;
+	private final Document documentKey;
+	private final Document changedFields;
+	private final boolean fromChangeStream;
+	private final long timestamp = System.currentTimeMillis();
+
+	/**
+	 * Creates an event
+	 * 
+	 * @param operation        Kind of change
+	 * @param collection       Name of the collection
+	 * @param username         User whose document changed, or null if it is not
+	 *                         known
+	 * @param documentKey      _id of the document as {_id: id}
+	 * @param changedFields    Fields that were set, or null for a delete
+	 * @param fromChangeStream If the event was read from a change stream
+	 */
+	ChangeEvent(Operation operation, String collection, String username, Document documentKey,
+			Document changedFields, boolean fromChangeStream) {
+		this.operation = operation;
+		this.collection = collection;
+		this.username = username;
+		this.documentKey = documentKey;
+		this.changedFields = changedFields;
+		this.fromChangeStream = fromChangeStream;
+	}
+
+	/**
+	 * Returns the kind of change
+	 * 
+	 * @return Operation
+	 */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Returns the collection that was changed
+	 * 
+	 * @return Name of the collection
+	 */
+	public String getCollection() {
+		return collection;
+	}
+
+	/**
+	 * Returns the user whose document was changed
+	 * 
+	 * @return Username, or null if it is not known
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * Returns the key of the changed document
+	 * 
+	 * @return Copy of the _id of the document as {_id: id}
+	 */
+	public Document getDocumentKey() {
+		return new Document(documentKey);
+	}
+
+	/**
+	 * Returns the fields that were set. An insert sets every field of the
+	 * document
+	 * 
+	 * @return Copy of the fields and their new values, or null for a delete or
+	 *         purge
+	 */
+	public Document getChangedFields() {
+		return changedFields == null ? null : new Document(changedFields);
+	}
+
+	/**
+	 * Returns if the event was read from a MongoDB change stream, in which case
+	 * the change could have been made by another program
+	 * 
+	 * @return If the event came from a change stream
+	 */
+	public boolean isFromChangeStream() {
+		return fromChangeStream;
+	}
+
+	/**
+	 * Returns when the event was published
+	 * 
+	 * @return Milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return operation + " " + collection + " " + documentKey.toJson()
+				+ (changedFields == null ? "" : " " + changedFields.toJson());
+	}
+}
@@ -0,0 +1,115 @@
+package library.database;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Hands every change event to every subscriber. Publishing never takes a
+ *         lock: the subscribers are kept in an array that is replaced with a
+ *         compare-and-set whenever one subscribes or leaves, and each event is
+ *         added to each subscriber's own ring buffer. A full ring drops the
+ *         event for that subscriber only
+ */
+public class ChangeEventBus {
+	private static final ChangeSubscription[] NONE = new ChangeSubscription[0];
+
+	private final AtomicReference<ChangeSubscription[]> subscriptions = new AtomicReference<ChangeSubscription[]>(
+			NONE);
+	private final Logger logger = Logger.getLogger(ChangeEventBus.class.getName());
+
+	/**
+	 * Subscribes to every event published from now on. The caller takes the
+	 * events from the subscription
+	 * 
+	 * @param capacity Events held for the subscriber before new ones are dropped
+	 * @return Subscription, which must be closed once it is no longer needed
+	 */
+	public ChangeSubscription subscribe(int capacity) {
+		ChangeSubscription subscription = new ChangeSubscription(this, capacity);
+		ChangeSubscription[] current;
+		ChangeSubscription[] next;
+		do {
+			current = subscriptions.get();
+			next = Arrays.copyOf(current, current.length + 1);
+			next[current.length] = subscription;
+		} while (!subscriptions.compareAndSet(current, next));
+		return subscription;
+	}
+
+	/**
+	 * Subscribes to every event published from now on, handing each one to a
+	 * listener on a daemon thread of its own. An exception thrown by the listener
+	 * is logged and the next event is still handed to it
+	 * 
+	 * @param capacity Events held for the listener before new ones are dropped
+	 * @param listener Called with each event in the order they were published
+	 * @return Subscription, which stops the thread once it is closed
+	 */
+	public ChangeSubscription subscribe(int capacity, Consumer<ChangeEvent> listener) {
+		ChangeSubscription subscription = subscribe(capacity);
+		Thread thread = new Thread(() -> {
+			while (!subscription.isClosed()) {
+				ChangeEvent event = subscription.poll(1, TimeUnit.SECONDS);
+				if (event == null) {
+					continue;
+				}
+				try {
+					listener.accept(event);
+				} catch (RuntimeException e) {
+					logger.log(Level.WARNING, "A change listener failed on " + event, e);
+				}
+			}
+		}, "change-listener");
+		thread.setDaemon(true);
+		thread.start();
+		return subscription;
+	}
+
+	/**
+	 * Removes a subscription
+	 * 
+	 * @param subscription Subscription being removed
+	 */
+	void unsubscribe(ChangeSubscription subscription) {
+		ChangeSubscription[] current;
+		ChangeSubscription[] next;
+		do {
+			current = subscriptions.get();
+			int index = Arrays.asList(current).indexOf(subscription);
+			if (index < 0) {
+				return;
+			}
+			next = new ChangeSubscription[current.length - 1];
+			System.arraycopy(current, 0, next, 0, index);
+			System.arraycopy(current, index + 1, next, index, next.length - index);
+		} while (!subscriptions.compareAndSet(current, next));
+	}
+
+	/**
+	 * Returns if anyone is subscribed, so writers can skip building events no one
+	 * reads
+	 * 
+	 * @return If there is at least 1 subscriber
+	 */
+	boolean hasSubscribers() {
+		return subscriptions.get().length > 0;
+	}
+
+	/**
+	 * Hands an event to every subscriber without waiting for any of them
+	 * 
+	 * @param event Event
+	 */
+	void publish(ChangeEvent event) {
+		for (ChangeSubscription subscription : subscriptions.get()) {
+			subscription.offer(event);
+		}
+	}
+}
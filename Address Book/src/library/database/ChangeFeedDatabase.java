@@ -0,0 +1,424 @@
+package library.database;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.Document;
+
+import library.database.ChangeEvent.Operation;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Wraps a storage engine and publishes a change event for every write
+ *         that the engine makes. Events are only built when someone is
+ *         subscribed, so the feed costs nothing otherwise.
+ * 
+ *         A collection can be tailed instead when the engine can follow the
+ *         changes of every client, such as MongoDB with a replica set. Its
+ *         changes are then published from the change stream, which also sees
+ *         the writes of other programs, and the writes made through this
+ *         wrapper are no longer published for it so that no change is published
+ *         twice
+ */
+class ChangeFeedDatabase implements Database {
+	// Documents fetched at a time when the documents a write matches are looked
+	// up
+	private static final int LOOKUPBATCH = 1000;
+
+	private final Database database;
+	private final ChangeEventBus bus;
+	private final Logger logger = Logger.getLogger(ChangeFeedDatabase.class.getName());
+	// Collections published from a change stream, by database and collection
+	private final Set<String> tailed = ConcurrentHashMap.newKeySet();
+	private final List<Cursor<ChangeEvent>> streams = new ArrayList<Cursor<ChangeEvent>>();
+
+	/**
+	 * Wraps a storage engine
+	 * 
+	 * @param database Storage engine whose writes are published
+	 * @param bus      Bus the events are published on
+	 */
+	ChangeFeedDatabase(Database database, ChangeEventBus bus) {
+		this.database = database;
+		this.bus = bus;
+	}
+
+	/**
+	 * Publishes the changes of a collection from the engine's change stream, on a
+	 * daemon thread of its own, instead of from the writes made through this
+	 * wrapper
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @return If the collection is tailed. It is not if the engine can not follow
+	 *         the changes of other clients
+	 */
+	synchronized boolean tail(String databaseName, String collectionName) {
+		Cursor<ChangeEvent> stream = database.watchChanges(databaseName, collectionName);
+		if (stream == null) {
+			return false;
+		}
+		streams.add(stream);
+		String key = databaseName + "." + collectionName;
+		tailed.add(key);
+		Thread thread = new Thread(() -> {
+			try {
+				while (stream.hasNext()) {
+					bus.publish(stream.next());
+				}
+			} catch (RuntimeException e) {
+				logger.log(Level.WARNING, "Stopped following the changes of " + key, e);
+			} finally {
+				// Writes made here are published again once the stream is gone
+				tailed.remove(key);
+			}
+		}, "change-stream-" + collectionName);
+		thread.setDaemon(true);
+		thread.start();
+		return true;
+	}
+
+	/**
+	 * Returns if writes to a collection are published from here
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @return If there is a subscriber and the collection is not tailed
+	 */
+	private boolean publishing(String databaseName, String collectionName) {
+		return bus.hasSubscribers() && !tailed.contains(databaseName + "." + collectionName);
+	}
+
+	/**
+	 * Builds the event of an inserted document. The engine has given the value
+	 * its id by the time it is inserted
+	 * 
+	 * @param <T>            Type of the value
+	 * @param collectionName Name of the collection
+	 * @param type           Class of the value
+	 * @param value          Value that was inserted
+	 * @return Event
+	 */
+	private static <T> ChangeEvent inserted(String collectionName, Class<T> type, T value) {
+		Document fields = new Document(Codecs.toDocument(value, type));
+		Object id = fields.remove("_id");
+		// The flag the engine keeps for soft deletes is not a field of the value
+		fields.remove("deleted");
+		String username = fields.get("username") instanceof String ? fields.getString("username") : null;
+		return new ChangeEvent(Operation.INSERT, collectionName, username, new Document("_id", id), fields, false);
+	}
+
+	@Override
+	public void connect(String connectionString) {
+		database.connect(connectionString);
+	}
+
+	/**
+	 * Stops following every change stream and closes the engine
+	 */
+	@Override
+	public synchronized void close() {
+		for (Cursor<ChangeEvent> stream : streams) {
+			stream.close();
+		}
+		streams.clear();
+		database.close();
+	}
+
+	@Override
+	public boolean ping() {
+		return database.ping();
+	}
+
+	@Override
+	public boolean supportsQueryOperators(Document query) {
+		return database.supportsQueryOperators(query);
+	}
+
+	@Override
+	public void setDebuggerLevel(Level level) {
+		database.setDebuggerLevel(level);
+	}
+
+	@Override
+	public <T> void insertDocument(String databaseName, String collectionName, Class<T> type, T doc) {
+		database.insertDocument(databaseName, collectionName, type, doc);
+		if (publishing(databaseName, collectionName)) {
+			bus.publish(inserted(collectionName, type, doc));
+		}
+	}
+
+	@Override
+	public <T> Map<Integer, String> insertDocuments(String databaseName, String collectionName, Class<T> type,
+			List<T> docs) {
+		Map<Integer, String> errors = database.insertDocuments(databaseName, collectionName, type, docs);
+		if (publishing(databaseName, collectionName)) {
+			for (int i = 0; i < docs.size(); i++) {
+				if (!errors.containsKey(i)) {
+					bus.publish(inserted(collectionName, type, docs.get(i)));
+				}
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Publishes a delete of every document the query matched. They are looked up
+	 * before the write, since they no longer match it afterwards
+	 */
+	@Override
+	public void deleteDocument(String databaseName, String collectionName, Document query) {
+		if (!publishing(databaseName, collectionName)) {
+			database.deleteDocument(databaseName, collectionName, query);
+			return;
+		}
+		List<Document> matched = matching(databaseName, collectionName, new Document(query).append("deleted", false),
+				LOOKUPBATCH);
+		database.deleteDocument(databaseName, collectionName, query);
+		for (Document doc : matched) {
+			bus.publish(changed(Operation.DELETE, collectionName, doc, null));
+		}
+	}
+
+	/**
+	 * Publishes an update of every document the query matched, looked up before
+	 * the write
+	 */
+	@Override
+	public void updateDocument(String databaseName, String collectionName, Document query, Document update) {
+		if (!publishing(databaseName, collectionName)) {
+			database.updateDocument(databaseName, collectionName, query, update);
+			return;
+		}
+		List<Document> matched = matching(databaseName, collectionName, query, LOOKUPBATCH);
+		database.updateDocument(databaseName, collectionName, query, update);
+		for (Document doc : matched) {
+			bus.publish(changed(Operation.UPDATE, collectionName, doc, update));
+		}
+	}
+
+	/**
+	 * Builds the event of a change to a stored document
+	 * 
+	 * @param operation      UPDATE or DELETE
+	 * @param collectionName Name of the collection
+	 * @param doc            Document as it was before the change
+	 * @param update         Fields that were set, or null for a delete
+	 * @return Event keyed by the _id of the document
+	 */
+	private static ChangeEvent changed(Operation operation, String collectionName, Document doc, Document update) {
+		Object username = update != null && update.containsKey("username") ? update.get("username")
+				: doc.get("username");
+		return new ChangeEvent(operation, collectionName, username instanceof String ? (String) username : null,
+				new Document("_id", doc.get("_id")), update == null ? null : new Document(update), false);
+	}
+
+	/**
+	 * Publishes every write that was applied, keyed by the _id it picked. A write
+	 * sent without waiting for an answer or that missed its write concern is
+	 * published as well, since it most likely was
+	 */
+	@Override
+	public List<WriteResult> writeDocuments(String databaseName, String collectionName, List<DocumentWrite> writes,
+			String writeConcern, long timeoutMillis) {
+		List<WriteResult> results = database.writeDocuments(databaseName, collectionName, writes, writeConcern,
+				timeoutMillis);
+		if (publishing(databaseName, collectionName)) {
+			for (WriteResult result : results) {
+				if (result.getStatus() == WriteResult.Status.APPLIED
+						|| result.getStatus() == WriteResult.Status.UNCONFIRMED
+						|| result.getStatus() == WriteResult.Status.UNACKNOWLEDGED) {
+					DocumentWrite write = writes.get(result.getIndex());
+					Document doc = new Document("_id", result.getId()).append("username",
+							write.getFilter().get("username"));
+					bus.publish(changed(write.isDelete() ? Operation.DELETE : Operation.UPDATE, collectionName, doc,
+							write.isDelete() ? null : write.getUpdate()));
+				}
+			}
+		}
+		return results;
+	}
+
+	@Override
+	public <T> Cursor<T> getDocument(String databaseName, String collectionName, Class<T> type, Document query,
+			Document projection, int batchSize) {
+		return database.getDocument(databaseName, collectionName, type, query, projection, batchSize);
+	}
+
+	@Override
+	public <T> Cursor<T> getSortedDocument(String databaseName, String collectionName, Class<T> type,
+			Document query, Document projection, List<String> sortFields, Document after, boolean descending,
+			int limit) {
+		return database.getSortedDocument(databaseName, collectionName, type, query, projection, sortFields, after,
+				descending, limit);
+	}
+
+	@Override
+	public Cursor<Document> getDeletedDocuments(String databaseName, String collectionName, Date deletedBefore,
+			int batchSize) {
+		return database.getDeletedDocuments(databaseName, collectionName, deletedBefore, batchSize);
+	}
+
+	/**
+	 * Publishes a purge of every document that was removed. The engine only
+	 * counts them, so the tombstones among the ids are looked up first and only
+	 * they are purged. If fewer are removed, some were restored in the meantime,
+	 * and the ones still stored are not published
+	 */
+	@Override
+	public long purgeDocuments(String databaseName, String collectionName, List<Object> ids) {
+		if (!publishing(databaseName, collectionName)) {
+			return database.purgeDocuments(databaseName, collectionName, ids);
+		}
+		List<Object> tombstones = stored(databaseName, collectionName, ids, true);
+		if (tombstones.isEmpty()) {
+			return 0;
+		}
+		long purged = database.purgeDocuments(databaseName, collectionName, tombstones);
+		if (purged < tombstones.size()) {
+			tombstones.removeAll(stored(databaseName, collectionName, tombstones, false));
+		}
+		for (Object id : tombstones) {
+			bus.publish(new ChangeEvent(Operation.PURGE, collectionName, null, new Document("_id", id), null, false));
+		}
+		return purged;
+	}
+
+	/**
+	 * Finds which of a list of documents are stored
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param ids            _ids of the documents
+	 * @param deleted        If only tombstones are looked for
+	 * @return _ids of the documents found, in the order they were given
+	 */
+	private List<Object> stored(String databaseName, String collectionName, List<Object> ids, boolean deleted) {
+		Set<Object> found = new HashSet<Object>();
+		Document all = new Document("_id", new Document("$in", ids));
+		if (deleted) {
+			all.append("deleted", true);
+		}
+		if (database.supportsQueryOperators(all)) {
+			found.addAll(changedIds(databaseName, collectionName, all, ids.size()));
+		} else {
+			// Each id is looked up on its own, which engines without operators
+			// answer from memory
+			for (Object id : ids) {
+				Document query = new Document("_id", id);
+				if (deleted) {
+					query.append("deleted", true);
+				}
+				found.addAll(changedIds(databaseName, collectionName, query, 1));
+			}
+		}
+		List<Object> out = new ArrayList<Object>(found.size());
+		for (Object id : ids) {
+			if (found.contains(id)) {
+				out.add(id);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Reads the _ids of the documents matching a query, deleted or not
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param query          Query the documents match
+	 * @param batchSize      Number of documents fetched at a time
+	 * @return _ids of the matching documents
+	 */
+	private List<Object> changedIds(String databaseName, String collectionName, Document query, int batchSize) {
+		List<Object> ids = new ArrayList<Object>();
+		for (Document doc : matching(databaseName, collectionName, query, batchSize)) {
+			ids.add(doc.get("_id"));
+		}
+		return ids;
+	}
+
+	/**
+	 * Reads the _id and username of the documents matching a query, deleted or
+	 * not
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param query          Query the documents match
+	 * @param batchSize      Number of documents fetched at a time
+	 * @return _id and username of each matching document
+	 */
+	private List<Document> matching(String databaseName, String collectionName, Document query, int batchSize) {
+		List<Document> keys = new ArrayList<Document>();
+		try (Cursor<Document> docs = database.getChangedDocuments(databaseName, collectionName, query, null,
+				Math.max(1, batchSize))) {
+			while (docs.hasNext()) {
+				Document doc = docs.next();
+				keys.add(new Document("_id", doc.get("_id")).append("username", doc.get("username")));
+			}
+		}
+		return keys;
+	}
+
+	@Override
+	public Cursor<Document> getChangedDocuments(String databaseName, String collectionName, Document query,
+			Date changedAfter, int batchSize) {
+		return database.getChangedDocuments(databaseName, collectionName, query, changedAfter, batchSize);
+	}
+
+	/**
+	 * Publishes each stored document as an update of every one of its fields
+	 */
+	@Override
+	public void putDocuments(String databaseName, String collectionName, List<Document> docs) {
+		database.putDocuments(databaseName, collectionName, docs);
+		if (publishing(databaseName, collectionName)) {
+			for (Document doc : docs) {
+				Document fields = new Document(doc);
+				Object id = fields.remove("_id");
+				String username = fields.get("username") instanceof String ? fields.getString("username") : null;
+				bus.publish(new ChangeEvent(Operation.UPDATE, collectionName, username, new Document("_id", id), fields,
+						false));
+			}
+		}
+	}
+
+	@Override
+	public void createIndex(String databaseName, String collectionName, Document keys, Document options) {
+		database.createIndex(databaseName, collectionName, keys, options);
+	}
+
+	@Override
+	public void dropIndex(String databaseName, String collectionName, String indexName) {
+		database.dropIndex(databaseName, collectionName, indexName);
+	}
+
+	@Override
+	public List<String> getIndexNames(String databaseName, String collectionName) {
+		return database.getIndexNames(databaseName, collectionName);
+	}
+
+	@Override
+	public Document explain(String databaseName, String collectionName, Document query, Document projection,
+			Document sort) {
+		return database.explain(databaseName, collectionName, query, projection, sort);
+	}
+
+	@Override
+	public List<String> getDatabases() {
+		return database.getDatabases();
+	}
+
+	@Override
+	public Cursor<ChangeEvent> watchChanges(String databaseName, String collectionName) {
+		return database.watchChanges(databaseName, collectionName);
+	}
+}
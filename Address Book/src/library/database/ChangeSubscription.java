@@ -0,0 +1,172 @@
+package library.database;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         One subscriber's view of the change feed: a bounded ring buffer that
+ *         every writer adds events to and the subscriber takes them from.
+ * 
+ *         Adding an event never blocks and never takes a lock. A writer claims
+ *         a slot by moving the tail forward with a compare-and-set, and if the
+ *         ring is full the event is dropped and counted instead, so a slow
+ *         subscriber can never hold up a write. Only one thread may take events
+ *         from a subscription. A subscriber that sees getDropped() go up has
+ *         missed events and should start over, such as by dropping everything
+ *         it has cached
+ */
+public class ChangeSubscription implements AutoCloseable {
+	private final ChangeEventBus bus;
+	private final AtomicReferenceArray<ChangeEvent> slots;
+	private final int mask;
+	// Next slot a writer claims
+	private final AtomicLong tail = new AtomicLong();
+	// Next slot the subscriber takes
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	// Thread parked waiting for an event, if any
+	private volatile Thread waiter;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a subscription
+	 * 
+	 * @param bus      Bus the subscription belongs to
+	 * @param capacity Events the ring holds, rounded up to a power of 2
+	 */
+	ChangeSubscription(ChangeEventBus bus, int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.bus = bus;
+		this.slots = new AtomicReferenceArray<ChangeEvent>(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Adds an event if there is room for it. Safe to call from any number of
+	 * threads at once
+	 * 
+	 * @param event Event
+	 * @return If the event was added, otherwise it was dropped
+	 */
+	boolean offer(ChangeEvent event) {
+		while (true) {
+			long claimed = tail.get();
+			if (claimed - head.get() > mask) {
+				dropped.incrementAndGet();
+				return false;
+			}
+			if (tail.compareAndSet(claimed, claimed + 1)) {
+				slots.set((int) claimed & mask, event);
+				Thread parked = waiter;
+				if (parked != null) {
+					LockSupport.unpark(parked);
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Takes the oldest event without waiting
+	 * 
+	 * @return Event, or null if there is none
+	 */
+	public ChangeEvent poll() {
+		long next = head.get();
+		int slot = (int) next & mask;
+		// A claimed slot is empty until its writer fills it
+		ChangeEvent event = slots.get(slot);
+		if (event == null) {
+			return null;
+		}
+		slots.set(slot, null);
+		head.set(next + 1);
+		return event;
+	}
+
+	/**
+	 * Takes the oldest event, waiting for one if there is none
+	 * 
+	 * @param timeout Longest time to wait
+	 * @param unit    Unit of the timeout
+	 * @return Event, or null if none came in time or the subscription is closed
+	 */
+	public ChangeEvent poll(long timeout, TimeUnit unit) {
+		ChangeEvent event = poll();
+		if (event != null) {
+			return event;
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		waiter = Thread.currentThread();
+		try {
+			while (!closed) {
+				// Checked again after the waiter is set, so an event added in between
+				// is not missed
+				event = poll();
+				if (event != null) {
+					return event;
+				}
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0 || Thread.interrupted()) {
+					return null;
+				}
+				LockSupport.parkNanos(this, remaining);
+			}
+			return null;
+		} finally {
+			waiter = null;
+		}
+	}
+
+	/**
+	 * Returns how many events are waiting to be taken
+	 * 
+	 * @return Waiting events
+	 */
+	public int size() {
+		return (int) Math.max(0, Math.min(tail.get() - head.get(), mask + 1));
+	}
+
+	/**
+	 * Returns how many events did not fit in the ring and were dropped
+	 * 
+	 * @return Dropped events since the subscription was made
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Returns if the subscription has been closed
+	 * 
+	 * @return If no more events are added
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Stops adding events to the subscription. Events already added can still be
+	 * taken
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		bus.unsubscribe(this);
+		Thread parked = waiter;
+		if (parked != null) {
+			LockSupport.unpark(parked);
+		}
+	}
+}
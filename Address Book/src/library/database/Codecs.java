@@ -0,0 +1,83 @@
+package library.database;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.CollectibleCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import com.mongodb.MongoClient;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Holds the codecs every engine maps results with. The MongoDB engine
+ *         hands the registry to the driver so results are decoded straight from
+ *         the wire, while the engines that keep Documents convert them with the
+ *         same codecs
+ */
+class Codecs {
+	// Codecs for the application's types, falling back to the driver's codecs
+	static final CodecRegistry REGISTRY = CodecRegistries.fromRegistries(
+			CodecRegistries.fromCodecs(new AddressCodec(), new UserCodec()), MongoClient.getDefaultCodecRegistry());
+
+	private static final DocumentCodec DOCUMENTCODEC = new DocumentCodec(REGISTRY);
+
+	/**
+	 * Converts a value into the Document it is stored as. A value that needs an
+	 * id is given one first. Documents are returned as they are
+	 * 
+	 * @param <T>   Type of the value
+	 * @param value Value being stored
+	 * @param type  Class of the value
+	 * @return Document holding the value
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> Document toDocument(T value, Class<T> type) {
+		if (value instanceof Document) {
+			return (Document) value;
+		}
+		Codec<T> codec = REGISTRY.get(type);
+		if (codec instanceof CollectibleCodec) {
+			((CollectibleCodec<T>) codec).generateIdIfAbsentFromDocument(value);
+		}
+		BsonDocument bson = new BsonDocument();
+		codec.encode(new BsonDocumentWriter(bson), value,
+				EncoderContext.builder().isEncodingCollectibleDocument(true).build());
+		return fromBson(bson);
+	}
+
+	/**
+	 * Converts a BSON document handed back by the driver, such as the key of a
+	 * change, into a Document
+	 * 
+	 * @param bson BSON document
+	 * @return Document with the same fields
+	 */
+	static Document fromBson(BsonDocument bson) {
+		return DOCUMENTCODEC.decode(new BsonDocumentReader(bson), DecoderContext.builder().build());
+	}
+
+	/**
+	 * Converts a stored Document into a value. Documents are copied so the stored
+	 * one can not be changed through the result
+	 * 
+	 * @param <T>  Type of the value
+	 * @param doc  Stored document
+	 * @param type Class of the value
+	 * @return Value held by the document
+	 */
+	static <T> T fromDocument(Document doc, Class<T> type) {
+		if (type == Document.class) {
+			return type.cast(new Document(doc));
+		}
+		return REGISTRY.get(type).decode(new BsonDocumentReader(doc.toBsonDocument(Document.class, REGISTRY)),
+				DecoderContext.builder().build());
+	}
+}
@@ -0,0 +1,169 @@
+package library.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.Document;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoClientURI;
+
+import library.storage.ConnectionSettings;
+import library.storage.StorageManager;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Owns the MongoDB clients of the application. There is only ever one
+ *         client per connection string, and every engine connecting with that
+ *         string shares it along with its pool of connections and its monitor
+ *         threads. Checking a connection and then starting the application
+ *         reuses the same warm pool.
+ * 
+ *         Pool sizes and timeouts come from the ConnectionSettings in long-term
+ *         storage. The DatabaseManager closes every client when the
+ *         application stops
+ */
+class ConnectionManager {
+	// Connection string used when none is given
+	private static final String LOCALHOST = "mongodb://localhost:27017";
+	// Most pings running at once
+	private static final int MAXPINGTHREADS = 4;
+
+	private static final ConcurrentMap<String, MongoClient> clients = new ConcurrentHashMap<String, MongoClient>();
+	private static final Logger logger = Logger.getLogger(ConnectionManager.class.getName());
+	// Pings run here so they can be given up on once they time out. A ping that
+	// is given up on keeps its thread until the driver times out, so the pool is
+	// bounded and its idle threads are let go
+	private static final ThreadPoolExecutor pinger = new ThreadPoolExecutor(MAXPINGTHREADS, MAXPINGTHREADS, 60,
+			TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+				Thread thread = new Thread(r, "mongo-ping");
+				thread.setDaemon(true);
+				return thread;
+			});
+	// Ping of each connection string that has not been answered yet. Pings of a
+	// server that does not answer wait on the same one instead of each taking a
+	// thread
+	private static final ConcurrentMap<String, CompletableFuture<Document>> pings = new ConcurrentHashMap<String, CompletableFuture<Document>>();
+	private static ConnectionSettings settings;
+
+	static {
+		pinger.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Returns the client for a connection string, creating it the first time the
+	 * string is used
+	 * 
+	 * @param connectionString MongoDB connection string. An empty string connects
+	 *                         to the localhost
+	 * @return Shared client. It must not be closed by the caller
+	 */
+	static MongoClient getClient(String connectionString) {
+		return clients.computeIfAbsent(connectionString, ConnectionManager::createClient);
+	}
+
+	/**
+	 * Checks that the server behind a connection string is up by sending it a
+	 * ping. If a ping of the server is still waiting for its answer, this waits
+	 * for that answer instead of sending another one
+	 * 
+	 * @param connectionString MongoDB connection string
+	 * @param timeoutMillis    Milliseconds to wait for the answer
+	 * @return If the server answered in time
+	 */
+	static boolean ping(String connectionString, long timeoutMillis) {
+		MongoClient client = getClient(connectionString);
+		CompletableFuture<Document> answer = pings.computeIfAbsent(connectionString, key -> CompletableFuture
+				.supplyAsync(() -> client.getDatabase("admin").runCommand(new Document("ping", 1)), pinger));
+		answer.whenComplete((result, e) -> pings.remove(connectionString, answer));
+		try {
+			return answer.get(timeoutMillis, TimeUnit.MILLISECONDS).get("ok") != null;
+		} catch (TimeoutException e) {
+			logger.fine("Ping timed out after " + timeoutMillis + "ms");
+			return false;
+		} catch (ExecutionException e) {
+			logger.log(Level.FINE, "Ping failed", e.getCause());
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Checks the server behind a connection string with the configured timeout
+	 * 
+	 * @param connectionString MongoDB connection string
+	 * @return If the server answered in time
+	 */
+	static boolean ping(String connectionString) {
+		return ping(connectionString, getSettings().getPingTimeoutMillis());
+	}
+
+	/**
+	 * Closes the client of a connection string, such as one that turned out to be
+	 * wrong
+	 * 
+	 * @param connectionString MongoDB connection string
+	 */
+	static void close(String connectionString) {
+		MongoClient client = clients.remove(connectionString);
+		if (client != null) {
+			client.close();
+		}
+	}
+
+	/**
+	 * Closes every client along with its connections and monitor threads
+	 */
+	static void closeAll() {
+		for (String connectionString : clients.keySet()) {
+			close(connectionString);
+		}
+	}
+
+	/**
+	 * Creates a client with the pool settings from long-term storage. Options set
+	 * in the connection string take precedence over the settings
+	 * 
+	 * @param connectionString MongoDB connection string
+	 * @return New client
+	 */
+	private static MongoClient createClient(String connectionString) {
+		ConnectionSettings pool = getSettings();
+		MongoClientOptions.Builder options = MongoClientOptions.builder()
+				.minConnectionsPerHost(pool.getMinPoolSize()).connectionsPerHost(pool.getMaxPoolSize())
+				.maxWaitTime(pool.getMaxWaitMillis()).maxConnectionIdleTime(pool.getMaxIdleMillis())
+				.serverSelectionTimeout(pool.getServerSelectionTimeoutMillis()).codecRegistry(Codecs.REGISTRY);
+		logger.fine("Creating client with a pool of " + pool.getMinPoolSize() + " to " + pool.getMaxPoolSize()
+				+ " connections");
+		return new MongoClient(
+				new MongoClientURI(connectionString.equals("") ? LOCALHOST : connectionString, options));
+	}
+
+	/**
+	 * Returns the connection settings, reading them the first time they are needed
+	 * 
+	 * @return Connection settings
+	 */
+	private static synchronized ConnectionSettings getSettings() {
+		if (settings == null) {
+			try {
+				settings = StorageManager.getConnectionSettings();
+			} catch (Exception e) {
+				logger.log(Level.WARNING, "Unable to read the connection settings, using the defaults", e);
+				settings = new ConnectionSettings();
+			}
+		}
+		return settings;
+	}
+}
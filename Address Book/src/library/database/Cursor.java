@@ -0,0 +1,22 @@
+package library.database;
+
+import java.util.Iterator;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Iterates through the results of a query one at a time without loading
+ *         all of them into memory. A cursor holds on to resources on the server
+ *         until it is closed, so it should always be used in a try-with-resources
+ *         block
+ * 
+ * @param <T> Type of the results
+ */
+public interface Cursor<T> extends Iterator<T>, AutoCloseable {
+	/**
+	 * Releases the resources held by the cursor
+	 */
+	@Override
+	void close();
+}
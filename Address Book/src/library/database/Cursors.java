@@ -0,0 +1,65 @@
+package library.database;
+
+import java.util.Iterator;
+import java.util.function.Function;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Helpers for creating cursors
+ */
+class Cursors {
+	/**
+	 * Wraps an iterator that holds no resources as a cursor
+	 * 
+	 * @param <T>      Type of the results
+	 * @param iterator Iterator being wrapped
+	 * @return Cursor over the iterator
+	 */
+	static <T> Cursor<T> of(Iterator<T> iterator) {
+		return new Cursor<T>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public T next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	/**
+	 * Converts each result of a cursor as it is read
+	 * 
+	 * @param <T>    Type of the original results
+	 * @param <R>    Type of the converted results
+	 * @param cursor Cursor being converted
+	 * @param mapper Converts a single result
+	 * @return Cursor of converted results that closes the original cursor
+	 */
+	static <T, R> Cursor<R> map(Cursor<T> cursor, Function<T, R> mapper) {
+		return new Cursor<R>() {
+			@Override
+			public boolean hasNext() {
+				return cursor.hasNext();
+			}
+
+			@Override
+			public R next() {
+				return mapper.apply(cursor.next());
+			}
+
+			@Override
+			public void close() {
+				cursor.close();
+			}
+		};
+	}
+}
@@ -1,125 +1,109 @@
 package library.database;
 
-import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
-import java.util.logging.Logger;
 import org.bson.Document;
-import com.mongodb.MongoClient;
-import com.mongodb.MongoClientURI;
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoCursor;
-import com.mongodb.client.MongoDatabase;
 
 /**
  * 
- * @author Logan Miller This is manages all of the calls to the MongoDB
- *         database.
+ * @author Logan Miller
  * 
- *         Each connection is a unique instance that can interact with the
- *         database depending on the privileges of the user's connection string
+ *         Storage engine used by the DatabaseManager. Every engine stores
+ *         documents in named databases and collections and uses the same
+ *         soft-delete model: documents are inserted with the deleted flag set
+ *         to false, deleting a document sets the flag to true, and finds only
+ *         return documents that have not been deleted.
+ * 
+ *         Queries are documents of field / value pairs that a document must
+ *         equal in order to match.
  */
-class Database {
-	private MongoClient mongoClient;
-	private Logger mongoLogger;
-
+interface Database {
 	/**
-	 * Sets up the necessary objects to connect to the database.
-	 * 
-	 * By default, the level is set to OFF which makes it so mongodb does not print
-	 * to the console when an action is taken
+	 * Connects to the storage behind the engine
 	 * 
-	 * @param level The level to which mongodb's logger prints debug information to
-	 *              the console.
-	 * 
-	 *              Default is set to OFF so that it does not interfere with the
-	 *              user interface
+	 * @param connectionString Connection string that was used to select the
+	 *                         engine. Engines that do not need it can ignore it
 	 */
-	public Database(Level level) {
-		mongoLogger = Logger.getLogger("org.mongodb.driver");
-		mongoLogger.setLevel(level);
-	}
+	void connect(String connectionString);
 
 	/**
-	 * Connects to a database using a connection string
-	 * 
-	 * If the connection string is blank, it will default to connecting to the
-	 * localhost
-	 * 
-	 * @param connectionString MongoDB connection string to any given server. If the
-	 *                         string is empty, the program will connect to the
-	 *                         localhost.
+	 * Releases everything held by the engine. The engine can not be used after it
+	 * has been closed
 	 */
-	public void connect(String connectionString) {
-		if (!connectionString.equals("")) {
-			mongoClient = new MongoClient(new MongoClientURI(connectionString));
-		} else {
-			mongoClient = new MongoClient();
-		}
-	}
+	void close();
 
 	/**
-	 * Used to change the level of verbosity that the mongodb debugger displays
+	 * Checks that the storage behind the engine can still be reached
 	 * 
-	 * @param level The level to which mongodb's logger prints debug information to
-	 *              the console.
-	 * 
-	 *              Default is set to OFF so that it does not interfere with the
-	 *              user interface
+	 * @return If the storage answered
 	 */
-	public void setDebuggerLevel(Level level) {
-		mongoLogger.setLevel(level);
-	}
+	boolean ping();
 
 	/**
-	 * Retrieves a specific database from the server
+	 * Returns if a query can hold operators such as $gt, $in, $regex, $or, and
+	 * $nor. Queries for an engine that can not may only hold field values to
+	 * match exactly
 	 * 
-	 * @param databaseName Specific name of the database
-	 * @return Instance of mongo database
+	 * @param query Filter of the query, which an engine that sends queries to
+	 *              more than one store uses to tell where it is run
+	 * @return If the engine understands query operators for the query
 	 */
-	private MongoDatabase getDatabase(String databaseName) {
-		return mongoClient.getDatabase(databaseName);
-	}
+	boolean supportsQueryOperators(Document query);
 
 	/**
-	 * Returns collection which contains documents
+	 * Used to change the level of verbosity that the engine's debugger displays
 	 * 
-	 * @param databaseName   Name of the database
-	 * @param collectionName Name of the collection
-	 * @return Collection from the database
+	 * @param level The level to which the engine's logger prints debug
+	 *              information to the console
 	 */
-	private MongoCollection<Document> getCollection(String databaseName, String collectionName) {
-		return getDatabase(databaseName).getCollection(collectionName);
-	}
+	void setDebuggerLevel(Level level);
 
 	/**
 	 * Creates a new document in the specified collection
 	 * 
 	 * If the database and / or collection does not exist, it will be created by
-	 * this command
+	 * this command. A document whose _id is already taken, even by a deleted
+	 * document, is refused with a duplicate key (E11000) error
+	 * 
+	 * @param <T>            Type of the document
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param type           Class of the document, which picks its codec
+	 * @param doc            Document being added to the collection. It is given
+	 *                       an id if it does not have one
+	 */
+	<T> void insertDocument(String databaseName, String collectionName, Class<T> type, T doc);
+
+	/**
+	 * Creates many documents in the specified collection with as few round trips
+	 * as possible. The documents are inserted unordered, so a document that fails
+	 * does not stop the rest from being inserted. A document whose _id is already
+	 * taken fails with a duplicate key (E11000) error
 	 * 
+	 * @param <T>            Type of the documents
 	 * @param databaseName   Name of the database
 	 * @param collectionName Name of the collection
-	 * @param doc            Document being added to the collection
+	 * @param type           Class of the documents, which picks their codec
+	 * @param docs           Documents being added to the collection
+	 * @return Position in the list of each document that was not inserted mapped
+	 *         to the reason why. Empty if every document was inserted
 	 */
-	public void insertDocument(String databaseName, String collectionName, Document doc) {
-		getCollection(databaseName, collectionName).insertOne(doc.append("deleted", false));
-	}
+	<T> Map<Integer, String> insertDocuments(String databaseName, String collectionName, Class<T> type,
+			List<T> docs);
 
 	/**
-	 * Emulated deleting an object from the database by setting the deleted flag to
-	 * true. This is used in order to preserve data but make it functionally gone
+	 * Emulates deleting documents by setting the deleted flag to true and
+	 * recording when they were deleted in dateDeleted. Documents that are already
+	 * deleted are left alone
 	 * 
 	 * @param databaseName   Name of the database
 	 * @param collectionName Name of the collection
 	 * @param query          Query used to specify the find method (can change
 	 *                       multiple documents if not specific)
 	 */
-	public void deleteDocument(String databaseName, String collectionName, Document query) {
-		getCollection(databaseName, collectionName).updateMany(query,
-				new Document().append("$set", new Document().append("deleted", true)));
-
-	}
+	void deleteDocument(String databaseName, String collectionName, Document query);
 
 	/**
 	 * Updates a number of given parameters in the database
@@ -130,42 +114,189 @@ class Database {
 	 *                       Multiple documents if not specific)
 	 * @param update         Fields and values being updated / added
 	 */
-	public void updateDocument(String databaseName, String collectionName, Document query, Document update) {
-		getCollection(databaseName, collectionName).updateMany(query, new Document().append("$set", update));
-	}
+	void updateDocument(String databaseName, String collectionName, Document query, Document update);
+
+	/**
+	 * Updates or soft deletes many documents, each picked by its own _id, with as
+	 * few round trips as possible. The writes are unordered, so a write that
+	 * fails does not stop the rest. Documents that are already deleted are left
+	 * alone
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param writes         Writes being made
+	 * @param writeConcern   Name of the MongoDB write concern the writes must
+	 *                       meet. Engines without replicas always write to
+	 *                       their own storage before returning
+	 * @param timeoutMillis  Milliseconds to wait for the write concern, 0 to wait
+	 *                       as long as it takes
+	 * @return Outcome of each write in the order the writes were given
+	 */
+	List<WriteResult> writeDocuments(String databaseName, String collectionName, List<DocumentWrite> writes,
+			String writeConcern, long timeoutMillis);
 
 	/**
-	 * Returns a list of documents returned by a specific search query.
+	 * Opens a cursor over the documents returned by a specific search query.
 	 * 
 	 * Only returns documents which the deleted flag is set to false
 	 * 
+	 * @param <T>            Type the documents are decoded into
 	 * @param databaseName   The name of the database
 	 * @param collectionName The name of the collection
-	 * @param query          Query used to specify the find method (can change
-	 *                       Multiple documents if not specific)
-	 * @return List of all documents that match the seach query
+	 * @param type           Class the documents are decoded into, which picks
+	 *                       their codec
+	 * @param query          Query used to specify the find method
+	 * @param projection     Fields to return set to 1 (_id is returned unless it
+	 *                       is set to 0), or null to return whole documents
+	 * @param batchSize      Number of documents fetched from the server at a time
+	 * @return Cursor over all documents that match the search query
+	 */
+	<T> Cursor<T> getDocument(String databaseName, String collectionName, Class<T> type, Document query,
+			Document projection, int batchSize);
+
+	/**
+	 * Opens a cursor over one range of the documents returned by a search query,
+	 * in sorted order.
+	 * 
+	 * The range starts right after the document whose sort fields equal the given
+	 * values, so it can be found without reading any document that comes before
+	 * it. Only returns documents which the deleted flag is set to false
+	 * 
+	 * @param <T>            Type the documents are decoded into
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @param type           Class the documents are decoded into, which picks
+	 *                       their codec
+	 * @param query          Query used to specify the find method
+	 * @param projection     Fields to return, or null to return whole documents
+	 * @param sortFields     Fields sorted by in ascending order. Together they
+	 *                       must be unique for every document
+	 * @param after          Values of the sort fields that the range starts
+	 *                       after, or null to start at the beginning
+	 * @param descending     If the range goes backward from the sort values
+	 *                       instead of forward
+	 * @param limit          Largest number of documents in the range
+	 * @return Cursor over the range of documents
+	 */
+	<T> Cursor<T> getSortedDocument(String databaseName, String collectionName, Class<T> type, Document query,
+			Document projection, List<String> sortFields, Document after, boolean descending, int limit);
+
+	/**
+	 * Opens a cursor over the deleted documents (tombstones) that were deleted
+	 * before a point in time. Tombstones without a dateDeleted are not returned
+	 * 
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @param deletedBefore  Only tombstones deleted before this are returned
+	 * @param batchSize      Number of documents fetched from the server at a time
+	 * @return Cursor over the whole tombstones
+	 */
+	Cursor<Document> getDeletedDocuments(String databaseName, String collectionName, Date deletedBefore,
+			int batchSize);
+
+	/**
+	 * Removes deleted documents for good. Documents that are not deleted are left
+	 * alone
+	 * 
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @param ids            _ids of the documents being removed
+	 * @return Number of documents removed
 	 */
-	public List<Document> getDocument(String databaseName, String collectionName, Document query) {
-		MongoCursor<Document> documents = getCollection(databaseName, collectionName)
-				.find(query.append("deleted", false)).iterator();
-		List<Document> out = new ArrayList<Document>();
-		while (documents.hasNext()) {
-			out.add(documents.next());
-		}
-		return out;
-	}
+	long purgeDocuments(String databaseName, String collectionName, List<Object> ids);
+
+	/**
+	 * Opens a cursor over the documents changed after a point in time, deleted
+	 * documents included, so a copy of the collection can be brought up to date.
+	 * When a document last changed is read from its dateModified field, which is
+	 * only set by writers that keep a copy of the collection
+	 * 
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @param query          Field / value pairs the documents must equal
+	 * @param changedAfter   Only documents with a later dateModified are
+	 *                       returned, or null to return every matching document
+	 * @param batchSize      Number of documents fetched from the server at a time
+	 * @return Cursor over the whole documents
+	 */
+	Cursor<Document> getChangedDocuments(String databaseName, String collectionName, Document query,
+			Date changedAfter, int batchSize);
+
+	/**
+	 * Stores whole documents as they are, replacing any document with the same
+	 * _id. Unlike an insert the deleted flag is kept, so tombstones can be copied
+	 * 
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @param docs           Documents being stored, each with an _id
+	 */
+	void putDocuments(String databaseName, String collectionName, List<Document> docs);
+
+	/**
+	 * Creates an index on a collection. Creating an index that already exists
+	 * with the same keys and options does nothing. Engines that do not use
+	 * declared indexes can ignore this
+	 * 
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @param keys           Fields in the index and their direction (1 or -1)
+	 * @param options        Index options: name, unique, and
+	 *                       partialFilterExpression
+	 */
+	void createIndex(String databaseName, String collectionName, Document keys, Document options);
+
+	/**
+	 * Drops an index from a collection
+	 * 
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @param indexName      Name of the index
+	 */
+	void dropIndex(String databaseName, String collectionName, String indexName);
+
+	/**
+	 * Returns the names of the indexes on a collection
+	 * 
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @return Index names
+	 */
+	List<String> getIndexNames(String databaseName, String collectionName);
+
+	/**
+	 * Returns how the engine would run a query without running it.
+	 * 
+	 * The plan is returned in the same form as MongoDB's explain command, so the
+	 * winning plan is under queryPlanner.winningPlan. Each stage has a stage name,
+	 * an indexName if it reads an index, and an inputStage if it reads from
+	 * another stage
+	 * 
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @param query          Query being explained
+	 * @param projection     Fields returned by the query, or null for whole
+	 *                       documents
+	 * @param sort           Sort order of the query, or null if it is not sorted
+	 * @return Query plan
+	 */
+	Document explain(String databaseName, String collectionName, Document query, Document projection,
+			Document sort);
 
 	/**
 	 * Returns a list of all database names
 	 * 
 	 * @return List of database names
 	 */
-	public List<String> getDatabases() {
-		MongoCursor<String> databases = mongoClient.listDatabaseNames().iterator();
-		List<String> output = new ArrayList<String>();
-		while (databases.hasNext()) {
-			output.add(databases.next());
-		}
-		return output;
-	}
+	List<String> getDatabases();
+
+	/**
+	 * Follows the changes every client makes to a collection from now on. The
+	 * cursor waits for each change as it is read
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @return Cursor over the changes, or null if the engine can not follow the
+	 *         changes of other clients
+	 */
+	Cursor<ChangeEvent> watchChanges(String databaseName, String collectionName);
 }
@@ -1,11 +1,37 @@
 package library.database;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.management.JMException;
 import org.bson.Document;
 
+import library.query.MongoCompiler;
+import library.query.Query;
+import library.storage.BulkWriteSettings;
+import library.storage.MetricsSettings;
+import library.storage.PurgeSettings;
 import library.storage.StorageManager;
+import library.storage.SyncSettings;
+import library.storage.WriteBehindSettings;
 
 /**
  * 
@@ -20,45 +46,469 @@ import library.storage.StorageManager;
 public class DatabaseManager {
 	private static Database database;
 	private static Level debuggerLevel = Level.OFF;
+	private static int batchSize = 1000;
+	private static BulkWriteSettings bulkWriteSettings = new BulkWriteSettings();
+	private static final AddressCache cache = new AddressCache();
+	private static final DatabaseMetrics metrics = new DatabaseMetrics();
+	private static final PrefixIndex prefixIndex = new PrefixIndex();
+	private static final QueryCache queries = new QueryCache();
+	private static final ChangeEventBus changes = new ChangeEventBus();
+	private static boolean shutdownHookAdded;
+	private static final Logger logger = Logger.getLogger(DatabaseManager.class.getName());
+	// Runs the purge of old deleted documents in the background
+	private static ScheduledExecutorService purgeScheduler;
+	private static TombstonePurger purger;
+	private static volatile PurgeReport lastPurgeReport;
+	// Queues new addresses when write-behind is on, otherwise null
+	private static volatile WriteBehindQueue writeBehind;
+	// Longest a read waits for its user's queued writes before going without
+	// them
+	private final static long BARRIERMILLIS = 10000;
+	// Times a user's prefix index is built for a search before the search is
+	// run on the addresses read without keeping their index
+	private final static int MAXINDEXATTEMPTS = 3;
+	// Local replica of the database when it is kept, otherwise null
+	private static volatile SyncingDatabase replica;
 
 	// Specific Database Info
 	private final static String DATABASENAME = "CFM-Test";
 	// Specific Collection info
-	private final static String ADDRESSCOLLECTION = "Addresses";
-	private final static String USERSCOLLECTION = "Users";
+	final static String ADDRESSCOLLECTION = "Addresses";
+	final static String USERSCOLLECTION = "Users";
+	// Connection string used to select the in-memory storage engine
+	public final static String MEMORYCONNECTION = "memory:";
+	// Connection string used to select the embedded storage engine. A folder can
+	// follow it, otherwise the default data folder is used
+	public final static String EMBEDDEDCONNECTION = "embedded:";
+	// Fields shown when addresses are listed
+	public final static List<String> LISTFIELDS = Collections
+			.unmodifiableList(Arrays.asList("firstName", "lastName", "street", "city", "state", "zip"));
+	// Fields that can be searched by prefix
+	public final static List<String> PREFIXFIELDS = PrefixIndex.FIELDS;
+	// Fields that can be searched by how they sound
+	public final static List<String> SOUNDFIELDS = PrefixIndex.SOUNDFIELDS;
 
 	/**
-	 * Creates a connection to a specified database (local or remote)
+	 * Creates a connection to a specified database (local or remote) and makes
+	 * sure the indexes the application needs exist. The connection is closed when
+	 * the application exits if stop() has not been called first
 	 * 
 	 * @throws Exception Thrown if there is an error when connecting to the
 	 *                   database. Make sure that the connection string is right.
 	 */
-	public static void start() throws Exception {
-		String connectionString = StorageManager.getConnectionString();
+	public static synchronized void start() throws Exception {
+		start(StorageManager.getConnectionString());
+	}
+
+	/**
+	 * Creates a connection to the database of a given connection string instead
+	 * of the one in long-term storage, such as the in-memory database for tests
+	 * 
+	 * @param connectionString Database connection string
+	 * @throws Exception Thrown if there is an error when connecting to the
+	 *                   database
+	 */
+	public static synchronized void start(String connectionString) throws Exception {
+		start(connectionString, false);
+	}
+
+	/**
+	 * Starts the database with a local replica even if the replica is turned off,
+	 * so the application can be used while the database can not be reached.
+	 * Reads and writes are made on the replica, and writes are sent to the
+	 * database once it can be reached again
+	 * 
+	 * @throws Exception Thrown if the replica can not be opened
+	 */
+	public static synchronized void startOffline() throws Exception {
+		start(StorageManager.getConnectionString(), true);
+	}
+
+	/**
+	 * Creates a connection to the database of a connection string, kept behind a
+	 * local replica if asked for or if the replica is turned on. The in-memory and
+	 * embedded databases are never replicated since they are on this machine
+	 * already
+	 * 
+	 * @param connectionString Database connection string
+	 * @param replicated       If a local replica is kept whatever the settings say
+	 * @throws Exception Thrown if there is an error when connecting to the
+	 *                   database
+	 */
+	private static void start(String connectionString, boolean replicated) throws Exception {
+		stopWriteBehind();
+		if (database != null) {
+			database.close();
+		}
+		replica = null;
 		try {
-			database = new Database(debuggerLevel);
+			Database engine = createDatabase(connectionString);
+			SyncSettings syncSettings = StorageManager.getSyncSettings();
+			if ((replicated || syncSettings.isEnabled()) && !connectionString.equals(MEMORYCONNECTION)
+					&& !connectionString.startsWith(EMBEDDEDCONNECTION)) {
+				File folder = new File(StorageManager.getReplicaFolder(),
+						Integer.toHexString(connectionString.hashCode()));
+				replica = new SyncingDatabase(engine, new EmbeddedEngine(debuggerLevel), folder, DATABASENAME,
+						syncSettings.getSyncMillis(), syncSettings.getBatchSize(), DatabaseManager::dropBook);
+				engine = replica;
+			}
+			ChangeFeedDatabase feed = new ChangeFeedDatabase(engine, changes);
+			database = new InstrumentedDatabase(feed, metrics);
 			database.connect(connectionString);
+			if (!database.ping()) {
+				throw new IllegalStateException("The database did not answer");
+			}
+			new IndexManager(database, DATABASENAME).ensureIndexes();
+			if (StorageManager.getChangeFeedSettings().isTailChangeStreams()) {
+				tailChanges(feed);
+			}
+			cache.invalidateAll();
+			queries.clear();
+			prefixIndex.clear();
+			schedulePurge(StorageManager.getPurgeSettings());
+			bulkWriteSettings = StorageManager.getBulkWriteSettings();
+			startWriteBehind(StorageManager.getWriteBehindSettings(), connectionString);
+			startMetrics(StorageManager.getMetricsSettings());
 		} catch (Exception e) {
 			throw new Exception(e);
 		}
+		if (!shutdownHookAdded) {
+			Runtime.getRuntime().addShutdownHook(new Thread(DatabaseManager::stop, "database-shutdown"));
+			shutdownHookAdded = true;
+		}
+	}
+
+	/**
+	 * Closes the database along with every connection to the server. Does nothing
+	 * if the database is not started
+	 */
+	public static synchronized void stop() {
+		stopWriteBehind();
+		stopPurge();
+		metrics.scheduleReport(0);
+		if (database != null) {
+			database.close();
+			database = null;
+		}
+		ConnectionManager.closeAll();
+		cache.invalidateAll();
+		queries.clear();
+		prefixIndex.clear();
+	}
+
+	/**
+	 * Makes the metrics readable through JMX and starts writing them to the log
+	 * if the settings ask for it
+	 * 
+	 * @param settings Metrics settings from long-term storage
+	 * @throws JMException Thrown if the metrics can not be registered with JMX
+	 */
+	private static void startMetrics(MetricsSettings settings) throws JMException {
+		if (settings.isJmxEnabled()) {
+			metrics.register();
+		}
+		metrics.scheduleReport(settings.getReportIntervalSeconds());
+	}
+
+	/**
+	 * Creates the purger for the started database and schedules it to run in the
+	 * background with the given settings
+	 * 
+	 * @param settings Purge settings from long-term storage
+	 */
+	private static void schedulePurge(PurgeSettings settings) {
+		stopPurge();
+		purger = new TombstonePurger(database, DATABASENAME, Arrays.asList(ADDRESSCOLLECTION));
+		purger.setRetentionMillis(TimeUnit.DAYS.toMillis(settings.getRetentionDays()));
+		purger.setBatchSize(settings.getBatchSize());
+		purger.setDocumentsPerSecond(settings.getDocumentsPerSecond());
+		if (!settings.isEnabled()) {
+			return;
+		}
+		purgeScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "tombstone-purge");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		long interval = Math.max(1, settings.getIntervalMinutes());
+		purgeScheduler.scheduleWithFixedDelay(DatabaseManager::runPurge, interval, interval, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Stops the background purge, interrupting a run that is in progress. The
+	 * batch being purged is already archived, so nothing is lost
+	 */
+	private static void stopPurge() {
+		if (purgeScheduler != null) {
+			purgeScheduler.shutdownNow();
+			try {
+				purgeScheduler.awaitTermination(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			purgeScheduler = null;
+		}
+		purger = null;
 	}
 
 	/**
-	 * Checks to see if the application can connect to the given database
+	 * Publishes the changes of the application's collections from change
+	 * streams, so changes made by other programs are published as well
+	 * 
+	 * @param feed Change feed of the database
+	 */
+	private static void tailChanges(ChangeFeedDatabase feed) {
+		for (String collectionName : Arrays.asList(ADDRESSCOLLECTION, USERSCOLLECTION)) {
+			if (!feed.tail(DATABASENAME, collectionName)) {
+				logger.info("The database has no change streams, only this program's changes are published");
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the feed of changes made to the database. Every insert, update,
+	 * delete, and purge is published to it once the database has made it
+	 * 
+	 * @return Change feed, which subscribers can be added to before or after the
+	 *         database is started
+	 */
+	public static ChangeEventBus getChangeFeed() {
+		return changes;
+	}
+
+	/**
+	 * Opens the write-behind queue if it is turned on. Writes left in its journal
+	 * when the program last exited are queued again. Each database has its own
+	 * journal, so writes are never replayed into a different database
+	 * 
+	 * @param settings         Write-behind settings
+	 * @param connectionString Connection string of the database
+	 * @throws IOException Thrown if the journal can not be read
+	 */
+	private static void startWriteBehind(WriteBehindSettings settings, String connectionString) throws IOException {
+		if (!settings.isEnabled()) {
+			return;
+		}
+		File journal = new File(StorageManager.getJournalFolder(),
+				"write-behind-" + Integer.toHexString(connectionString.hashCode()) + ".ndjson");
+		WriteBehindQueue queue = new WriteBehindQueue(journal, settings.getQueueSize(), settings.getBatchSize(),
+				settings.getFlushMillis(), DatabaseManager::writeAddresses,
+				mutations -> applyMutations(mutations, bulkWriteSettings.getWriteConcern(),
+						bulkWriteSettings.getTimeoutMillis()));
+		int replayed = queue.open();
+		if (replayed > 0) {
+			logger.info("Queued " + replayed + " writes left in the write journal");
+		}
+		writeBehind = queue;
+	}
+
+	/**
+	 * Sends the writes in the write-behind queue and closes it. Writes that can
+	 * not be sent in time stay in the journal
+	 */
+	private static void stopWriteBehind() {
+		WriteBehindQueue queue = writeBehind;
+		if (queue != null) {
+			queue.close(BARRIERMILLIS);
+			writeBehind = null;
+		}
+	}
+
+	/**
+	 * Waits until every write in the write-behind queue has been sent to the
+	 * database. Reads already wait for the writes of the user they read, so this
+	 * is only needed to read a user's addresses some other way, such as from
+	 * another program
+	 * 
+	 * @param timeoutMillis Longest time to wait, 0 to wait as long as it takes
+	 * @return If the queue was emptied in time. Always true when write-behind is
+	 *         off
+	 */
+	public static boolean flush(long timeoutMillis) {
+		WriteBehindQueue queue = writeBehind;
+		return queue == null || queue.flush(timeoutMillis);
+	}
+
+	/**
+	 * Waits until every write in the write-behind queue has been sent to the
+	 * database
+	 */
+	public static void flush() {
+		flush(0);
+	}
+
+	/**
+	 * Returns how many writes are waiting in the write-behind queue
+	 * 
+	 * @return Queued writes, 0 when write-behind is off
+	 */
+	public static int getQueuedWrites() {
+		WriteBehindQueue queue = writeBehind;
+		return queue == null ? 0 : queue.size();
+	}
+
+	/**
+	 * Waits for the queued writes of a user, so a read sees every write its
+	 * caller made. Does nothing if the user has no queued writes
+	 * 
+	 * @param username User being read, or null if any user can be read
+	 */
+	private static void awaitWrites(String username) {
+		WriteBehindQueue queue = writeBehind;
+		if (queue != null && queue.hasPending(username) && !queue.flush(BARRIERMILLIS)) {
+			logger.warning("Queued writes were not sent in time, reading without them");
+		}
+	}
+
+	/**
+	 * Waits for the queued writes of the user a query is for
+	 * 
+	 * @param query Filter of a read or write
+	 */
+	private static void awaitWrites(Document query) {
+		awaitWrites(AddressCache.username(query));
+	}
+
+	/**
+	 * Returns if the application is working from the local replica because the
+	 * database can not be reached
+	 * 
+	 * @return If the database is out of reach. Always false without a replica
+	 */
+	public static boolean isOffline() {
+		SyncingDatabase current = replica;
+		return current != null && !current.isOnline();
+	}
+
+	/**
+	 * Returns how many writes made on the local replica have not been sent to the
+	 * database yet. Once the database is stopped, these are the writes left for
+	 * the next start
+	 * 
+	 * @return Writes waiting to be sent, 0 without a replica
+	 */
+	public static int getUnsyncedChanges() {
+		SyncingDatabase current = replica;
+		return current == null ? 0 : current.getPendingChanges();
+	}
+
+	/**
+	 * Returns how many writes made on the local replica were not sent because the
+	 * address had been changed later by someone else, whose change was kept, or
+	 * because another document already held one of its unique values, such as a
+	 * username
+	 * 
+	 * @return Writes that lost to a newer change, 0 without a replica
+	 */
+	public static long getSyncConflicts() {
+		SyncingDatabase current = replica;
+		return current == null ? 0 : current.getConflicts();
+	}
+
+	/**
+	 * Drops what is cached for a user whose addresses were changed in the local
+	 * replica by a sync
+	 * 
+	 * @param username User whose addresses changed
+	 */
+	private static void dropBook(String username) {
+		cache.invalidate(username);
+		prefixIndex.remove(username);
+	}
+
+	/**
+	 * Runs a scheduled purge. Failures are logged so the next run still happens
+	 */
+	private static void runPurge() {
+		try {
+			purgeDeleted();
+		} catch (Exception e) {
+			logger.log(Level.WARNING, "Unable to purge deleted addresses", e);
+		}
+	}
+
+	/**
+	 * Archives and purges the deleted addresses that are older than the retention
+	 * period right away instead of waiting for the background job
+	 * 
+	 * @return What was purged
+	 * @throws IOException Thrown if an archive can not be written
+	 */
+	public static PurgeReport purgeDeleted() throws IOException {
+		TombstonePurger current = purger;
+		if (current == null) {
+			throw new IllegalStateException("The database is not started");
+		}
+		PurgeReport report = current.purge();
+		lastPurgeReport = report;
+		logger.fine(report.toString());
+		return report;
+	}
+
+	/**
+	 * Returns what the most recent purge did
+	 * 
+	 * @return Report of the last purge, or null if none has run
+	 */
+	public static PurgeReport getLastPurgeReport() {
+		return lastPurgeReport;
+	}
+
+	/**
+	 * Checks that the database the application is started with can still be
+	 * reached
+	 * 
+	 * @return If the database answered
+	 */
+	public static boolean isAlive() {
+		Database db = database;
+		return db != null && db.ping();
+	}
+
+	/**
+	 * Checks to see if the application can connect to the given database. A
+	 * server that answers keeps its connections open so start() can reuse them
 	 * 
 	 * @param connectionString Database connection string
 	 * @return If the application can connect to the database
 	 */
 	public static boolean checkConnection(String connectionString) {
-		Database db = new Database(debuggerLevel);
+		Database db = createDatabase(connectionString);
+		boolean alive = false;
 		try {
 			db.connect(connectionString);
-			return true;
+			alive = db.ping();
+			return alive;
 		} catch (Exception e) {
 			return false;
+		} finally {
+			db.close();
+			if (!alive) {
+				ConnectionManager.close(connectionString);
+			}
 		}
 	}
 
+	/**
+	 * Selects the storage engine for a connection string. Anything that is not the
+	 * in-memory or embedded connection string is treated as a MongoDB connection
+	 * string
+	 * 
+	 * @param connectionString Database connection string
+	 * @return Storage engine that has not been connected yet
+	 */
+	private static Database createDatabase(String connectionString) {
+		if (connectionString.equals(MEMORYCONNECTION)) {
+			return new MemoryEngine(debuggerLevel);
+		}
+		if (connectionString.startsWith(EMBEDDEDCONNECTION)) {
+			return new EmbeddedEngine(debuggerLevel);
+		}
+		return new MongoEngine(debuggerLevel);
+	}
+
 	/**
 	 * Sets the verbosity of mongodb
 	 * 
@@ -69,13 +519,68 @@ public class DatabaseManager {
 	 *              user interface
 	 */
 	public static void setDebuggerLevel(Level level) {
-		if (database.equals(null)) {
+		if (database == null) {
 			debuggerLevel = level;
 		} else {
 			database.setDebuggerLevel(level);
 		}
 	}
 
+	/**
+	 * Sets how many documents are fetched from the server at a time when reading
+	 * through query results
+	 * 
+	 * @param size Number of documents per batch
+	 */
+	public static void setBatchSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		batchSize = size;
+	}
+
+	/**
+	 * Sets how many addresses the address book cache holds and how long an address
+	 * book stays in it. Every cached address book is dropped
+	 * 
+	 * @param maxAddresses Largest number of addresses cached, 0 turns the cache off
+	 * @param ttlMillis    Milliseconds an address book stays cached, 0 to keep it
+	 *                     until it is evicted or changed
+	 */
+	public static void setCacheLimits(int maxAddresses, long ttlMillis) {
+		cache.setLimits(maxAddresses, ttlMillis);
+	}
+
+	/**
+	 * Returns the hit, miss, and eviction counters of the address book cache
+	 * 
+	 * @return Snapshot of the cache counters
+	 */
+	public static CacheStats getCacheStats() {
+		return cache.getStats();
+	}
+
+	/**
+	 * Explains how the database runs each kind of query the console makes, which
+	 * shows if every query is served by an index
+	 * 
+	 * @param username User whose queries are explained
+	 * @return Description of each query mapped to a summary of its query plan
+	 */
+	public static Map<String, String> explainQueries(String username) {
+		return new IndexManager(database, DATABASENAME).explainQueries(username);
+	}
+
+	/**
+	 * Returns the latency, throughput, and result size metrics of every database
+	 * operation
+	 * 
+	 * @return Database metrics
+	 */
+	public static DatabaseMetrics getMetrics() {
+		return metrics;
+	}
+
 	/**
 	 * Finds a list of users given a query
 	 * 
@@ -83,11 +588,12 @@ public class DatabaseManager {
 	 * @return List of users
 	 */
 	public static List<User> findUser(Document query) {
-		List<Document> out = database.getDocument(DATABASENAME, USERSCOLLECTION, query);
 		List<User> users = new ArrayList<User>();
-		for (Document doc : out) {
-			users.add(new User(doc.getString("username"), doc.getString("firstName"), doc.getString("lastName"),
-					doc.getString("email"), doc.getString("hashedPassword")));
+		try (Cursor<User> out = database.getDocument(DATABASENAME, USERSCOLLECTION, User.class, query, null,
+				batchSize)) {
+			while (out.hasNext()) {
+				users.add(out.next());
+			}
 		}
 		return users;
 	}
@@ -98,39 +604,478 @@ public class DatabaseManager {
 	 * @param user User being added to the database
 	 */
 	public static void addUser(User user) {
-		Document in = new Document().append("username", user.getUsername()).append("firstName", user.getFirstName())
-				.append("lastName", user.getLastName()).append("email", user.getEmail())
-				.append("hashedPassword", user.getHashedPassword());
-		database.insertDocument(DATABASENAME, USERSCOLLECTION, in);
+		database.insertDocument(DATABASENAME, USERSCOLLECTION, User.class, user);
 	}
 
 	/**
-	 * Finds a list of addresses given a query
+	 * Finds a list of addresses given a query. Queries for a single user's
+	 * addresses are answered from the address book cache, which loads the user's
+	 * whole address book if it is not cached yet
 	 * 
 	 * @param query Parameters for address search
 	 * @return List of addresses
 	 */
 	public static List<Address> findAddress(Document query) {
-		List<Document> out = database.getDocument(DATABASENAME, ADDRESSCOLLECTION, query);
+		return metrics.time("manager.findAddress", () -> {
+			awaitWrites(query);
+			List<Address> book = loadBook(query);
+			if (book != null) {
+				return AddressCache.filter(book, query);
+			}
+			List<Address> addresses = new ArrayList<Address>();
+			try (Cursor<Address> out = openAddressCursor(query)) {
+				while (out.hasNext()) {
+					addresses.add(out.next());
+				}
+			}
+			return addresses;
+		});
+	}
+
+	/**
+	 * Finds the addresses matching a query built from filters, which can compare
+	 * ranges, prefixes, anchored regular expressions, and sets of values, and can
+	 * sort and limit the addresses. Queries that mean the same thing share one
+	 * compiled plan and one set of cached results.
+	 * 
+	 * A query for a single user is answered from their cached address book. Any
+	 * other query is sent to MongoDB as a whole, while an engine without query
+	 * operators is only sent the fields the query matches exactly and the rest
+	 * of the query is run over the addresses it returns
+	 * 
+	 * @param query Query for addresses
+	 * @return Addresses in the order the query asks for
+	 */
+	public static List<Address> findAddress(Query query) {
+		QueryPlan plan = queries.plan(query);
+		return metrics.time("manager.query " + plan.getShape(), () -> runQuery(plan));
+	}
+
+	/**
+	 * Runs a compiled query against the address book cache, the cached query
+	 * results, or the database, in that order
+	 * 
+	 * @param plan Compiled query
+	 * @return Addresses in the order the query asks for
+	 */
+	private static List<Address> runQuery(QueryPlan plan) {
+		String username = plan.getUsername();
+		awaitWrites(username);
+		if (username != null) {
+			List<Address> book = loadBook(new Document("username", username));
+			if (book != null) {
+				return QueryCache.copy(plan.select(book, false));
+			}
+		}
+		long generation = cache.generation();
+		List<Address> addresses = queries.get(plan, generation);
+		if (addresses != null) {
+			return addresses;
+		}
+		addresses = new ArrayList<Address>();
+		boolean operators = database.supportsQueryOperators(plan.getFilter());
+		if (operators && plan.getLimit() > 0 && plan.getSortFields() != null) {
+			try (Cursor<Address> out = database.getSortedDocument(DATABASENAME, ADDRESSCOLLECTION, Address.class,
+					plan.getFilter(), null, plan.getSortFields(), null, plan.isDescending(), plan.getLimit())) {
+				while (out.hasNext()) {
+					addresses.add(out.next());
+				}
+			}
+		} else {
+			try (Cursor<Address> out = database.getDocument(DATABASENAME, ADDRESSCOLLECTION, Address.class,
+					operators ? plan.getFilter() : plan.getExactMatches(), null, batchSize)) {
+				while (out.hasNext()) {
+					addresses.add(out.next());
+				}
+			}
+			addresses = plan.select(addresses, operators);
+		}
+		queries.put(plan, addresses, generation);
+		return addresses;
+	}
+
+	/**
+	 * Opens a cursor over the addresses matching a query. Addresses are fetched
+	 * from the server in batches as the cursor is read, so only one batch is held
+	 * in memory at a time. An address book that is already cached is read from the
+	 * cache instead
+	 * 
+	 * @param query Parameters for address search
+	 * @return Cursor over the addresses. It must be closed once it is no longer
+	 *         needed
+	 */
+	public static Cursor<Address> openAddressCursor(Document query) {
+		return openAddressCursor(query, null);
+	}
+
+	/**
+	 * Opens a cursor over some of the fields of the addresses matching a query.
+	 * Only the fields asked for are sent by the server, and a query for the
+	 * listed fields can be answered from an index without reading the addresses
+	 * themselves. Addresses read from the cache have every field
+	 * 
+	 * @param query  Parameters for address search
+	 * @param fields Fields of each address that are needed, or null for every
+	 *               field. Fields that are not read are null
+	 * @return Cursor over the addresses. It must be closed once it is no longer
+	 *         needed
+	 */
+	public static Cursor<Address> openAddressCursor(Document query, List<String> fields) {
+		awaitWrites(query);
+		String username = AddressCache.username(query);
+		List<Address> book = username == null ? null : cache.get(username);
+		if (book != null) {
+			return Cursors.of(AddressCache.filter(book, query).iterator());
+		}
+		return database.getDocument(DATABASENAME, ADDRESSCOLLECTION, Address.class, query, projection(fields, false),
+				batchSize);
+	}
+
+	/**
+	 * Streams the addresses matching a query. Closing the stream closes the cursor
+	 * behind it
+	 * 
+	 * @param query Parameters for address search
+	 * @return Stream of addresses. It must be closed once it is no longer needed
+	 */
+	public static Stream<Address> streamAddress(Document query) {
+		Cursor<Address> cursor = openAddressCursor(query);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+				.onClose(cursor::close);
+	}
+
+	/**
+	 * Returns the cached address book of the user a query is for, loading it from
+	 * the database if it is not cached
+	 * 
+	 * @param query Parameters for address search
+	 * @return Every address of the user, or null if the query can not be answered
+	 *         from the cache or the address book is too large to cache
+	 */
+	private static List<Address> loadBook(Document query) {
+		String username = AddressCache.username(query);
+		if (username == null) {
+			return null;
+		}
+		List<Address> book = cache.get(username);
+		if (book != null) {
+			return book;
+		}
+		int maxAddresses = cache.getMaxAddresses();
+		long generation = cache.generation();
+		book = new ArrayList<Address>();
+		try (Cursor<Address> out = database.getDocument(DATABASENAME, ADDRESSCOLLECTION, Address.class,
+				new Document("username", username), null, batchSize)) {
+			while (out.hasNext()) {
+				if (book.size() == maxAddresses) {
+					return null;
+				}
+				book.add(out.next());
+			}
+		}
+		return cache.put(username, book, generation) ? book : null;
+	}
+
+	/**
+	 * Keeps a copy of a user's addresses in the local replica, if there is one,
+	 * so they are read from this machine and can be changed while the database
+	 * can not be reached. The whole address book is copied now if the database
+	 * can be reached, and only the changes made since then are copied after
+	 * that. Run at login, before the prefix index is built
+	 * 
+	 * @param username User whose addresses are replicated
+	 */
+	public static void replicateAddresses(String username) {
+		SyncingDatabase current = replica;
+		if (current != null) {
+			awaitWrites(username);
+			current.replicate(username);
+			dropBook(username);
+		}
+	}
+
+	/**
+	 * Builds a user's prefix index from the database, replacing the index they
+	 * had. Run at login so the first search does not have to wait for it
+	 * 
+	 * @param username User whose addresses are indexed
+	 * @return If the index was built. It is not if the user's addresses were
+	 *         changed while they were being read
+	 */
+	public static boolean indexAddresses(String username) {
+		awaitWrites(username);
+		long generation = prefixIndex.generation();
+		return prefixIndex.put(username, readIndexed(username), generation);
+	}
+
+	/**
+	 * Reads the fields of a user's addresses that their prefix index needs
+	 * 
+	 * @param username User whose addresses are read
+	 * @return Every address of the user
+	 */
+	private static List<Address> readIndexed(String username) {
+		List<String> fields = new ArrayList<String>(LISTFIELDS);
+		fields.add("username");
 		List<Address> addresses = new ArrayList<Address>();
-		for (Document doc : out) {
-			addresses.add(new Address(doc.getString("firstName"), doc.getString("lastName"), doc.getString("street"),
-					doc.getString("city"), doc.getString("state"), doc.getString("zip"), doc.getString("dateCreated")));
+		try (Cursor<Address> out = database.getDocument(DATABASENAME, ADDRESSCOLLECTION, Address.class,
+				new Document("username", username), projection(fields, true), batchSize)) {
+			while (out.hasNext()) {
+				addresses.add(out.next());
+			}
 		}
 		return addresses;
 	}
 
 	/**
-	 * Adds an address to the database
+	 * Runs a search on a user's prefix index, building the index first if it does
+	 * not exist. If the user's addresses keep being written while they are read,
+	 * the search is run on the addresses that were read without keeping their
+	 * index, so a busy address book can not keep a search waiting
+	 * 
+	 * @param <T>      Type of the results
+	 * @param username User whose addresses are searched
+	 * @param search   Search of an index, which returns null if the user is not
+	 *                 indexed
+	 * @return Results of the search
+	 */
+	private static <T> T searchIndex(String username, Function<PrefixIndex, T> search) {
+		awaitWrites(username);
+		T found = search.apply(prefixIndex);
+		for (int attempt = 1; found == null; attempt++) {
+			long generation = prefixIndex.generation();
+			List<Address> addresses = readIndexed(username);
+			if (prefixIndex.put(username, addresses, generation)) {
+				found = search.apply(prefixIndex);
+			}
+			if (found == null && attempt == MAXINDEXATTEMPTS) {
+				PrefixIndex once = new PrefixIndex();
+				once.put(username, addresses, once.generation());
+				return search.apply(once);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Drops a user's prefix index, such as when they log out
 	 * 
-	 * @param address Address being added to the database
+	 * @param username User whose index is dropped
+	 */
+	public static void forgetAddresses(String username) {
+		prefixIndex.remove(username);
+	}
+
+	/**
+	 * Finds a user's addresses with a first name, last name, street, or city that
+	 * starts with a prefix. The user's prefix index is built first if it does not
+	 * exist
+	 * 
+	 * @param username User whose addresses are searched
+	 * @param field    One of PREFIXFIELDS, or null to search all of them
+	 * @param prefix   Start of the value, matched ignoring case and accents
+	 * @param limit    Largest number of addresses returned
+	 * @return Matching addresses ordered by the value that matched
+	 */
+	public static List<Address> searchAddressPrefix(String username, String field, String prefix, int limit) {
+		return metrics.time("manager.searchAddressPrefix",
+				() -> searchIndex(username, index -> index.search(username, field, prefix, limit)));
+	}
+
+	/**
+	 * Finds a user's addresses with a first name, last name, or city that sounds
+	 * like or is spelled close to a value, such as a name heard over the phone.
+	 * The user's index is built first if it does not exist
+	 * 
+	 * @param username User whose addresses are searched
+	 * @param field    One of SOUNDFIELDS, or null to search all of them
+	 * @param value    Value that was heard
+	 * @param limit    Largest number of addresses returned
+	 * @return Matching addresses, closest spelling first
+	 */
+	public static List<Address> searchSimilarAddresses(String username, String field, String value, int limit) {
+		return metrics.time("manager.searchSimilarAddresses",
+				() -> searchIndex(username, index -> index.searchSimilar(username, field, value, limit)));
+	}
+
+	/**
+	 * Suggests values of a field that start with what the user has typed so far
+	 * 
+	 * @param username User whose addresses the values come from
+	 * @param field    One of PREFIXFIELDS
+	 * @param prefix   Start of the value, matched ignoring case and accents
+	 * @param limit    Largest number of values returned
+	 * @return Distinct values in sorted order
+	 */
+	public static List<String> suggestAddressValues(String username, String field, String prefix, int limit) {
+		return searchIndex(username, index -> index.suggest(username, field, prefix, limit));
+	}
+
+	/**
+	 * Adds the lower-cased copy of every listed field an update sets, so the
+	 * copies that searches ignoring case are matched against stay current
+	 * 
+	 * @param update Fields being updated and their values
+	 * @return New update that sets the copies as well
+	 */
+	static Document withLowerCaseCopies(Document update) {
+		Document out = new Document(update);
+		for (Map.Entry<String, Object> field : update.entrySet()) {
+			Object value = field.getValue();
+			if (LISTFIELDS.contains(field.getKey()) && (value == null || value instanceof String)) {
+				out.append(MongoCompiler.lowerCaseField(field.getKey()), MongoCompiler.lowerCase((String) value));
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Creates the projection for the fields a caller needs
+	 * 
+	 * @param fields    Fields that are needed, or null for every field
+	 * @param sortByKey If the sort fields are needed as well for paging
+	 * @return Projection, or null to read whole addresses
+	 */
+	static Document projection(List<String> fields, boolean sortByKey) {
+		if (fields == null) {
+			return null;
+		}
+		Document projection = new Document();
+		for (String field : fields) {
+			projection.append(field, 1);
+		}
+		if (sortByKey) {
+			for (String field : PageRequest.SORTFIELDS) {
+				projection.append(field, 1);
+			}
+		} else if (!fields.contains("_id")) {
+			projection.append("_id", 0);
+		}
+		return projection;
+	}
+
+	/**
+	 * Finds one page of the addresses matching a query, sorted by last name, first
+	 * name, and id
+	 * 
+	 * @param request Query, page size, and where the page starts
+	 * @return Addresses on the page along with if there are more pages on either
+	 *         side
+	 */
+	public static AddressPage findAddressPage(PageRequest request) {
+		return metrics.time("manager.findAddressPage", () -> readAddressPage(request));
+	}
+
+	/**
+	 * Reads one page of addresses from the address book cache or the database
+	 * 
+	 * @param request Query, page size, and where the page starts
+	 * @return Addresses on the page
+	 */
+	private static AddressPage readAddressPage(PageRequest request) {
+		// One extra address is read to find out if there is another page
+		int limit = request.getPageSize() + 1;
+		awaitWrites(request.getQuery());
+		List<Address> addresses = new ArrayList<Address>();
+		List<Address> book = loadBook(request.getQuery());
+		if (book != null) {
+			Comparator<Address> order = request.isBackward() ? PageRequest.ORDER.reversed() : PageRequest.ORDER;
+			for (Address address : MemoryEngine.range(book, order,
+					a -> AddressCache.matches(a, request.getQuery()) && request.isPastBoundary(a), limit)) {
+				addresses.add(new Address(address));
+			}
+		} else {
+			try (Cursor<Address> out = database.getSortedDocument(DATABASENAME, ADDRESSCOLLECTION, Address.class,
+					new Document(request.getQuery()), projection(request.getFields(), true), PageRequest.SORTFIELDS,
+					request.getBoundary(), request.isBackward(), limit)) {
+				while (out.hasNext()) {
+					addresses.add(out.next());
+				}
+			}
+		}
+		boolean more = addresses.size() == limit;
+		if (more) {
+			addresses.remove(addresses.size() - 1);
+		}
+		if (request.isBackward()) {
+			Collections.reverse(addresses);
+			return new AddressPage(request, addresses, true, more);
+		}
+		return new AddressPage(request, addresses, more, request.getBoundary() != null);
+	}
+
+	/**
+	 * Adds an address to the database and to its user's cached address book. When
+	 * write-behind is on the address is queued instead and this returns as soon
+	 * as it is journaled
+	 * 
+	 * @param address Address being added to the database. It is given an id if it
+	 *                does not have one
 	 */
 	public static void insertAddress(Address address) {
-		Document in = new Document().append("firstName", address.getFirstName())
-				.append("lastName", address.getLastName()).append("street", address.getStreet())
-				.append("city", address.getCity()).append("state", address.getState()).append("zip", address.getZip())
-				.append("dateCreated", address.getDateCreated()).append("username", address.getUsername());
-		database.insertDocument(DATABASENAME, ADDRESSCOLLECTION, in);
+		WriteBehindQueue queue = writeBehind;
+		if (queue != null) {
+			try {
+				queue.insert(address);
+				return;
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not journal the address", e);
+			}
+		}
+		try {
+			database.insertDocument(DATABASENAME, ADDRESSCOLLECTION, Address.class, address);
+		} catch (RuntimeException e) {
+			cache.invalidate(address.getUsername());
+			prefixIndex.remove(address.getUsername());
+			throw e;
+		}
+		if (address.getId() != null) {
+			cache.add(address.getUsername(), address);
+			prefixIndex.add(address);
+		} else {
+			cache.invalidate(address.getUsername());
+			prefixIndex.remove(address.getUsername());
+		}
+	}
+
+	/**
+	 * Adds many addresses to the database in a single unordered bulk insert
+	 * 
+	 * @param addresses Addresses being added to the database
+	 * @return Position in the list of each address that was not added mapped to
+	 *         the reason why. Empty if every address was added
+	 */
+	public static Map<Integer, String> insertAddresses(List<Address> addresses) {
+		return writeAddresses(addresses);
+	}
+
+	/**
+	 * Adds many addresses to the database without waiting for queued writes,
+	 * which is how the write-behind queue sends its batches
+	 * 
+	 * @param addresses Addresses being added to the database
+	 * @return Position in the list of each address that was not added mapped to
+	 *         the reason why
+	 */
+	private static Map<Integer, String> writeAddresses(List<Address> addresses) {
+		Map<Integer, String> errors = null;
+		try {
+			errors = database.insertDocuments(DATABASENAME, ADDRESSCOLLECTION, Address.class, addresses);
+			return errors;
+		} finally {
+			Set<String> usernames = new HashSet<String>();
+			for (int i = 0; i < addresses.size(); i++) {
+				Address address = addresses.get(i);
+				if (usernames.add(address.getUsername())) {
+					cache.invalidate(address.getUsername());
+				}
+				if (errors == null || address.getId() == null) {
+					prefixIndex.remove(address.getUsername());
+				} else if (!errors.containsKey(i)) {
+					prefixIndex.add(address);
+				}
+			}
+		}
 	}
 
 	/**
@@ -139,7 +1084,16 @@ public class DatabaseManager {
 	 * @param query Filter to define what addresses will be deleted
 	 */
 	public static void deleteAddress(Document query) {
-		database.deleteDocument(DATABASENAME, ADDRESSCOLLECTION, query);
+		awaitWrites(query);
+		try {
+			database.deleteDocument(DATABASENAME, ADDRESSCOLLECTION, query);
+			prefixIndex.delete(query);
+		} catch (RuntimeException e) {
+			prefixIndex.invalidate(query);
+			throw e;
+		} finally {
+			invalidate(query);
+		}
 	}
 
 	/**
@@ -149,6 +1103,128 @@ public class DatabaseManager {
 	 * @param update Fields being updated and their values
 	 */
 	public static void updateAddress(Document query, Document update) {
-		database.updateDocument(DATABASENAME, ADDRESSCOLLECTION, query, update);
+		awaitWrites(query);
+		try {
+			database.updateDocument(DATABASENAME, ADDRESSCOLLECTION, query, withLowerCaseCopies(update));
+			prefixIndex.update(query, update);
+		} catch (RuntimeException e) {
+			prefixIndex.invalidate(query);
+			throw e;
+		} finally {
+			invalidate(query);
+		}
+	}
+
+	/**
+	 * Edits and deletes many addresses, each picked by its id, with the batch
+	 * size and write concern from the bulk write settings
+	 * 
+	 * @param mutations Edits and deletes being made
+	 * @return Outcome of each mutation in the order they were given
+	 */
+	public static List<WriteResult> mutateAddresses(List<AddressMutation> mutations) {
+		BulkWriteSettings settings = bulkWriteSettings;
+		return mutateAddresses(mutations, settings.getWriteConcern(), settings.getTimeoutMillis());
+	}
+
+	/**
+	 * Edits and deletes many addresses, each picked by its id. Only the addresses
+	 * named are touched, so addresses added or changed since a preview was shown
+	 * are left alone, and an address that was deleted or moved to another user
+	 * since then comes back as NOTFOUND.
+	 * 
+	 * The mutations are sent in batches of unordered bulk writes, so a mutation
+	 * that fails does not stop the rest. The address book and prefix index of
+	 * every user touched are dropped once the writes are done
+	 * 
+	 * @param mutations     Edits and deletes being made
+	 * @param writeConcern  Name of the MongoDB write concern each batch must
+	 *                      meet, such as ACKNOWLEDGED or MAJORITY
+	 * @param timeoutMillis Milliseconds to wait for the write concern, 0 to wait
+	 *                      as long as it takes
+	 * @return Outcome of each mutation in the order they were given
+	 */
+	public static List<WriteResult> mutateAddresses(List<AddressMutation> mutations, String writeConcern,
+			long timeoutMillis) {
+		Set<String> queued = new HashSet<String>();
+		for (AddressMutation mutation : mutations) {
+			if (queued.add(mutation.getUsername())) {
+				awaitWrites(mutation.getUsername());
+			}
+		}
+		return applyMutations(mutations, writeConcern, timeoutMillis);
+	}
+
+	/**
+	 * Edits and deletes many addresses without waiting for queued writes, which
+	 * is how the write-behind queue sends its batches
+	 * 
+	 * @param mutations     Edits and deletes being made
+	 * @param writeConcern  Name of the MongoDB write concern each batch must
+	 *                      meet
+	 * @param timeoutMillis Milliseconds to wait for the write concern
+	 * @return Outcome of each mutation in the order they were given
+	 */
+	private static List<WriteResult> applyMutations(List<AddressMutation> mutations, String writeConcern,
+			long timeoutMillis) {
+		int size = Math.max(1, bulkWriteSettings.getBatchSize());
+		List<WriteResult> results = new ArrayList<WriteResult>(mutations.size());
+		Set<String> usernames = new HashSet<String>();
+		try {
+			for (int start = 0; start < mutations.size(); start += size) {
+				List<AddressMutation> batch = mutations.subList(start, Math.min(mutations.size(), start + size));
+				List<DocumentWrite> writes = new ArrayList<DocumentWrite>(batch.size());
+				for (AddressMutation mutation : batch) {
+					writes.add(mutation.toWrite());
+					usernames.add(mutation.getUsername());
+				}
+				for (WriteResult result : database.writeDocuments(DATABASENAME, ADDRESSCOLLECTION, writes,
+						writeConcern, timeoutMillis)) {
+					results.add(result.shift(start));
+				}
+			}
+		} finally {
+			for (String username : usernames) {
+				cache.invalidate(username);
+				prefixIndex.remove(username);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Queues edits and deletes of addresses, each picked by its id, to be made in
+	 * the background. The caller does not learn their outcomes, which are logged
+	 * instead. When write-behind is off they are made right away
+	 * 
+	 * @param mutations Edits and deletes being made
+	 */
+	public static void queueAddressMutations(List<AddressMutation> mutations) {
+		WriteBehindQueue queue = writeBehind;
+		if (queue == null) {
+			mutateAddresses(mutations);
+			return;
+		}
+		try {
+			for (AddressMutation mutation : mutations) {
+				queue.mutate(mutation);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not journal the edits", e);
+		}
+	}
+
+	/**
+	 * Drops the cached address book of the user a write was made for, or every
+	 * cached address book if the write could have touched any user
+	 * 
+	 * @param query Filter of the write
+	 */
+	private static void invalidate(Document query) {
+		if (query.get("username") instanceof String) {
+			cache.invalidate(query.getString("username"));
+		} else {
+			cache.invalidateAll();
+		}
 	}
 }
@@ -0,0 +1,163 @@
+package library.database;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Times every database operation and counts how many documents it read
+ *         or wrote and if it failed, so slow operations can be found while the
+ *         application is under load.
+ * 
+ *         Operations of the storage engine are named after their collection
+ *         and method, such as addresses.getDocument, and the reads the
+ *         DatabaseManager answers from its cache and indexes are named like
+ *         manager.findAddress. The metrics can be read through JMX and written
+ *         to the log as a text table on a timer
+ */
+public class DatabaseMetrics implements DatabaseMetricsMXBean {
+	// Name the metrics are registered under in JMX
+	public static final String OBJECTNAME = "library.database:type=DatabaseMetrics";
+
+	private final Logger logger = Logger.getLogger(DatabaseMetrics.class.getName());
+	private volatile ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<String,
+			OperationMetrics>();
+	private volatile long resetNanos = System.nanoTime();
+	private ScheduledExecutorService reportScheduler;
+
+	/**
+	 * Returns the metrics of an operation, creating them the first time
+	 * 
+	 * @param name Name of the operation
+	 * @return Metrics the calls are counted in
+	 */
+	OperationMetrics operation(String name) {
+		OperationMetrics metrics = operations.get(name);
+		if (metrics == null) {
+			metrics = operations.computeIfAbsent(name, OperationMetrics::new);
+		}
+		return metrics;
+	}
+
+	/**
+	 * Runs a call and counts it in the metrics of an operation. The size of a
+	 * returned collection is counted as the number of documents read
+	 * 
+	 * @param <T>  Type of the result
+	 * @param name Name of the operation
+	 * @param call Call being timed
+	 * @return Result of the call
+	 */
+	<T> T time(String name, Supplier<T> call) {
+		long start = System.nanoTime();
+		boolean failed = true;
+		long results = -1;
+		try {
+			T result = call.get();
+			if (result instanceof Collection) {
+				results = ((Collection<?>) result).size();
+			}
+			failed = false;
+			return result;
+		} finally {
+			operation(name).record(System.nanoTime() - start, results, failed);
+		}
+	}
+
+	@Override
+	public List<OperationStats> getOperations() {
+		double seconds = (System.nanoTime() - resetNanos) / 1e9;
+		List<OperationStats> out = new ArrayList<OperationStats>();
+		for (OperationMetrics metrics : operations.values()) {
+			out.add(metrics.snapshot(seconds));
+		}
+		out.sort(Comparator.comparing(OperationStats::getName));
+		return out;
+	}
+
+	@Override
+	public String getReport() {
+		StringBuilder out = new StringBuilder();
+		out.append(String.format("%-36s %10s %7s %9s %9s %9s %9s %9s %8s %8s%n", "Operation", "Calls", "Errors",
+				"Calls/s", "p50 us", "p99 us", "p99.9 us", "Max us", "Docs p50", "Docs max"));
+		for (OperationStats stats : getOperations()) {
+			out.append(String.format("%-36s %10d %7d %9.1f %9d %9d %9d %9d %8d %8d%n", stats.getName(),
+					stats.getCount(), stats.getErrors(), stats.getThroughput(), stats.getP50Micros(),
+					stats.getP99Micros(), stats.getP999Micros(), stats.getMaxMicros(), stats.getResultP50(),
+					stats.getResultMax()));
+		}
+		return out.toString();
+	}
+
+	@Override
+	public long getSeconds() {
+		return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - resetNanos);
+	}
+
+	@Override
+	public void reset() {
+		operations = new ConcurrentHashMap<String, OperationMetrics>();
+		resetNanos = System.nanoTime();
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server so JMX tools can read
+	 * them. Does nothing if they are already registered
+	 * 
+	 * @throws JMException Thrown if the metrics can not be registered
+	 */
+	public void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean(this, new ObjectName(OBJECTNAME));
+		} catch (InstanceAlreadyExistsException e) {
+			// Registered by an earlier start
+		}
+	}
+
+	/**
+	 * Writes the report to the log on a timer, replacing any earlier timer. The
+	 * metrics are not reset by a report, so each one covers every operation since
+	 * the metrics were started or last reset
+	 * 
+	 * @param intervalSeconds Seconds between reports, 0 or less to stop
+	 *                        reporting
+	 */
+	public synchronized void scheduleReport(long intervalSeconds) {
+		if (reportScheduler != null) {
+			reportScheduler.shutdownNow();
+			reportScheduler = null;
+		}
+		if (intervalSeconds <= 0) {
+			return;
+		}
+		reportScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "database-metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reportScheduler.scheduleAtFixedRate(() -> {
+			if (!operations.isEmpty()) {
+				logger.log(Level.INFO,
+						"Database operations in the {0} seconds since the metrics were started or reset\n{1}",
+						new Object[] { getSeconds(), getReport() });
+			}
+		}, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+}
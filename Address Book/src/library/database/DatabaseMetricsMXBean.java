@@ -0,0 +1,39 @@
+package library.database;
+
+import java.util.List;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Database metrics as they are shown in JMX tools such as JConsole,
+ *         under library.database:type=DatabaseMetrics
+ */
+public interface DatabaseMetricsMXBean {
+	/**
+	 * Returns the metrics of every operation that has been called since the
+	 * metrics were reset
+	 * 
+	 * @return Snapshot of each operation sorted by name
+	 */
+	List<OperationStats> getOperations();
+
+	/**
+	 * Returns the metrics of every operation as a text table
+	 * 
+	 * @return Report
+	 */
+	String getReport();
+
+	/**
+	 * Returns how long the metrics have been collected for
+	 * 
+	 * @return Seconds since the metrics were reset
+	 */
+	long getSeconds();
+
+	/**
+	 * Starts collecting the metrics again from nothing
+	 */
+	void reset();
+}
@@ -0,0 +1,95 @@
+package library.database;
+
+import org.bson.Document;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         One write of a bulk write: either setting some fields of a single
+ *         document or soft deleting it. The document is picked by its _id along
+ *         with any other fields that must still match, and is skipped if it is
+ *         already deleted
+ */
+class DocumentWrite {
+	private final Document filter;
+	private final Document update;
+	private final boolean delete;
+
+	/**
+	 * Creates a write
+	 * 
+	 * @param filter Fields the document must have, including its _id
+	 * @param update Fields being set, or null if a delete sets nothing else
+	 * @param delete If the document is deleted
+	 */
+	private DocumentWrite(Document filter, Document update, boolean delete) {
+		if (filter.get("_id") == null) {
+			throw new IllegalArgumentException("A bulk write must pick its document by _id");
+		}
+		this.filter = filter;
+		this.update = update;
+		this.delete = delete;
+	}
+
+	/**
+	 * Creates a write that sets fields of a document
+	 * 
+	 * @param filter Fields the document must have, including its _id
+	 * @param update Fields being set and their values
+	 * @return Update
+	 */
+	static DocumentWrite update(Document filter, Document update) {
+		return new DocumentWrite(filter, update, false);
+	}
+
+	/**
+	 * Creates a write that soft deletes a document
+	 * 
+	 * @param filter Fields the document must have, including its _id
+	 * @return Delete
+	 */
+	static DocumentWrite delete(Document filter) {
+		return new DocumentWrite(filter, null, true);
+	}
+
+	/**
+	 * Creates a write that soft deletes a document and sets some other fields
+	 * along with the deleted flag, such as when it was changed
+	 * 
+	 * @param filter Fields the document must have, including its _id
+	 * @param fields Fields being set along with the flag
+	 * @return Delete
+	 */
+	static DocumentWrite delete(Document filter, Document fields) {
+		return new DocumentWrite(filter, fields, true);
+	}
+
+	/**
+	 * Returns the fields the document must have
+	 * 
+	 * @return Filter with the _id. It must not be changed
+	 */
+	Document getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Returns the fields being set
+	 * 
+	 * @return Fields and their values, or null for a delete that only sets the
+	 *         deleted flag. It must not be changed
+	 */
+	Document getUpdate() {
+		return update;
+	}
+
+	/**
+	 * Returns if the write deletes its document
+	 * 
+	 * @return If this is a delete
+	 */
+	boolean isDelete() {
+		return delete;
+	}
+}
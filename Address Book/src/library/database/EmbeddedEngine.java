@@ -0,0 +1,1044 @@
+package library.database;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+
+import library.storage.StorageManager;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Storage engine that keeps every collection in a file on the local
+ *         machine so the application can run without a MongoDB server.
+ * 
+ *         Each collection is an append-only log of BSON records. Every insert,
+ *         update, and delete appends the new version of the document followed
+ *         by a CRC32 of the record. The log is replayed when the engine
+ *         connects, which builds the primary index (by _id) and the secondary
+ *         index (by username) that all finds are served from.
+ * 
+ *         Writes from every collection go through a single writer thread that
+ *         commits them in groups, so many writes share one fsync, including
+ *         writes to the same collection. A write only reaches the indexes once
+ *         it has been synced, so finds never return a write that could still be
+ *         lost. A background task compacts a log once most of it is superseded
+ *         records.
+ * 
+ *         Soft-deleted documents are kept until they are purged, which appends
+ *         a purge record holding only the _id. Compaction drops both the purge
+ *         record and the document it purged.
+ */
+class EmbeddedEngine implements Database {
+	// How often logs are checked for compaction in seconds
+	private static final long COMPACTIONINTERVAL = 30;
+	// Logs with less garbage than this are never compacted
+	private static final long MINIMUMGARBAGE = 1 << 20;
+	// Largest number of writes committed with a single fsync
+	private static final int MAXGROUPSIZE = 1024;
+	// Bytes read from a log at a time while it is replayed
+	private static final int READBUFFER = 1 << 16;
+	// Field that marks a record as purging its document
+	private static final String PURGED = "$purged";
+
+	private static final String LOGEXTENSION = ".log";
+
+	private final ConcurrentMap<String, LogCollection> collections = new ConcurrentHashMap<String, LogCollection>();
+	private final DocumentCodec codec = new DocumentCodec();
+	private final BlockingQueue<PendingWrite> writeQueue = new LinkedBlockingQueue<PendingWrite>();
+	private Logger logger;
+	private File folder;
+	private volatile Thread writer;
+	// Set once the engine is closed, guarded by the write queue
+	private boolean closed;
+	private ScheduledExecutorService compactor;
+
+	/**
+	 * Sets up the engine with the level its logger should print at
+	 * 
+	 * @param level The level to which the engine's logger prints debug
+	 *              information to the console
+	 */
+	public EmbeddedEngine(Level level) {
+		logger = Logger.getLogger(EmbeddedEngine.class.getName());
+		logger.setLevel(level);
+	}
+
+	/**
+	 * Opens every collection log in the data folder and starts the writer and
+	 * compaction threads
+	 * 
+	 * @param connectionString "embedded:" followed by the data folder. If no
+	 *                         folder is given, the StorageManager data folder is
+	 *                         used
+	 */
+	@Override
+	public void connect(String connectionString) {
+		String path = connectionString.startsWith(DatabaseManager.EMBEDDEDCONNECTION)
+				? connectionString.substring(DatabaseManager.EMBEDDEDCONNECTION.length())
+				: "";
+		folder = new File(path.equals("") ? StorageManager.getDataFolder() : path);
+		folder.mkdirs();
+
+		long start = System.nanoTime();
+		File[] logs = folder.listFiles();
+		if (logs != null) {
+			for (File log : logs) {
+				String name = log.getName();
+				int dot = name.indexOf('.');
+				if (dot > 0 && name.endsWith(LOGEXTENSION)) {
+					getCollection(name.substring(0, dot),
+							name.substring(dot + 1, name.length() - LOGEXTENSION.length()));
+				}
+			}
+		}
+		logger.fine(String.format("Opened %d collections in %d ms", collections.size(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+		synchronized (writeQueue) {
+			closed = false;
+		}
+		writer = new Thread(this::writeLoop, "embedded-engine-writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "embedded-engine-compactor");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		compactor.scheduleWithFixedDelay(this::compactAll, COMPACTIONINTERVAL, COMPACTIONINTERVAL, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops taking writes, waits for the queued ones, stops the background
+	 * threads, and closes every log. Writes made after this throw an
+	 * IllegalStateException
+	 */
+	@Override
+	public void close() {
+		Thread current = writer;
+		PendingWrite last = new PendingWrite(null, null);
+		synchronized (writeQueue) {
+			if (current == null || closed) {
+				return;
+			}
+			closed = true;
+			// Every write queued before the engine was closed is ahead of this one
+			writeQueue.add(last);
+		}
+		compactor.shutdownNow();
+		await(last.done);
+		current.interrupt();
+		writer = null;
+		for (LogCollection collection : collections.values()) {
+			try {
+				collection.channel.close();
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Unable to close " + collection.file, e);
+			}
+		}
+		collections.clear();
+	}
+
+	/**
+	 * The engine can be used as long as its writer thread is running
+	 */
+	@Override
+	public boolean ping() {
+		return writer != null && writer.isAlive();
+	}
+
+	/**
+	 * Queries are matched the same way as by the in-memory engine, exactly
+	 */
+	@Override
+	public boolean supportsQueryOperators(Document query) {
+		return false;
+	}
+
+	@Override
+	public void setDebuggerLevel(Level level) {
+		logger.setLevel(level);
+	}
+
+	/**
+	 * Returns a collection, opening or creating its log if it is not open yet
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @return Collection from the database
+	 */
+	private LogCollection getCollection(String databaseName, String collectionName) {
+		return collections.computeIfAbsent(databaseName + "." + collectionName, name -> {
+			try {
+				return new LogCollection(databaseName, new File(folder, name + LOGEXTENSION));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	@Override
+	public <T> void insertDocument(String databaseName, String collectionName, Class<T> type, T value) {
+		Document doc = Codecs.toDocument(value, type);
+		doc.append("deleted", false);
+		if (!doc.containsKey("_id")) {
+			doc.append("_id", new ObjectId());
+		}
+		Map<Integer, String> errors = getCollection(databaseName, collectionName)
+				.insert(Collections.singletonList(new Document(doc)));
+		if (!errors.isEmpty()) {
+			throw new IllegalStateException(errors.get(0));
+		}
+	}
+
+	@Override
+	public <T> Map<Integer, String> insertDocuments(String databaseName, String collectionName, Class<T> type,
+			List<T> values) {
+		List<Document> copies = new ArrayList<Document>(values.size());
+		for (T value : values) {
+			Document doc = Codecs.toDocument(value, type);
+			doc.append("deleted", false);
+			if (!doc.containsKey("_id")) {
+				doc.append("_id", new ObjectId());
+			}
+			copies.add(new Document(doc));
+		}
+		return getCollection(databaseName, collectionName).insert(copies);
+	}
+
+	@Override
+	public void deleteDocument(String databaseName, String collectionName, Document query) {
+		getCollection(databaseName, collectionName).update(new Document(query).append("deleted", false),
+				new Document().append("deleted", true).append("dateDeleted", new Date()));
+	}
+
+	@Override
+	public Cursor<Document> getDeletedDocuments(String databaseName, String collectionName, Date deletedBefore,
+			int batchSize) {
+		return Cursors.map(Cursors.of(getCollection(databaseName, collectionName).deleted(deletedBefore).iterator()),
+				Document::new);
+	}
+
+	@Override
+	public long purgeDocuments(String databaseName, String collectionName, List<Object> ids) {
+		return getCollection(databaseName, collectionName).purge(ids);
+	}
+
+	@Override
+	public Cursor<Document> getChangedDocuments(String databaseName, String collectionName, Document query,
+			Date changedAfter, int batchSize) {
+		List<Document> changed = new ArrayList<Document>();
+		for (Document doc : getCollection(databaseName, collectionName).matching(query)) {
+			if (MemoryEngine.isChangedAfter(doc, changedAfter)) {
+				changed.add(doc);
+			}
+		}
+		return Cursors.map(Cursors.of(changed.iterator()), Document::new);
+	}
+
+	@Override
+	public void putDocuments(String databaseName, String collectionName, List<Document> docs) {
+		List<Document> copies = new ArrayList<Document>(docs.size());
+		for (Document doc : docs) {
+			copies.add(new Document(doc));
+		}
+		getCollection(databaseName, collectionName).put(copies);
+	}
+
+	@Override
+	public void updateDocument(String databaseName, String collectionName, Document query, Document update) {
+		getCollection(databaseName, collectionName).update(query, update);
+	}
+
+	@Override
+	public List<WriteResult> writeDocuments(String databaseName, String collectionName, List<DocumentWrite> writes,
+			String writeConcern, long timeoutMillis) {
+		return getCollection(databaseName, collectionName).write(writes, new Date());
+	}
+
+	@Override
+	public <T> Cursor<T> getDocument(String databaseName, String collectionName, Class<T> type, Document query,
+			Document projection, int batchSize) {
+		return getCollection(databaseName, collectionName).find(query.append("deleted", false), type, projection);
+	}
+
+	@Override
+	public <T> Cursor<T> getSortedDocument(String databaseName, String collectionName, Class<T> type,
+			Document query, Document projection, List<String> sortFields, Document after, boolean descending,
+			int limit) {
+		List<Document> matches = getCollection(databaseName, collectionName).matching(query.append("deleted", false));
+		return Cursors.map(Cursors.of(MemoryEngine.range(matches, sortFields, after, descending, limit).iterator()),
+				doc -> Codecs.fromDocument(MemoryEngine.project(doc, projection), type));
+	}
+
+	/**
+	 * This engine always keeps its _id and username indexes, so declared indexes
+	 * are ignored
+	 */
+	@Override
+	public void createIndex(String databaseName, String collectionName, Document keys, Document options) {
+	}
+
+	@Override
+	public void dropIndex(String databaseName, String collectionName, String indexName) {
+	}
+
+	@Override
+	public List<String> getIndexNames(String databaseName, String collectionName) {
+		List<String> names = new ArrayList<String>();
+		names.add("_id_");
+		names.add("username");
+		return names;
+	}
+
+	@Override
+	public Document explain(String databaseName, String collectionName, Document query, Document projection,
+			Document sort) {
+		Document plan = query.get("username") instanceof String
+				? new Document("stage", "FETCH").append("inputStage",
+						new Document("stage", "IXSCAN").append("indexName", "username"))
+				: new Document("stage", "COLLSCAN");
+		if (sort != null) {
+			plan = new Document("stage", "SORT").append("inputStage", plan);
+		}
+		return new Document("queryPlanner", new Document("winningPlan", plan));
+	}
+
+	@Override
+	public List<String> getDatabases() {
+		Set<String> names = new LinkedHashSet<String>();
+		for (LogCollection collection : collections.values()) {
+			names.add(collection.databaseName);
+		}
+		return new ArrayList<String>(names);
+	}
+
+	/**
+	 * The logs are read once when the engine connects and are only written by
+	 * this program afterwards, so there are no other clients to follow
+	 */
+	@Override
+	public Cursor<ChangeEvent> watchChanges(String databaseName, String collectionName) {
+		return null;
+	}
+
+	/**
+	 * Encodes a document as a log record: the BSON document followed by the CRC32
+	 * of the BSON bytes
+	 * 
+	 * @param doc Document being encoded
+	 * @return Record bytes
+	 */
+	private byte[] encode(Document doc) {
+		BasicOutputBuffer buffer = new BasicOutputBuffer();
+		codec.encode(new BsonBinaryWriter(buffer), doc, EncoderContext.builder().build());
+		byte[] bson = buffer.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(bson);
+		return ByteBuffer.allocate(bson.length + 4).order(ByteOrder.LITTLE_ENDIAN).put(bson)
+				.putInt((int) crc.getValue()).array();
+	}
+
+	/**
+	 * Waits for a write to be committed to disk
+	 * 
+	 * @param write Future that completes once the write has been synced
+	 */
+	private static void await(CompletableFuture<Void> write) {
+		try {
+			write.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a write to be committed", e);
+		} catch (ExecutionException e) {
+			throw new UncheckedIOException(new IOException(e.getCause()));
+		}
+	}
+
+	/**
+	 * Hands a record to the writer thread
+	 * 
+	 * @param collection Collection the record belongs to
+	 * @param record     Record bytes, or null to wait for every write already
+	 *                   queued for the collection
+	 * @return Future that completes once the record has been synced
+	 * @throws IllegalStateException Thrown if the engine is closed
+	 */
+	private CompletableFuture<Void> append(LogCollection collection, byte[] record) {
+		PendingWrite write = new PendingWrite(collection, record);
+		synchronized (writeQueue) {
+			if (closed) {
+				throw new IllegalStateException("The embedded engine is closed");
+			}
+			writeQueue.add(write);
+		}
+		return write.done;
+	}
+
+	/**
+	 * Writes queued records in groups. Every log touched by a group is synced once
+	 * before any of the writers in the group are released
+	 */
+	private void writeLoop() {
+		List<PendingWrite> group = new ArrayList<PendingWrite>();
+		Set<LogCollection> touched = new HashSet<LogCollection>();
+		while (true) {
+			try {
+				group.add(writeQueue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			writeQueue.drainTo(group, MAXGROUPSIZE - 1);
+			try {
+				for (PendingWrite write : group) {
+					if (write.record != null) {
+						writeFully(write.collection.channel, ByteBuffer.wrap(write.record));
+						touched.add(write.collection);
+					}
+				}
+				for (LogCollection collection : touched) {
+					collection.channel.force(false);
+				}
+				for (PendingWrite write : group) {
+					write.done.complete(null);
+				}
+			} catch (IOException e) {
+				logger.log(Level.SEVERE, "Unable to write to the log", e);
+				for (PendingWrite write : group) {
+					write.done.completeExceptionally(e);
+				}
+			}
+			group.clear();
+			touched.clear();
+		}
+	}
+
+	/**
+	 * Writes the entire buffer to a channel
+	 * 
+	 * @param channel Channel being written to
+	 * @param buffer  Bytes being written
+	 * @throws IOException Thrown if the channel can not be written to
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Compacts every log that has enough superseded and deleted records
+	 */
+	private void compactAll() {
+		for (LogCollection collection : collections.values()) {
+			try {
+				collection.compact();
+			} catch (IOException | RuntimeException e) {
+				logger.log(Level.WARNING, "Unable to compact " + collection.file, e);
+			}
+		}
+	}
+
+	/**
+	 * A record waiting for the writer thread
+	 */
+	private static class PendingWrite {
+		final LogCollection collection;
+		final byte[] record;
+		final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+		PendingWrite(LogCollection collection, byte[] record) {
+			this.collection = collection;
+			this.record = record;
+		}
+	}
+
+	/**
+	 * A record handed to the writer thread that is not in the indexes yet
+	 */
+	private static class StagedRecord {
+		final Document doc;
+		final int size;
+		final CompletableFuture<Void> done;
+
+		StagedRecord(Document doc, int size, CompletableFuture<Void> done) {
+			this.doc = doc;
+			this.size = size;
+			this.done = done;
+		}
+	}
+
+	/**
+	 * A single collection along with its log and indexes. Documents in the indexes
+	 * are never changed in place, an update always replaces the document with a
+	 * new copy.
+	 * 
+	 * Writers take turns through the writing lock, which they hold from reading
+	 * the documents they change until the new versions are handed to the writer
+	 * thread. They wait for the sync after letting go of it, so the writers of a
+	 * collection share an fsync. Versions that are appended but not synced yet
+	 * are staged, and the next writer reads through them. Synced records are put
+	 * into the indexes in the order they were logged, under the write lock.
+	 * Readers only need the read lock, so they are not held up while a write is
+	 * being synced
+	 */
+	private class LogCollection {
+		final String databaseName;
+		final File file;
+		volatile FileChannel channel;
+
+		final Map<Object, Document> documents = new LinkedHashMap<Object, Document>();
+		final Map<Object, Integer> recordSizes = new HashMap<Object, Integer>();
+		final Map<String, Set<Object>> usernames = new HashMap<String, Set<Object>>();
+		final ReadWriteLock lock = new ReentrantReadWriteLock();
+		final Lock writing = new ReentrantLock();
+		// Newest version of each document that is appended but not in the
+		// indexes yet
+		final Map<Object, Document> staged = new ConcurrentHashMap<Object, Document>();
+		// Records appended but not in the indexes yet, in the order they were
+		// logged
+		final Queue<StagedRecord> unapplied = new ConcurrentLinkedQueue<StagedRecord>();
+
+		// Size of the log and how much of it is superseded or deleted records
+		long logSize;
+		long garbage;
+
+		LogCollection(String databaseName, File file) throws IOException {
+			this.databaseName = databaseName;
+			this.file = file;
+			if (file.exists()) {
+				load();
+			}
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+		}
+
+		/**
+		 * Replays the log into the indexes. A torn record at the end of the log
+		 * (left by a crash in the middle of a write) is cut off. The log is read
+		 * through its channel rather than mapped, since a mapped file can not be
+		 * truncated on every platform
+		 */
+		private void load() throws IOException {
+			try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				long size = in.size();
+				DataInputStream records = new DataInputStream(
+						new BufferedInputStream(Channels.newInputStream(in), READBUFFER));
+				byte[] record = new byte[READBUFFER];
+				ByteBuffer view = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+				long position = 0;
+				CRC32 crc = new CRC32();
+				while (position + 4 <= size) {
+					// The length leads the BSON document and counts itself
+					int length = Integer.reverseBytes(records.readInt());
+					if (length < 5 || position + length + 4L > size) {
+						break;
+					}
+					if (record.length < length + 4) {
+						record = new byte[Math.max(length + 4, record.length * 2)];
+						view = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+					}
+					view.putInt(0, length);
+					records.readFully(record, 4, length);
+					crc.reset();
+					crc.update(record, 0, length);
+					if ((int) crc.getValue() != view.getInt(length)) {
+						break;
+					}
+					Document doc = codec.decode(
+							new BsonBinaryReader(ByteBuffer.wrap(record, 0, length).order(ByteOrder.LITTLE_ENDIAN)),
+							DecoderContext.builder().build());
+					apply(doc, length + 4);
+					position += length + 4;
+				}
+				if (position < size) {
+					logger.warning(String.format("Discarding %d bytes of incomplete records at the end of %s",
+							size - position, file));
+					in.truncate(position);
+				}
+			}
+		}
+
+		/**
+		 * Puts a document into the indexes and accounts for the record it replaces.
+		 * A purge record removes its document instead
+		 * 
+		 * @param doc        New version of the document
+		 * @param recordSize Size of the record in the log
+		 */
+		private void apply(Document doc, int recordSize) {
+			Object id = doc.get("_id");
+			logSize += recordSize;
+			if (doc.containsKey(PURGED)) {
+				garbage += recordSize;
+				if (documents.containsKey(id)) {
+					garbage += recordSizes.get(id);
+					remove(id);
+				}
+				return;
+			}
+			Document old = documents.put(id, doc);
+			Integer oldSize = recordSizes.put(id, recordSize);
+			if (old != null) {
+				garbage += oldSize;
+			}
+
+			Object oldUsername = old == null ? null : old.get("username");
+			Object username = doc.get("username");
+			if (oldUsername instanceof String && !oldUsername.equals(username)) {
+				Set<Object> ids = usernames.get(oldUsername);
+				ids.remove(id);
+				if (ids.isEmpty()) {
+					usernames.remove(oldUsername);
+				}
+			}
+			if (username instanceof String) {
+				usernames.computeIfAbsent((String) username, key -> new LinkedHashSet<Object>()).add(id);
+			}
+		}
+
+		/**
+		 * Removes a document from the indexes
+		 * 
+		 * @param id _id of the document
+		 */
+		private void remove(Object id) {
+			Document old = documents.remove(id);
+			recordSizes.remove(id);
+			Object username = old.get("username");
+			if (username instanceof String) {
+				Set<Object> ids = usernames.get(username);
+				ids.remove(id);
+				if (ids.isEmpty()) {
+					usernames.remove(username);
+				}
+			}
+		}
+
+		/**
+		 * Returns the _ids that could match a query, using the username index when
+		 * the query has a username
+		 * 
+		 * @param query Query being run
+		 * @return Candidate _ids
+		 */
+		private Iterable<Object> candidates(Document query) {
+			Object username = query.get("username");
+			if (username instanceof String) {
+				Set<Object> ids = usernames.get(username);
+				return ids == null ? new ArrayList<Object>() : ids;
+			}
+			return documents.keySet();
+		}
+
+		/**
+		 * Returns the _ids that a write could match, which are the candidates of the
+		 * indexes and every staged document. Must be called while holding the
+		 * writing lock and the read lock
+		 * 
+		 * @param query Query being run
+		 * @return Candidate _ids
+		 */
+		private Iterable<Object> writeCandidates(Document query) {
+			if (staged.isEmpty()) {
+				return candidates(query);
+			}
+			Set<Object> ids = new LinkedHashSet<Object>();
+			for (Object id : candidates(query)) {
+				ids.add(id);
+			}
+			ids.addAll(staged.keySet());
+			return ids;
+		}
+
+		/**
+		 * Returns the newest version of a document, staged or in the indexes. Must
+		 * be called while holding the writing lock and the read lock
+		 * 
+		 * @param id _id of the document
+		 * @return Document, or null if there is none or it is being purged
+		 */
+		private Document current(Object id) {
+			Document doc = staged.get(id);
+			if (doc == null) {
+				return documents.get(id);
+			}
+			return doc.containsKey(PURGED) ? null : doc;
+		}
+
+		/**
+		 * Hands new versions of documents to the writer thread and stages them.
+		 * Must be called while holding the writing lock, so records are staged in
+		 * the order they are logged
+		 * 
+		 * @param docs New versions of documents, or purge records
+		 * @return Futures that complete once each record has been synced
+		 */
+		private List<CompletableFuture<Void>> stage(List<Document> docs) {
+			List<CompletableFuture<Void>> writes = new ArrayList<CompletableFuture<Void>>(docs.size());
+			for (Document doc : docs) {
+				byte[] record = encode(doc);
+				// Staged before it is appended, so it can not be applied first
+				staged.put(doc.get("_id"), doc);
+				CompletableFuture<Void> write = append(this, record);
+				unapplied.add(new StagedRecord(doc, record.length, write));
+				writes.add(write);
+			}
+			return writes;
+		}
+
+		/**
+		 * Waits for staged records to be synced, then puts every synced record into
+		 * the indexes. Must be called without holding the writing lock
+		 * 
+		 * @param writes Futures of the records
+		 */
+		private void sync(List<CompletableFuture<Void>> writes) {
+			RuntimeException failure = null;
+			for (CompletableFuture<Void> write : writes) {
+				try {
+					await(write);
+				} catch (RuntimeException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+			applySynced();
+			if (failure != null) {
+				throw failure;
+			}
+		}
+
+		/**
+		 * Puts the staged records that are done into the indexes, in the order they
+		 * were logged. The writer thread finishes records in that order, so once a
+		 * record is done every record before it is too. A record that could not be
+		 * written is only unstaged
+		 */
+		private void applySynced() {
+			lock.writeLock().lock();
+			try {
+				StagedRecord next;
+				while ((next = unapplied.peek()) != null && next.done.isDone()) {
+					unapplied.poll();
+					if (!next.done.isCompletedExceptionally()) {
+						apply(next.doc, next.size);
+					}
+					staged.remove(next.doc.get("_id"), next.doc);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		/**
+		 * Adds documents whose _id is not taken yet
+		 * 
+		 * @return Position of each document that was not added mapped to the reason
+		 *         why
+		 */
+		Map<Integer, String> insert(List<Document> docs) {
+			Map<Integer, String> errors = new HashMap<Integer, String>();
+			List<CompletableFuture<Void>> writes;
+			writing.lock();
+			try {
+				List<Document> accepted = new ArrayList<Document>(docs.size());
+				Set<Object> ids = new HashSet<Object>();
+				lock.readLock().lock();
+				try {
+					for (int i = 0; i < docs.size(); i++) {
+						Object id = docs.get(i).get("_id");
+						if (current(id) != null || !ids.add(id)) {
+							errors.put(i, MemoryEngine.duplicateKey(id));
+						} else {
+							accepted.add(docs.get(i));
+						}
+					}
+				} finally {
+					lock.readLock().unlock();
+				}
+				writes = stage(accepted);
+			} finally {
+				writing.unlock();
+			}
+			sync(writes);
+			return errors;
+		}
+
+		/**
+		 * Adds documents, replacing any stored under the same _id
+		 */
+		void put(List<Document> docs) {
+			List<CompletableFuture<Void>> writes;
+			writing.lock();
+			try {
+				writes = stage(docs);
+			} finally {
+				writing.unlock();
+			}
+			sync(writes);
+		}
+
+		void update(Document query, Document update) {
+			List<CompletableFuture<Void>> writes;
+			writing.lock();
+			try {
+				List<Document> changed = new ArrayList<Document>();
+				lock.readLock().lock();
+				try {
+					for (Object id : writeCandidates(query)) {
+						Document doc = current(id);
+						if (doc != null && MemoryEngine.matches(doc, query)) {
+							Document updated = new Document(doc);
+							updated.putAll(update);
+							changed.add(updated);
+						}
+					}
+				} finally {
+					lock.readLock().unlock();
+				}
+				writes = stage(changed);
+			} finally {
+				writing.unlock();
+			}
+			sync(writes);
+		}
+
+		/**
+		 * Makes many writes in one turn. Each document is looked up by its _id, and
+		 * the new versions are committed together by the writer thread
+		 */
+		List<WriteResult> write(List<DocumentWrite> writes, Date now) {
+			List<WriteResult> results = new ArrayList<WriteResult>(writes.size());
+			List<CompletableFuture<Void>> records;
+			writing.lock();
+			try {
+				List<Document> changed = new ArrayList<Document>();
+				lock.readLock().lock();
+				try {
+					for (int i = 0; i < writes.size(); i++) {
+						DocumentWrite write = writes.get(i);
+						Object id = write.getFilter().get("_id");
+						Document doc = current(id);
+						if (doc == null || !MemoryEngine.matches(doc, write.getFilter())
+								|| MemoryEngine.isDeleted(doc)) {
+							results.add(new WriteResult(i, id, WriteResult.Status.NOTFOUND, null));
+							continue;
+						}
+						Document updated = new Document(doc);
+						updated.putAll(MemoryEngine.changes(write, now));
+						changed.add(updated);
+						results.add(new WriteResult(i, id, WriteResult.Status.APPLIED, null));
+					}
+				} finally {
+					lock.readLock().unlock();
+				}
+				records = stage(changed);
+			} finally {
+				writing.unlock();
+			}
+			sync(records);
+			return results;
+		}
+
+		/**
+		 * Finds the documents matching a query. Only references are collected while
+		 * the lock is held, each document is projected and decoded (or copied) as
+		 * the cursor reaches it
+		 */
+		<T> Cursor<T> find(Document query, Class<T> type, Document projection) {
+			return Cursors.map(Cursors.of(matching(query).iterator()),
+					doc -> Codecs.fromDocument(MemoryEngine.project(doc, projection), type));
+		}
+
+		/**
+		 * Returns the stored tombstones deleted before a point in time. The
+		 * documents must not be changed
+		 */
+		List<Document> deleted(Date before) {
+			List<Document> out = new ArrayList<Document>();
+			lock.readLock().lock();
+			try {
+				for (Document doc : documents.values()) {
+					if (MemoryEngine.isDeletedBefore(doc, before)) {
+						out.add(doc);
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+			return out;
+		}
+
+		/**
+		 * Removes the tombstones with the given _ids by appending a purge record for
+		 * each of them
+		 */
+		long purge(List<Object> ids) {
+			List<Document> purges = new ArrayList<Document>();
+			List<CompletableFuture<Void>> writes;
+			writing.lock();
+			try {
+				lock.readLock().lock();
+				try {
+					for (Object id : ids) {
+						Document doc = current(id);
+						if (doc != null && MemoryEngine.isDeleted(doc)) {
+							purges.add(new Document("_id", id).append(PURGED, true));
+						}
+					}
+				} finally {
+					lock.readLock().unlock();
+				}
+				writes = stage(purges);
+			} finally {
+				writing.unlock();
+			}
+			sync(writes);
+			return purges.size();
+		}
+
+		/**
+		 * Returns the stored documents matching a query. The documents must not be
+		 * changed
+		 */
+		List<Document> matching(Document query) {
+			List<Document> out = new ArrayList<Document>();
+			lock.readLock().lock();
+			try {
+				for (Object id : candidates(query)) {
+					Document doc = documents.get(id);
+					if (MemoryEngine.matches(doc, query)) {
+						out.add(doc);
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+			return out;
+		}
+
+		/**
+		 * Rewrites the log without superseded and purged records once they make up
+		 * most of it.
+		 * 
+		 * The live documents are written to a new log without holding the writing
+		 * lock. Records appended in the meantime are then copied over and the new
+		 * log replaces the old one, so writers are only blocked for that last step
+		 * 
+		 * @throws IOException Thrown if the new log can not be written
+		 */
+		void compact() throws IOException {
+			List<Document> live;
+			long snapshotPosition;
+			long snapshotGarbage;
+			writing.lock();
+			try {
+				// Every record appended so far is synced and put into the indexes, so
+				// the indexes match the log
+				await(append(this, null));
+				applySynced();
+				lock.readLock().lock();
+				try {
+					if (garbage < MINIMUMGARBAGE || garbage < logSize / 2) {
+						return;
+					}
+					snapshotPosition = logSize;
+					snapshotGarbage = garbage;
+					live = new ArrayList<Document>(documents.values());
+				} finally {
+					lock.readLock().unlock();
+				}
+			} finally {
+				writing.unlock();
+			}
+
+			File compacted = new File(file.getPath() + ".compact");
+			try (FileChannel out = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				for (Document doc : live) {
+					writeFully(out, ByteBuffer.wrap(encode(doc)));
+				}
+
+				writing.lock();
+				try {
+					await(append(this, null));
+					applySynced();
+					try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+						long position = snapshotPosition;
+						while (position < logSize) {
+							position += in.transferTo(position, logSize - position, out);
+						}
+					}
+					out.force(true);
+					long before = logSize;
+					Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+					channel.close();
+					channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+					lock.writeLock().lock();
+					try {
+						logSize = channel.size();
+						garbage -= snapshotGarbage;
+					} finally {
+						lock.writeLock().unlock();
+					}
+					logger.fine(String.format("Compacted %s from %d to %d bytes", file, before, logSize));
+				} finally {
+					writing.unlock();
+				}
+			}
+		}
+	}
+}
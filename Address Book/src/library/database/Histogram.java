@@ -0,0 +1,130 @@
+package library.database;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Counts values in buckets that grow with the value, the way an HDR
+ *         histogram does, so percentiles of anything from nanoseconds to hours
+ *         can be read back with about 3% error from a fixed amount of memory.
+ * 
+ *         Values below 32 each get their own bucket. Above that, every power of
+ *         two is split into 32 buckets of equal width. Recording a value is a
+ *         few shifts and an atomic increment, so many threads can record at
+ *         once without locking
+ */
+class Histogram {
+	// Bits of precision kept for each value
+	private static final int SUBBITS = 5;
+	private static final int SUBCOUNT = 1 << SUBBITS;
+	// Enough buckets for every value a long can hold
+	private static final int BUCKETS = SUBCOUNT + (63 - SUBBITS) * SUBCOUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Counts a value
+	 * 
+	 * @param value Value being counted. Negative values are counted as 0
+	 */
+	void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(index(value));
+		count.increment();
+		total.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * Returns the number of values counted
+	 * 
+	 * @return Count
+	 */
+	long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the sum of the values counted
+	 * 
+	 * @return Total
+	 */
+	long getTotal() {
+		return total.sum();
+	}
+
+	/**
+	 * Returns the largest value counted
+	 * 
+	 * @return Largest value, or 0 if none were counted
+	 */
+	long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the value that a share of the counted values are at or below
+	 * 
+	 * @param quantile Share of the values, such as 0.99 for the 99th percentile
+	 * @return Highest value of the bucket the percentile falls in, but never more
+	 *         than the largest value counted. 0 if no values were counted
+	 */
+	long getPercentile(double quantile) {
+		long[] snapshot = new long[BUCKETS];
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			seen += snapshot[i];
+		}
+		if (seen == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(quantile * seen));
+		long running = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			running += snapshot[i];
+			if (running >= target) {
+				return Math.min(highestValue(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Returns the bucket a value is counted in
+	 * 
+	 * @param value Value that is not negative
+	 * @return Position of the bucket
+	 */
+	static int index(long value) {
+		if (value < SUBCOUNT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUBBITS;
+		return SUBCOUNT + shift * SUBCOUNT + (int) (value >>> shift) - SUBCOUNT;
+	}
+
+	/**
+	 * Returns the highest value counted in a bucket
+	 * 
+	 * @param index Position of the bucket
+	 * @return Highest value
+	 */
+	static long highestValue(int index) {
+		if (index < SUBCOUNT) {
+			return index;
+		}
+		int shift = (index - SUBCOUNT) / SUBCOUNT;
+		long lowest = (long) (SUBCOUNT + (index - SUBCOUNT) % SUBCOUNT) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,251 @@
+package library.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.Document;
+
+import library.query.MongoCompiler;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Declares the indexes that the queries made by the application need
+ *         and makes sure they exist. Running it again does nothing once every
+ *         index is in place, so it is run every time the application connects.
+ * 
+ *         Indexes that are no longer declared are listed as retired and are
+ *         dropped if they are found.
+ * 
+ *         Addresses stored before they kept lower-cased copies of their listed
+ *         fields are given the copies, so searches that ignore case find them.
+ */
+class IndexManager {
+	private static final Document LIVE = new Document("deleted", false);
+	// Number of addresses read at a time while adding lower-cased copies
+	private static final int COPYBATCH = 1000;
+
+	// Every index the application needs
+	private static final List<IndexDefinition> INDEXES = indexes(Arrays.asList(
+			// Usernames are unique among users that have not been deleted. Serves
+			// logging in and checking if a username is taken
+			new IndexDefinition(DatabaseManager.USERSCOLLECTION, "users_username_unique",
+					new Document("username", 1),
+					new Document("unique", true).append("partialFilterExpression", LIVE)),
+			// Serves browsing, searching, and removing a user's addresses. The sort
+			// fields follow the equality fields so pages come out of the index in
+			// order, and every listed field is in the index so lists are covered
+			// queries that never read the addresses themselves
+			new IndexDefinition(DatabaseManager.ADDRESSCOLLECTION, "addresses_username_deleted_name_id_covering",
+					new Document("username", 1).append("deleted", 1).append("lastName", 1).append("firstName", 1)
+							.append("_id", 1).append("street", 1).append("city", 1).append("state", 1)
+							.append("zip", 1),
+					new Document()),
+			// Serves the purge, which looks for addresses deleted before the end of
+			// the retention period. Only deleted addresses are in the index
+			new IndexDefinition(DatabaseManager.ADDRESSCOLLECTION, "addresses_tombstones_dateDeleted",
+					new Document("dateDeleted", 1),
+					new Document("partialFilterExpression", new Document("deleted", true))),
+			// Serves the local replica, which copies the addresses of a user that
+			// were changed since its last copy, deleted ones included
+			new IndexDefinition(DatabaseManager.ADDRESSCOLLECTION, "addresses_username_dateModified",
+					new Document("username", 1).append("dateModified", 1), new Document())));
+
+	// Indexes that used to be declared. They are dropped when found
+	private static final List<IndexDefinition> RETIRED = Collections.emptyList();
+
+	private final Database database;
+	private final String databaseName;
+	private final Logger logger = Logger.getLogger(IndexManager.class.getName());
+
+	/**
+	 * Creates an index manager for a database
+	 * 
+	 * @param database     Storage engine the indexes are created in
+	 * @param databaseName Name of the database
+	 */
+	IndexManager(Database database, String databaseName) {
+		this.database = database;
+		this.databaseName = databaseName;
+	}
+
+	/**
+	 * Adds an index on the lower-cased copy of every listed field to the declared
+	 * indexes. Each serves searching a user's addresses for the start of that
+	 * field in any case, which can then seek to the prefix
+	 * 
+	 * @param indexes Declared indexes
+	 * @return Declared indexes and the indexes on the copies
+	 */
+	private static List<IndexDefinition> indexes(List<IndexDefinition> indexes) {
+		List<IndexDefinition> all = new ArrayList<IndexDefinition>(indexes);
+		for (String field : DatabaseManager.LISTFIELDS) {
+			String copy = MongoCompiler.lowerCaseField(field);
+			all.add(new IndexDefinition(DatabaseManager.ADDRESSCOLLECTION, "addresses_username_deleted_" + copy,
+					new Document("username", 1).append("deleted", 1).append(copy, 1), new Document()));
+		}
+		return all;
+	}
+
+	/**
+	 * Creates every declared index that does not exist yet and drops retired
+	 * indexes. An index that can not be created (such as a unique index over
+	 * existing duplicates) is logged and skipped so the application can still
+	 * start
+	 */
+	void ensureIndexes() {
+		addLowerCaseCopies();
+		for (IndexDefinition index : RETIRED) {
+			if (database.getIndexNames(databaseName, index.collection).contains(index.name)) {
+				database.dropIndex(databaseName, index.collection, index.name);
+				logger.fine("Dropped retired index " + index.name);
+			}
+		}
+		for (IndexDefinition index : INDEXES) {
+			if (database.getIndexNames(databaseName, index.collection).contains(index.name)) {
+				continue;
+			}
+			try {
+				database.createIndex(databaseName, index.collection, index.keys,
+						new Document(index.options).append("name", index.name));
+				logger.fine("Created index " + index.name);
+			} catch (RuntimeException e) {
+				logger.log(Level.WARNING, "Unable to create index " + index.name, e);
+			}
+		}
+	}
+
+	/**
+	 * Gives the lower-cased copies of their listed fields to the addresses that
+	 * do not have them yet. Only engines that answer query operators are
+	 * searched by the copies, so the addresses of the others are left alone
+	 */
+	private void addLowerCaseCopies() {
+		List<Document> missing = new ArrayList<Document>();
+		Document projection = new Document();
+		for (String field : DatabaseManager.LISTFIELDS) {
+			missing.add(new Document(MongoCompiler.lowerCaseField(field), new Document("$exists", false)));
+			projection.append(field, 1);
+		}
+		Document query = new Document("$or", missing);
+		if (!database.supportsQueryOperators(query)) {
+			return;
+		}
+		int copied = 0;
+		try (Cursor<Document> out = database.getDocument(databaseName, DatabaseManager.ADDRESSCOLLECTION,
+				Document.class, query, projection, COPYBATCH)) {
+			while (out.hasNext()) {
+				Document address = out.next();
+				Document copies = new Document();
+				for (String field : DatabaseManager.LISTFIELDS) {
+					copies.append(field, address.get(field));
+				}
+				database.updateDocument(databaseName, DatabaseManager.ADDRESSCOLLECTION,
+						new Document("_id", address.get("_id")),
+						DatabaseManager.withLowerCaseCopies(copies));
+				copied++;
+			}
+		}
+		if (copied > 0) {
+			logger.fine("Added lower-cased copies to " + copied + " addresses");
+		}
+	}
+
+	/**
+	 * Explains every query shape the console sends to the database and sums up
+	 * each plan
+	 * 
+	 * @param username User whose queries are explained
+	 * @return Description of each query mapped to a summary of its plan
+	 */
+	Map<String, String> explainQueries(String username) {
+		Map<String, String> plans = new LinkedHashMap<String, String>();
+		Document byName = new Document("username", username).append("deleted", false);
+		Document sortByName = new Document();
+		for (String field : PageRequest.SORTFIELDS) {
+			sortByName.append(field, 1);
+		}
+		// Lists read the listed fields, and pages read the sort fields as well
+		Document page = DatabaseManager.projection(DatabaseManager.LISTFIELDS, true);
+		Document list = DatabaseManager.projection(DatabaseManager.LISTFIELDS, false);
+
+		plans.put("Log in", explain(DatabaseManager.USERSCOLLECTION,
+				new Document(byName).append("hashedPassword", ""), null, null));
+		plans.put("Check if a username is taken", explain(DatabaseManager.USERSCOLLECTION, byName, null, null));
+		plans.put("View address book", explain(DatabaseManager.ADDRESSCOLLECTION, byName, page, sortByName));
+		plans.put("Search by last name", explain(DatabaseManager.ADDRESSCOLLECTION,
+				new Document(byName).append("lastName", ""), page, sortByName));
+		plans.put("Search by city", explain(DatabaseManager.ADDRESSCOLLECTION,
+				new Document(byName).append("city", ""), page, sortByName));
+		plans.put("Search by the start of a last name in any case", explain(DatabaseManager.ADDRESSCOLLECTION,
+				new Document(byName).append(MongoCompiler.lowerCaseField("lastName"), new Document("$regex", "^a")),
+				page, sortByName));
+		plans.put("Remove by first and last name", explain(DatabaseManager.ADDRESSCOLLECTION,
+				new Document(byName).append("firstName", "").append("lastName", ""), list, null));
+		plans.put("Edit by first and last name", explain(DatabaseManager.ADDRESSCOLLECTION,
+				new Document(byName).append("firstName", "").append("lastName", ""), null, null));
+		return plans;
+	}
+
+	/**
+	 * Explains a single query and sums up its winning plan
+	 * 
+	 * @param collectionName Collection being queried
+	 * @param query          Query being explained
+	 * @param projection     Fields returned by the query, or null for whole
+	 *                       documents
+	 * @param sort           Sort order of the query, or null if it is not sorted
+	 * @return Stages of the plan from last to first, ending with whether the
+	 *         query is served or even covered by an index
+	 */
+	private String explain(String collectionName, Document query, Document projection, Document sort) {
+		Document plan = database.explain(databaseName, collectionName, query, projection, sort)
+				.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+		if (plan.containsKey("queryPlan")) {
+			plan = plan.get("queryPlan", Document.class);
+		}
+		StringBuilder out = new StringBuilder();
+		boolean indexed = false;
+		boolean fetched = false;
+		while (plan != null) {
+			if (out.length() > 0) {
+				out.append(" <- ");
+			}
+			String stage = plan.getString("stage");
+			out.append(stage);
+			if (plan.containsKey("indexName")) {
+				out.append(" (").append(plan.getString("indexName")).append(")");
+			}
+			indexed |= stage.equals("IXSCAN") || stage.equals("IDHACK") || stage.equals("COUNT_SCAN");
+			fetched |= stage.equals("FETCH") || stage.equals("COLLSCAN");
+			plan = plan.get("inputStage", Document.class);
+		}
+		if (indexed && !fetched && projection != null) {
+			return out.append(" : covered by an index").toString();
+		}
+		return out.append(indexed ? " : served by an index" : " : COLLECTION SCAN").toString();
+	}
+
+	/**
+	 * An index on a single collection
+	 */
+	private static class IndexDefinition {
+		final String collection;
+		final String name;
+		final Document keys;
+		final Document options;
+
+		IndexDefinition(String collection, String name, Document keys, Document options) {
+			this.collection = collection;
+			this.name = name;
+			this.keys = keys;
+			this.options = options;
+		}
+	}
+}
@@ -0,0 +1,311 @@
+package library.database;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import org.bson.Document;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Wraps a storage engine and counts every call in the database metrics.
+ * 
+ *         A cursor is timed for as long as it spends opening and fetching
+ *         results, but not while the caller works on a result it was handed, so
+ *         printing a large address book does not make the database look slow.
+ *         It is counted once, when it runs out of results or is closed
+ */
+class InstrumentedDatabase implements Database {
+	private final Database database;
+	private final DatabaseMetrics metrics;
+
+	/**
+	 * Wraps a storage engine
+	 * 
+	 * @param database Storage engine being timed
+	 * @param metrics  Metrics the calls are counted in
+	 */
+	InstrumentedDatabase(Database database, DatabaseMetrics metrics) {
+		this.database = database;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void connect(String connectionString) {
+		run("connect", () -> database.connect(connectionString));
+	}
+
+	@Override
+	public void close() {
+		database.close();
+	}
+
+	@Override
+	public boolean ping() {
+		return metrics.time("ping", database::ping);
+	}
+
+	@Override
+	public boolean supportsQueryOperators(Document query) {
+		return database.supportsQueryOperators(query);
+	}
+
+	@Override
+	public void setDebuggerLevel(Level level) {
+		database.setDebuggerLevel(level);
+	}
+
+	@Override
+	public <T> void insertDocument(String databaseName, String collectionName, Class<T> type, T doc) {
+		OperationMetrics operation = metrics.operation(collectionName + ".insertDocument");
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			database.insertDocument(databaseName, collectionName, type, doc);
+			failed = false;
+		} finally {
+			operation.record(System.nanoTime() - start, 1, failed);
+		}
+	}
+
+	@Override
+	public <T> Map<Integer, String> insertDocuments(String databaseName, String collectionName, Class<T> type,
+			List<T> docs) {
+		OperationMetrics operation = metrics.operation(collectionName + ".insertDocuments");
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			Map<Integer, String> errors = database.insertDocuments(databaseName, collectionName, type, docs);
+			failed = false;
+			return errors;
+		} finally {
+			operation.record(System.nanoTime() - start, docs.size(), failed);
+		}
+	}
+
+	@Override
+	public void deleteDocument(String databaseName, String collectionName, Document query) {
+		run(collectionName + ".deleteDocument", () -> database.deleteDocument(databaseName, collectionName, query));
+	}
+
+	@Override
+	public void updateDocument(String databaseName, String collectionName, Document query, Document update) {
+		run(collectionName + ".updateDocument",
+				() -> database.updateDocument(databaseName, collectionName, query, update));
+	}
+
+	@Override
+	public List<WriteResult> writeDocuments(String databaseName, String collectionName, List<DocumentWrite> writes,
+			String writeConcern, long timeoutMillis) {
+		OperationMetrics operation = metrics.operation(collectionName + ".writeDocuments");
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			List<WriteResult> results = database.writeDocuments(databaseName, collectionName, writes, writeConcern,
+					timeoutMillis);
+			failed = false;
+			return results;
+		} finally {
+			operation.record(System.nanoTime() - start, writes.size(), failed);
+		}
+	}
+
+	@Override
+	public <T> Cursor<T> getDocument(String databaseName, String collectionName, Class<T> type, Document query,
+			Document projection, int batchSize) {
+		return timed(collectionName + ".getDocument",
+				() -> database.getDocument(databaseName, collectionName, type, query, projection, batchSize));
+	}
+
+	@Override
+	public <T> Cursor<T> getSortedDocument(String databaseName, String collectionName, Class<T> type,
+			Document query, Document projection, List<String> sortFields, Document after, boolean descending,
+			int limit) {
+		return timed(collectionName + ".getSortedDocument", () -> database.getSortedDocument(databaseName,
+				collectionName, type, query, projection, sortFields, after, descending, limit));
+	}
+
+	@Override
+	public Cursor<Document> getDeletedDocuments(String databaseName, String collectionName, Date deletedBefore,
+			int batchSize) {
+		return timed(collectionName + ".getDeletedDocuments",
+				() -> database.getDeletedDocuments(databaseName, collectionName, deletedBefore, batchSize));
+	}
+
+	@Override
+	public long purgeDocuments(String databaseName, String collectionName, List<Object> ids) {
+		OperationMetrics operation = metrics.operation(collectionName + ".purgeDocuments");
+		long start = System.nanoTime();
+		boolean failed = true;
+		long purged = -1;
+		try {
+			purged = database.purgeDocuments(databaseName, collectionName, ids);
+			failed = false;
+			return purged;
+		} finally {
+			operation.record(System.nanoTime() - start, purged, failed);
+		}
+	}
+
+	@Override
+	public Cursor<Document> getChangedDocuments(String databaseName, String collectionName, Document query,
+			Date changedAfter, int batchSize) {
+		return timed(collectionName + ".getChangedDocuments",
+				() -> database.getChangedDocuments(databaseName, collectionName, query, changedAfter, batchSize));
+	}
+
+	@Override
+	public void putDocuments(String databaseName, String collectionName, List<Document> docs) {
+		run(collectionName + ".putDocuments", () -> database.putDocuments(databaseName, collectionName, docs));
+	}
+
+	@Override
+	public void createIndex(String databaseName, String collectionName, Document keys, Document options) {
+		run(collectionName + ".createIndex", () -> database.createIndex(databaseName, collectionName, keys, options));
+	}
+
+	@Override
+	public void dropIndex(String databaseName, String collectionName, String indexName) {
+		run(collectionName + ".dropIndex", () -> database.dropIndex(databaseName, collectionName, indexName));
+	}
+
+	@Override
+	public List<String> getIndexNames(String databaseName, String collectionName) {
+		return metrics.time(collectionName + ".getIndexNames",
+				() -> database.getIndexNames(databaseName, collectionName));
+	}
+
+	@Override
+	public Document explain(String databaseName, String collectionName, Document query, Document projection,
+			Document sort) {
+		return metrics.time(collectionName + ".explain",
+				() -> database.explain(databaseName, collectionName, query, projection, sort));
+	}
+
+	@Override
+	public List<String> getDatabases() {
+		return metrics.time("getDatabases", database::getDatabases);
+	}
+
+	@Override
+	public Cursor<ChangeEvent> watchChanges(String databaseName, String collectionName) {
+		return database.watchChanges(databaseName, collectionName);
+	}
+
+	/**
+	 * Runs a call that does not return a value and counts it
+	 * 
+	 * @param name Name of the operation
+	 * @param call Call being timed
+	 */
+	private void run(String name, Runnable call) {
+		metrics.time(name, () -> {
+			call.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Opens a cursor and times it until it runs out or is closed
+	 * 
+	 * @param <T>  Type of the results
+	 * @param name Name of the operation
+	 * @param open Opens the cursor
+	 * @return Timed cursor
+	 */
+	private <T> Cursor<T> timed(String name, Supplier<Cursor<T>> open) {
+		OperationMetrics operation = metrics.operation(name);
+		long start = System.nanoTime();
+		Cursor<T> cursor;
+		try {
+			cursor = open.get();
+		} catch (RuntimeException e) {
+			operation.record(System.nanoTime() - start, -1, true);
+			throw e;
+		}
+		return new TimedCursor<T>(cursor, operation, System.nanoTime() - start);
+	}
+
+	/**
+	 * Cursor that adds up the time spent fetching its results
+	 * 
+	 * @param <T> Type of the results
+	 */
+	private static class TimedCursor<T> implements Cursor<T> {
+		private final Cursor<T> cursor;
+		private final OperationMetrics operation;
+		private long nanos;
+		private long results;
+		private boolean failed;
+		private boolean recorded;
+
+		/**
+		 * Wraps an open cursor
+		 * 
+		 * @param cursor    Cursor being timed
+		 * @param operation Metrics the cursor is counted in
+		 * @param nanos     Time it took to open the cursor
+		 */
+		TimedCursor(Cursor<T> cursor, OperationMetrics operation, long nanos) {
+			this.cursor = cursor;
+			this.operation = operation;
+			this.nanos = nanos;
+		}
+
+		@Override
+		public boolean hasNext() {
+			long start = System.nanoTime();
+			try {
+				boolean more = cursor.hasNext();
+				nanos += System.nanoTime() - start;
+				if (!more) {
+					record();
+				}
+				return more;
+			} catch (RuntimeException e) {
+				nanos += System.nanoTime() - start;
+				failed = true;
+				record();
+				throw e;
+			}
+		}
+
+		@Override
+		public T next() {
+			long start = System.nanoTime();
+			try {
+				T result = cursor.next();
+				nanos += System.nanoTime() - start;
+				results++;
+				return result;
+			} catch (RuntimeException e) {
+				nanos += System.nanoTime() - start;
+				failed = true;
+				record();
+				throw e;
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				cursor.close();
+			} finally {
+				record();
+			}
+		}
+
+		/**
+		 * Counts the cursor the first time it is done
+		 */
+		private void record() {
+			if (!recorded) {
+				recorded = true;
+				operation.record(nanos, results, failed);
+			}
+		}
+	}
+}
@@ -0,0 +1,584 @@
+package library.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Storage engine that keeps every document in memory. Nothing is
+ *         persisted, so all data is lost once the application closes. This is
+ *         used to run the application, tests, and benchmarks without a MongoDB
+ *         server.
+ * 
+ *         Collections can be read by many threads at once while writes to a
+ *         collection are applied one at a time.
+ */
+class MemoryEngine implements Database {
+	private final ConcurrentMap<String, ConcurrentMap<String, MemoryCollection>> databases = new ConcurrentHashMap<String, ConcurrentMap<String, MemoryCollection>>();
+	private Logger logger;
+
+	/**
+	 * Sets up the engine with the level its logger should print at
+	 * 
+	 * @param level The level to which the engine's logger prints debug
+	 *              information to the console
+	 */
+	public MemoryEngine(Level level) {
+		logger = Logger.getLogger(MemoryEngine.class.getName());
+		logger.setLevel(level);
+	}
+
+	@Override
+	public void connect(String connectionString) {
+		logger.fine("Using in-memory storage");
+	}
+
+	@Override
+	public void close() {
+		databases.clear();
+	}
+
+	@Override
+	public boolean ping() {
+		return true;
+	}
+
+	/**
+	 * Only exact matches are supported, see matches()
+	 */
+	@Override
+	public boolean supportsQueryOperators(Document query) {
+		return false;
+	}
+
+	@Override
+	public void setDebuggerLevel(Level level) {
+		logger.setLevel(level);
+	}
+
+	/**
+	 * Returns a collection, creating it and its database if they do not exist
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @return Collection from the database
+	 */
+	private MemoryCollection getCollection(String databaseName, String collectionName) {
+		ConcurrentMap<String, MemoryCollection> database = databases.get(databaseName);
+		if (database == null) {
+			databases.putIfAbsent(databaseName, new ConcurrentHashMap<String, MemoryCollection>());
+			database = databases.get(databaseName);
+		}
+		MemoryCollection collection = database.get(collectionName);
+		if (collection == null) {
+			database.putIfAbsent(collectionName, new MemoryCollection());
+			collection = database.get(collectionName);
+		}
+		return collection;
+	}
+
+	@Override
+	public <T> void insertDocument(String databaseName, String collectionName, Class<T> type, T value) {
+		Document doc = Codecs.toDocument(value, type);
+		doc.append("deleted", false);
+		if (!doc.containsKey("_id")) {
+			doc.append("_id", new ObjectId());
+		}
+		Map<Integer, String> errors = getCollection(databaseName, collectionName)
+				.insert(Collections.singletonList(new Document(doc)));
+		if (!errors.isEmpty()) {
+			throw new IllegalStateException(errors.get(0));
+		}
+		logger.fine("Inserted document into " + databaseName + "." + collectionName);
+	}
+
+	@Override
+	public <T> Map<Integer, String> insertDocuments(String databaseName, String collectionName, Class<T> type,
+			List<T> values) {
+		List<Document> copies = new ArrayList<Document>(values.size());
+		for (T value : values) {
+			Document doc = Codecs.toDocument(value, type);
+			doc.append("deleted", false);
+			if (!doc.containsKey("_id")) {
+				doc.append("_id", new ObjectId());
+			}
+			copies.add(new Document(doc));
+		}
+		return getCollection(databaseName, collectionName).insert(copies);
+	}
+
+	@Override
+	public void deleteDocument(String databaseName, String collectionName, Document query) {
+		getCollection(databaseName, collectionName).update(new Document(query).append("deleted", false),
+				new Document().append("deleted", true).append("dateDeleted", new Date()));
+	}
+
+	@Override
+	public Cursor<Document> getDeletedDocuments(String databaseName, String collectionName, Date deletedBefore,
+			int batchSize) {
+		return Cursors.map(Cursors.of(getCollection(databaseName, collectionName).deleted(deletedBefore).iterator()),
+				Document::new);
+	}
+
+	@Override
+	public long purgeDocuments(String databaseName, String collectionName, List<Object> ids) {
+		return getCollection(databaseName, collectionName).purge(ids);
+	}
+
+	@Override
+	public Cursor<Document> getChangedDocuments(String databaseName, String collectionName, Document query,
+			Date changedAfter, int batchSize) {
+		List<Document> changed = new ArrayList<Document>();
+		for (Document doc : getCollection(databaseName, collectionName).matching(query)) {
+			if (isChangedAfter(doc, changedAfter)) {
+				changed.add(doc);
+			}
+		}
+		return Cursors.map(Cursors.of(changed.iterator()), Document::new);
+	}
+
+	@Override
+	public void putDocuments(String databaseName, String collectionName, List<Document> docs) {
+		List<Document> copies = new ArrayList<Document>(docs.size());
+		for (Document doc : docs) {
+			copies.add(new Document(doc));
+		}
+		getCollection(databaseName, collectionName).put(copies);
+	}
+
+	@Override
+	public void updateDocument(String databaseName, String collectionName, Document query, Document update) {
+		getCollection(databaseName, collectionName).update(query, update);
+	}
+
+	@Override
+	public List<WriteResult> writeDocuments(String databaseName, String collectionName, List<DocumentWrite> writes,
+			String writeConcern, long timeoutMillis) {
+		return getCollection(databaseName, collectionName).write(writes, new Date());
+	}
+
+	@Override
+	public <T> Cursor<T> getDocument(String databaseName, String collectionName, Class<T> type, Document query,
+			Document projection, int batchSize) {
+		return getCollection(databaseName, collectionName).find(query.append("deleted", false), type, projection);
+	}
+
+	@Override
+	public List<String> getDatabases() {
+		return new ArrayList<String>(databases.keySet());
+	}
+
+	/**
+	 * Only this program can change the documents held in its memory, so there are
+	 * no other clients to follow
+	 */
+	@Override
+	public Cursor<ChangeEvent> watchChanges(String databaseName, String collectionName) {
+		return null;
+	}
+
+	@Override
+	public <T> Cursor<T> getSortedDocument(String databaseName, String collectionName, Class<T> type,
+			Document query, Document projection, List<String> sortFields, Document after, boolean descending,
+			int limit) {
+		List<Document> matches = getCollection(databaseName, collectionName).matching(query.append("deleted", false));
+		return Cursors.map(Cursors.of(range(matches, sortFields, after, descending, limit).iterator()),
+				doc -> Codecs.fromDocument(project(doc, projection), type));
+	}
+
+	/**
+	 * Indexes are not used by this engine, every query scans its collection
+	 */
+	@Override
+	public void createIndex(String databaseName, String collectionName, Document keys, Document options) {
+	}
+
+	@Override
+	public void dropIndex(String databaseName, String collectionName, String indexName) {
+	}
+
+	@Override
+	public List<String> getIndexNames(String databaseName, String collectionName) {
+		return new ArrayList<String>();
+	}
+
+	@Override
+	public Document explain(String databaseName, String collectionName, Document query, Document projection,
+			Document sort) {
+		Document plan = new Document("stage", "COLLSCAN");
+		if (sort != null) {
+			plan = new Document("stage", "SORT").append("inputStage", plan);
+		}
+		return new Document("queryPlanner", new Document("winningPlan", plan));
+	}
+
+	/**
+	 * Returns if a document matches every field / value pair of a query
+	 * 
+	 * @param doc   Document being checked
+	 * @param query Field / value pairs the document must equal
+	 * @return If the document matches the query
+	 */
+	static boolean matches(Document doc, Document query) {
+		for (Map.Entry<String, Object> entry : query.entrySet()) {
+			if (!Objects.equals(doc.get(entry.getKey()), entry.getValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Keeps only the projected fields of a document. The _id is kept unless the
+	 * projection sets it to 0
+	 * 
+	 * @param doc        Stored document
+	 * @param projection Fields to keep set to 1, or null to keep every field
+	 * @return Projected document, or the stored document if there is no
+	 *         projection
+	 */
+	static Document project(Document doc, Document projection) {
+		if (projection == null) {
+			return doc;
+		}
+		Document out = new Document();
+		if (!Objects.equals(projection.get("_id"), 0) && doc.containsKey("_id")) {
+			out.append("_id", doc.get("_id"));
+		}
+		for (Map.Entry<String, Object> field : projection.entrySet()) {
+			if (!field.getKey().equals("_id") && !Objects.equals(field.getValue(), 0)
+					&& doc.containsKey(field.getKey())) {
+				out.append(field.getKey(), doc.get(field.getKey()));
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Returns the reason a document is not inserted when its _id is already taken,
+	 * even by a deleted document. It is worded like MongoDB's duplicate key error
+	 * so callers can tell it apart from other failures the same way
+	 * 
+	 * @param id _id that is taken
+	 * @return Reason the document was not inserted
+	 */
+	static String duplicateKey(Object id) {
+		return "E11000 duplicate key error index: _id_ dup key: { _id: " + id + " }";
+	}
+
+	/**
+	 * Returns if a document has been soft-deleted
+	 * 
+	 * @param doc Document being checked
+	 * @return If the deleted flag is set
+	 */
+	static boolean isDeleted(Document doc) {
+		return Boolean.TRUE.equals(doc.get("deleted"));
+	}
+
+	/**
+	 * Returns the fields a bulk write sets on its document
+	 * 
+	 * @param write Write being made
+	 * @param now   Time a delete is recorded at
+	 * @return Fields and their values
+	 */
+	static Document changes(DocumentWrite write, Date now) {
+		if (!write.isDelete()) {
+			return write.getUpdate();
+		}
+		Document fields = write.getUpdate() == null ? new Document() : new Document(write.getUpdate());
+		return fields.append("deleted", true).append("dateDeleted", now);
+	}
+
+	/**
+	 * Returns if a document is a tombstone that was deleted before a point in time
+	 * 
+	 * @param doc    Document being checked
+	 * @param before Point in time
+	 * @return If the document was deleted before it
+	 */
+	static boolean isDeletedBefore(Document doc, Date before) {
+		Object dateDeleted = doc.get("dateDeleted");
+		return Boolean.TRUE.equals(doc.get("deleted")) && dateDeleted instanceof Date
+				&& ((Date) dateDeleted).before(before);
+	}
+
+	/**
+	 * Returns if a document was changed after a point in time
+	 * 
+	 * @param doc   Document being checked
+	 * @param after Point in time, or null to count every document as changed
+	 * @return If the document's dateModified is later
+	 */
+	static boolean isChangedAfter(Document doc, Date after) {
+		Object dateModified = doc.get("dateModified");
+		return after == null || dateModified instanceof Date && ((Date) dateModified).after(after);
+	}
+
+	/**
+	 * Picks one range of documents in sorted order
+	 * 
+	 * @param documents  Documents to pick from
+	 * @param sortFields Fields sorted by in ascending order
+	 * @param after      Values of the sort fields that the range starts after, or
+	 *                   null to start at the beginning
+	 * @param descending If the range goes backward from the sort values
+	 * @param limit      Largest number of documents in the range
+	 * @return Documents in the range in sorted order
+	 */
+	static List<Document> range(List<Document> documents, List<String> sortFields, Document after,
+			boolean descending, int limit) {
+		Comparator<Document> order = (a, b) -> compareKeys(a, b, sortFields);
+		if (descending) {
+			order = order.reversed();
+		}
+		Comparator<Document> direction = order;
+		return range(documents, order, doc -> after == null || direction.compare(doc, after) > 0, limit);
+	}
+
+	/**
+	 * Picks the first items in sorted order out of those that are included. Only
+	 * the items in the range are ever kept sorted, so this does not sort every
+	 * item
+	 * 
+	 * @param <T>     Type of the items
+	 * @param items   Items to pick from
+	 * @param order   Order of the items
+	 * @param include Test for items that can be in the range
+	 * @param limit   Largest number of items in the range
+	 * @return Items in the range in sorted order
+	 */
+	static <T> List<T> range(List<T> items, Comparator<T> order, Predicate<T> include, int limit) {
+		// Holds the best items found so far with the worst one on top
+		PriorityQueue<T> best = new PriorityQueue<T>(limit + 1, order.reversed());
+		for (T item : items) {
+			if (!include.test(item)) {
+				continue;
+			}
+			best.add(item);
+			if (best.size() > limit) {
+				best.poll();
+			}
+		}
+		List<T> out = new ArrayList<T>(best);
+		out.sort(order);
+		return out;
+	}
+
+	/**
+	 * Compares two documents by a list of fields
+	 * 
+	 * @param a      First document
+	 * @param b      Second document
+	 * @param fields Fields compared in order until one differs
+	 * @return Negative, zero, or positive as the first document sorts before, the
+	 *         same as, or after the second
+	 */
+	static int compareKeys(Document a, Document b, List<String> fields) {
+		for (String field : fields) {
+			int result = compareValues(a.get(field), b.get(field));
+			if (result != 0) {
+				return result;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Compares two field values. Missing values sort first, and values of
+	 * different types are ordered by their type
+	 * 
+	 * @param x First value
+	 * @param y Second value
+	 * @return Negative, zero, or positive as the first value sorts before, the
+	 *         same as, or after the second
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static int compareValues(Object x, Object y) {
+		if (x == null || y == null) {
+			return x == y ? 0 : x == null ? -1 : 1;
+		}
+		if (x.getClass() == y.getClass() && x instanceof Comparable) {
+			return ((Comparable) x).compareTo(y);
+		}
+		return x.getClass().getName().compareTo(y.getClass().getName());
+	}
+
+	/**
+	 * Documents of a single collection kept in insertion order
+	 */
+	private static class MemoryCollection {
+		private final Map<Object, Document> documents = new LinkedHashMap<Object, Document>();
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+		/**
+		 * Adds documents whose _id is not taken yet
+		 * 
+		 * @return Position of each document that was not added mapped to the reason
+		 *         why
+		 */
+		Map<Integer, String> insert(List<Document> docs) {
+			Map<Integer, String> errors = new HashMap<Integer, String>();
+			lock.writeLock().lock();
+			try {
+				for (int i = 0; i < docs.size(); i++) {
+					Object id = docs.get(i).get("_id");
+					if (documents.containsKey(id)) {
+						errors.put(i, duplicateKey(id));
+					} else {
+						documents.put(id, docs.get(i));
+					}
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+			return errors;
+		}
+
+		/**
+		 * Adds documents, replacing any stored under the same _id
+		 */
+		void put(List<Document> docs) {
+			lock.writeLock().lock();
+			try {
+				for (Document doc : docs) {
+					documents.put(doc.get("_id"), doc);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		void update(Document query, Document update) {
+			lock.writeLock().lock();
+			try {
+				for (Map.Entry<Object, Document> entry : documents.entrySet()) {
+					if (matches(entry.getValue(), query)) {
+						// Documents handed out by find are copies, so they are replaced rather than
+						// changed in place
+						Document updated = new Document(entry.getValue());
+						updated.putAll(update);
+						entry.setValue(updated);
+					}
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		/**
+		 * Makes many writes under one lock. Each document is looked up by its _id
+		 * instead of scanning the collection
+		 */
+		List<WriteResult> write(List<DocumentWrite> writes, Date now) {
+			List<WriteResult> results = new ArrayList<WriteResult>(writes.size());
+			lock.writeLock().lock();
+			try {
+				for (int i = 0; i < writes.size(); i++) {
+					DocumentWrite write = writes.get(i);
+					Object id = write.getFilter().get("_id");
+					Document doc = documents.get(id);
+					if (doc == null || !matches(doc, write.getFilter()) || isDeleted(doc)) {
+						results.add(new WriteResult(i, id, WriteResult.Status.NOTFOUND, null));
+						continue;
+					}
+					Document updated = new Document(doc);
+					updated.putAll(changes(write, now));
+					documents.put(id, updated);
+					results.add(new WriteResult(i, id, WriteResult.Status.APPLIED, null));
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+			return results;
+		}
+
+		/**
+		 * Finds the documents matching a query. Only references are collected while
+		 * the lock is held, each document is projected and decoded (or copied) as
+		 * the cursor reaches it
+		 */
+		<T> Cursor<T> find(Document query, Class<T> type, Document projection) {
+			return Cursors.map(Cursors.of(matching(query).iterator()),
+					doc -> Codecs.fromDocument(project(doc, projection), type));
+		}
+
+		/**
+		 * Returns the stored tombstones deleted before a point in time. The
+		 * documents must not be changed
+		 */
+		List<Document> deleted(Date before) {
+			List<Document> out = new ArrayList<Document>();
+			lock.readLock().lock();
+			try {
+				for (Document doc : documents.values()) {
+					if (isDeletedBefore(doc, before)) {
+						out.add(doc);
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+			return out;
+		}
+
+		/**
+		 * Removes the tombstones with the given _ids
+		 */
+		long purge(List<Object> ids) {
+			long purged = 0;
+			lock.writeLock().lock();
+			try {
+				for (Object id : ids) {
+					Document doc = documents.get(id);
+					if (doc != null && Boolean.TRUE.equals(doc.get("deleted"))) {
+						documents.remove(id);
+						purged++;
+					}
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+			return purged;
+		}
+
+		/**
+		 * Returns the stored documents matching a query. The documents must not be
+		 * changed
+		 */
+		List<Document> matching(Document query) {
+			List<Document> out = new ArrayList<Document>();
+			lock.readLock().lock();
+			try {
+				for (Document doc : documents.values()) {
+					if (matches(doc, query)) {
+						out.add(doc);
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+			return out;
+		}
+	}
+}
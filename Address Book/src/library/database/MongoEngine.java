@@ -0,0 +1,699 @@
+package library.database;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+/**
+ * 
+ * @author Logan Miller This is manages all of the calls to the MongoDB
+ *         database.
+ * 
+ *         Each connection is a unique instance that can interact with the
+ *         database depending on the privileges of the user's connection string
+ */
+class MongoEngine implements Database {
+	private MongoClient mongoClient;
+	private String connectionString;
+	private Logger mongoLogger;
+
+	/**
+	 * Sets up the necessary objects to connect to the database.
+	 * 
+	 * By default, the level is set to OFF which makes it so mongodb does not print
+	 * to the console when an action is taken
+	 * 
+	 * @param level The level to which mongodb's logger prints debug information to
+	 *              the console.
+	 * 
+	 *              Default is set to OFF so that it does not interfere with the
+	 *              user interface
+	 */
+	public MongoEngine(Level level) {
+		mongoLogger = Logger.getLogger("org.mongodb.driver");
+		mongoLogger.setLevel(level);
+	}
+
+	/**
+	 * Connects to a database using a connection string. The client is shared with
+	 * every other engine using the same connection string
+	 * 
+	 * If the connection string is blank, it will default to connecting to the
+	 * localhost
+	 * 
+	 * @param connectionString MongoDB connection string to any given server. If the
+	 *                         string is empty, the program will connect to the
+	 *                         localhost.
+	 */
+	@Override
+	public void connect(String connectionString) {
+		this.connectionString = connectionString;
+		mongoClient = ConnectionManager.getClient(connectionString);
+	}
+
+	/**
+	 * Lets go of the client. The client itself stays open for the next engine
+	 * and is closed by the ConnectionManager
+	 */
+	@Override
+	public void close() {
+		mongoClient = null;
+	}
+
+	/**
+	 * Sends the server a ping and waits for the answer for as long as the
+	 * connection settings allow
+	 */
+	@Override
+	public boolean ping() {
+		return mongoClient != null && ConnectionManager.ping(connectionString);
+	}
+
+	@Override
+	public boolean supportsQueryOperators(Document query) {
+		return true;
+	}
+
+	/**
+	 * Used to change the level of verbosity that the mongodb debugger displays
+	 * 
+	 * @param level The level to which mongodb's logger prints debug information to
+	 *              the console.
+	 * 
+	 *              Default is set to OFF so that it does not interfere with the
+	 *              user interface
+	 */
+	@Override
+	public void setDebuggerLevel(Level level) {
+		mongoLogger.setLevel(level);
+	}
+
+	/**
+	 * Retrieves a specific database from the server
+	 * 
+	 * @param databaseName Specific name of the database
+	 * @return Instance of mongo database
+	 */
+	private MongoDatabase getDatabase(String databaseName) {
+		return mongoClient.getDatabase(databaseName);
+	}
+
+	/**
+	 * Returns collection which contains documents
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @return Collection from the database
+	 */
+	private MongoCollection<Document> getCollection(String databaseName, String collectionName) {
+		return getDatabase(databaseName).getCollection(collectionName);
+	}
+
+	/**
+	 * Returns a collection whose documents are encoded and decoded with the codec
+	 * for a class
+	 * 
+	 * @param <T>            Type of the documents
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param type           Class of the documents
+	 * @return Typed collection from the database
+	 */
+	private <T> MongoCollection<T> getCollection(String databaseName, String collectionName, Class<T> type) {
+		return getDatabase(databaseName).getCollection(collectionName, type);
+	}
+
+	/**
+	 * Creates a new document in the specified collection
+	 * 
+	 * If the database and / or collection does not exist, it will be created by
+	 * this command
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param type           Class of the document, which picks its codec
+	 * @param doc            Document being added to the collection
+	 */
+	@Override
+	public <T> void insertDocument(String databaseName, String collectionName, Class<T> type, T doc) {
+		if (doc instanceof Document) {
+			((Document) doc).append("deleted", false);
+		}
+		getCollection(databaseName, collectionName, type).insertOne(doc);
+	}
+
+	/**
+	 * Creates many documents with a single unordered insertMany. The driver splits
+	 * the documents into as many messages as the server needs
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param type           Class of the documents, which picks their codec
+	 * @param docs           Documents being added to the collection
+	 * @return Position of each document that was not inserted mapped to the reason
+	 *         why
+	 */
+	@Override
+	public <T> Map<Integer, String> insertDocuments(String databaseName, String collectionName, Class<T> type,
+			List<T> docs) {
+		Map<Integer, String> errors = new HashMap<Integer, String>();
+		for (T doc : docs) {
+			if (doc instanceof Document) {
+				((Document) doc).append("deleted", false);
+			}
+		}
+		try {
+			getCollection(databaseName, collectionName, type).insertMany(docs, new InsertManyOptions().ordered(false));
+		} catch (MongoBulkWriteException e) {
+			for (BulkWriteError error : e.getWriteErrors()) {
+				errors.put(error.getIndex(), error.getMessage());
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Emulated deleting an object from the database by setting the deleted flag to
+	 * true. This is used in order to preserve data but make it functionally gone
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param query          Query used to specify the find method (can change
+	 *                       multiple documents if not specific)
+	 */
+	@Override
+	public void deleteDocument(String databaseName, String collectionName, Document query) {
+		getCollection(databaseName, collectionName).updateMany(new Document(query).append("deleted", false),
+				new Document().append("$set", new Document().append("deleted", true).append("dateDeleted", new Date())));
+	}
+
+	/**
+	 * Updates a number of given parameters in the database
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param query          Query used to specify the find method (can change
+	 *                       Multiple documents if not specific)
+	 * @param update         Fields and values being updated / added
+	 */
+	@Override
+	public void updateDocument(String databaseName, String collectionName, Document query, Document update) {
+		getCollection(databaseName, collectionName).updateMany(query, new Document().append("$set", update));
+	}
+
+	/**
+	 * Sends every write in one unordered bulk write, which the driver splits into
+	 * as few commands as the server allows. A delete sets the deleted flag with
+	 * the same dateDeleted on every document.
+	 * 
+	 * The server only answers with how many documents matched in total. Only if
+	 * that is less than the number of writes that did not fail are the documents
+	 * looked up again to find out which writes matched nothing
+	 */
+	@Override
+	public List<WriteResult> writeDocuments(String databaseName, String collectionName, List<DocumentWrite> writes,
+			String writeConcern, long timeoutMillis) {
+		WriteConcern concern = WriteConcern.valueOf(writeConcern);
+		if (concern == null) {
+			throw new IllegalArgumentException("Unknown write concern: " + writeConcern);
+		}
+		if (timeoutMillis > 0 && concern.isAcknowledged()) {
+			concern = concern.withWTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		List<WriteResult> results = new ArrayList<WriteResult>(writes.size());
+		if (writes.isEmpty()) {
+			return results;
+		}
+		Date now = new Date();
+		List<WriteModel<Document>> models = new ArrayList<WriteModel<Document>>(writes.size());
+		for (DocumentWrite write : writes) {
+			models.add(new UpdateOneModel<Document>(new Document(write.getFilter()).append("deleted", false),
+					new Document("$set", MemoryEngine.changes(write, now))));
+		}
+		Map<Integer, String> errors = new HashMap<Integer, String>();
+		String concernError = null;
+		BulkWriteResult result;
+		try {
+			result = getCollection(databaseName, collectionName).withWriteConcern(concern).bulkWrite(models,
+					new BulkWriteOptions().ordered(false));
+		} catch (MongoBulkWriteException e) {
+			result = e.getWriteResult();
+			for (BulkWriteError error : e.getWriteErrors()) {
+				errors.put(error.getIndex(), error.getMessage());
+			}
+			if (e.getWriteConcernError() != null) {
+				concernError = "Write concern was not met: " + e.getWriteConcernError().getMessage();
+			}
+		}
+		Set<Object> matched = null;
+		if (result.wasAcknowledged() && result.getMatchedCount() < writes.size() - errors.size()) {
+			matched = findWritten(databaseName, collectionName, writes, errors, now);
+		}
+		for (int i = 0; i < writes.size(); i++) {
+			Object id = writes.get(i).getFilter().get("_id");
+			if (errors.containsKey(i)) {
+				results.add(new WriteResult(i, id, WriteResult.Status.FAILED, errors.get(i)));
+			} else if (!result.wasAcknowledged()) {
+				results.add(new WriteResult(i, id, WriteResult.Status.UNACKNOWLEDGED, null));
+			} else if (matched != null && !matched.contains(id)) {
+				results.add(new WriteResult(i, id, WriteResult.Status.NOTFOUND, null));
+			} else if (concernError != null) {
+				results.add(new WriteResult(i, id, WriteResult.Status.UNCONFIRMED, concernError));
+			} else {
+				results.add(new WriteResult(i, id, WriteResult.Status.APPLIED, null));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Finds the documents a bulk write changed, by reading back the ones that now
+	 * match their write: updated documents still match their filter, and deleted
+	 * documents carry the dateDeleted of the bulk write
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param writes         Writes that were made
+	 * @param errors         Positions of the writes that failed
+	 * @param now            dateDeleted set by the deletes
+	 * @return _ids of the documents that were changed
+	 */
+	private Set<Object> findWritten(String databaseName, String collectionName, List<DocumentWrite> writes,
+			Map<Integer, String> errors, Date now) {
+		List<Document> written = new ArrayList<Document>();
+		for (int i = 0; i < writes.size(); i++) {
+			DocumentWrite write = writes.get(i);
+			if (!errors.containsKey(i)) {
+				written.add(write.isDelete()
+						? new Document(write.getFilter()).append("deleted", true).append("dateDeleted", now)
+						: new Document(write.getFilter()).append("deleted", false));
+			}
+		}
+		Set<Object> ids = new HashSet<Object>();
+		if (written.isEmpty()) {
+			return ids;
+		}
+		try (MongoCursor<Document> out = getCollection(databaseName, collectionName)
+				.find(new Document("$or", written)).projection(new Document("_id", 1)).iterator()) {
+			while (out.hasNext()) {
+				ids.add(out.next().get("_id"));
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Opens a cursor over the documents returned by a specific search query.
+	 * 
+	 * Only returns documents which the deleted flag is set to false
+	 * 
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @param type           Class the documents are decoded into
+	 * @param query          Query used to specify the find method (can change
+	 *                       Multiple documents if not specific)
+	 * @param projection     Fields to return, or null to return whole documents
+	 * @param batchSize      Number of documents fetched from the server at a time
+	 * @return Cursor over all documents that match the seach query
+	 */
+	@Override
+	public <T> Cursor<T> getDocument(String databaseName, String collectionName, Class<T> type, Document query,
+			Document projection, int batchSize) {
+		return wrap(getCollection(databaseName, collectionName, type).find(query.append("deleted", false))
+				.projection(projection).batchSize(batchSize).iterator());
+	}
+
+	/**
+	 * Opens a cursor over one range of the documents returned by a search query,
+	 * in sorted order.
+	 * 
+	 * The start of the range is turned into a filter on the sort fields so the
+	 * server can seek to it in an index on the same fields
+	 * 
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @param type           Class the documents are decoded into
+	 * @param query          Query used to specify the find method
+	 * @param projection     Fields to return, or null to return whole documents
+	 * @param sortFields     Fields sorted by in ascending order
+	 * @param after          Values of the sort fields that the range starts
+	 *                       after, or null to start at the beginning
+	 * @param descending     If the range goes backward from the sort values
+	 * @param limit          Largest number of documents in the range
+	 * @return Cursor over the range of documents
+	 */
+	@Override
+	public <T> Cursor<T> getSortedDocument(String databaseName, String collectionName, Class<T> type,
+			Document query, Document projection, List<String> sortFields, Document after, boolean descending, int limit) {
+		query.append("deleted", false);
+		if (after != null) {
+			String operator = descending ? "$lt" : "$gt";
+			List<Document> seek = new ArrayList<Document>();
+			for (int i = 0; i < sortFields.size(); i++) {
+				Document clause = new Document();
+				for (int j = 0; j < i; j++) {
+					clause.append(sortFields.get(j), after.get(sortFields.get(j)));
+				}
+				clause.append(sortFields.get(i), new Document(operator, after.get(sortFields.get(i))));
+				seek.add(clause);
+			}
+			query.append("$or", seek);
+		}
+		Document sort = new Document();
+		for (String field : sortFields) {
+			sort.append(field, descending ? -1 : 1);
+		}
+		return wrap(getCollection(databaseName, collectionName, type).find(query).projection(projection).sort(sort)
+				.limit(limit).batchSize(limit).iterator());
+	}
+
+	/**
+	 * Opens a cursor over the tombstones deleted before a point in time. Served by
+	 * the partial index on dateDeleted, which only holds tombstones
+	 */
+	@Override
+	public Cursor<Document> getDeletedDocuments(String databaseName, String collectionName, Date deletedBefore,
+			int batchSize) {
+		return wrap(getCollection(databaseName, collectionName)
+				.find(new Document("deleted", true).append("dateDeleted", new Document("$lt", deletedBefore)))
+				.batchSize(batchSize).iterator());
+	}
+
+	@Override
+	public long purgeDocuments(String databaseName, String collectionName, List<Object> ids) {
+		return getCollection(databaseName, collectionName)
+				.deleteMany(new Document("_id", new Document("$in", ids)).append("deleted", true)).getDeletedCount();
+	}
+
+	/**
+	 * Opens a cursor over the changed documents. A user's changes are served by
+	 * the index on username and dateModified
+	 */
+	@Override
+	public Cursor<Document> getChangedDocuments(String databaseName, String collectionName, Document query,
+			Date changedAfter, int batchSize) {
+		Document filter = new Document(query);
+		if (changedAfter != null) {
+			filter.append("dateModified", new Document("$gt", changedAfter));
+		}
+		return wrap(getCollection(databaseName, collectionName).find(filter).batchSize(batchSize).iterator());
+	}
+
+	/**
+	 * Replaces every document in one unordered bulk write, inserting the ones
+	 * that do not exist
+	 */
+	@Override
+	public void putDocuments(String databaseName, String collectionName, List<Document> docs) {
+		if (docs.isEmpty()) {
+			return;
+		}
+		List<WriteModel<Document>> models = new ArrayList<WriteModel<Document>>(docs.size());
+		for (Document doc : docs) {
+			models.add(new ReplaceOneModel<Document>(new Document("_id", doc.get("_id")), doc,
+					new ReplaceOptions().upsert(true)));
+		}
+		getCollection(databaseName, collectionName).bulkWrite(models, new BulkWriteOptions().ordered(false));
+	}
+
+	/**
+	 * Wraps a MongoDB cursor so it can be used through the Database interface
+	 * 
+	 * @param <T>       Type of the documents
+	 * @param documents MongoDB cursor
+	 * @return Cursor that closes the MongoDB cursor
+	 */
+	private static <T> Cursor<T> wrap(MongoCursor<T> documents) {
+		return new Cursor<T>() {
+			@Override
+			public boolean hasNext() {
+				return documents.hasNext();
+			}
+
+			@Override
+			public T next() {
+				return documents.next();
+			}
+
+			@Override
+			public void close() {
+				documents.close();
+			}
+		};
+	}
+
+	@Override
+	public void createIndex(String databaseName, String collectionName, Document keys, Document options) {
+		IndexOptions indexOptions = new IndexOptions().name(options.getString("name"))
+				.unique(options.getBoolean("unique", false));
+		if (options.containsKey("partialFilterExpression")) {
+			indexOptions.partialFilterExpression(options.get("partialFilterExpression", Document.class));
+		}
+		getCollection(databaseName, collectionName).createIndex(keys, indexOptions);
+	}
+
+	@Override
+	public void dropIndex(String databaseName, String collectionName, String indexName) {
+		getCollection(databaseName, collectionName).dropIndex(indexName);
+	}
+
+	@Override
+	public List<String> getIndexNames(String databaseName, String collectionName) {
+		List<String> names = new ArrayList<String>();
+		for (Document index : getCollection(databaseName, collectionName).listIndexes()) {
+			names.add(index.getString("name"));
+		}
+		return names;
+	}
+
+	/**
+	 * Runs the explain command for a find at the queryPlanner verbosity, which
+	 * picks a plan without running the query
+	 * 
+	 * @param databaseName   The name of the database
+	 * @param collectionName The name of the collection
+	 * @param query          Query being explained
+	 * @param projection     Fields returned by the query, or null for whole
+	 *                       documents
+	 * @param sort           Sort order of the query, or null if it is not sorted
+	 * @return Result of the explain command
+	 */
+	@Override
+	public Document explain(String databaseName, String collectionName, Document query, Document projection,
+			Document sort) {
+		Document find = new Document().append("find", collectionName).append("filter", query);
+		if (projection != null) {
+			find.append("projection", projection);
+		}
+		if (sort != null) {
+			find.append("sort", sort);
+		}
+		return getDatabase(databaseName)
+				.runCommand(new Document().append("explain", find).append("verbosity", "queryPlanner"));
+	}
+
+	/**
+	 * Returns a list of all database names
+	 * 
+	 * @return List of database names
+	 */
+	@Override
+	public List<String> getDatabases() {
+		MongoCursor<String> databases = mongoClient.listDatabaseNames().iterator();
+		List<String> output = new ArrayList<String>();
+		while (databases.hasNext()) {
+			output.add(databases.next());
+		}
+		return output;
+	}
+
+	/**
+	 * Opens a change stream on the collection. Change streams need a replica set
+	 * or a sharded cluster, so a single server can not be followed
+	 */
+	@Override
+	public Cursor<ChangeEvent> watchChanges(String databaseName, String collectionName) {
+		Document hello = getDatabase("admin").runCommand(new Document("isMaster", 1));
+		if (!hello.containsKey("setName") && !"isdbgrid".equals(hello.get("msg"))) {
+			return null;
+		}
+		return new ChangeStreamCursor(getCollection(databaseName, collectionName));
+	}
+
+	/**
+	 * Reads a change stream as change events. If the stream fails, such as when a
+	 * new primary is elected, it is opened again after the last change that was
+	 * read so no change is missed
+	 */
+	private static class ChangeStreamCursor implements Cursor<ChangeEvent> {
+		// Longest a read waits on the server, which is also the longest close()
+		// waits for a read to finish
+		private static final long AWAITMILLIS = 1000;
+
+		private final MongoCollection<Document> collection;
+		private MongoChangeStreamCursor<ChangeStreamDocument<Document>> stream;
+		private BsonDocument resumeToken;
+		private ChangeEvent next;
+		private volatile boolean closed;
+
+		/**
+		 * Opens a change stream
+		 * 
+		 * @param collection Collection being followed
+		 */
+		ChangeStreamCursor(MongoCollection<Document> collection) {
+			this.collection = collection;
+			this.stream = open();
+		}
+
+		/**
+		 * Opens the stream after the last change read, or at the current time if
+		 * none has been read. Updates are read with the whole document so the
+		 * user they belong to is known
+		 * 
+		 * @return Driver cursor over the stream
+		 */
+		private MongoChangeStreamCursor<ChangeStreamDocument<Document>> open() {
+			ChangeStreamIterable<Document> changes = collection.watch().fullDocument(FullDocument.UPDATE_LOOKUP)
+					.maxAwaitTime(AWAITMILLIS, TimeUnit.MILLISECONDS);
+			if (resumeToken != null) {
+				changes.resumeAfter(resumeToken);
+			}
+			return changes.cursor();
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null) {
+				ChangeStreamDocument<Document> change;
+				synchronized (this) {
+					if (closed) {
+						return false;
+					}
+					change = read();
+				}
+				if (change != null) {
+					next = toEvent(change);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public ChangeEvent next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ChangeEvent event = next;
+			next = null;
+			return event;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			synchronized (this) {
+				stream.close();
+			}
+		}
+
+		/**
+		 * Reads the next change, opening the stream again once if it failed
+		 * 
+		 * @return Change, or null if none came while waiting
+		 */
+		private ChangeStreamDocument<Document> read() {
+			ChangeStreamDocument<Document> change;
+			try {
+				change = stream.tryNext();
+			} catch (MongoException e) {
+				stream.close();
+				stream = open();
+				change = stream.tryNext();
+			}
+			if (change != null) {
+				resumeToken = change.getResumeToken();
+				if (change.getOperationType() == OperationType.INVALIDATE) {
+					// The collection was dropped or renamed, which ends the stream
+					closed = true;
+					stream.close();
+					return null;
+				}
+			}
+			return change;
+		}
+
+		/**
+		 * Converts a change read from the stream. Setting the deleted flag is a
+		 * delete, and removing a document for good is a purge
+		 * 
+		 * @param change Change
+		 * @return Event, or null for changes to the collection itself
+		 */
+		private ChangeEvent toEvent(ChangeStreamDocument<Document> change) {
+			Document whole = change.getFullDocument();
+			Document fields = null;
+			ChangeEvent.Operation operation;
+			switch (change.getOperationType()) {
+				case INSERT:
+				case REPLACE:
+					operation = change.getOperationType() == OperationType.INSERT ? ChangeEvent.Operation.INSERT
+							: ChangeEvent.Operation.UPDATE;
+					fields = new Document(whole);
+					fields.remove("_id");
+					break;
+				case UPDATE:
+					fields = Codecs.fromBson(change.getUpdateDescription().getUpdatedFields());
+					for (String removed : change.getUpdateDescription().getRemovedFields()) {
+						fields.put(removed, null);
+					}
+					operation = Boolean.TRUE.equals(fields.get("deleted")) ? ChangeEvent.Operation.DELETE
+							: ChangeEvent.Operation.UPDATE;
+					if (operation == ChangeEvent.Operation.DELETE) {
+						fields = null;
+					}
+					break;
+				case DELETE:
+					operation = ChangeEvent.Operation.PURGE;
+					break;
+				default:
+					return null;
+			}
+			String username = whole != null && whole.get("username") instanceof String ? whole.getString("username")
+					: null;
+			return new ChangeEvent(operation, collection.getNamespace().getCollectionName(), username,
+					Codecs.fromBson(change.getDocumentKey()), fields, true);
+		}
+	}
+}
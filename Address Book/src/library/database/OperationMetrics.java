@@ -0,0 +1,59 @@
+package library.database;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Latency, result size, and error counts of one kind of database
+ *         operation
+ */
+class OperationMetrics {
+	private final String name;
+	private final Histogram latency = new Histogram();
+	private final Histogram results = new Histogram();
+	private final LongAdder errors = new LongAdder();
+
+	/**
+	 * Creates empty metrics
+	 * 
+	 * @param name Name of the operation
+	 */
+	OperationMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Counts one call of the operation
+	 * 
+	 * @param nanos   How long the call took in nanoseconds
+	 * @param results Number of documents the call read or wrote, or a negative
+	 *                number if it is not known
+	 * @param failed  If the call threw an exception
+	 */
+	void record(long nanos, long results, boolean failed) {
+		latency.record(nanos);
+		if (results >= 0) {
+			this.results.record(results);
+		}
+		if (failed) {
+			errors.increment();
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the metrics
+	 * 
+	 * @param seconds Seconds the metrics were collected over, used to work out
+	 *                the throughput
+	 * @return Snapshot
+	 */
+	OperationStats snapshot(double seconds) {
+		long count = latency.getCount();
+		return new OperationStats(name, count, errors.sum(), seconds > 0 ? count / seconds : 0,
+				count == 0 ? 0 : latency.getTotal() / count / 1000, latency.getPercentile(0.5) / 1000,
+				latency.getPercentile(0.99) / 1000, latency.getPercentile(0.999) / 1000, latency.getMax() / 1000,
+				results.getPercentile(0.5), results.getPercentile(0.99), results.getMax(), results.getTotal());
+	}
+}
@@ -0,0 +1,184 @@
+package library.database;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Latency, throughput, and result sizes of one kind of database
+ *         operation at a point in time. Times are rounded to microseconds and
+ *         percentiles are accurate to about 3%. Result sizes only count calls
+ *         that know how many documents they read or wrote
+ */
+public class OperationStats {
+	private final String name;
+	private final long count;
+	private final long errors;
+	private final double throughput;
+	private final long meanMicros;
+	private final long p50Micros;
+	private final long p99Micros;
+	private final long p999Micros;
+	private final long maxMicros;
+	private final long resultP50;
+	private final long resultP99;
+	private final long resultMax;
+	private final long resultTotal;
+
+	/**
+	 * Creates a snapshot of the metrics of an operation
+	 * 
+	 * @param name        Name of the operation, such as addresses.getDocument
+	 * @param count       Calls of the operation
+	 * @param errors      Calls that threw an exception
+	 * @param throughput  Average calls each second
+	 * @param meanMicros  Average time a call took in microseconds
+	 * @param p50Micros   Median time a call took in microseconds
+	 * @param p99Micros   99th percentile of the time a call took in microseconds
+	 * @param p999Micros  99.9th percentile of the time a call took in microseconds
+	 * @param maxMicros   Longest time a call took in microseconds
+	 * @param resultP50   Median documents read or written by a call
+	 * @param resultP99   99th percentile of the documents read or written by a call
+	 * @param resultMax   Most documents read or written by a call
+	 * @param resultTotal Documents read or written by every call together
+	 */
+	OperationStats(String name, long count, long errors, double throughput, long meanMicros, long p50Micros,
+			long p99Micros, long p999Micros, long maxMicros, long resultP50, long resultP99, long resultMax,
+			long resultTotal) {
+		this.name = name;
+		this.count = count;
+		this.errors = errors;
+		this.throughput = throughput;
+		this.meanMicros = meanMicros;
+		this.p50Micros = p50Micros;
+		this.p99Micros = p99Micros;
+		this.p999Micros = p999Micros;
+		this.maxMicros = maxMicros;
+		this.resultP50 = resultP50;
+		this.resultP99 = resultP99;
+		this.resultMax = resultMax;
+		this.resultTotal = resultTotal;
+	}
+
+	/**
+	 * Returns the name of the operation
+	 * 
+	 * @return Operation name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of calls
+	 * 
+	 * @return Calls
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of calls that threw an exception
+	 * 
+	 * @return Failed calls
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Returns the average number of calls each second
+	 * 
+	 * @return Calls per second
+	 */
+	public double getThroughput() {
+		return throughput;
+	}
+
+	/**
+	 * Returns the average time a call took
+	 * 
+	 * @return Microseconds
+	 */
+	public long getMeanMicros() {
+		return meanMicros;
+	}
+
+	/**
+	 * Returns the time half of the calls finished within
+	 * 
+	 * @return Microseconds
+	 */
+	public long getP50Micros() {
+		return p50Micros;
+	}
+
+	/**
+	 * Returns the time 99% of the calls finished within
+	 * 
+	 * @return Microseconds
+	 */
+	public long getP99Micros() {
+		return p99Micros;
+	}
+
+	/**
+	 * Returns the time 99.9% of the calls finished within
+	 * 
+	 * @return Microseconds
+	 */
+	public long getP999Micros() {
+		return p999Micros;
+	}
+
+	/**
+	 * Returns the longest time a call took
+	 * 
+	 * @return Microseconds
+	 */
+	public long getMaxMicros() {
+		return maxMicros;
+	}
+
+	/**
+	 * Returns the median number of documents a call read or wrote
+	 * 
+	 * @return Documents
+	 */
+	public long getResultP50() {
+		return resultP50;
+	}
+
+	/**
+	 * Returns the number of documents 99% of the calls read or wrote at most
+	 * 
+	 * @return Documents
+	 */
+	public long getResultP99() {
+		return resultP99;
+	}
+
+	/**
+	 * Returns the most documents a call read or wrote
+	 * 
+	 * @return Documents
+	 */
+	public long getResultMax() {
+		return resultMax;
+	}
+
+	/**
+	 * Returns the number of documents read or written by every call together
+	 * 
+	 * @return Documents
+	 */
+	public long getResultTotal() {
+		return resultTotal;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d calls, %d errors, p50 %d us, p99 %d us, p99.9 %d us, max %d us", name, count,
+				errors, p50Micros, p99Micros, p999Micros, maxMicros);
+	}
+}
@@ -0,0 +1,178 @@
+package library.database;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.bson.Document;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Asks for one page of addresses sorted by last name, first name, and
+ *         then id.
+ * 
+ *         Pages are found by seeking past the last address of the page before
+ *         instead of skipping a number of addresses, so every page costs the
+ *         same to find no matter how far into the address book it is. New pages
+ *         are created from an AddressPage with next() and previous()
+ */
+public class PageRequest {
+	// Fields that addresses are sorted by. The id makes the order unique
+	static final List<String> SORTFIELDS = Arrays.asList("lastName", "firstName", "_id");
+	// Order of the addresses on a page
+	static final Comparator<Address> ORDER = (a, b) -> compare(a, b.getLastName(), b.getFirstName(), b.getId());
+
+	private final Document query;
+	private final int pageSize;
+	private final List<String> fields;
+	private final Document boundary;
+	private final boolean backward;
+
+	/**
+	 * Asks for the first page of addresses matching a query
+	 * 
+	 * @param query    Parameters for address search
+	 * @param pageSize Largest number of addresses on a page
+	 */
+	public PageRequest(Document query, int pageSize) {
+		this(query, pageSize, null);
+	}
+
+	/**
+	 * Asks for the first page of addresses matching a query, reading only some of
+	 * their fields
+	 * 
+	 * @param query    Parameters for address search
+	 * @param pageSize Largest number of addresses on a page
+	 * @param fields   Fields of each address that are needed, or null for every
+	 *                 field. The sort fields are always read
+	 */
+	public PageRequest(Document query, int pageSize, List<String> fields) {
+		this(query, pageSize, fields, null, false);
+	}
+
+	/**
+	 * Asks for the page on one side of a boundary
+	 * 
+	 * @param query    Parameters for address search
+	 * @param pageSize Largest number of addresses on a page
+	 * @param fields   Fields of each address that are needed, or null for every
+	 *                 field
+	 * @param boundary Sort key of the address the page starts after (or ends
+	 *                 before when going backward), null for the first page
+	 * @param backward If the page comes before the boundary
+	 */
+	PageRequest(Document query, int pageSize, List<String> fields, Document boundary, boolean backward) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be at least 1");
+		}
+		this.query = query;
+		this.pageSize = pageSize;
+		this.fields = fields;
+		this.boundary = boundary;
+		this.backward = backward;
+	}
+
+	/**
+	 * Asks for the page starting at the same place with another page size
+	 * 
+	 * @param pageSize Largest number of addresses on the page
+	 * @return Request for the page
+	 */
+	public PageRequest withPageSize(int pageSize) {
+		return new PageRequest(query, pageSize, fields, boundary, backward);
+	}
+
+	/**
+	 * Returns the query the addresses must match
+	 * 
+	 * @return Parameters for address search
+	 */
+	public Document getQuery() {
+		return query;
+	}
+
+	/**
+	 * Returns the largest number of addresses on a page
+	 * 
+	 * @return Page size
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Returns the fields of each address that are needed
+	 * 
+	 * @return Field names, or null for every field
+	 */
+	public List<String> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Returns the sort key the page is found from
+	 * 
+	 * @return Sort key, or null for the first page
+	 */
+	Document getBoundary() {
+		return boundary;
+	}
+
+	/**
+	 * Returns if the page comes before the boundary instead of after it
+	 * 
+	 * @return If the page is found going backward
+	 */
+	boolean isBackward() {
+		return backward;
+	}
+
+	/**
+	 * Returns if an address comes after the boundary (or before it when going
+	 * backward)
+	 * 
+	 * @param address Address being checked
+	 * @return If the address can be on the page
+	 */
+	boolean isPastBoundary(Address address) {
+		if (boundary == null) {
+			return true;
+		}
+		int result = compare(address, boundary.get("lastName"), boundary.get("firstName"), boundary.get("_id"));
+		return backward ? result < 0 : result > 0;
+	}
+
+	/**
+	 * Compares an address to the values of a sort key
+	 * 
+	 * @param address   Address being compared
+	 * @param lastName  Last name of the sort key
+	 * @param firstName First name of the sort key
+	 * @param id        Id of the sort key
+	 * @return Negative, zero, or positive as the address sorts before, the same
+	 *         as, or after the sort key
+	 */
+	private static int compare(Address address, Object lastName, Object firstName, Object id) {
+		int result = MemoryEngine.compareValues(address.getLastName(), lastName);
+		if (result == 0) {
+			result = MemoryEngine.compareValues(address.getFirstName(), firstName);
+		}
+		if (result == 0) {
+			result = MemoryEngine.compareValues(address.getId(), id);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the sort key of an address
+	 * 
+	 * @param address Address read from the database
+	 * @return Values of the sort fields
+	 */
+	static Document sortKey(Address address) {
+		return new Document().append("lastName", address.getLastName()).append("firstName", address.getFirstName())
+				.append("_id", address.getId());
+	}
+}
@@ -0,0 +1,108 @@
+package library.database;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Phonetic keys and edit distances used to find names that sound like
+ *         or are spelled close to what was typed.
+ * 
+ *         Keys are American Soundex codes: the first letter followed by three
+ *         digits for the consonant sounds after it, so Meyer and Maier both
+ *         become M600. Values are expected to be normalized by the PrefixIndex
+ *         first
+ */
+class Phonetics {
+	// Soundex digit of each letter from a to z. 0 marks vowels and letters that
+	// are not coded
+	private static final String CODES = "01230120022455012623010202";
+
+	/**
+	 * Returns the Soundex code of a value. Everything that is not a letter from a
+	 * to z is skipped
+	 * 
+	 * @param value Normalized value
+	 * @return Four character code, or an empty string if the value has no letters
+	 */
+	static String soundex(String value) {
+		char[] out = new char[4];
+		int length = 0;
+		char last = 0;
+		for (int i = 0; i < value.length() && length < 4; i++) {
+			char c = value.charAt(i);
+			if (c < 'a' || c > 'z') {
+				continue;
+			}
+			char code = CODES.charAt(c - 'a');
+			if (length == 0) {
+				out[length++] = Character.toUpperCase(c);
+			} else if (code != '0' && code != last) {
+				out[length++] = code;
+			}
+			// H and W do not separate letters with the same code, vowels do
+			if (c != 'h' && c != 'w') {
+				last = code;
+			}
+		}
+		if (length == 0) {
+			return "";
+		}
+		while (length < 4) {
+			out[length++] = '0';
+		}
+		return new String(out);
+	}
+
+	/**
+	 * Returns the Levenshtein distance between two values if it is no more than a
+	 * limit. Only a band of the table around its diagonal is filled in, and the
+	 * search stops as soon as every path is past the limit
+	 * 
+	 * @param a   First value
+	 * @param b   Second value
+	 * @param max Largest distance of interest
+	 * @return Number of single character edits that turn one value into the
+	 *         other, or max + 1 if it is more than max
+	 */
+	static int distance(String a, String b, int max) {
+		if (Math.abs(a.length() - b.length()) > max) {
+			return max + 1;
+		}
+		if (a.length() > b.length()) {
+			String swap = a;
+			a = b;
+			b = swap;
+		}
+		int big = max + 1;
+		int[] previous = new int[a.length() + 1];
+		int[] current = new int[a.length() + 1];
+		for (int i = 0; i <= a.length(); i++) {
+			previous[i] = i <= max ? i : big;
+		}
+		for (int j = 1; j <= b.length(); j++) {
+			int from = Math.max(1, j - max);
+			int to = Math.min(a.length(), j + max);
+			current[0] = j <= max ? j : big;
+			if (from > 1) {
+				current[from - 1] = big;
+			}
+			int best = current[0];
+			for (int i = from; i <= to; i++) {
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				int value = Math.min(Math.min(previous[i] + 1, current[i - 1] + 1), previous[i - 1] + cost);
+				current[i] = Math.min(value, big);
+				best = Math.min(best, current[i]);
+			}
+			if (to < a.length()) {
+				current[to + 1] = big;
+			}
+			if (best > max) {
+				return big;
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return Math.min(previous[a.length()], big);
+	}
+}
@@ -0,0 +1,619 @@
+package library.database;
+
+import java.text.Normalizer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Finds a user's addresses by the start of their names, streets, and
+ *         cities without going to the database, for searching as the user types.
+ * 
+ *         Every indexed value is normalized (lower case, accents and extra
+ *         spaces removed) and kept in a sorted map per field, followed by the id
+ *         of its address so equal values stay apart. A prefix search is a range
+ *         of that map, so finding the first few matches does not depend on the
+ *         size of the address book.
+ * 
+ *         Names and cities are also kept by their Soundex code so addresses can
+ *         be found by how they sound. Every candidate with the same code, or with
+ *         the same code after its first letter, is ranked by its edit distance to
+ *         what was typed, and candidates that only share the code after the first
+ *         letter must be within a few edits of it.
+ * 
+ *         A user's index is built from the database the first time it is needed
+ *         (the console builds it at login) and is patched by every write made
+ *         through the DatabaseManager. A write it can not patch drops the user's
+ *         index so it is built again on the next search
+ */
+class PrefixIndex {
+	// Fields of an address that are indexed
+	static final List<String> FIELDS = Collections
+			.unmodifiableList(Arrays.asList("firstName", "lastName", "street", "city"));
+
+	// Fields of an address that are indexed by how they sound
+	static final List<String> SOUNDFIELDS = Collections
+			.unmodifiableList(Arrays.asList("firstName", "lastName", "city"));
+	// Most edits a value can be from what was typed when it does not sound the
+	// same
+	private static final int MAXDISTANCE = 2;
+	// Values that sound the same are ranked by their distance up to this many
+	// edits. Values further away are ranked together
+	private static final int RANKDISTANCE = 4;
+
+	// Separates a value from the id of its address. It sorts before every other
+	// character so a value comes before the longer values it is a prefix of
+	private static final char SEPARATOR = '\u0000';
+	// Last character that can follow a prefix
+	private static final char LAST = '\uffff';
+	// Fields an update can set without the index being built again
+	private static final List<String> EDITABLE = Arrays.asList("firstName", "lastName", "street", "city", "state",
+			"zip");
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+	private static final Pattern SPACES = Pattern.compile("\\s+");
+
+	private final ConcurrentMap<String, Book> books = new ConcurrentHashMap<String, Book>();
+	// Goes up on every write so builds that started before a write to their user
+	// are dropped
+	private long generation;
+	// Generation of the last write to each user, and of the last write that could
+	// have touched any user. Builds only have to start after both
+	private final Map<String, Long> written = new HashMap<String, Long>();
+	private long writtenAll;
+
+	/**
+	 * Returns if a user's addresses are indexed
+	 * 
+	 * @param username User being checked
+	 * @return If searches for the user can be answered
+	 */
+	boolean contains(String username) {
+		return books.containsKey(username);
+	}
+
+	/**
+	 * Returns the current generation. It is read before reading a user's
+	 * addresses from the database and handed back to put()
+	 * 
+	 * @return Generation of the index
+	 */
+	synchronized long generation() {
+		return generation;
+	}
+
+	/**
+	 * Replaces a user's index unless the user's addresses were written while
+	 * they were being read. Writes to other users do not stop the index from
+	 * being replaced
+	 * 
+	 * @param username   User the addresses belong to
+	 * @param addresses  Every address of the user
+	 * @param generation Generation read before the addresses were read
+	 * @return If the index was replaced
+	 */
+	synchronized boolean put(String username, List<Address> addresses, long generation) {
+		Long last = written.get(username);
+		if (writtenAll > generation || last != null && last > generation) {
+			return false;
+		}
+		Book book = new Book();
+		book.load(addresses);
+		books.put(username, book);
+		return true;
+	}
+
+	/**
+	 * Adds a newly inserted address to its user's index if the user is indexed
+	 * 
+	 * @param address Address that was inserted, with its id set
+	 */
+	synchronized void add(Address address) {
+		written(address.getUsername());
+		Book book = books.get(address.getUsername());
+		if (book != null) {
+			book.add(new Address(address));
+		}
+	}
+
+	/**
+	 * Removes the addresses matching a delete from their user's index
+	 * 
+	 * @param query Filter of the delete
+	 */
+	synchronized void delete(Document query) {
+		String username = AddressCache.username(query);
+		Book book = username == null ? null : books.get(username);
+		if (book == null) {
+			invalidate(query);
+			return;
+		}
+		written(username);
+		for (Address address : book.matching(query)) {
+			book.remove(address);
+		}
+	}
+
+	/**
+	 * Applies an update to the addresses it matches in their user's index
+	 * 
+	 * @param query  Filter of the update
+	 * @param update Fields being updated and their values
+	 */
+	synchronized void update(Document query, Document update) {
+		String username = AddressCache.username(query);
+		Book book = username == null ? null : books.get(username);
+		if (book == null || !canApply(update)) {
+			invalidate(query);
+			return;
+		}
+		written(username);
+		for (Address address : book.matching(query)) {
+			Address updated = new Address(address);
+			for (Map.Entry<String, Object> field : update.entrySet()) {
+				set(updated, field.getKey(), (String) field.getValue());
+			}
+			book.remove(address);
+			book.add(updated);
+		}
+	}
+
+	/**
+	 * Returns if an update only sets address fields to strings, which is all the
+	 * index can apply itself
+	 * 
+	 * @param update Fields being updated and their values
+	 * @return If the update can be applied to indexed addresses
+	 */
+	private static boolean canApply(Document update) {
+		for (Map.Entry<String, Object> field : update.entrySet()) {
+			if (!EDITABLE.contains(field.getKey()) || !(field.getValue() instanceof String)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Drops the index of the user a write was made for, or every index if the
+	 * write could have touched any user
+	 * 
+	 * @param query Filter of the write
+	 */
+	synchronized void invalidate(Document query) {
+		if (query.get("username") instanceof String) {
+			remove(query.getString("username"));
+		} else {
+			clear();
+		}
+	}
+
+	/**
+	 * Drops a user's index, such as when they log out
+	 * 
+	 * @param username User whose index is dropped
+	 */
+	synchronized void remove(String username) {
+		written(username);
+		books.remove(username);
+	}
+
+	/**
+	 * Drops every index
+	 */
+	synchronized void clear() {
+		writtenAll = ++generation;
+		// Every build that started before this is dropped anyway
+		written.clear();
+		books.clear();
+	}
+
+	/**
+	 * Records a write to a user's addresses, which drops builds of their index
+	 * that started before it. Must be called while holding the index
+	 * 
+	 * @param username User who was written to
+	 */
+	private void written(String username) {
+		written.put(username, ++generation);
+	}
+
+	/**
+	 * Finds a user's addresses that have a field starting with a prefix
+	 * 
+	 * @param username User whose addresses are searched
+	 * @param field    Field that is searched, or null to search every indexed
+	 *                 field
+	 * @param prefix   Start of the value, matched ignoring case and accents
+	 * @param limit    Largest number of addresses returned
+	 * @return Copies of the matching addresses, ordered by the value that matched.
+	 *         Null if the user is not indexed
+	 */
+	List<Address> search(String username, String field, String prefix, int limit) {
+		Book book = books.get(username);
+		if (book == null) {
+			return null;
+		}
+		String key = normalize(prefix);
+		// The closest matches of each field are merged by the value that matched
+		Map<String, Address> merged = new TreeMap<String, Address>();
+		for (String name : field == null ? FIELDS : Collections.singletonList(field)) {
+			int found = 0;
+			for (Map.Entry<String, Address> entry : range(book, name, key).entrySet()) {
+				if (found++ == limit) {
+					break;
+				}
+				merged.put(entry.getKey(), entry.getValue());
+			}
+		}
+		Set<ObjectId> seen = new LinkedHashSet<ObjectId>();
+		List<Address> out = new ArrayList<Address>(Math.min(limit, merged.size()));
+		for (Address address : merged.values()) {
+			if (out.size() == limit) {
+				break;
+			}
+			if (seen.add(address.getId())) {
+				out.add(new Address(address));
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Suggests values of a field that start with a prefix, for completing what
+	 * the user is typing
+	 * 
+	 * @param username User whose addresses are searched
+	 * @param field    Field the values come from
+	 * @param prefix   Start of the value, matched ignoring case and accents
+	 * @param limit    Largest number of values returned
+	 * @return Distinct values in sorted order, spelled as they were first stored.
+	 *         Null if the user is not indexed
+	 */
+	List<String> suggest(String username, String field, String prefix, int limit) {
+		Book book = books.get(username);
+		if (book == null) {
+			return null;
+		}
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, Address> entry : range(book, field, normalize(prefix)).entrySet()) {
+			String key = entry.getKey();
+			String value = key.substring(0, key.indexOf(SEPARATOR));
+			if (!values.containsKey(value)) {
+				if (values.size() == limit) {
+					break;
+				}
+				values.put(value, get(entry.getValue(), field));
+			}
+		}
+		return new ArrayList<String>(values.values());
+	}
+
+	/**
+	 * Finds a user's addresses with a name or city that sounds like or is spelled
+	 * close to a value, such as a name heard over the phone
+	 * 
+	 * @param username User whose addresses are searched
+	 * @param field    One of SOUNDFIELDS, or null to search all of them
+	 * @param value    Value that was heard
+	 * @param limit    Largest number of addresses returned
+	 * @return Copies of the matching addresses, closest spelling first. Null if
+	 *         the user is not indexed
+	 */
+	List<Address> searchSimilar(String username, String field, String value, int limit) {
+		Book book = books.get(username);
+		if (book == null) {
+			return null;
+		}
+		String key = normalize(value);
+		String code = Phonetics.soundex(key);
+		if (code.isEmpty()) {
+			return new ArrayList<Address>();
+		}
+		int max = Math.min(MAXDISTANCE, (key.length() + 1) / 3);
+		// Distances are worked out once per distinct value, not once per address
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		for (String name : field == null ? SOUNDFIELDS : Collections.singletonList(field)) {
+			if (!SOUNDFIELDS.contains(name)) {
+				throw new IllegalArgumentException(name + " is not indexed by sound");
+			}
+			// Values that sound the same are kept however they are spelled, and
+			// are ranked by how far their spelling is from what was typed
+			Set<String> same = book.sounding(name + code);
+			for (String candidate : same) {
+				candidates.add(new Candidate(name, candidate, Phonetics.distance(key, candidate, RANKDISTANCE)));
+			}
+			// Values that only differ in how they start have to be spelled close
+			for (String candidate : book.sounding(name + code.substring(1))) {
+				int distance = Phonetics.distance(key, candidate, max);
+				if (distance <= max && !same.contains(candidate)) {
+					candidates.add(new Candidate(name, candidate, distance));
+				}
+			}
+		}
+		candidates.sort(null);
+		Set<ObjectId> seen = new HashSet<ObjectId>();
+		List<Address> out = new ArrayList<Address>();
+		for (Candidate candidate : candidates) {
+			for (Address address : exact(book, candidate.field, candidate.value).values()) {
+				if (out.size() == limit) {
+					return out;
+				}
+				if (seen.add(address.getId())) {
+					out.add(new Address(address));
+				}
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Returns the entries of a field whose value equals a normalized value
+	 * 
+	 * @param book  Index of a user
+	 * @param field Indexed field
+	 * @param key   Normalized value
+	 * @return View of the matching entries in id order
+	 */
+	private static ConcurrentNavigableMap<String, Address> exact(Book book, String field, String key) {
+		return range(book, field, key + SEPARATOR);
+	}
+
+	/**
+	 * Returns the entries of a field whose value starts with a normalized prefix
+	 * 
+	 * @param book  Index of a user
+	 * @param field Indexed field
+	 * @param key   Normalized prefix
+	 * @return View of the matching entries in sorted order
+	 */
+	private static ConcurrentNavigableMap<String, Address> range(Book book, String field, String key) {
+		ConcurrentSkipListMap<String, Address> values = book.fields.get(field);
+		if (values == null) {
+			throw new IllegalArgumentException(field + " is not indexed");
+		}
+		return values.subMap(key, true, key + LAST, true);
+	}
+
+	/**
+	 * Normalizes a value so that matching ignores case, accents, and extra spaces
+	 * 
+	 * @param value Value typed or stored
+	 * @return Normalized value
+	 */
+	static String normalize(String value) {
+		if (value == null) {
+			return "";
+		}
+		// Most values are plain ASCII with single spaces, which only need lower
+		// casing. Building an index normalizes every value, so this is kept fast
+		StringBuilder out = new StringBuilder(value.length());
+		boolean space = true;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c >= 128) {
+				String stripped = MARKS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+				return SPACES.matcher(stripped.trim()).replaceAll(" ").toLowerCase(Locale.ROOT).replace(SEPARATOR,
+						' ');
+			}
+			if (c <= ' ') {
+				if (!space) {
+					out.append(' ');
+				}
+				space = true;
+			} else {
+				out.append(c >= 'A' && c <= 'Z' ? (char) (c + 32) : c);
+				space = false;
+			}
+		}
+		if (space && out.length() > 0) {
+			out.setLength(out.length() - 1);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Returns the value of an indexed field of an address
+	 * 
+	 * @param address Address
+	 * @param field   Indexed field
+	 * @return Value of the field
+	 */
+	private static String get(Address address, String field) {
+		switch (field) {
+			case "firstName":
+				return address.getFirstName();
+			case "lastName":
+				return address.getLastName();
+			case "street":
+				return address.getStreet();
+			default:
+				return address.getCity();
+		}
+	}
+
+	/**
+	 * Sets a field of an address
+	 * 
+	 * @param address Address being changed
+	 * @param field   Name of the field in the addresses collection
+	 * @param value   New value
+	 */
+	private static void set(Address address, String field, String value) {
+		switch (field) {
+			case "firstName":
+				address.setFirstName(value);
+				break;
+			case "lastName":
+				address.setLastName(value);
+				break;
+			case "street":
+				address.setStreet(value);
+				break;
+			case "city":
+				address.setCity(value);
+				break;
+			case "state":
+				address.setState(value);
+				break;
+			default:
+				address.setZip(value);
+		}
+	}
+
+	/**
+	 * A distinct value found by a similar search and its distance from what was
+	 * typed. Candidates sort closest first
+	 */
+	private static class Candidate implements Comparable<Candidate> {
+		final String field;
+		final String value;
+		final int distance;
+
+		Candidate(String field, String value, int distance) {
+			this.field = field;
+			this.value = value;
+			this.distance = distance;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			int result = Integer.compare(distance, other.distance);
+			return result != 0 ? result : value.compareTo(other.value);
+		}
+	}
+
+	/**
+	 * The index of one user's addresses
+	 */
+	private static class Book {
+		// Sorted keys of each indexed field
+		final Map<String, ConcurrentSkipListMap<String, Address>> fields;
+		// Every indexed address by its id
+		final Map<ObjectId, Address> addresses = new ConcurrentHashMap<ObjectId, Address>();
+		// Distinct normalized values by field and Soundex code, and by field and
+		// the code without its first letter
+		final Map<String, Set<String>> sounds = new ConcurrentHashMap<String, Set<String>>();
+
+		Book() {
+			fields = new HashMap<String, ConcurrentSkipListMap<String, Address>>();
+			for (String field : FIELDS) {
+				fields.put(field, new ConcurrentSkipListMap<String, Address>());
+			}
+		}
+
+		void add(Address address) {
+			if (address.getId() == null) {
+				return;
+			}
+			for (Map.Entry<String, String> key : index(address).entrySet()) {
+				fields.get(key.getKey()).put(key.getValue(), address);
+			}
+		}
+
+		void load(List<Address> list) {
+			// Keys are put into the maps in sorted order, which takes about half as
+			// long as putting them in the order they were read
+			Map<String, List<Map.Entry<String, Address>>> sorted = new HashMap<String,
+					List<Map.Entry<String, Address>>>();
+			for (String field : FIELDS) {
+				sorted.put(field, new ArrayList<Map.Entry<String, Address>>(list.size()));
+			}
+			for (Address read : list) {
+				if (read.getId() != null) {
+					Address address = new Address(read);
+					for (Map.Entry<String, String> key : index(address).entrySet()) {
+						sorted.get(key.getKey()).add(new AbstractMap.SimpleImmutableEntry<String, Address>(
+								key.getValue(), address));
+					}
+				}
+			}
+			for (String field : FIELDS) {
+				List<Map.Entry<String, Address>> entries = sorted.get(field);
+				entries.sort(Map.Entry.comparingByKey());
+				ConcurrentSkipListMap<String, Address> values = fields.get(field);
+				for (Map.Entry<String, Address> entry : entries) {
+					values.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+
+		// Adds an address to the id and sound maps and returns its key in each
+		// field map
+		Map<String, String> index(Address address) {
+			addresses.put(address.getId(), address);
+			Map<String, String> keys = new HashMap<String, String>();
+			for (String field : FIELDS) {
+				String value = normalize(get(address, field));
+				keys.put(field, value + SEPARATOR + address.getId().toHexString());
+				String code = SOUNDFIELDS.contains(field) ? Phonetics.soundex(value) : "";
+				if (!code.isEmpty()) {
+					sounds.computeIfAbsent(field + code, k -> ConcurrentHashMap.newKeySet()).add(value);
+					sounds.computeIfAbsent(field + code.substring(1), k -> ConcurrentHashMap.newKeySet()).add(value);
+				}
+			}
+			return keys;
+		}
+
+		void remove(Address address) {
+			addresses.remove(address.getId());
+			for (String field : FIELDS) {
+				fields.get(field).remove(key(address, field));
+			}
+			// A value stays in the sound index while another address still has it
+			for (String field : SOUNDFIELDS) {
+				String value = normalize(get(address, field));
+				String code = Phonetics.soundex(value);
+				if (!code.isEmpty() && exact(this, field, value).isEmpty()) {
+					unsound(field + code, value);
+					unsound(field + code.substring(1), value);
+				}
+			}
+		}
+
+		void unsound(String key, String value) {
+			sounds.computeIfPresent(key, (k, set) -> {
+				set.remove(value);
+				return set.isEmpty() ? null : set;
+			});
+		}
+
+		Set<String> sounding(String key) {
+			Set<String> out = sounds.get(key);
+			return out == null ? Collections.<String>emptySet() : out;
+		}
+
+		List<Address> matching(Document query) {
+			List<Address> out = new ArrayList<Address>();
+			for (Address address : addresses.values()) {
+				if (AddressCache.matches(address, query)) {
+					out.add(address);
+				}
+			}
+			return out;
+		}
+
+		static String key(Address address, String field) {
+			return normalize(get(address, field)) + SEPARATOR + address.getId().toHexString();
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package library.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Counts what a run of the tombstone purge reclaimed
+ */
+public class PurgeReport {
+	private final List<String> archives = new ArrayList<String>();
+	private final long started = System.nanoTime();
+	private long documents;
+	private long bytes;
+	private long finished;
+
+	/**
+	 * Counts documents that were archived and purged
+	 * 
+	 * @param documents Number of documents
+	 * @param bytes     Size of the documents as BSON
+	 */
+	void addPurged(long documents, long bytes) {
+		this.documents += documents;
+		this.bytes += bytes;
+	}
+
+	/**
+	 * Records an archive file that was written
+	 * 
+	 * @param archive Path to the archive
+	 */
+	void addArchive(String archive) {
+		archives.add(archive);
+	}
+
+	/**
+	 * Marks the run as finished
+	 */
+	void finish() {
+		finished = System.nanoTime();
+	}
+
+	/**
+	 * Returns the number of documents purged
+	 * 
+	 * @return Documents purged
+	 */
+	public long getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * Returns the size of the purged documents as BSON, which is about how much
+	 * space the database gets back
+	 * 
+	 * @return Bytes reclaimed
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the archive files written by the run
+	 * 
+	 * @return Paths to the archives
+	 */
+	public List<String> getArchives() {
+		return archives;
+	}
+
+	/**
+	 * Returns how long the run took
+	 * 
+	 * @return Milliseconds from start to finish
+	 */
+	public long getMillis() {
+		return ((finished == 0 ? System.nanoTime() : finished) - started) / 1000000;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Purged %d deleted documents (%d bytes) in %d ms, archived to %s", documents, bytes,
+				getMillis(), archives);
+	}
+}
@@ -0,0 +1,146 @@
+package library.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import library.query.Query;
+import library.query.QueryNormalizer;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Holds the compiled plans of recently run queries and the results of
+ *         the ones that had to go to the database. Both are kept under the
+ *         normalized query, so queries that mean the same thing share them.
+ * 
+ *         Results are kept along with the address book cache generation they
+ *         were read at. Every write changes the generation, so results that a
+ *         write could have changed are never handed out. Results also expire
+ *         after a short time to pick up writes made by other programs
+ */
+class QueryCache {
+	// Largest number of compiled plans held
+	static final int MAXPLANS = 256;
+	// Largest number of query results held
+	static final int MAXRESULTS = 64;
+	// Results with more addresses than this are not cached
+	static final int MAXRESULTSIZE = 1000;
+	// Milliseconds results stay cached
+	static final long RESULTMILLIS = 30000;
+
+	private final Map<String, QueryPlan> plans = new LinkedHashMap<String, QueryPlan>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, QueryPlan> eldest) {
+			return size() > MAXPLANS;
+		}
+	};
+	private final Map<String, Results> results = new LinkedHashMap<String, Results>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Results> eldest) {
+			return size() > MAXRESULTS;
+		}
+	};
+
+	/**
+	 * Returns the plan of a query, compiling it if it is not held
+	 * 
+	 * @param query Query in any form
+	 * @return Compiled plan
+	 */
+	QueryPlan plan(Query query) {
+		Query normalized = QueryNormalizer.normalize(query);
+		String key = QueryNormalizer.key(normalized);
+		synchronized (this) {
+			QueryPlan plan = plans.get(key);
+			if (plan != null) {
+				return plan;
+			}
+		}
+		// Compiled outside of the lock, two threads compiling the same plan is
+		// harmless
+		QueryPlan plan = new QueryPlan(normalized);
+		synchronized (this) {
+			plans.put(key, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Returns copies of the cached results of a query
+	 * 
+	 * @param plan       Plan of the query
+	 * @param generation Current generation of the address book cache
+	 * @return Addresses, or null if the results are not cached or may be out of
+	 *         date
+	 */
+	synchronized List<Address> get(QueryPlan plan, long generation) {
+		Results cached = results.get(plan.getKey());
+		if (cached == null) {
+			return null;
+		}
+		if (cached.generation != generation || System.currentTimeMillis() - cached.readAt > RESULTMILLIS) {
+			results.remove(plan.getKey());
+			return null;
+		}
+		return copy(cached.addresses);
+	}
+
+	/**
+	 * Caches the results of a query unless there are too many of them
+	 * 
+	 * @param plan       Plan of the query
+	 * @param addresses  Addresses the query returned. Copies are cached
+	 * @param generation Generation of the address book cache read before the
+	 *                   query was run
+	 */
+	synchronized void put(QueryPlan plan, List<Address> addresses, long generation) {
+		if (addresses.size() <= MAXRESULTSIZE) {
+			results.put(plan.getKey(),
+					new Results(Collections.unmodifiableList(copy(addresses)), generation, System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * Drops every cached result, such as when the database is changed
+	 */
+	synchronized void clear() {
+		results.clear();
+	}
+
+	/**
+	 * Copies addresses so that callers can change them without changing the cache
+	 * 
+	 * @param addresses Addresses
+	 * @return New list of copies
+	 */
+	static List<Address> copy(List<Address> addresses) {
+		List<Address> out = new ArrayList<Address>(addresses.size());
+		for (Address address : addresses) {
+			out.add(new Address(address));
+		}
+		return out;
+	}
+
+	/**
+	 * Results of a query and when they were read
+	 */
+	private static class Results {
+		final List<Address> addresses;
+		final long generation;
+		final long readAt;
+
+		Results(List<Address> addresses, long generation, long readAt) {
+			this.addresses = addresses;
+			this.generation = generation;
+			this.readAt = readAt;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package library.database;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import library.query.Filter;
+import library.query.FieldReader;
+import library.query.MongoCompiler;
+import library.query.PredicateCompiler;
+import library.query.Query;
+import library.query.QueryNormalizer;
+import library.query.Sort;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         A query for addresses compiled every way it can be run: as a filter
+ *         for MongoDB, as the exact matches an engine without query operators
+ *         can narrow the addresses down by, and as a predicate and comparator
+ *         that finish the query over addresses in memory. A plan is built once
+ *         per normalized query and reused
+ */
+class QueryPlan {
+	// Reads the fields of an address for compiled predicates
+	static final FieldReader<Address> READER = AddressCache::value;
+
+	private final String key;
+	private final String shape;
+	private final Document filter;
+	private final Document exact;
+	private final List<String> sortFields;
+	private final boolean descending;
+	private final Predicate<Address> predicate;
+	private final Comparator<Address> order;
+	private final int limit;
+
+	/**
+	 * Compiles a query
+	 * 
+	 * @param query Query in normal form
+	 */
+	QueryPlan(Query query) {
+		key = QueryNormalizer.key(query);
+		shape = QueryNormalizer.shape(query);
+		filter = MongoCompiler.toDocument(query.getFilter());
+		exact = exactMatches(query.getFilter());
+		predicate = PredicateCompiler.toPredicate(query.getFilter(), READER);
+		order = PredicateCompiler.toComparator(query.getSorts(), READER);
+		limit = query.getLimit();
+		// The server can sort a limited query itself if every field goes the same
+		// way, with the id last so the order is always the same
+		List<String> fields = new ArrayList<String>();
+		boolean oneWay = true;
+		for (Sort field : query.getSorts()) {
+			fields.add(field.getField());
+			oneWay &= field.isDescending() == query.getSorts().get(0).isDescending();
+		}
+		if (!fields.contains("_id")) {
+			fields.add("_id");
+		}
+		sortFields = oneWay ? fields : null;
+		descending = oneWay && !query.getSorts().isEmpty() && query.getSorts().get(0).isDescending();
+	}
+
+	/**
+	 * Returns the key the plan and its results are cached under
+	 * 
+	 * @return Normalized query
+	 */
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns the shape of the query, which metrics are kept by
+	 * 
+	 * @return Query without its values
+	 */
+	String getShape() {
+		return shape;
+	}
+
+	/**
+	 * Returns the user the query is limited to
+	 * 
+	 * @return Username the query matches exactly, or null if it can match any
+	 *         user's addresses
+	 */
+	String getUsername() {
+		return exact.get("username") instanceof String ? exact.getString("username") : null;
+	}
+
+	/**
+	 * Returns the MongoDB filter of the query
+	 * 
+	 * @return New filter document, which the engine is free to change
+	 */
+	Document getFilter() {
+		return new Document(filter);
+	}
+
+	/**
+	 * Returns the part of the query that only matches fields exactly, which every
+	 * engine can run. The addresses it finds still have to be run through
+	 * select()
+	 * 
+	 * @return New query document
+	 */
+	Document getExactMatches() {
+		return new Document(exact);
+	}
+
+	/**
+	 * Returns the fields the server sorts a limited query by
+	 * 
+	 * @return Sort fields ending with the id, or null if the fields do not all
+	 *         go the same way and so the query is sorted in memory
+	 */
+	List<String> getSortFields() {
+		return sortFields;
+	}
+
+	/**
+	 * Returns if the server sorts from the largest value to the smallest
+	 * 
+	 * @return If the sort fields are descending
+	 */
+	boolean isDescending() {
+		return descending;
+	}
+
+	/**
+	 * Returns the largest number of addresses the query returns
+	 * 
+	 * @return Limit, 0 for every matching address
+	 */
+	int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Finishes the query over addresses in memory by filtering, sorting, and
+	 * limiting them. Only the addresses that are returned are ever sorted
+	 * 
+	 * @param addresses Addresses to pick from
+	 * @param filtered  If the addresses already match the filter
+	 * @return Picked addresses in order. They are the same objects as were given
+	 */
+	List<Address> select(List<Address> addresses, boolean filtered) {
+		Predicate<Address> include = filtered ? address -> true : predicate;
+		if (limit > 0 && order != null) {
+			return MemoryEngine.range(addresses, order, include, limit);
+		}
+		List<Address> out = new ArrayList<Address>();
+		for (Address address : addresses) {
+			if (include.test(address)) {
+				out.add(address);
+				if (out.size() == limit && order == null) {
+					break;
+				}
+			}
+		}
+		if (order != null) {
+			out.sort(order);
+		}
+		return out;
+	}
+
+	/**
+	 * Collects the fields a filter matches exactly on every address it matches
+	 * 
+	 * @param filter Filter in normal form
+	 * @return Field values that every match has. Only text and ids are collected,
+	 *         which match exactly on every engine
+	 */
+	private static Document exactMatches(Filter filter) {
+		Document exact = new Document();
+		Document compiled = MongoCompiler.toDocument(filter);
+		for (String field : compiled.keySet()) {
+			Object value = compiled.get(field);
+			if (!field.startsWith("$") && (value instanceof String || value instanceof ObjectId)) {
+				exact.append(field, value);
+			}
+		}
+		return exact;
+	}
+}
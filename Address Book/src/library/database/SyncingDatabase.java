@@ -0,0 +1,1093 @@
+package library.database;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Wraps a storage engine with a local replica so the application keeps
+ *         working when the engine can not be reached. The replica is an
+ *         embedded engine on this machine holding the address books of the
+ *         users that signed in here.
+ * 
+ *         A replicated user is always read from the replica, and their writes
+ *         are made to the replica and added to a journal kept with it. A
+ *         background task sends the journal to the engine in order, then copies
+ *         the documents changed on the engine since the last copy, so only
+ *         changes travel either way. Every write made through here sets
+ *         dateModified to when it was made, and a journaled write is only made
+ *         on the engine if its document was not changed later, so the last
+ *         writer wins.
+ * 
+ *         Every other user is read from and written to the engine while it can
+ *         be reached and to the replica while it can not. A write that fails
+ *         because the engine is gone is journaled instead
+ */
+class SyncingDatabase implements Database {
+	// Collections of the replica holding the journal and how far each user's
+	// documents have been copied
+	private static final String JOURNAL = "SyncJournal";
+	private static final String STATE = "SyncState";
+	// Collections copied for each replicated user
+	private static final List<String> COLLECTIONS = Arrays.asList(DatabaseManager.ADDRESSCOLLECTION,
+			DatabaseManager.USERSCOLLECTION);
+	// How far before the newest change seen each copy starts, so a change made
+	// by a clock that is a little behind is not missed
+	private static final long OVERLAPMILLIS = TimeUnit.MINUTES.toMillis(5);
+	// Write concern journaled writes are sent with
+	private static final String WRITECONCERN = "ACKNOWLEDGED";
+
+	// Kinds of journal entries
+	private static final String INSERT = "insert";
+	private static final String PUT = "put";
+	// Sets fields of, or deletes, a document picked by its _id
+	private static final String WRITE = "write";
+	// Sets fields of, or deletes, the documents picked by a filter
+	private static final String UPDATE = "update";
+
+	private final Database remote;
+	private final Database local;
+	private final File folder;
+	private final String databaseName;
+	private final long syncMillis;
+	private final int batchSize;
+	private final Consumer<String> changed;
+	private final Logger logger = Logger.getLogger(SyncingDatabase.class.getName());
+
+	private volatile boolean online;
+	// Users whose documents have been copied, mapped to the newest dateModified
+	// copied
+	private final ConcurrentMap<String, Date> replicated = new ConcurrentHashMap<String, Date>();
+	// Users to copy whole once the engine can be reached
+	private final Set<String> requested = ConcurrentHashMap.newKeySet();
+	// Journaled writes that have not been sent, oldest first. Writes to the
+	// replica are made while holding it, so they are journaled in the order they
+	// are made
+	private final Deque<Document> journal = new ArrayDeque<Document>();
+	// When the newest journaled write of each document was made. Guarded by the
+	// journal
+	private final Map<Object, Date> pending = new HashMap<Object, Date>();
+	private long nextEntry;
+	private final AtomicLong conflicts = new AtomicLong();
+	// Set while a sync has been asked for and has not started yet
+	private final AtomicBoolean kicked = new AtomicBoolean();
+	private ScheduledExecutorService syncer;
+
+	/**
+	 * Wraps a storage engine
+	 * 
+	 * @param remote       Storage engine being replicated
+	 * @param local        Embedded engine the replica is kept in
+	 * @param folder       Folder of the replica
+	 * @param databaseName Name of the database being replicated
+	 * @param syncMillis   Milliseconds between syncs
+	 * @param batchSize    Changes sent or copied at once
+	 * @param changed      Called with a user whose documents were changed by a
+	 *                     copy
+	 */
+	SyncingDatabase(Database remote, Database local, File folder, String databaseName, long syncMillis,
+			int batchSize, Consumer<String> changed) {
+		this.remote = remote;
+		this.local = local;
+		this.folder = folder;
+		this.databaseName = databaseName;
+		this.syncMillis = Math.max(100, syncMillis);
+		this.batchSize = Math.max(1, batchSize);
+		this.changed = changed;
+	}
+
+	/**
+	 * Opens the replica along with the writes left in its journal, then connects
+	 * to the engine. The replica is used on its own if the engine does not
+	 * answer, and the engine is checked for again at every sync
+	 */
+	@Override
+	public void connect(String connectionString) {
+		local.connect(DatabaseManager.EMBEDDEDCONNECTION + folder.getPath());
+		load();
+		try {
+			remote.connect(connectionString);
+			online = remote.ping();
+		} catch (RuntimeException e) {
+			logger.log(Level.FINE, "Unable to connect to the database", e);
+		}
+		if (!online) {
+			logger.info("The database can not be reached, working from the local replica");
+		}
+		syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "replica-sync");
+			thread.setDaemon(true);
+			return thread;
+		});
+		syncer.scheduleWithFixedDelay(this::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Reads which users are replicated and the journal from the replica
+	 */
+	private void load() {
+		try (Cursor<Document> out = local.getDocument(databaseName, STATE, Document.class, new Document(), null,
+				batchSize)) {
+			while (out.hasNext()) {
+				Document state = out.next();
+				replicated.put(state.getString("_id"), state.getDate("copiedThrough"));
+			}
+		}
+		List<Document> entries = new ArrayList<Document>();
+		try (Cursor<Document> out = local.getDocument(databaseName, JOURNAL, Document.class, new Document(), null,
+				batchSize)) {
+			while (out.hasNext()) {
+				entries.add(out.next());
+			}
+		}
+		entries.sort(Comparator.comparingLong(entry -> entry.getLong("_id")));
+		synchronized (journal) {
+			for (Document entry : entries) {
+				journal.add(entry);
+				track(entry);
+			}
+			nextEntry = entries.isEmpty() ? 0 : entries.get(entries.size() - 1).getLong("_id") + 1;
+		}
+		if (!entries.isEmpty()) {
+			logger.info(entries.size() + " changes made offline are waiting to be sent");
+		}
+	}
+
+	/**
+	 * Stops syncing and closes both engines. The journal is sent one last time
+	 * if the engine can be reached, and whatever is not sent is kept for the
+	 * next start
+	 */
+	@Override
+	public void close() {
+		if (syncer != null) {
+			syncer.shutdownNow();
+			try {
+				syncer.awaitTermination(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			syncer = null;
+			if (online) {
+				try {
+					push();
+				} catch (RuntimeException e) {
+					logger.log(Level.WARNING, "Unable to send the journal, it is sent at the next start", e);
+				}
+			}
+		}
+		remote.close();
+		local.close();
+	}
+
+	/**
+	 * The replica can be used whether or not the engine can be reached
+	 */
+	@Override
+	public boolean ping() {
+		return local.ping();
+	}
+
+	/**
+	 * Queries run on the replica only match exactly, so operators are only
+	 * supported for a query the engine answers while it can be reached
+	 */
+	@Override
+	public boolean supportsQueryOperators(Document query) {
+		return !isLocal(query) && remote.supportsQueryOperators(query);
+	}
+
+	@Override
+	public void setDebuggerLevel(Level level) {
+		remote.setDebuggerLevel(level);
+		local.setDebuggerLevel(level);
+	}
+
+	/**
+	 * Returns if the engine could be reached the last time it was used
+	 * 
+	 * @return If the engine is reachable, otherwise only the replica is used
+	 */
+	boolean isOnline() {
+		return online;
+	}
+
+	/**
+	 * Returns how many writes are in the journal waiting to be sent
+	 * 
+	 * @return Journaled writes
+	 */
+	int getPendingChanges() {
+		synchronized (journal) {
+			return journal.size();
+		}
+	}
+
+	/**
+	 * Returns how many journaled writes were not made because the engine's
+	 * document had been changed later or is gone, or because another document
+	 * holds one of its unique values
+	 * 
+	 * @return Writes lost to a newer change since the replica was opened
+	 */
+	long getConflicts() {
+		return conflicts.get();
+	}
+
+	/**
+	 * Starts keeping a user's documents in the replica. They are copied whole
+	 * right away if the engine can be reached, which also picks up changes made
+	 * by writers that do not set dateModified, otherwise once it can be. Run at
+	 * login.
+	 * 
+	 * The copy is made on the sync thread, so it never overlaps a push of the
+	 * journal. A copy that read the engine before a journaled write was sent
+	 * would otherwise find the write acknowledged by the time it removes the
+	 * documents the engine did not have, and remove the document
+	 * 
+	 * @param username User being replicated
+	 */
+	void replicate(String username) {
+		ScheduledExecutorService current = syncer;
+		if (online && current != null) {
+			try {
+				current.submit(() -> copy(username, true)).get();
+				return;
+			} catch (ExecutionException e) {
+				RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+						: new IllegalStateException(e.getCause());
+				if (remote.ping()) {
+					throw cause;
+				}
+				goOffline(cause);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RejectedExecutionException e) {
+				// Closed, the user is copied at the next start
+			}
+		}
+		requested.add(username);
+	}
+
+	/**
+	 * Returns if the reads and writes for a query are made on the replica
+	 * 
+	 * @param query Filter of a read or write
+	 * @return If the query is for a replicated user or the engine can not be
+	 *         reached
+	 */
+	private boolean isLocal(Document query) {
+		Object username = query.get("username");
+		return !online || username instanceof String && replicated.containsKey(username);
+	}
+
+	/**
+	 * Makes a call on the engine, falling back to the replica if the engine can
+	 * no longer be reached. A failure while the engine still answers is thrown
+	 * 
+	 * @param <T>      Type of the result
+	 * @param call     Call on the engine
+	 * @param fallback Call made instead once the engine is gone
+	 * @return Result of whichever call was made
+	 */
+	private <T> T onEngine(Supplier<T> call, Supplier<T> fallback) {
+		try {
+			return call.get();
+		} catch (RuntimeException e) {
+			if (remote.ping()) {
+				throw e;
+			}
+			goOffline(e);
+			return fallback.get();
+		}
+	}
+
+	/**
+	 * Switches to the replica after the engine was lost
+	 * 
+	 * @param cause Failure that showed the engine was gone
+	 */
+	private void goOffline(RuntimeException cause) {
+		if (online) {
+			online = false;
+			logger.info("Lost the database, working from the local replica until it is back");
+			logger.log(Level.FINE, "The database was lost", cause);
+		}
+	}
+
+	/**
+	 * Converts a value into the document that is stored, with an _id and the
+	 * time it was written
+	 * 
+	 * @param <T>   Type of the value
+	 * @param value Value being inserted. It is given an id if it needs one
+	 * @param type  Class of the value
+	 * @param now   Time of the write
+	 * @return Document
+	 */
+	private static <T> Document stamp(T value, Class<T> type, Date now) {
+		Document doc = Codecs.toDocument(value, type);
+		if (!doc.containsKey("_id")) {
+			doc.append("_id", new ObjectId());
+		}
+		return doc.append("deleted", false).append("dateModified", now);
+	}
+
+	@Override
+	public <T> void insertDocument(String databaseName, String collectionName, Class<T> type, T value) {
+		Document doc = stamp(value, type, new Date());
+		Map<Integer, String> errors;
+		if (isLocal(doc)) {
+			errors = journalInserts(databaseName, collectionName, Collections.singletonList(doc));
+		} else {
+			errors = onEngine(() -> {
+				remote.insertDocument(databaseName, collectionName, Document.class, new Document(doc));
+				return Collections.<Integer, String>emptyMap();
+			}, () -> journalInserts(databaseName, collectionName, Collections.singletonList(doc)));
+		}
+		if (!errors.isEmpty()) {
+			throw new IllegalStateException(errors.get(0));
+		}
+	}
+
+	/**
+	 * Inserts the documents of replicated users into the replica, and the rest
+	 * into the engine while it can be reached
+	 */
+	@Override
+	public <T> Map<Integer, String> insertDocuments(String databaseName, String collectionName, Class<T> type,
+			List<T> values) {
+		Date now = new Date();
+		List<Document> locals = new ArrayList<Document>();
+		List<Integer> localPositions = new ArrayList<Integer>();
+		List<Document> remotes = new ArrayList<Document>();
+		List<Integer> positions = new ArrayList<Integer>();
+		for (int i = 0; i < values.size(); i++) {
+			Document doc = stamp(values.get(i), type, now);
+			if (isLocal(doc)) {
+				locals.add(doc);
+				localPositions.add(i);
+			} else {
+				remotes.add(doc);
+				positions.add(i);
+			}
+		}
+		Map<Integer, String> errors = new HashMap<Integer, String>();
+		if (!locals.isEmpty()) {
+			for (Map.Entry<Integer, String> error : journalInserts(databaseName, collectionName, locals).entrySet()) {
+				errors.put(localPositions.get(error.getKey()), error.getValue());
+			}
+		}
+		if (remotes.isEmpty()) {
+			return errors;
+		}
+		Map<Integer, String> failed = onEngine(() -> {
+			List<Document> copies = new ArrayList<Document>(remotes.size());
+			for (Document doc : remotes) {
+				copies.add(new Document(doc));
+			}
+			return remote.insertDocuments(databaseName, collectionName, Document.class, copies);
+		}, () -> journalInserts(databaseName, collectionName, remotes));
+		for (Map.Entry<Integer, String> error : failed.entrySet()) {
+			errors.put(positions.get(error.getKey()), error.getValue());
+		}
+		return errors;
+	}
+
+	/**
+	 * Soft deletes on the engine with an update, so the delete carries its
+	 * dateModified like every other write
+	 */
+	@Override
+	public void deleteDocument(String databaseName, String collectionName, Document query) {
+		Date now = new Date();
+		if (isLocal(query)) {
+			journalUpdate(databaseName, collectionName, query, new Document("dateModified", now), true);
+			return;
+		}
+		onEngine(() -> {
+			remote.updateDocument(databaseName, collectionName, new Document(query).append("deleted", false),
+					new Document("deleted", true).append("dateDeleted", now).append("dateModified", now));
+			return null;
+		}, () -> journalUpdate(databaseName, collectionName, query, new Document("dateModified", now), true));
+	}
+
+	@Override
+	public void updateDocument(String databaseName, String collectionName, Document query, Document update) {
+		Document fields = new Document(update).append("dateModified", new Date());
+		if (isLocal(query)) {
+			journalUpdate(databaseName, collectionName, query, fields, false);
+			return;
+		}
+		onEngine(() -> {
+			remote.updateDocument(databaseName, collectionName, query, fields);
+			return null;
+		}, () -> journalUpdate(databaseName, collectionName, query, fields, false));
+	}
+
+	/**
+	 * Makes the writes on the replica if every one of them is for a replicated
+	 * user, otherwise on the engine while it can be reached
+	 */
+	@Override
+	public List<WriteResult> writeDocuments(String databaseName, String collectionName, List<DocumentWrite> writes,
+			String writeConcern, long timeoutMillis) {
+		Date now = new Date();
+		List<DocumentWrite> stamped = new ArrayList<DocumentWrite>(writes.size());
+		boolean allLocal = true;
+		for (DocumentWrite write : writes) {
+			Document fields = write.getUpdate() == null ? new Document() : new Document(write.getUpdate());
+			fields.append("dateModified", now);
+			stamped.add(write.isDelete() ? DocumentWrite.delete(write.getFilter(), fields)
+					: DocumentWrite.update(write.getFilter(), fields));
+			allLocal &= isLocal(write.getFilter());
+		}
+		if (allLocal) {
+			return journalWrites(databaseName, collectionName, stamped, now);
+		}
+		return onEngine(
+				() -> remote.writeDocuments(databaseName, collectionName, stamped, writeConcern, timeoutMillis),
+				() -> journalWrites(databaseName, collectionName, stamped, now));
+	}
+
+	@Override
+	public <T> Cursor<T> getDocument(String databaseName, String collectionName, Class<T> type, Document query,
+			Document projection, int batchSize) {
+		if (isLocal(query)) {
+			return local.getDocument(databaseName, collectionName, type, query, projection, batchSize);
+		}
+		return onEngine(
+				() -> remote.getDocument(databaseName, collectionName, type, new Document(query), projection,
+						batchSize),
+				() -> local.getDocument(databaseName, collectionName, type, query, projection, batchSize));
+	}
+
+	@Override
+	public <T> Cursor<T> getSortedDocument(String databaseName, String collectionName, Class<T> type,
+			Document query, Document projection, List<String> sortFields, Document after, boolean descending,
+			int limit) {
+		if (isLocal(query)) {
+			return local.getSortedDocument(databaseName, collectionName, type, query, projection, sortFields, after,
+					descending, limit);
+		}
+		return onEngine(
+				() -> remote.getSortedDocument(databaseName, collectionName, type, new Document(query), projection,
+						sortFields, after, descending, limit),
+				() -> local.getSortedDocument(databaseName, collectionName, type, query, projection, sortFields,
+						after, descending, limit));
+	}
+
+	/**
+	 * Tombstones are only purged from the engine, so none are returned while it
+	 * can not be reached
+	 */
+	@Override
+	public Cursor<Document> getDeletedDocuments(String databaseName, String collectionName, Date deletedBefore,
+			int batchSize) {
+		if (!online) {
+			return Cursors.of(Collections.<Document>emptyIterator());
+		}
+		return onEngine(() -> remote.getDeletedDocuments(databaseName, collectionName, deletedBefore, batchSize),
+				() -> Cursors.of(Collections.<Document>emptyIterator()));
+	}
+
+	/**
+	 * Purges the tombstones from the engine and the replica
+	 * 
+	 * @return Number of documents removed from the engine
+	 */
+	@Override
+	public long purgeDocuments(String databaseName, String collectionName, List<Object> ids) {
+		long purged = online ? onEngine(() -> remote.purgeDocuments(databaseName, collectionName, ids), () -> 0L)
+				: 0;
+		local.purgeDocuments(databaseName, collectionName, ids);
+		return purged;
+	}
+
+	@Override
+	public Cursor<Document> getChangedDocuments(String databaseName, String collectionName, Document query,
+			Date changedAfter, int batchSize) {
+		if (!online) {
+			return local.getChangedDocuments(databaseName, collectionName, query, changedAfter, batchSize);
+		}
+		return onEngine(
+				() -> remote.getChangedDocuments(databaseName, collectionName, query, changedAfter, batchSize),
+				() -> local.getChangedDocuments(databaseName, collectionName, query, changedAfter, batchSize));
+	}
+
+	/**
+	 * Stores the documents in the replica and journals them, so they replace the
+	 * engine's documents at the next sync
+	 */
+	@Override
+	public void putDocuments(String databaseName, String collectionName, List<Document> docs) {
+		synchronized (journal) {
+			List<Document> entries = new ArrayList<Document>(docs.size());
+			for (Document doc : docs) {
+				entries.add(entry(PUT, collectionName, null, new Document(doc), false, new Date()));
+			}
+			append(entries);
+			local.putDocuments(databaseName, collectionName, docs);
+		}
+		requestSync();
+	}
+
+	/**
+	 * Indexes are only created on the engine, and are created at the next start
+	 * if it can not be reached
+	 */
+	@Override
+	public void createIndex(String databaseName, String collectionName, Document keys, Document options) {
+		if (online) {
+			onEngine(() -> {
+				remote.createIndex(databaseName, collectionName, keys, options);
+				return null;
+			}, () -> null);
+		}
+	}
+
+	@Override
+	public void dropIndex(String databaseName, String collectionName, String indexName) {
+		if (online) {
+			onEngine(() -> {
+				remote.dropIndex(databaseName, collectionName, indexName);
+				return null;
+			}, () -> null);
+		}
+	}
+
+	@Override
+	public List<String> getIndexNames(String databaseName, String collectionName) {
+		if (!online) {
+			return local.getIndexNames(databaseName, collectionName);
+		}
+		return onEngine(() -> remote.getIndexNames(databaseName, collectionName),
+				() -> local.getIndexNames(databaseName, collectionName));
+	}
+
+	@Override
+	public Document explain(String databaseName, String collectionName, Document query, Document projection,
+			Document sort) {
+		if (isLocal(query)) {
+			return local.explain(databaseName, collectionName, query, projection, sort);
+		}
+		return onEngine(() -> remote.explain(databaseName, collectionName, query, projection, sort),
+				() -> local.explain(databaseName, collectionName, query, projection, sort));
+	}
+
+	@Override
+	public List<String> getDatabases() {
+		if (!online) {
+			return local.getDatabases();
+		}
+		return onEngine(remote::getDatabases, local::getDatabases);
+	}
+
+	/**
+	 * Follows the engine's changes while it can be reached
+	 */
+	@Override
+	public Cursor<ChangeEvent> watchChanges(String databaseName, String collectionName) {
+		return online ? remote.watchChanges(databaseName, collectionName) : null;
+	}
+
+	/**
+	 * Builds a journal entry
+	 * 
+	 * @param kind           INSERT, PUT, WRITE, or UPDATE
+	 * @param collectionName Name of the collection written to
+	 * @param filter         Filter of a WRITE or UPDATE, otherwise null
+	 * @param fields         Document being inserted or stored, or the fields being
+	 *                       set
+	 * @param delete         If the write deletes its documents
+	 * @param at             When the write was made
+	 * @return Entry, which is given its position once it is appended
+	 */
+	private static Document entry(String kind, String collectionName, Document filter, Document fields,
+			boolean delete, Date at) {
+		return new Document("kind", kind).append("collection", collectionName).append("filter", filter)
+				.append("fields", fields).append("delete", delete).append("at", at);
+	}
+
+	/**
+	 * Adds entries to the end of the journal, storing them in the replica before
+	 * they are added. Must be called while holding the journal
+	 * 
+	 * @param entries Entries being journaled
+	 */
+	private void append(List<Document> entries) {
+		if (entries.isEmpty()) {
+			return;
+		}
+		for (Document entry : entries) {
+			entry.put("_id", nextEntry++);
+		}
+		local.insertDocuments(databaseName, JOURNAL, Document.class, entries);
+		for (Document entry : entries) {
+			journal.add(entry);
+			track(entry);
+		}
+	}
+
+	/**
+	 * Records when the document of an entry was last written, so a copy from the
+	 * engine does not replace a newer journaled write. Must be called while
+	 * holding the journal
+	 * 
+	 * @param entry Journaled entry
+	 */
+	private void track(Document entry) {
+		Object id;
+		switch (entry.getString("kind")) {
+			case INSERT:
+			case PUT:
+				id = entry.get("fields", Document.class).get("_id");
+				break;
+			case WRITE:
+				id = entry.get("filter", Document.class).get("_id");
+				break;
+			default:
+				return;
+		}
+		pending.merge(id, entry.getDate("at"), (a, b) -> a.after(b) ? a : b);
+	}
+
+	/**
+	 * Makes inserts on the replica and journals the ones it accepted
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param docs           Stamped documents being inserted
+	 * @return Position of each document the replica refused mapped to the reason
+	 *         why
+	 */
+	private Map<Integer, String> journalInserts(String databaseName, String collectionName, List<Document> docs) {
+		Map<Integer, String> errors;
+		synchronized (journal) {
+			errors = local.insertDocuments(databaseName, collectionName, Document.class, docs);
+			List<Document> entries = new ArrayList<Document>(docs.size());
+			for (int i = 0; i < docs.size(); i++) {
+				if (!errors.containsKey(i)) {
+					entries.add(entry(INSERT, collectionName, null, new Document(docs.get(i)), false,
+							docs.get(i).getDate("dateModified")));
+				}
+			}
+			append(entries);
+		}
+		requestSync();
+		return errors;
+	}
+
+	/**
+	 * Journals an update or delete picked by a filter and makes it on the
+	 * replica. For a replicated user it is journaled as a write to each document
+	 * the replica has that matches, so each one is made on the engine only if it
+	 * was not changed there later
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param query          Filter of the write
+	 * @param fields         Stamped fields being set
+	 * @param delete         If the documents are deleted
+	 * @return Nothing
+	 */
+	private Void journalUpdate(String databaseName, String collectionName, Document query, Document fields,
+			boolean delete) {
+		Date at = fields.getDate("dateModified");
+		Object username = query.get("username");
+		synchronized (journal) {
+			List<Document> entries = new ArrayList<Document>();
+			if (username instanceof String && replicated.containsKey(username)) {
+				try (Cursor<Document> out = local.getDocument(databaseName, collectionName, Document.class,
+						new Document(query), new Document("_id", 1), batchSize)) {
+					while (out.hasNext()) {
+						entries.add(entry(WRITE, collectionName, new Document("_id", out.next().get("_id")), fields,
+								delete, at));
+					}
+				}
+			} else {
+				entries.add(entry(UPDATE, collectionName, new Document(query), fields, delete, at));
+			}
+			append(entries);
+			if (delete) {
+				local.updateDocument(databaseName, collectionName, new Document(query).append("deleted", false),
+						new Document(fields).append("deleted", true).append("dateDeleted", at));
+			} else {
+				local.updateDocument(databaseName, collectionName, query, fields);
+			}
+		}
+		requestSync();
+		return null;
+	}
+
+	/**
+	 * Journals writes picked by _id and makes them on the replica
+	 * 
+	 * @param databaseName   Name of the database
+	 * @param collectionName Name of the collection
+	 * @param writes         Stamped writes
+	 * @param at             When the writes were made
+	 * @return Outcome of each write on the replica
+	 */
+	private List<WriteResult> journalWrites(String databaseName, String collectionName, List<DocumentWrite> writes,
+			Date at) {
+		List<WriteResult> results;
+		synchronized (journal) {
+			List<Document> entries = new ArrayList<Document>(writes.size());
+			for (DocumentWrite write : writes) {
+				entries.add(entry(WRITE, collectionName, new Document(write.getFilter()), write.getUpdate(),
+						write.isDelete(), at));
+			}
+			append(entries);
+			results = local.writeDocuments(databaseName, collectionName, writes, WRITECONCERN, 0);
+		}
+		requestSync();
+		return results;
+	}
+
+	/**
+	 * Asks for a sync to run soon, so journaled writes reach the engine without
+	 * waiting for the next scheduled sync
+	 */
+	private void requestSync() {
+		ScheduledExecutorService current = syncer;
+		if (online && current != null && kicked.compareAndSet(false, true)) {
+			try {
+				current.execute(() -> {
+					kicked.set(false);
+					sync();
+				});
+			} catch (RuntimeException e) {
+				// Closed, the journal is sent on close or at the next start
+				kicked.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Sends the journal to the engine, then copies the changes made on the engine
+	 * to the replica. Does nothing while the engine can not be reached, and
+	 * switches back to the engine once the journal has been sent after it comes
+	 * back
+	 */
+	private void sync() {
+		try {
+			if (!online) {
+				if (!remote.ping()) {
+					return;
+				}
+				push();
+				online = true;
+				logger.info("The database can be reached again, the changes made offline have been sent");
+			} else {
+				push();
+			}
+			for (String username : requested) {
+				copy(username, true);
+				requested.remove(username);
+			}
+			for (String username : replicated.keySet()) {
+				copy(username, false);
+			}
+		} catch (RuntimeException e) {
+			if (remote.ping()) {
+				logger.log(Level.WARNING, "Unable to sync the local replica", e);
+			} else {
+				goOffline(e);
+			}
+		}
+	}
+
+	/**
+	 * Sends the journal to the engine in order, in batches. Each batch is removed
+	 * from the journal once the engine has it
+	 */
+	private void push() {
+		while (true) {
+			List<Document> entries = new ArrayList<Document>();
+			synchronized (journal) {
+				for (Document entry : journal) {
+					if (entries.size() == batchSize) {
+						break;
+					}
+					entries.add(entry);
+				}
+			}
+			if (entries.isEmpty()) {
+				return;
+			}
+			int start = 0;
+			while (start < entries.size()) {
+				Document first = entries.get(start);
+				int end = start + 1;
+				while (end < entries.size() && !first.getString("kind").equals(UPDATE)
+						&& first.getString("kind").equals(entries.get(end).getString("kind"))
+						&& first.getString("collection").equals(entries.get(end).getString("collection"))) {
+					end++;
+				}
+				send(entries.subList(start, end));
+				start = end;
+			}
+			acknowledge(entries);
+		}
+	}
+
+	/**
+	 * Sends entries of one kind and collection to the engine. A write the engine
+	 * refuses is logged and dropped, since sending it again would not change the
+	 * answer
+	 * 
+	 * @param entries Entries being sent
+	 */
+	private void send(List<Document> entries) {
+		String kind = entries.get(0).getString("kind");
+		String collectionName = entries.get(0).getString("collection");
+		List<Document> docs = new ArrayList<Document>(entries.size());
+		switch (kind) {
+			case INSERT:
+				for (Document entry : entries) {
+					docs.add(new Document(entry.get("fields", Document.class)));
+				}
+				for (Map.Entry<Integer, String> error : remote
+						.insertDocuments(databaseName, collectionName, Document.class, docs).entrySet()) {
+					// Already inserted, by a sync that stopped before it could remove the
+					// entry, since the error is on the _id of the document sent
+					if (error.getValue().contains("E11000") && error.getValue().contains("index: _id_ ")) {
+						continue;
+					}
+					if (error.getValue().contains("E11000")) {
+						// Another document holds one of its unique values, such as a
+						// username taken while this one was offline
+						conflicts.incrementAndGet();
+					}
+					logger.warning("Dropped an insert of " + docs.get(error.getKey()).get("_id")
+							+ " the database refused: " + error.getValue());
+				}
+				break;
+			case PUT:
+				for (Document entry : entries) {
+					docs.add(entry.get("fields", Document.class));
+				}
+				remote.putDocuments(databaseName, collectionName, docs);
+				break;
+			case WRITE:
+				// A bulk write is unordered, so a document written twice starts a new
+				// one, otherwise the older write could be made last and lose
+				List<DocumentWrite> writes = new ArrayList<DocumentWrite>(entries.size());
+				Set<Object> written = new HashSet<Object>();
+				for (Document entry : entries) {
+					if (!written.add(entry.get("filter", Document.class).get("_id"))) {
+						write(collectionName, writes);
+						writes.clear();
+						written.clear();
+						written.add(entry.get("filter", Document.class).get("_id"));
+					}
+					// Only made if the document was last changed before the write
+					Document filter = new Document(entry.get("filter", Document.class)).append("$or",
+							Arrays.asList(new Document("dateModified", new Document("$lte", entry.getDate("at"))),
+									new Document("dateModified", new Document("$exists", false))));
+					Document fields = entry.get("fields", Document.class);
+					writes.add(entry.getBoolean("delete") ? DocumentWrite.delete(filter, fields)
+							: DocumentWrite.update(filter, fields));
+				}
+				write(collectionName, writes);
+				break;
+			default:
+				Document entry = entries.get(0);
+				Document filter = new Document(entry.get("filter", Document.class));
+				Document fields = new Document(entry.get("fields", Document.class));
+				if (entry.getBoolean("delete")) {
+					filter.append("deleted", false);
+					fields.append("deleted", true).append("dateDeleted", entry.getDate("at"));
+				}
+				remote.updateDocument(databaseName, collectionName, filter, fields);
+		}
+	}
+
+	/**
+	 * Sends journaled writes to the engine as one bulk write, counting the ones
+	 * that lost to a newer change
+	 * 
+	 * @param collectionName Name of the collection
+	 * @param writes         Writes, each to a different document
+	 */
+	private void write(String collectionName, List<DocumentWrite> writes) {
+		for (WriteResult result : remote.writeDocuments(databaseName, collectionName, writes, WRITECONCERN, 0)) {
+			if (result.getStatus() == WriteResult.Status.NOTFOUND) {
+				conflicts.incrementAndGet();
+				logger.fine("Kept the database's newer version of " + result.getId());
+			} else if (result.getStatus() == WriteResult.Status.FAILED) {
+				logger.warning("Dropped a write the database refused: " + result.getMessage());
+			} else if (result.getStatus() == WriteResult.Status.UNCONFIRMED) {
+				logger.warning("Write of " + result.getId() + " may not be durable: " + result.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Removes entries that the engine has from the journal, both the stored one
+	 * and the one in memory
+	 * 
+	 * @param entries Oldest entries of the journal
+	 */
+	private void acknowledge(List<Document> entries) {
+		List<DocumentWrite> removals = new ArrayList<DocumentWrite>(entries.size());
+		List<Object> ids = new ArrayList<Object>(entries.size());
+		for (Document entry : entries) {
+			ids.add(entry.get("_id"));
+			removals.add(DocumentWrite.delete(new Document("_id", entry.get("_id"))));
+		}
+		local.writeDocuments(databaseName, JOURNAL, removals, WRITECONCERN, 0);
+		local.purgeDocuments(databaseName, JOURNAL, ids);
+		synchronized (journal) {
+			for (int i = 0; i < entries.size(); i++) {
+				journal.removeFirst();
+			}
+			pending.clear();
+			for (Document entry : journal) {
+				track(entry);
+			}
+		}
+	}
+
+	/**
+	 * Copies a user's documents from the engine to the replica. Only the
+	 * documents changed since the last copy are read, unless the whole set is
+	 * copied, which also removes the documents the engine no longer has.
+	 * Documents the replica already has as they are, and documents with a newer
+	 * journaled write, are left alone
+	 * 
+	 * @param username User being copied
+	 * @param whole    If every document of the user is copied
+	 */
+	private void copy(String username, boolean whole) {
+		Date through = replicated.get(username);
+		Date after = whole || through == null ? null : new Date(through.getTime() - OVERLAPMILLIS);
+		Date newest = through == null ? new Date(0) : through;
+		Document query = new Document("username", username);
+		int copied = 0;
+		for (String collectionName : COLLECTIONS) {
+			Map<Object, Document> stored = new HashMap<Object, Document>();
+			try (Cursor<Document> out = local.getChangedDocuments(databaseName, collectionName, query, after,
+					batchSize)) {
+				while (out.hasNext()) {
+					Document doc = out.next();
+					stored.put(doc.get("_id"), doc);
+				}
+			}
+			Set<Object> seen = new HashSet<Object>();
+			List<Document> batch = new ArrayList<Document>();
+			try (Cursor<Document> out = remote.getChangedDocuments(databaseName, collectionName, query, after,
+					batchSize)) {
+				while (out.hasNext()) {
+					Document doc = out.next();
+					Object modified = doc.get("dateModified");
+					if (modified instanceof Date && ((Date) modified).after(newest)) {
+						newest = (Date) modified;
+					}
+					seen.add(doc.get("_id"));
+					if (!doc.equals(stored.get(doc.get("_id")))) {
+						batch.add(doc);
+					}
+					if (batch.size() == batchSize) {
+						copied += store(collectionName, batch);
+						batch.clear();
+					}
+				}
+			}
+			copied += store(collectionName, batch);
+			if (whole) {
+				stored.keySet().removeAll(seen);
+				copied += remove(collectionName, stored.keySet());
+			}
+		}
+		if (!newest.equals(through)) {
+			local.putDocuments(databaseName, STATE, Collections.singletonList(new Document("_id", username)
+					.append("copiedThrough", newest).append("deleted", false)));
+		}
+		replicated.put(username, newest);
+		if (copied > 0) {
+			logger.fine("Copied " + copied + " changes of " + username + " from the database");
+			changed.accept(username);
+		}
+	}
+
+	/**
+	 * Stores documents copied from the engine in the replica, except the ones
+	 * with a newer journaled write
+	 * 
+	 * @param collectionName Name of the collection
+	 * @param docs           Documents read from the engine
+	 * @return Number of documents stored
+	 */
+	private int store(String collectionName, List<Document> docs) {
+		synchronized (journal) {
+			List<Document> newer = new ArrayList<Document>(docs.size());
+			for (Document doc : docs) {
+				Date at = pending.get(doc.get("_id"));
+				Object modified = doc.get("dateModified");
+				if (at == null || modified instanceof Date && !((Date) modified).before(at)) {
+					newer.add(doc);
+				}
+			}
+			if (!newer.isEmpty()) {
+				local.putDocuments(databaseName, collectionName, newer);
+			}
+			return newer.size();
+		}
+	}
+
+	/**
+	 * Removes documents the engine no longer has from the replica, except the
+	 * ones with a journaled write
+	 * 
+	 * @param collectionName Name of the collection
+	 * @param ids            _ids of the documents
+	 * @return Number of documents removed
+	 */
+	private int remove(String collectionName, Set<Object> ids) {
+		synchronized (journal) {
+			List<Object> gone = new ArrayList<Object>();
+			List<DocumentWrite> deletes = new ArrayList<DocumentWrite>();
+			for (Object id : ids) {
+				if (!pending.containsKey(id)) {
+					gone.add(id);
+					deletes.add(DocumentWrite.delete(new Document("_id", id)));
+				}
+			}
+			if (!gone.isEmpty()) {
+				local.writeDocuments(databaseName, collectionName, deletes, WRITECONCERN, 0);
+				local.purgeDocuments(databaseName, collectionName, gone);
+			}
+			return gone.size();
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package library.database;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import com.google.common.util.concurrent.RateLimiter;
+
+import library.storage.StorageManager;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Moves deleted documents (tombstones) that are older than the retention
+ *         period out of the database.
+ * 
+ *         Each tombstone is first written to a gzipped NDJSON archive in the
+ *         archive folder, in extended JSON so it can be restored exactly. Once a
+ *         batch is synced to the archive it is hard-deleted from the database.
+ *         Deletes are rate limited so a large purge does not slow down the
+ *         console.
+ * 
+ *         Tombstones deleted before deletion times were recorded are given the
+ *         current time, so their retention period starts with the first run
+ */
+class TombstonePurger {
+	private static final JsonWriterSettings JSONSETTINGS = JsonWriterSettings.builder()
+			.outputMode(JsonMode.EXTENDED).build();
+	private static final DocumentCodec CODEC = new DocumentCodec(Codecs.REGISTRY);
+
+	private final Database database;
+	private final String databaseName;
+	private final List<String> collectionNames;
+	private final String archiveFolder;
+	private long retentionMillis = 30L * 24 * 60 * 60 * 1000;
+	private int batchSize = 500;
+	private RateLimiter limiter = RateLimiter.create(1000);
+
+	/**
+	 * Creates a purger for some of the collections of a database
+	 * 
+	 * @param database        Storage engine being purged
+	 * @param databaseName    Name of the database
+	 * @param collectionNames Collections being purged
+	 */
+	TombstonePurger(Database database, String databaseName, List<String> collectionNames) {
+		this.database = database;
+		this.databaseName = databaseName;
+		this.collectionNames = collectionNames;
+		this.archiveFolder = StorageManager.getArchiveFolder();
+	}
+
+	/**
+	 * Sets how long tombstones are kept before they are purged
+	 * 
+	 * @param retentionMillis Milliseconds a tombstone is kept
+	 */
+	void setRetentionMillis(long retentionMillis) {
+		if (retentionMillis < 0) {
+			throw new IllegalArgumentException("Retention can not be negative");
+		}
+		this.retentionMillis = retentionMillis;
+	}
+
+	/**
+	 * Sets how many tombstones are archived and deleted together
+	 * 
+	 * @param batchSize Tombstones per batch
+	 */
+	void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the most tombstones deleted each second
+	 * 
+	 * @param documentsPerSecond Tombstones deleted per second
+	 */
+	void setDocumentsPerSecond(int documentsPerSecond) {
+		if (documentsPerSecond < 1) {
+			throw new IllegalArgumentException("At least 1 document must be purged per second");
+		}
+		limiter = RateLimiter.create(documentsPerSecond);
+	}
+
+	/**
+	 * Archives and purges every tombstone older than the retention period. Only
+	 * one purge runs at a time
+	 * 
+	 * @return What was purged
+	 * @throws IOException Thrown if an archive can not be written. Nothing that
+	 *                     was not archived is purged
+	 */
+	synchronized PurgeReport purge() throws IOException {
+		PurgeReport report = new PurgeReport();
+		try {
+			for (String collectionName : collectionNames) {
+				purge(collectionName, report);
+			}
+		} finally {
+			report.finish();
+		}
+		return report;
+	}
+
+	/**
+	 * Archives and purges the old tombstones of one collection
+	 * 
+	 * @param collectionName Collection being purged
+	 * @param report         Report the purged tombstones are counted in
+	 * @throws IOException Thrown if the archive can not be written
+	 */
+	private void purge(String collectionName, PurgeReport report) throws IOException {
+		database.updateDocument(databaseName, collectionName,
+				new Document("deleted", true).append("dateDeleted", null), new Document("dateDeleted", new Date()));
+		Date cutoff = new Date(System.currentTimeMillis() - retentionMillis);
+
+		File archive = null;
+		FileChannel channel = null;
+		GZIPOutputStream gzip = null;
+		Writer writer = null;
+		List<Object> ids = new ArrayList<Object>(batchSize);
+		long bytes = 0;
+		try (Cursor<Document> tombstones = database.getDeletedDocuments(databaseName, collectionName, cutoff,
+				batchSize)) {
+			while (tombstones.hasNext()) {
+				Document tombstone = tombstones.next();
+				if (writer == null) {
+					archive = new File(archiveFolder, databaseName + "." + collectionName + "-"
+							+ new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".ndjson.gz");
+					channel = FileChannel.open(archive.toPath(), StandardOpenOption.CREATE,
+							StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+					gzip = new GZIPOutputStream(Channels.newOutputStream(channel), 1 << 16, true);
+					writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), 1 << 16);
+					report.addArchive(archive.getPath());
+				}
+				writer.write(tombstone.toJson(JSONSETTINGS));
+				writer.write('\n');
+				ids.add(tombstone.get("_id"));
+				bytes += new RawBsonDocument(tombstone, CODEC).getByteBuffer().remaining();
+				if (ids.size() == batchSize) {
+					delete(collectionName, ids, bytes, writer, channel, report);
+					ids.clear();
+					bytes = 0;
+				}
+			}
+			if (!ids.isEmpty()) {
+				delete(collectionName, ids, bytes, writer, channel, report);
+			}
+		} finally {
+			if (writer != null) {
+				writer.close();
+			}
+		}
+	}
+
+	/**
+	 * Syncs a batch to the archive and then deletes it from the database
+	 * 
+	 * @param collectionName Collection being purged
+	 * @param ids            _ids of the tombstones in the batch
+	 * @param bytes          Size of the batch as BSON
+	 * @param writer         Writer of the archive
+	 * @param channel        Channel of the archive file
+	 * @param report         Report the batch is counted in
+	 * @throws IOException Thrown if the archive can not be synced
+	 */
+	private void delete(String collectionName, List<Object> ids, long bytes, Writer writer, FileChannel channel,
+			PurgeReport report) throws IOException {
+		// The gzip stream is opened with sync flush, so flushing writes out every
+		// compressed byte before the channel is synced
+		writer.flush();
+		channel.force(false);
+		limiter.acquire(ids.size());
+		long purged = database.purgeDocuments(databaseName, collectionName, ids);
+		// Documents restored between archiving and deleting are not deleted, so
+		// their bytes are only counted when every document was purged
+		report.addPurged(purged, purged == ids.size() ? bytes : bytes * purged / ids.size());
+	}
+}
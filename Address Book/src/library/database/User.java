@@ -3,7 +3,7 @@ package library.database;
 /**
  * 
  * @author Logan Miller
- *
+ * 
  *         User used with database to provide a login system and have addresses
  *         associated with different users
  */
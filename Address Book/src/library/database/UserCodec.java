@@ -0,0 +1,69 @@
+package library.database;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Reads and writes users straight to and from BSON. Like addresses,
+ *         users are only written whole when they are inserted, so they are
+ *         stored with the deleted flag set to false
+ */
+class UserCodec implements Codec<User> {
+	@Override
+	public void encode(BsonWriter writer, User user, EncoderContext encoderContext) {
+		writer.writeStartDocument();
+		AddressCodec.writeString(writer, "username", user.getUsername());
+		AddressCodec.writeString(writer, "firstName", user.getFirstName());
+		AddressCodec.writeString(writer, "lastName", user.getLastName());
+		AddressCodec.writeString(writer, "email", user.getEmail());
+		AddressCodec.writeString(writer, "hashedPassword", user.getHashedPassword());
+		writer.writeBoolean("deleted", false);
+		writer.writeEndDocument();
+	}
+
+	@Override
+	public User decode(BsonReader reader, DecoderContext decoderContext) {
+		String username = null;
+		String firstName = null;
+		String lastName = null;
+		String email = null;
+		String hashedPassword = null;
+
+		reader.readStartDocument();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+			switch (reader.readName()) {
+				case "username":
+					username = AddressCodec.readString(reader);
+					break;
+				case "firstName":
+					firstName = AddressCodec.readString(reader);
+					break;
+				case "lastName":
+					lastName = AddressCodec.readString(reader);
+					break;
+				case "email":
+					email = AddressCodec.readString(reader);
+					break;
+				case "hashedPassword":
+					hashedPassword = AddressCodec.readString(reader);
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.readEndDocument();
+		return new User(username, firstName, lastName, email, hashedPassword);
+	}
+
+	@Override
+	public Class<User> getEncoderClass() {
+		return User.class;
+	}
+}
@@ -0,0 +1,627 @@
+package library.database;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Queues new addresses and address mutations so the caller does not
+ *         wait for the database, and writes them in the background in batches.
+ *         A batch is sent once enough writes are waiting, once the oldest write
+ *         has waited long enough, or once a caller asks for a flush.
+ * 
+ *         Each batch is coalesced before it is sent: every new address goes in
+ *         one bulk insert, mutations of an address added in the same batch are
+ *         folded into its insert, and mutations of the same address are merged
+ *         into one, so the rest go in one unordered bulk write.
+ * 
+ *         Every write is appended to a journal file before it is queued, and a
+ *         checkpoint is appended after each batch is written. If the program
+ *         exits before the queue is flushed, the writes after the last
+ *         checkpoint are queued again the next time the queue is opened. They
+ *         are safe to write twice since inserts keep the id they were given
+ *         when they were queued and mutations pick their address by id. An
+ *         insert read back from the journal, or sent in a batch that failed, may
+ *         already be in the database, so later mutations of it are sent on their
+ *         own instead of folded in
+ */
+class WriteBehindQueue {
+	private static final JsonWriterSettings JSONSETTINGS = JsonWriterSettings.builder()
+			.outputMode(JsonMode.EXTENDED).build();
+	// Longest wait between tries when the database can not be written
+	static final long MAXRETRYMILLIS = 30000;
+	// Size the journal can grow to before it is rewritten with only the queued
+	// writes
+	static final long MAXJOURNALBYTES = 16L << 20;
+
+	private final File journal;
+	private final int capacity;
+	private final int batchSize;
+	private final long flushMillis;
+	private final Function<List<Address>, Map<Integer, String>> inserter;
+	private final Function<List<AddressMutation>, List<WriteResult>> mutator;
+	private final Logger logger = Logger.getLogger(WriteBehindQueue.class.getName());
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// Signalled when there is room in the queue
+	private final Condition notFull = lock.newCondition();
+	// Signalled when the flusher may have a batch to send
+	private final Condition ready = lock.newCondition();
+	// Signalled when a batch is done
+	private final Condition flushed = lock.newCondition();
+	private final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+	// Queued writes of each user
+	private final Map<String, Integer> pending = new HashMap<String, Integer>();
+	private Writer writer;
+	private FileChannel channel;
+	private Thread flusher;
+	private long lastSeq;
+	private long flushedSeq;
+	private long requestedSeq;
+	private boolean closing;
+
+	/**
+	 * Creates a queue. Nothing is written until it is opened
+	 * 
+	 * @param journal     Journal file, which is created if it does not exist
+	 * @param capacity    Largest number of queued writes
+	 * @param batchSize   Writes sent together
+	 * @param flushMillis Longest a write waits before it is sent
+	 * @param inserter    Inserts a batch of addresses and returns the position
+	 *                    of each one that was not added mapped to the reason
+	 * @param mutator     Applies a batch of mutations and returns their outcomes
+	 */
+	WriteBehindQueue(File journal, int capacity, int batchSize, long flushMillis,
+			Function<List<Address>, Map<Integer, String>> inserter,
+			Function<List<AddressMutation>, List<WriteResult>> mutator) {
+		if (capacity < 1 || batchSize < 1 || flushMillis < 0) {
+			throw new IllegalArgumentException("Queue and batch sizes must be at least 1");
+		}
+		this.journal = journal;
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.flushMillis = flushMillis;
+		this.inserter = inserter;
+		this.mutator = mutator;
+	}
+
+	/**
+	 * Queues again the writes left in the journal and starts writing in the
+	 * background
+	 * 
+	 * @return Number of writes read back from the journal
+	 * @throws IOException Thrown if the journal can not be read or written
+	 */
+	int open() throws IOException {
+		List<Entry> replayed = readJournal();
+		lock.lock();
+		try {
+			for (Entry entry : replayed) {
+				entry.seq = ++lastSeq;
+				entries.addLast(entry);
+				pending.merge(entry.getUsername(), 1, Integer::sum);
+			}
+			// The journal is started over with only the writes still to be made
+			rewrite();
+		} finally {
+			lock.unlock();
+		}
+		flusher = new Thread(this::run, "write-behind");
+		flusher.setDaemon(true);
+		flusher.start();
+		return replayed.size();
+	}
+
+	/**
+	 * Queues a new address, waiting for room if the queue is full. The address is
+	 * given an id right away if it does not have one
+	 * 
+	 * @param address Address being added. A copy is queued, so it can be
+	 *                changed afterwards
+	 * @throws IOException Thrown if the write can not be journaled, in which case
+	 *                     it is not queued
+	 */
+	void insert(Address address) throws IOException {
+		if (address.getId() == null) {
+			address.setId(new ObjectId());
+		}
+		enqueue(new Entry(new Address(address), null));
+	}
+
+	/**
+	 * Queues an edit or delete, waiting for room if the queue is full
+	 * 
+	 * @param mutation Edit or delete being made
+	 * @throws IOException Thrown if the write can not be journaled, in which case
+	 *                     it is not queued
+	 */
+	void mutate(AddressMutation mutation) throws IOException {
+		enqueue(new Entry(null, mutation));
+	}
+
+	/**
+	 * Journals and queues a write
+	 * 
+	 * @param entry Write
+	 * @throws IOException Thrown if the write can not be journaled
+	 */
+	private void enqueue(Entry entry) throws IOException {
+		lock.lock();
+		try {
+			while (entries.size() >= capacity && !closing) {
+				notFull.awaitUninterruptibly();
+			}
+			if (closing) {
+				throw new IllegalStateException("The write queue is closed");
+			}
+			entry.seq = lastSeq + 1;
+			writer.write(line(entry));
+			// Flushed to the operating system on every write, so the write is not
+			// lost if the program exits before it reaches the database
+			writer.flush();
+			lastSeq++;
+			entries.addLast(entry);
+			pending.merge(entry.getUsername(), 1, Integer::sum);
+			if (entries.size() >= batchSize || entries.size() == 1) {
+				ready.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until every write queued before the call has been sent
+	 * 
+	 * @param timeoutMillis Longest time to wait, 0 to wait as long as it takes
+	 * @return If the writes were sent in time
+	 */
+	boolean flush(long timeoutMillis) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		lock.lock();
+		try {
+			long target = lastSeq;
+			if (flushedSeq >= target) {
+				return true;
+			}
+			requestedSeq = Math.max(requestedSeq, target);
+			ready.signal();
+			while (flushedSeq < target) {
+				if (closing) {
+					return false;
+				}
+				if (timeoutMillis == 0) {
+					flushed.awaitUninterruptibly();
+				} else {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return false;
+					}
+					flushed.awaitNanos(remaining);
+				}
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns if a user has writes waiting in the queue
+	 * 
+	 * @param username User, or null for any user
+	 * @return If there are queued writes
+	 */
+	boolean hasPending(String username) {
+		lock.lock();
+		try {
+			return username == null ? !entries.isEmpty() : pending.containsKey(username);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns how many writes are waiting
+	 * 
+	 * @return Queued writes
+	 */
+	int size() {
+		lock.lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops taking writes, sends what is queued, and closes the journal. Writes
+	 * that are not sent in time stay in the journal for the next time the queue
+	 * is opened
+	 * 
+	 * @param timeoutMillis Longest time to wait for the queue to empty
+	 */
+	void close(long timeoutMillis) {
+		flush(timeoutMillis);
+		lock.lock();
+		try {
+			closing = true;
+			ready.signal();
+			notFull.signalAll();
+			flushed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			flusher.join(timeoutMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		lock.lock();
+		try {
+			writer.flush();
+			channel.force(false);
+			writer.close();
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Could not close the write journal", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sends batches until the queue is closed
+	 */
+	private void run() {
+		long retryMillis = flushMillis;
+		while (true) {
+			List<Entry> batch = nextBatch();
+			if (batch == null) {
+				return;
+			}
+			try {
+				send(batch);
+				retryMillis = flushMillis;
+			} catch (RuntimeException e) {
+				// The batch stays at the front of the queue and is sent again. Its
+				// inserts may have been written before the failure
+				for (Entry entry : batch) {
+					entry.attempted = true;
+				}
+				logger.log(Level.WARNING, "Could not write " + batch.size() + " queued writes, retrying in "
+						+ retryMillis + "ms", e);
+				sleep(retryMillis);
+				retryMillis = Math.min(MAXRETRYMILLIS, Math.max(1, retryMillis) * 2);
+				continue;
+			}
+			finish(batch);
+		}
+	}
+
+	/**
+	 * Waits until a batch is due
+	 * 
+	 * @return Writes at the front of the queue, which stay queued until they are
+	 *         sent, or null if the queue is closing
+	 */
+	private List<Entry> nextBatch() {
+		lock.lock();
+		try {
+			while (true) {
+				if (closing) {
+					return null;
+				}
+				if (!entries.isEmpty()) {
+					long waited = System.currentTimeMillis() - entries.peekFirst().queuedAt;
+					if (entries.size() >= batchSize || requestedSeq > flushedSeq || waited >= flushMillis) {
+						List<Entry> batch = new ArrayList<Entry>(Math.min(batchSize, entries.size()));
+						for (Entry entry : entries) {
+							batch.add(entry);
+							if (batch.size() == batchSize) {
+								break;
+							}
+						}
+						return batch;
+					}
+					ready.await(flushMillis - waited, TimeUnit.MILLISECONDS);
+				} else {
+					ready.await();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Coalesces a batch and writes it to the database. Writes the database turns
+	 * down one at a time are logged and dropped, since sending them again would
+	 * not change the outcome
+	 * 
+	 * @param batch Writes in the order they were queued
+	 */
+	private void send(List<Entry> batch) {
+		List<Address> inserts = new ArrayList<Address>();
+		Map<ObjectId, Address> inserted = new HashMap<ObjectId, Address>();
+		Set<ObjectId> attempted = new HashSet<ObjectId>();
+		Map<String, AddressMutation> mutations = new LinkedHashMap<String, AddressMutation>();
+		for (Entry entry : batch) {
+			if (entry.address != null) {
+				inserts.add(entry.address);
+				if (entry.attempted) {
+					// It may have been written already, so its mutations are sent
+					// after it instead of folded into it
+					attempted.add(entry.address.getId());
+				} else {
+					inserted.put(entry.address.getId(), entry.address);
+				}
+			} else {
+				coalesce(entry.mutation, inserts, inserted, mutations);
+			}
+		}
+		if (!inserts.isEmpty()) {
+			for (Map.Entry<Integer, String> error : inserter.apply(inserts).entrySet()) {
+				ObjectId id = inserts.get(error.getKey()).getId();
+				// An address written before the program exited or before a batch
+				// failed is written again, and the database turns it down by its id
+				if (!attempted.contains(id) || !error.getValue().contains("E11000")
+						|| !error.getValue().contains(" _id_ ")) {
+					logger.warning("Queued address " + id + " was not added: " + error.getValue());
+				}
+			}
+		}
+		if (!mutations.isEmpty()) {
+			for (WriteResult result : mutator.apply(new ArrayList<AddressMutation>(mutations.values()))) {
+				if (result.getStatus() == WriteResult.Status.FAILED) {
+					logger.warning("Queued write of address " + result.getId() + " failed: " + result.getMessage());
+				} else if (result.getStatus() == WriteResult.Status.NOTFOUND) {
+					logger.fine("Queued write of address " + result.getId() + " found no address");
+				} else if (result.getStatus() == WriteResult.Status.UNCONFIRMED) {
+					logger.warning("Queued write of address " + result.getId() + " may not be durable: "
+							+ result.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Folds a mutation into the writes of a batch
+	 * 
+	 * @param mutation  Mutation being folded in
+	 * @param inserts   Addresses being inserted
+	 * @param inserted  Addresses being inserted by id that were never written, so
+	 *                  mutations of them can be folded into their insert
+	 * @param mutations Mutations being sent, by address and user
+	 */
+	private static void coalesce(AddressMutation mutation, List<Address> inserts, Map<ObjectId, Address> inserted,
+			Map<String, AddressMutation> mutations) {
+		Address address = inserted.get(mutation.getId());
+		if (address != null && address.getUsername().equals(mutation.getUsername())) {
+			if (mutation.isDelete()) {
+				// An address deleted before it was ever written is never written
+				inserts.remove(address);
+				inserted.remove(address.getId());
+			} else {
+				Document fields = Codecs.toDocument(address, Address.class);
+				fields.putAll(mutation.getFields());
+				Address merged = Codecs.fromDocument(fields, Address.class);
+				inserts.set(inserts.indexOf(address), merged);
+				inserted.put(merged.getId(), merged);
+			}
+			return;
+		}
+		String key = mutation.getId().toHexString() + " " + mutation.getUsername();
+		AddressMutation earlier = mutations.get(key);
+		if (earlier == null || mutation.isDelete()) {
+			mutations.put(key, mutation);
+		} else if (!earlier.isDelete()) {
+			Document fields = earlier.getFields();
+			fields.putAll(mutation.getFields());
+			mutations.put(key, AddressMutation.update(mutation.getId(), mutation.getUsername(), fields));
+		}
+		// An edit after a delete would not find the address, so it is dropped
+	}
+
+	/**
+	 * Takes a batch that was sent off the queue and checkpoints the journal
+	 * 
+	 * @param batch Writes that were sent
+	 */
+	private void finish(List<Entry> batch) {
+		lock.lock();
+		try {
+			for (int i = 0; i < batch.size(); i++) {
+				Entry entry = entries.removeFirst();
+				pending.computeIfPresent(entry.getUsername(), (username, count) -> count == 1 ? null : count - 1);
+			}
+			flushedSeq = batch.get(batch.size() - 1).seq;
+			try {
+				if (entries.isEmpty()) {
+					// Nothing in the journal is needed anymore
+					writer.flush();
+					channel.truncate(0);
+				} else if (channel.size() > MAXJOURNALBYTES) {
+					rewrite();
+				} else {
+					writer.write(new Document("flushed", flushedSeq).toJson(JSONSETTINGS));
+					writer.write('\n');
+					writer.flush();
+				}
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Could not checkpoint the write journal", e);
+			}
+			notFull.signalAll();
+			flushed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the journal with one that only has the queued writes. The new
+	 * journal is synced before it replaces the old one, so a crash part way
+	 * through leaves one or the other. The caller holds the lock
+	 * 
+	 * @throws IOException Thrown if the journal can not be written
+	 */
+	private void rewrite() throws IOException {
+		if (writer != null) {
+			writer.close();
+		}
+		File temp = new File(journal.getPath() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temp)) {
+			Writer tempWriter = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+			for (Entry entry : entries) {
+				tempWriter.write(line(entry));
+			}
+			tempWriter.flush();
+			out.getFD().sync();
+		}
+		Files.move(temp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		FileOutputStream out = new FileOutputStream(journal, true);
+		channel = out.getChannel();
+		writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	/**
+	 * Writes a queued write as a line of the journal
+	 * 
+	 * @param entry Write
+	 * @return Line in extended JSON, ending with a new line
+	 */
+	private static String line(Entry entry) {
+		Document line = new Document("seq", entry.seq);
+		if (entry.address != null) {
+			line.append("insert", Codecs.toDocument(entry.address, Address.class));
+		} else {
+			line.append("mutate", new Document("_id", entry.mutation.getId())
+					.append("username", entry.mutation.getUsername()).append("fields", entry.mutation.getFields()));
+		}
+		return line.toJson(JSONSETTINGS) + "\n";
+	}
+
+	/**
+	 * Reads the writes after the last checkpoint of the journal. A line cut off
+	 * by the program exiting in the middle of a write is skipped
+	 * 
+	 * @return Writes still to be made, in the order they were queued
+	 * @throws IOException Thrown if the journal can not be read
+	 */
+	private List<Entry> readJournal() throws IOException {
+		List<Entry> out = new ArrayList<Entry>();
+		if (!journal.exists()) {
+			return out;
+		}
+		long checkpoint = 0;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(journal), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Document doc;
+				try {
+					doc = Document.parse(line);
+				} catch (RuntimeException e) {
+					logger.warning("Skipped a damaged line of the write journal");
+					continue;
+				}
+				if (doc.containsKey("flushed")) {
+					checkpoint = ((Number) doc.get("flushed")).longValue();
+				} else if (doc.containsKey("insert")) {
+					Entry entry = new Entry(Codecs.fromDocument(doc.get("insert", Document.class), Address.class),
+							null).at(((Number) doc.get("seq")).longValue());
+					entry.attempted = true;
+					out.add(entry);
+				} else {
+					Document mutate = doc.get("mutate", Document.class);
+					Document fields = mutate.get("fields", Document.class);
+					ObjectId id = mutate.getObjectId("_id");
+					String username = mutate.getString("username");
+					out.add(new Entry(null, fields == null ? AddressMutation.delete(id, username)
+							: AddressMutation.update(id, username, fields)).at(((Number) doc.get("seq")).longValue()));
+				}
+			}
+		}
+		long flushed = checkpoint;
+		out.removeIf(entry -> entry.seq <= flushed);
+		return out;
+	}
+
+	/**
+	 * Sleeps without being woken early
+	 * 
+	 * @param millis Milliseconds to sleep
+	 */
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A queued insert or mutation
+	 */
+	private static class Entry {
+		final Address address;
+		final AddressMutation mutation;
+		final long queuedAt = System.currentTimeMillis();
+		long seq;
+		// Read back from the journal or sent in a batch that failed, so it may
+		// already have been written
+		boolean attempted;
+
+		Entry(Address address, AddressMutation mutation) {
+			this.address = address;
+			this.mutation = mutation;
+		}
+
+		Entry at(long seq) {
+			this.seq = seq;
+			return this;
+		}
+
+		String getUsername() {
+			return address != null ? address.getUsername() : mutation.getUsername();
+		}
+	}
+}
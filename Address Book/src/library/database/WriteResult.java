@@ -0,0 +1,99 @@
+package library.database;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         What happened to one write of a bulk write
+ */
+public class WriteResult {
+	/**
+	 * Outcome of a write
+	 */
+	public enum Status {
+		// The document was changed
+		APPLIED,
+		// No document matched, it was deleted or changed since it was read
+		NOTFOUND,
+		// The database refused the write, see the message
+		FAILED,
+		// The document was changed but the write concern was not met in time, so
+		// the write may not be durable, see the message
+		UNCONFIRMED,
+		// The write was sent without waiting for an answer, so its outcome is not
+		// known
+		UNACKNOWLEDGED
+	}
+
+	private final int index;
+	private final Object id;
+	private final Status status;
+	private final String message;
+
+	/**
+	 * Records the outcome of a write
+	 * 
+	 * @param index   Position of the write in the list of writes
+	 * @param id      _id of the document the write was for
+	 * @param status  Outcome
+	 * @param message Why the write failed, or null
+	 */
+	WriteResult(int index, Object id, Status status, String message) {
+		this.index = index;
+		this.id = id;
+		this.status = status;
+		this.message = message;
+	}
+
+	/**
+	 * Returns the position of the write in the list of writes
+	 * 
+	 * @return Index of the write
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the _id of the document the write was for
+	 * 
+	 * @return Id of the document
+	 */
+	public Object getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the outcome of the write
+	 * 
+	 * @return Status
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns why the write failed or why it was not confirmed
+	 * 
+	 * @return Message, or null if nothing went wrong
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Returns the same outcome for a write at another position, used when a list
+	 * of writes is sent in batches
+	 * 
+	 * @param offset Position of the batch in the whole list
+	 * @return Result with its index moved by the offset
+	 */
+	WriteResult shift(int offset) {
+		return offset == 0 ? this : new WriteResult(index + offset, id, status, message);
+	}
+
+	@Override
+	public String toString() {
+		return index + " " + id + " " + status + (message == null ? "" : " " + message);
+	}
+}
@@ -0,0 +1,22 @@
+package library.query;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Reads the value of a field from a document that is already in memory,
+ *         so that compiled predicates can run over any type of document
+ * 
+ * @param <T> Type of the documents
+ */
+@FunctionalInterface
+public interface FieldReader<T> {
+	/**
+	 * Returns the value of a field
+	 * 
+	 * @param document Document being read
+	 * @param field    Name of the field
+	 * @return Value of the field, or null if the document does not have it
+	 */
+	Object get(T document, String field);
+}
@@ -0,0 +1,522 @@
+package library.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Condition a document must meet to match a query, built with the
+ *         static methods of this class:
+ * 
+ *         Filter.and(Filter.eq("username", "bob"), Filter.prefix("lastName",
+ *         "Mil"), Filter.not(Filter.in("state", "CA", "NY")))
+ * 
+ *         A filter is only a description. MongoCompiler turns it into a MongoDB
+ *         filter document and PredicateCompiler turns it into a Java predicate,
+ *         so the same filter can run on the server or over addresses that are
+ *         already in memory. Filters can not be changed once they are built, and
+ *         two filters are equal when they print the same
+ */
+public abstract class Filter {
+	// Filter that every document matches
+	private static final Filter ALL = new Logical(true, Collections.<Filter>emptyList());
+
+	/**
+	 * Filters can only be built with the static methods
+	 */
+	Filter() {
+	}
+
+	/**
+	 * Matches every document
+	 * 
+	 * @return Filter that always matches
+	 */
+	public static Filter all() {
+		return ALL;
+	}
+
+	/**
+	 * Matches documents where a field equals a value
+	 * 
+	 * @param field Name of the field
+	 * @param value Value of the field, or null for a missing field
+	 * @return Equality filter
+	 */
+	public static Filter eq(String field, Object value) {
+		return new Compare(field, Operator.EQ, value);
+	}
+
+	/**
+	 * Matches documents where a field does not equal a value
+	 * 
+	 * @param field Name of the field
+	 * @param value Value the field must not have
+	 * @return Inequality filter
+	 */
+	public static Filter ne(String field, Object value) {
+		return new Compare(field, Operator.NE, value);
+	}
+
+	/**
+	 * Matches documents where a field is greater than a value
+	 * 
+	 * @param field Name of the field
+	 * @param value Lower bound, not included
+	 * @return Range filter
+	 */
+	public static Filter gt(String field, Object value) {
+		return new Compare(field, Operator.GT, bound(value));
+	}
+
+	/**
+	 * Matches documents where a field is greater than or equal to a value
+	 * 
+	 * @param field Name of the field
+	 * @param value Lower bound, included
+	 * @return Range filter
+	 */
+	public static Filter gte(String field, Object value) {
+		return new Compare(field, Operator.GTE, bound(value));
+	}
+
+	/**
+	 * Matches documents where a field is less than a value
+	 * 
+	 * @param field Name of the field
+	 * @param value Upper bound, not included
+	 * @return Range filter
+	 */
+	public static Filter lt(String field, Object value) {
+		return new Compare(field, Operator.LT, bound(value));
+	}
+
+	/**
+	 * Matches documents where a field is less than or equal to a value
+	 * 
+	 * @param field Name of the field
+	 * @param value Upper bound, included
+	 * @return Range filter
+	 */
+	public static Filter lte(String field, Object value) {
+		return new Compare(field, Operator.LTE, bound(value));
+	}
+
+	/**
+	 * Matches documents where a field is between two values, both included
+	 * 
+	 * @param field Name of the field
+	 * @param from  Lower bound
+	 * @param to    Upper bound
+	 * @return Range filter
+	 */
+	public static Filter between(String field, Object from, Object to) {
+		return and(gte(field, from), lte(field, to));
+	}
+
+	/**
+	 * Matches documents where a field equals any of a set of values
+	 * 
+	 * @param field  Name of the field
+	 * @param values Values the field can have
+	 * @return Set filter
+	 */
+	public static Filter in(String field, Object... values) {
+		return in(field, Arrays.asList(values));
+	}
+
+	/**
+	 * Matches documents where a field equals any of a set of values
+	 * 
+	 * @param field  Name of the field
+	 * @param values Values the field can have
+	 * @return Set filter
+	 */
+	public static Filter in(String field, Collection<?> values) {
+		return new In(field, values, false);
+	}
+
+	/**
+	 * Matches documents where a field equals none of a set of values
+	 * 
+	 * @param field  Name of the field
+	 * @param values Values the field must not have
+	 * @return Set filter
+	 */
+	public static Filter notIn(String field, Object... values) {
+		return notIn(field, Arrays.asList(values));
+	}
+
+	/**
+	 * Matches documents where a field equals none of a set of values
+	 * 
+	 * @param field  Name of the field
+	 * @param values Values the field must not have
+	 * @return Set filter
+	 */
+	public static Filter notIn(String field, Collection<?> values) {
+		return new In(field, values, true);
+	}
+
+	/**
+	 * Matches documents where a text field starts with a prefix. The prefix is
+	 * matched as it is typed, so the server can answer it from an index
+	 * 
+	 * @param field  Name of the field
+	 * @param prefix Start of the value
+	 * @return Prefix filter
+	 */
+	public static Filter prefix(String field, String prefix) {
+		return new Prefix(field, text(prefix), false);
+	}
+
+	/**
+	 * Matches documents where a text field starts with a prefix in any mix of
+	 * upper and lower case, so "mcd" matches "McDonald". The server matches the
+	 * lower-cased prefix against a lower-cased copy of the field, so it can seek
+	 * to the prefix in an index on the copy
+	 * 
+	 * @param field  Name of the field
+	 * @param prefix Start of the value
+	 * @return Prefix filter
+	 */
+	public static Filter prefixIgnoreCase(String field, String prefix) {
+		return new Prefix(field, text(prefix), true);
+	}
+
+	/**
+	 * Matches documents where a text field matches a regular expression. Only
+	 * expressions anchored to the start of the value are accepted, since an
+	 * unanchored expression has to be tried against every document
+	 * 
+	 * @param field   Name of the field
+	 * @param pattern Regular expression starting with ^
+	 * @return Regular expression filter
+	 */
+	public static Filter regex(String field, String pattern) {
+		if (pattern == null || !pattern.startsWith("^") || !anchored(pattern)) {
+			throw new IllegalArgumentException("Regular expressions must start with ^ so they can use an index");
+		}
+		Pattern.compile(pattern);
+		return new Regex(field, pattern);
+	}
+
+	/**
+	 * Checks that every branch of a regular expression is anchored by its first
+	 * ^, which is not the case if there is a | outside of a group
+	 * 
+	 * @param pattern Regular expression starting with ^
+	 * @return If the expression only matches at the start of a value
+	 */
+	private static boolean anchored(String pattern) {
+		int depth = 0;
+		boolean inClass = false;
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (inClass) {
+				inClass = c != ']';
+			} else if (c == '[') {
+				inClass = true;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == '|' && depth == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Matches documents that do not match a filter
+	 * 
+	 * @param filter Filter being negated
+	 * @return Negated filter
+	 */
+	public static Filter not(Filter filter) {
+		return new Not(filter);
+	}
+
+	/**
+	 * Matches documents that match every one of some filters
+	 * 
+	 * @param filters Filters that must all match
+	 * @return Filter that matches every document if no filters are given
+	 */
+	public static Filter and(Filter... filters) {
+		return and(Arrays.asList(filters));
+	}
+
+	/**
+	 * Matches documents that match every one of some filters
+	 * 
+	 * @param filters Filters that must all match
+	 * @return Filter that matches every document if no filters are given
+	 */
+	public static Filter and(List<Filter> filters) {
+		return new Logical(true, filters);
+	}
+
+	/**
+	 * Matches documents that match any of some filters
+	 * 
+	 * @param filters Filters of which at least one must match
+	 * @return Filter that matches no document if no filters are given
+	 */
+	public static Filter or(Filter... filters) {
+		return or(Arrays.asList(filters));
+	}
+
+	/**
+	 * Matches documents that match any of some filters
+	 * 
+	 * @param filters Filters of which at least one must match
+	 * @return Filter that matches no document if no filters are given
+	 */
+	public static Filter or(List<Filter> filters) {
+		return new Logical(false, filters);
+	}
+
+	/**
+	 * Writes the filter in its printed form
+	 * 
+	 * @param out   Builder the filter is written to
+	 * @param shape If values are written as ? so that filters that only differ by
+	 *              their values print the same
+	 */
+	abstract void print(StringBuilder out, boolean shape);
+
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder();
+		print(out, false);
+		return out.toString();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Filter && toString().equals(o.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	/**
+	 * Checks the bound of a range
+	 * 
+	 * @param value Bound
+	 * @return The same bound
+	 */
+	private static Object bound(Object value) {
+		if (value == null) {
+			throw new IllegalArgumentException("A range needs a bound");
+		}
+		return value;
+	}
+
+	/**
+	 * Checks text that a prefix filter matches
+	 * 
+	 * @param value Text
+	 * @return The same text
+	 */
+	private static String text(String value) {
+		if (value == null) {
+			throw new IllegalArgumentException("A prefix can not be null");
+		}
+		return value;
+	}
+
+	/**
+	 * Checks the name of a field
+	 * 
+	 * @param field Name of the field
+	 * @return The same name
+	 */
+	static String field(String field) {
+		if (field == null || field.isEmpty() || field.startsWith("$")) {
+			throw new IllegalArgumentException("Not a field name: " + field);
+		}
+		return field;
+	}
+
+	/**
+	 * How a field is compared to a value
+	 */
+	enum Operator {
+		EQ("=", "$eq"), NE("!=", "$ne"), GT(">", "$gt"), GTE(">=", "$gte"), LT("<", "$lt"), LTE("<=", "$lte");
+
+		final String symbol;
+		final String mongo;
+
+		Operator(String symbol, String mongo) {
+			this.symbol = symbol;
+			this.mongo = mongo;
+		}
+	}
+
+	/**
+	 * A field compared to a single value
+	 */
+	static final class Compare extends Filter {
+		final String field;
+		final Operator operator;
+		final Object value;
+
+		Compare(String field, Operator operator, Object value) {
+			this.field = field(field);
+			this.operator = operator;
+			this.value = value;
+		}
+
+		@Override
+		void print(StringBuilder out, boolean shape) {
+			out.append(field).append(' ').append(operator.symbol).append(' ');
+			Values.print(out, value, shape);
+		}
+	}
+
+	/**
+	 * A field compared to a set of values
+	 */
+	static final class In extends Filter {
+		final String field;
+		final List<Object> values;
+		final boolean negated;
+
+		In(String field, Collection<?> values, boolean negated) {
+			this.field = field(field);
+			this.values = Collections.unmodifiableList(new ArrayList<Object>(values));
+			this.negated = negated;
+		}
+
+		@Override
+		void print(StringBuilder out, boolean shape) {
+			out.append(field).append(negated ? " nin [" : " in [");
+			if (shape) {
+				out.append('?');
+			} else {
+				for (int i = 0; i < values.size(); i++) {
+					if (i > 0) {
+						out.append(", ");
+					}
+					Values.print(out, values.get(i), false);
+				}
+			}
+			out.append(']');
+		}
+	}
+
+	/**
+	 * A text field that starts with a prefix
+	 */
+	static final class Prefix extends Filter {
+		final String field;
+		final String prefix;
+		final boolean ignoreCase;
+
+		Prefix(String field, String prefix, boolean ignoreCase) {
+			this.field = field(field);
+			this.prefix = prefix;
+			this.ignoreCase = ignoreCase;
+		}
+
+		/**
+		 * Returns if the prefix has letters that can be written in upper or lower
+		 * case, which is when ignoring case makes a difference
+		 * 
+		 * @return If the prefix has cased letters
+		 */
+		boolean hasCase() {
+			return !prefix.toLowerCase(Locale.ROOT).equals(prefix.toUpperCase(Locale.ROOT));
+		}
+
+		@Override
+		void print(StringBuilder out, boolean shape) {
+			out.append(field).append(ignoreCase ? " istarts " : " starts ");
+			Values.print(out, prefix, shape);
+		}
+	}
+
+	/**
+	 * A text field that matches an anchored regular expression
+	 */
+	static final class Regex extends Filter {
+		final String field;
+		final String pattern;
+
+		Regex(String field, String pattern) {
+			this.field = field(field);
+			this.pattern = pattern;
+		}
+
+		@Override
+		void print(StringBuilder out, boolean shape) {
+			out.append(field).append(" ~ ");
+			Values.print(out, pattern, shape);
+		}
+	}
+
+	/**
+	 * The opposite of another filter
+	 */
+	static final class Not extends Filter {
+		final Filter filter;
+
+		Not(Filter filter) {
+			if (filter == null) {
+				throw new IllegalArgumentException("Can not negate a null filter");
+			}
+			this.filter = filter;
+		}
+
+		@Override
+		void print(StringBuilder out, boolean shape) {
+			out.append("not(");
+			filter.print(out, shape);
+			out.append(')');
+		}
+	}
+
+	/**
+	 * Filters that must all match, or of which at least one must match
+	 */
+	static final class Logical extends Filter {
+		final boolean and;
+		final List<Filter> filters;
+
+		Logical(boolean and, List<Filter> filters) {
+			for (Filter filter : filters) {
+				if (filter == null) {
+					throw new IllegalArgumentException("Filters can not be null");
+				}
+			}
+			this.and = and;
+			this.filters = Collections.unmodifiableList(new ArrayList<Filter>(filters));
+		}
+
+		@Override
+		void print(StringBuilder out, boolean shape) {
+			out.append(and ? "and(" : "or(");
+			for (int i = 0; i < filters.size(); i++) {
+				if (i > 0) {
+					out.append(", ");
+				}
+				filters.get(i).print(out, shape);
+			}
+			out.append(')');
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package library.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.bson.Document;
+
+import library.query.Filter.Compare;
+import library.query.Filter.In;
+import library.query.Filter.Logical;
+import library.query.Filter.Not;
+import library.query.Filter.Operator;
+import library.query.Filter.Prefix;
+import library.query.Filter.Regex;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Turns filters and sorts into the documents MongoDB takes.
+ * 
+ *         Filters are written so the server can answer them from an index where
+ *         it can: equality is written as a plain value, conditions on the same
+ *         field are merged into one condition, and prefixes become regular
+ *         expressions anchored to the start of the value with every special
+ *         character escaped.
+ * 
+ *         The server can not bound an index scan with a regular expression that
+ *         ignores case, so a prefix that ignores case is lower-cased and matched
+ *         against the lower-cased copy of its field instead. Every document
+ *         searched that way must keep such a copy of the field
+ */
+public class MongoCompiler {
+	/**
+	 * Turns a filter into a MongoDB filter document
+	 * 
+	 * @param filter Filter
+	 * @return New filter document
+	 */
+	public static Document toDocument(Filter filter) {
+		if (filter instanceof Compare) {
+			Compare compare = (Compare) filter;
+			if (compare.operator == Operator.EQ && !(compare.value instanceof Document)) {
+				return new Document(compare.field, compare.value);
+			}
+			return new Document(compare.field, new Document(compare.operator.mongo, compare.value));
+		}
+		if (filter instanceof In) {
+			In in = (In) filter;
+			return new Document(in.field, new Document(in.negated ? "$nin" : "$in", new ArrayList<Object>(in.values)));
+		}
+		if (filter instanceof Prefix) {
+			Prefix prefix = (Prefix) filter;
+			if (prefix.ignoreCase) {
+				return new Document(lowerCaseField(prefix.field),
+						new Document("$regex", "^" + escape(lowerCase(prefix.prefix))));
+			}
+			return new Document(prefix.field, new Document("$regex", "^" + escape(prefix.prefix)));
+		}
+		if (filter instanceof Regex) {
+			Regex regex = (Regex) filter;
+			return new Document(regex.field, new Document("$regex", regex.pattern));
+		}
+		if (filter instanceof Not) {
+			List<Document> negated = new ArrayList<Document>();
+			negated.add(toDocument(((Not) filter).filter));
+			return new Document("$nor", negated);
+		}
+		Logical logical = (Logical) filter;
+		List<Document> children = new ArrayList<Document>();
+		for (Filter child : logical.filters) {
+			children.add(toDocument(child));
+		}
+		if (logical.and) {
+			return merge(children);
+		}
+		if (children.isEmpty()) {
+			// Nothing matches a document that does not match every document
+			List<Document> everything = new ArrayList<Document>();
+			everything.add(new Document());
+			return new Document("$nor", everything);
+		}
+		return children.size() == 1 ? children.get(0) : new Document("$or", children);
+	}
+
+	/**
+	 * Turns a sort order into a MongoDB sort document
+	 * 
+	 * @param sorts Sort order
+	 * @return New sort document, or null if the order does not matter
+	 */
+	public static Document toSort(List<Sort> sorts) {
+		if (sorts.isEmpty()) {
+			return null;
+		}
+		Document sort = new Document();
+		for (Sort field : sorts) {
+			sort.append(field.getField(), field.isDescending() ? -1 : 1);
+		}
+		return sort;
+	}
+
+	/**
+	 * Returns the name of the field that holds the lower-cased copy of a text
+	 * field, which prefixes that ignore case are matched against
+	 * 
+	 * @param field Name of the text field
+	 * @return Name of its lower-cased copy
+	 */
+	public static String lowerCaseField(String field) {
+		return field + "Lower";
+	}
+
+	/**
+	 * Lower-cases a value the same way for the stored copies and the prefixes
+	 * matched against them
+	 * 
+	 * @param value Text, or null
+	 * @return Lower-cased text, or null if there is no value
+	 */
+	public static String lowerCase(String value) {
+		return value == null ? null : value.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Escapes every character of a value that has a meaning in a regular
+	 * expression
+	 * 
+	 * @param value Text matched as it is
+	 * @return Text for use inside a regular expression
+	 */
+	public static String escape(String value) {
+		StringBuilder out = new StringBuilder(value.length() + 8);
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+				out.append('\\');
+			}
+			out.append(c);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Merges the filters that must all match into one document, which the server
+	 * plans better than an $and. Conditions on the same field are merged if they
+	 * use different operators, and filters that can not be merged are left in an
+	 * $and
+	 * 
+	 * @param children Filter documents
+	 * @return Merged document
+	 */
+	private static Document merge(List<Document> children) {
+		Document merged = new Document();
+		List<Document> rest = new ArrayList<Document>();
+		for (Document child : children) {
+			if (fits(merged, child)) {
+				for (Map.Entry<String, Object> entry : child.entrySet()) {
+					Object existing = merged.get(entry.getKey());
+					if (existing == null) {
+						merged.append(entry.getKey(), entry.getValue());
+					} else {
+						Document conditions = new Document((Document) existing);
+						conditions.putAll((Document) entry.getValue());
+						merged.put(entry.getKey(), conditions);
+					}
+				}
+			} else {
+				rest.add(child);
+			}
+		}
+		if (rest.isEmpty()) {
+			return merged;
+		}
+		if (merged.containsKey("$and")) {
+			return new Document("$and", children);
+		}
+		return merged.append("$and", rest);
+	}
+
+	/**
+	 * Returns if a filter document can be merged into another without changing
+	 * either of their meaning
+	 * 
+	 * @param merged Document being merged into
+	 * @param child  Filter document
+	 * @return If every key of the filter is new, or is a field whose operators
+	 *         are all new
+	 */
+	private static boolean fits(Document merged, Document child) {
+		for (Map.Entry<String, Object> entry : child.entrySet()) {
+			Object existing = merged.get(entry.getKey());
+			if (existing == null && !merged.containsKey(entry.getKey())) {
+				continue;
+			}
+			if (entry.getKey().startsWith("$") || !isOperators(existing) || !isOperators(entry.getValue())) {
+				return false;
+			}
+			for (String operator : ((Document) entry.getValue()).keySet()) {
+				if (((Document) existing).containsKey(operator)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns if a field's condition is a document of operators such as $gt
+	 * 
+	 * @param value Condition
+	 * @return If every key of the condition is an operator
+	 */
+	private static boolean isOperators(Object value) {
+		if (!(value instanceof Document) || ((Document) value).isEmpty()) {
+			return false;
+		}
+		for (String key : ((Document) value).keySet()) {
+			if (!key.startsWith("$")) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,199 @@
+package library.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import library.query.Filter.Compare;
+import library.query.Filter.In;
+import library.query.Filter.Logical;
+import library.query.Filter.Not;
+import library.query.Filter.Prefix;
+import library.query.Filter.Regex;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Turns filters and sorts into Java predicates and comparators that run
+ *         over documents already in memory, such as a cached address book.
+ * 
+ *         All of the work that does not depend on the document is done once
+ *         when the filter is compiled: regular expressions are compiled and
+ *         sets of text values are put in a hash set. A compiled predicate gives
+ *         the same answer as the filter document from MongoCompiler would on
+ *         the server
+ */
+public class PredicateCompiler {
+	/**
+	 * Turns a filter into a predicate
+	 * 
+	 * @param <T>    Type of the documents
+	 * @param filter Filter
+	 * @param reader Reads the fields of a document
+	 * @return Predicate that matches the same documents as the filter
+	 */
+	public static <T> Predicate<T> toPredicate(Filter filter, FieldReader<T> reader) {
+		if (filter instanceof Compare) {
+			return compare((Compare) filter, reader);
+		}
+		if (filter instanceof In) {
+			In in = (In) filter;
+			Predicate<T> member = member(in, reader);
+			return in.negated ? member.negate() : member;
+		}
+		if (filter instanceof Prefix) {
+			Prefix prefix = (Prefix) filter;
+			String field = prefix.field;
+			String start = prefix.prefix;
+			boolean ignoreCase = prefix.ignoreCase;
+			return document -> {
+				Object value = reader.get(document, field);
+				return value instanceof String && ((String) value).regionMatches(ignoreCase, 0, start, 0, start.length());
+			};
+		}
+		if (filter instanceof Regex) {
+			Regex regex = (Regex) filter;
+			String field = regex.field;
+			Pattern pattern = Pattern.compile(regex.pattern);
+			return document -> {
+				Object value = reader.get(document, field);
+				return value instanceof String && pattern.matcher((String) value).find();
+			};
+		}
+		if (filter instanceof Not) {
+			return toPredicate(((Not) filter).filter, reader).negate();
+		}
+		Logical logical = (Logical) filter;
+		List<Predicate<T>> children = new ArrayList<Predicate<T>>(logical.filters.size());
+		for (Filter child : logical.filters) {
+			children.add(toPredicate(child, reader));
+		}
+		if (children.size() == 1) {
+			return children.get(0);
+		}
+		if (logical.and) {
+			return document -> {
+				for (Predicate<T> child : children) {
+					if (!child.test(document)) {
+						return false;
+					}
+				}
+				return true;
+			};
+		}
+		return document -> {
+			for (Predicate<T> child : children) {
+				if (child.test(document)) {
+					return true;
+				}
+			}
+			return false;
+		};
+	}
+
+	/**
+	 * Turns a sort order into a comparator
+	 * 
+	 * @param <T>    Type of the documents
+	 * @param sorts  Sort order
+	 * @param reader Reads the fields of a document
+	 * @return Comparator that puts documents in the same order as the server
+	 *         would, or null if the order does not matter
+	 */
+	public static <T> Comparator<T> toComparator(List<Sort> sorts, FieldReader<T> reader) {
+		if (sorts.isEmpty()) {
+			return null;
+		}
+		String[] fields = new String[sorts.size()];
+		boolean[] descending = new boolean[sorts.size()];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = sorts.get(i).getField();
+			descending[i] = sorts.get(i).isDescending();
+		}
+		return (a, b) -> {
+			for (int i = 0; i < fields.length; i++) {
+				int result = Values.compare(reader.get(a, fields[i]), reader.get(b, fields[i]));
+				if (result != 0) {
+					return descending[i] ? -result : result;
+				}
+			}
+			return 0;
+		};
+	}
+
+	/**
+	 * Compiles a field compared to a single value
+	 * 
+	 * @param <T>     Type of the documents
+	 * @param compare Comparison
+	 * @param reader  Reads the fields of a document
+	 * @return Predicate of the comparison
+	 */
+	private static <T> Predicate<T> compare(Compare compare, FieldReader<T> reader) {
+		String field = compare.field;
+		Object expected = compare.value;
+		switch (compare.operator) {
+			case EQ:
+				return document -> Values.equal(reader.get(document, field), expected);
+			case NE:
+				return document -> !Values.equal(reader.get(document, field), expected);
+			case GT:
+				return document -> {
+					Integer result = Values.compareRange(reader.get(document, field), expected);
+					return result != null && result > 0;
+				};
+			case GTE:
+				return document -> {
+					Integer result = Values.compareRange(reader.get(document, field), expected);
+					return result != null && result >= 0;
+				};
+			case LT:
+				return document -> {
+					Integer result = Values.compareRange(reader.get(document, field), expected);
+					return result != null && result < 0;
+				};
+			default:
+				return document -> {
+					Integer result = Values.compareRange(reader.get(document, field), expected);
+					return result != null && result <= 0;
+				};
+		}
+	}
+
+	/**
+	 * Compiles a check that a field has one of a set of values. Sets of text are
+	 * checked with a hash set, anything else is checked value by value since
+	 * numbers of different types can be equal
+	 * 
+	 * @param <T>    Type of the documents
+	 * @param in     Set filter
+	 * @param reader Reads the fields of a document
+	 * @return Predicate that matches when the field is in the set
+	 */
+	private static <T> Predicate<T> member(In in, FieldReader<T> reader) {
+		String field = in.field;
+		boolean text = true;
+		for (Object value : in.values) {
+			text &= value instanceof String;
+		}
+		if (text) {
+			Set<Object> values = new HashSet<Object>(in.values);
+			return document -> values.contains(reader.get(document, field));
+		}
+		Object[] values = in.values.toArray();
+		return document -> {
+			Object value = reader.get(document, field);
+			for (Object candidate : values) {
+				if (Values.equal(value, candidate)) {
+					return true;
+				}
+			}
+			return false;
+		};
+	}
+}
@@ -0,0 +1,122 @@
+package library.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         A filter along with the order the matching documents come back in and
+ *         how many of them are wanted.
+ * 
+ *         Queries are compared by their printed form, so run them through
+ *         QueryNormalizer first to have queries that mean the same thing compare
+ *         equal
+ */
+public class Query {
+	private Filter filter = Filter.all();
+	private List<Sort> sorts = Collections.emptyList();
+	private int limit;
+
+	/**
+	 * Creates a query that matches every document
+	 */
+	public Query() {
+	}
+
+	/**
+	 * Creates a query for the documents matching a filter
+	 * 
+	 * @param filter Filter the documents must match
+	 */
+	public Query(Filter filter) {
+		setFilter(filter);
+	}
+
+	/**
+	 * Returns the filter the documents must match
+	 * 
+	 * @return Filter
+	 */
+	public Filter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Sets the filter the documents must match
+	 * 
+	 * @param filter Filter
+	 */
+	public void setFilter(Filter filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("A query needs a filter");
+		}
+		this.filter = filter;
+	}
+
+	/**
+	 * Returns the fields the documents are sorted by, the first one first
+	 * 
+	 * @return Sort order, empty if the order does not matter
+	 */
+	public List<Sort> getSorts() {
+		return sorts;
+	}
+
+	/**
+	 * Sets the fields the documents are sorted by, the first one first
+	 * 
+	 * @param sorts Sort order, empty if the order does not matter
+	 */
+	public void setSorts(List<Sort> sorts) {
+		this.sorts = Collections.unmodifiableList(new ArrayList<Sort>(sorts));
+	}
+
+	/**
+	 * Sets the fields the documents are sorted by, the first one first
+	 * 
+	 * @param sorts Sort order
+	 */
+	public void setSorts(Sort... sorts) {
+		setSorts(Arrays.asList(sorts));
+	}
+
+	/**
+	 * Returns the largest number of documents wanted
+	 * 
+	 * @return Limit, 0 for every matching document
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Sets the largest number of documents wanted
+	 * 
+	 * @param limit Limit, 0 for every matching document
+	 */
+	public void setLimit(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("The limit can not be negative");
+		}
+		this.limit = limit;
+	}
+
+	@Override
+	public String toString() {
+		return filter + " sort " + sorts + " limit " + limit;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Query && toString().equals(o.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+}
@@ -0,0 +1,197 @@
+package library.query;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import library.query.Filter.Compare;
+import library.query.Filter.In;
+import library.query.Filter.Logical;
+import library.query.Filter.Not;
+import library.query.Filter.Operator;
+import library.query.Filter.Prefix;
+import library.query.Filter.Regex;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Rewrites queries into one normal form so that queries that mean the
+ *         same thing print the same, and so can share a compiled plan and
+ *         cached results. For example and(eq("a", 1), and(eq("b", 2))) and
+ *         and(eq("b", 2.0), eq("a", 1)) both become and(a = 1, b = 2).
+ * 
+ *         Nested and/or filters are flattened, repeated filters are dropped, and
+ *         the filters inside an and/or are sorted. Negations are pushed into
+ *         the filter they negate where there is an operator for it, a set of one
+ *         value becomes an equality, and a regular expression that is only an
+ *         anchored piece of text becomes a prefix. The shape of a query is its
+ *         normal form with every value left out, which groups queries that are
+ *         run the same way
+ */
+public class QueryNormalizer {
+	// Filter that no document matches
+	private static final Filter NONE = Filter.or();
+
+	/**
+	 * Rewrites a query into its normal form
+	 * 
+	 * @param query Query
+	 * @return New query in normal form. The query given is not changed
+	 */
+	public static Query normalize(Query query) {
+		Query out = new Query(normalize(query.getFilter()));
+		Map<String, Sort> sorts = new LinkedHashMap<String, Sort>();
+		for (Sort sort : query.getSorts()) {
+			// Sorting by a field a second time never changes the order
+			sorts.putIfAbsent(sort.getField(), sort);
+		}
+		out.setSorts(new ArrayList<Sort>(sorts.values()));
+		out.setLimit(query.getLimit());
+		return out;
+	}
+
+	/**
+	 * Returns the key that a normalized query is cached under
+	 * 
+	 * @param query Query in normal form
+	 * @return Key that is the same for queries that mean the same thing
+	 */
+	public static String key(Query query) {
+		return query.toString();
+	}
+
+	/**
+	 * Returns the shape of a normalized query, which is the same for queries that
+	 * only differ by their values
+	 * 
+	 * @param query Query in normal form
+	 * @return Shape of the query
+	 */
+	public static String shape(Query query) {
+		StringBuilder out = new StringBuilder();
+		query.getFilter().print(out, true);
+		if (!query.getSorts().isEmpty()) {
+			out.append(" sort ").append(query.getSorts());
+		}
+		if (query.getLimit() > 0) {
+			out.append(" limit ?");
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Rewrites a filter into its normal form
+	 * 
+	 * @param filter Filter
+	 * @return Filter in normal form
+	 */
+	public static Filter normalize(Filter filter) {
+		if (filter instanceof In) {
+			return normalizeIn((In) filter);
+		}
+		if (filter instanceof Prefix) {
+			Prefix prefix = (Prefix) filter;
+			return prefix.ignoreCase && !prefix.hasCase() ? new Prefix(prefix.field, prefix.prefix, false) : prefix;
+		}
+		if (filter instanceof Regex) {
+			Regex regex = (Regex) filter;
+			String text = regex.pattern.substring(1);
+			return MongoCompiler.escape(text).equals(text) ? new Prefix(regex.field, text, false) : regex;
+		}
+		if (filter instanceof Not) {
+			return negate(normalize(((Not) filter).filter));
+		}
+		if (filter instanceof Logical) {
+			return normalizeLogical((Logical) filter);
+		}
+		return filter;
+	}
+
+	/**
+	 * Normalizes a set filter. The values are sorted and repeats are dropped
+	 * 
+	 * @param in Set filter
+	 * @return Equivalent filter in normal form
+	 */
+	private static Filter normalizeIn(In in) {
+		Map<String, Object> values = new TreeMap<String, Object>();
+		for (Object value : in.values) {
+			StringBuilder printed = new StringBuilder();
+			Values.print(printed, value, false);
+			values.putIfAbsent(printed.toString(), value);
+		}
+		if (values.isEmpty()) {
+			return in.negated ? Filter.all() : NONE;
+		}
+		if (values.size() == 1) {
+			return new Compare(in.field, in.negated ? Operator.NE : Operator.EQ, values.values().iterator().next());
+		}
+		return new In(in.field, values.values(), in.negated);
+	}
+
+	/**
+	 * Negates a filter that is already in normal form, using the opposite
+	 * operator where there is one
+	 * 
+	 * @param filter Filter in normal form
+	 * @return Negated filter in normal form
+	 */
+	private static Filter negate(Filter filter) {
+		if (filter instanceof Not) {
+			return ((Not) filter).filter;
+		}
+		if (filter instanceof Compare) {
+			Compare compare = (Compare) filter;
+			// Ranges are not flipped since a field of another type matches neither
+			if (compare.operator == Operator.EQ) {
+				return new Compare(compare.field, Operator.NE, compare.value);
+			}
+			if (compare.operator == Operator.NE) {
+				return new Compare(compare.field, Operator.EQ, compare.value);
+			}
+		}
+		if (filter instanceof In) {
+			In in = (In) filter;
+			return new In(in.field, in.values, !in.negated);
+		}
+		if (filter.equals(Filter.all())) {
+			return NONE;
+		}
+		if (filter.equals(NONE)) {
+			return Filter.all();
+		}
+		return new Not(filter);
+	}
+
+	/**
+	 * Normalizes the filters of an and/or and the and/or itself
+	 * 
+	 * @param logical And/or filter
+	 * @return Equivalent filter in normal form
+	 */
+	private static Filter normalizeLogical(Logical logical) {
+		// The filter that makes the whole and/or match nothing or everything
+		Filter absorbing = logical.and ? NONE : Filter.all();
+		Map<String, Filter> children = new TreeMap<String, Filter>();
+		List<Filter> pending = new ArrayList<Filter>(logical.filters);
+		for (int i = 0; i < pending.size(); i++) {
+			Filter child = normalize(pending.get(i));
+			if (child instanceof Logical && ((Logical) child).and == logical.and) {
+				// Nested filters of the same kind are flattened, which also drops
+				// filters that match everything from an and
+				pending.addAll(((Logical) child).filters);
+			} else if (child.equals(absorbing)) {
+				return absorbing;
+			} else {
+				children.putIfAbsent(child.toString(), child);
+			}
+		}
+		if (children.size() == 1) {
+			return children.values().iterator().next();
+		}
+		return new Logical(logical.and, new ArrayList<Filter>(children.values()));
+	}
+}
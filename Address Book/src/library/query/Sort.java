@@ -0,0 +1,76 @@
+package library.query;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         One field that the results of a query are sorted by
+ */
+public class Sort {
+	private final String field;
+	private final boolean descending;
+
+	/**
+	 * Sorts by a field from the smallest value to the largest
+	 * 
+	 * @param field Name of the field
+	 * @return Ascending sort
+	 */
+	public static Sort ascending(String field) {
+		return new Sort(field, false);
+	}
+
+	/**
+	 * Sorts by a field from the largest value to the smallest
+	 * 
+	 * @param field Name of the field
+	 * @return Descending sort
+	 */
+	public static Sort descending(String field) {
+		return new Sort(field, true);
+	}
+
+	/**
+	 * Sorts by a field
+	 * 
+	 * @param field      Name of the field
+	 * @param descending If the largest value comes first
+	 */
+	public Sort(String field, boolean descending) {
+		this.field = Filter.field(field);
+		this.descending = descending;
+	}
+
+	/**
+	 * Returns the field being sorted by
+	 * 
+	 * @return Name of the field
+	 */
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * Returns if the largest value comes first
+	 * 
+	 * @return If the sort is descending
+	 */
+	public boolean isDescending() {
+		return descending;
+	}
+
+	@Override
+	public String toString() {
+		return field + (descending ? " desc" : " asc");
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Sort && field.equals(((Sort) o).field) && descending == ((Sort) o).descending;
+	}
+
+	@Override
+	public int hashCode() {
+		return field.hashCode() * 31 + (descending ? 1 : 0);
+	}
+}
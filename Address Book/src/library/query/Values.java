@@ -0,0 +1,190 @@
+package library.query;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import org.bson.types.ObjectId;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Compares and prints the values that filters are built from the way
+ *         MongoDB does, so that a filter gives the same answer in memory as on
+ *         the server. Numbers of any type are equal if they have the same value,
+ *         and values of different kinds are ordered by kind: missing, numbers,
+ *         text, ids, booleans, and then dates
+ */
+class Values {
+	/**
+	 * Returns if two values are equal
+	 * 
+	 * @param x First value
+	 * @param y Second value
+	 * @return If the values are equal
+	 */
+	static boolean equal(Object x, Object y) {
+		if (x instanceof Number && y instanceof Number) {
+			return compareNumbers((Number) x, (Number) y) == 0;
+		}
+		return x == null ? y == null : x.equals(y);
+	}
+
+	/**
+	 * Compares two values of the same kind for a range filter
+	 * 
+	 * @param x Value of the field
+	 * @param y Bound of the range
+	 * @return Negative, zero, or positive as the value is less than, equal to, or
+	 *         greater than the bound, or null if they are of different kinds and
+	 *         so can not be in range of each other
+	 */
+	static Integer compareRange(Object x, Object y) {
+		if (x == null || y == null || rank(x) != rank(y)) {
+			return null;
+		}
+		return compare(x, y);
+	}
+
+	/**
+	 * Compares two values for sorting. Missing values sort first
+	 * 
+	 * @param x First value
+	 * @param y Second value
+	 * @return Negative, zero, or positive as the first value sorts before, the
+	 *         same as, or after the second
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static int compare(Object x, Object y) {
+		int rankX = rank(x);
+		int rankY = rank(y);
+		if (rankX != rankY) {
+			return Integer.compare(rankX, rankY);
+		}
+		if (x == null) {
+			return 0;
+		}
+		if (x instanceof Number) {
+			return compareNumbers((Number) x, (Number) y);
+		}
+		if (x.getClass() == y.getClass() && x instanceof Comparable) {
+			return ((Comparable) x).compareTo(y);
+		}
+		return x.toString().compareTo(y.toString());
+	}
+
+	/**
+	 * Writes a value so that equal values print the same and values of different
+	 * kinds never do
+	 * 
+	 * @param out   Builder the value is written to
+	 * @param value Value
+	 * @param shape If the value is written as ?
+	 */
+	static void print(StringBuilder out, Object value, boolean shape) {
+		if (shape) {
+			out.append('?');
+		} else if (value == null || value instanceof Boolean) {
+			out.append(value);
+		} else if (value instanceof Number && !isFinite((Number) value)) {
+			out.append(((Number) value).doubleValue());
+		} else if (value instanceof Number) {
+			out.append(decimal((Number) value).stripTrailingZeros().toPlainString());
+		} else if (value instanceof String) {
+			out.append('"');
+			String text = (String) value;
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c == '"' || c == '\\') {
+					out.append('\\');
+				}
+				out.append(c);
+			}
+			out.append('"');
+		} else if (value instanceof ObjectId) {
+			out.append("ObjectId(").append(((ObjectId) value).toHexString()).append(')');
+		} else if (value instanceof Date) {
+			out.append("Date(").append(((Date) value).getTime()).append(')');
+		} else {
+			out.append(value.getClass().getSimpleName()).append('(').append(value).append(')');
+		}
+	}
+
+	/**
+	 * Returns where a kind of value sorts compared to other kinds
+	 * 
+	 * @param value Value
+	 * @return Rank of the value's kind
+	 */
+	private static int rank(Object value) {
+		if (value == null) {
+			return 0;
+		}
+		if (value instanceof Number) {
+			return 1;
+		}
+		if (value instanceof String) {
+			return 2;
+		}
+		if (value instanceof ObjectId) {
+			return 4;
+		}
+		if (value instanceof Boolean) {
+			return 5;
+		}
+		if (value instanceof Date) {
+			return 6;
+		}
+		return 3;
+	}
+
+	/**
+	 * Compares two numbers of any type by their value
+	 * 
+	 * @param x First number
+	 * @param y Second number
+	 * @return Negative, zero, or positive as the first number is less than, equal
+	 *         to, or greater than the second
+	 */
+	private static int compareNumbers(Number x, Number y) {
+		if (isWhole(x) && isWhole(y)) {
+			return Long.compare(x.longValue(), y.longValue());
+		}
+		return Double.compare(x.doubleValue(), y.doubleValue());
+	}
+
+	/**
+	 * Returns if a number is held as a whole number type
+	 * 
+	 * @param number Number
+	 * @return If it is a long, int, short, or byte
+	 */
+	private static boolean isWhole(Number number) {
+		return number instanceof Long || number instanceof Integer || number instanceof Short
+				|| number instanceof Byte;
+	}
+
+	/**
+	 * Returns a number as a decimal so that numbers of different types with the
+	 * same value print the same
+	 * 
+	 * @param number Number
+	 * @return Decimal value
+	 */
+	private static BigDecimal decimal(Number number) {
+		if (isWhole(number)) {
+			return BigDecimal.valueOf(number.longValue());
+		}
+		return BigDecimal.valueOf(number.doubleValue());
+	}
+
+	/**
+	 * Returns if a number can be written as a decimal
+	 * 
+	 * @param number Number
+	 * @return If the number is not infinite or NaN
+	 */
+	private static boolean isFinite(Number number) {
+		double value = number.doubleValue();
+		return !Double.isNaN(value) && !Double.isInfinite(value);
+	}
+}
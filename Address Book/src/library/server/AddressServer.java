@@ -0,0 +1,103 @@
+package library.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Serves the website and the JSON API it uses over HTTP with the JDK's
+ *         built in server.
+ * 
+ *         Requests are answered by a fixed pool of threads, and connections are
+ *         kept alive between requests. The DatabaseManager must be started
+ *         before the server is
+ */
+public class AddressServer {
+	// Connections that can wait to be accepted
+	private static final int BACKLOG = 1024;
+
+	static {
+		// The JDK server writes the headers and the body of a response separately.
+		// With Nagle's algorithm on, the body waits for the client to acknowledge
+		// the headers, which adds about 40 ms to every keep-alive request. It is
+		// read when the first server is created, so it is set here
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final HttpServer server;
+	private ExecutorService executor;
+	private int threads = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+
+	/**
+	 * Creates a server for the website in a folder. The server does not answer
+	 * requests until it is started
+	 * 
+	 * @param port          Port the server listens on, 0 to pick a free port
+	 * @param websiteFolder Folder with the pages of the website
+	 * @throws IOException Thrown if the port can not be used or the folder does
+	 *                     not exist
+	 */
+	public AddressServer(int port, String websiteFolder) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		server.createContext("/api/", new ApiHandler());
+		server.createContext("/", new StaticHandler(new File(websiteFolder)));
+	}
+
+	/**
+	 * Sets how many requests are answered at once. Must be set before the server
+	 * is started
+	 * 
+	 * @param threads Number of threads answering requests
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("There must be at least 1 thread");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Starts answering requests
+	 */
+	public void start() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "http-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Stops the server, giving requests that are being answered a moment to
+	 * finish
+	 * 
+	 * @param delaySeconds Most seconds to wait for requests to finish
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the port the server listens on
+	 * 
+	 * @return Port number
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+}
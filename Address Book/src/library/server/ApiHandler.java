@@ -0,0 +1,588 @@
+package library.server;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import library.database.Address;
+import library.database.AddressPage;
+import library.database.DatabaseManager;
+import library.database.PageRequest;
+import library.database.User;
+import library.session.SessionManager;
+import library.utils.Utils;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Answers the JSON requests of the website:
+ * 
+ *         - POST /api/login checks a username and password and hands back a
+ *         session token
+ * 
+ *         - POST /api/logout ends the session of the token it is sent with
+ * 
+ *         - POST /api/users creates an account and hands back a session token
+ * 
+ *         - GET /api/addresses lists the user's addresses. Address fields given
+ *         as parameters filter the list, prefix searches by the start of a
+ *         value, and sounds searches by how a value sounds. offset and limit
+ *         pick part of the list. The filtered list is sorted by last name,
+ *         first name, and then id
+ * 
+ *         - POST /api/addresses adds an address
+ * 
+ *         - GET, PUT, and DELETE /api/addresses/{id} read, change, and delete
+ *         one address
+ * 
+ *         Address requests are made for the user whose token is sent as a
+ *         bearer token. HTTP basic authentication still works for scripts, but
+ *         it checks the password against the database on every request
+ */
+class ApiHandler implements HttpHandler {
+	// Fields of an address that are sent and can be set
+	private static final String[] FIELDS = { "firstName", "lastName", "street", "city", "state", "zip" };
+	// Longest value a field can have
+	private static final int MAXFIELDLENGTH = 256;
+	// Number of addresses listed when no limit is given
+	private static final int DEFAULTLIMIT = 100;
+	// Largest number of addresses listed at once
+	private static final int MAXLIMIT = 10000;
+	// Largest offset a list can start at
+	private static final int MAXOFFSET = 1000000;
+
+	private final Logger logger = Logger.getLogger(ApiHandler.class.getName());
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			route(exchange);
+		} catch (JsonProcessingException e) {
+			Responses.sendError(exchange, 400, "The request body is not valid JSON");
+		} catch (IllegalArgumentException e) {
+			Responses.sendError(exchange, 400, e.getMessage());
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			logger.log(Level.WARNING, "Unable to answer " + exchange.getRequestURI(), e);
+			Responses.sendError(exchange, 500, "The request could not be completed");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Sends a request to the method that answers it
+	 * 
+	 * @param exchange Request being answered
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	private void route(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+		// Paths start with an empty segment and then api
+		String resource = path.length > 2 ? path[2] : "";
+		String id = path.length > 3 ? path[3] : null;
+		if (path.length > 4) {
+			Responses.sendError(exchange, 404, "There is nothing at " + exchange.getRequestURI().getPath());
+		} else if (resource.equals("login") && id == null) {
+			if (allow(exchange, method, "POST")) {
+				login(exchange);
+			}
+		} else if (resource.equals("logout") && id == null) {
+			if (allow(exchange, method, "POST")) {
+				logout(exchange);
+			}
+		} else if (resource.equals("users") && id == null) {
+			if (allow(exchange, method, "POST")) {
+				createAccount(exchange);
+			}
+		} else if (resource.equals("addresses")) {
+			User user = authenticate(exchange);
+			if (user == null) {
+				Responses.sendError(exchange, 401, "A valid session token or username and password are needed");
+			} else if (id == null) {
+				if (!allow(exchange, method, "GET", "POST")) {
+					return;
+				}
+				if (method.equals("GET")) {
+					listAddresses(exchange, user);
+				} else {
+					addAddress(exchange, user);
+				}
+			} else if (allow(exchange, method, "GET", "PUT", "DELETE")) {
+				Document query = new Document("username", user.getUsername()).append("_id", toId(id));
+				if (method.equals("GET")) {
+					getAddress(exchange, query);
+				} else if (method.equals("PUT")) {
+					updateAddress(exchange, query);
+				} else {
+					deleteAddress(exchange, query);
+				}
+			}
+		} else {
+			Responses.sendError(exchange, 404, "There is nothing at " + exchange.getRequestURI().getPath());
+		}
+	}
+
+	/**
+	 * Checks a username and password and sends back the user along with the
+	 * token of a new session
+	 * 
+	 * @param exchange Request with a JSON body holding username and password
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	private void login(HttpExchange exchange) throws IOException {
+		JsonNode body = readJson(exchange);
+		String token = SessionManager.login(text(body, "username"), text(body, "password"));
+		if (token == null) {
+			Responses.sendError(exchange, 401, "The username or password is not correct");
+		} else {
+			Responses.sendJson(exchange, 200, toJson(SessionManager.getUser(token), token));
+		}
+	}
+
+	/**
+	 * Ends the session of the bearer token the request is sent with
+	 * 
+	 * @param exchange Request being answered
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	private void logout(HttpExchange exchange) throws IOException {
+		if (SessionManager.logout(bearerToken(exchange))) {
+			Responses.send(exchange, 204, "application/json; charset=utf-8", new byte[0]);
+		} else {
+			Responses.sendError(exchange, 401, "There is no session with that token");
+		}
+	}
+
+	/**
+	 * Creates an account. Accounts are not created while the database is out of
+	 * reach, since the username could not be checked against it
+	 * 
+	 * @param exchange Request with a JSON body holding username, firstName,
+	 *                 lastName, email, and password
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	private void createAccount(HttpExchange exchange) throws IOException {
+		JsonNode body = readJson(exchange);
+		String username = text(body, "username");
+		String password = text(body, "password");
+		if (username.isEmpty() || password.isEmpty()) {
+			throw new IllegalArgumentException("A username and password are needed");
+		}
+		if (DatabaseManager.isOffline()) {
+			Responses.sendError(exchange, 503, "Accounts can not be created while the database is out of reach");
+			return;
+		}
+		if (!DatabaseManager.findUser(new Document("username", username)).isEmpty()) {
+			Responses.sendError(exchange, 409, "The username " + username + " is taken");
+			return;
+		}
+		User user = new User(username, text(body, "firstName"), text(body, "lastName"), text(body, "email"),
+				Utils.hash(password));
+		DatabaseManager.addUser(user);
+		Responses.sendJson(exchange, 201, toJson(user, SessionManager.open(user)));
+	}
+
+	/**
+	 * Lists the user's addresses, filtered or searched by the parameters of the
+	 * request
+	 * 
+	 * @param exchange Request being answered
+	 * @param user     User whose addresses are listed
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	private void listAddresses(HttpExchange exchange, User user) throws IOException {
+		Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+		int offset = number(parameters, "offset", 0);
+		int limit = Math.min(number(parameters, "limit", DEFAULTLIMIT), MAXLIMIT);
+		if (offset > MAXOFFSET) {
+			throw new IllegalArgumentException("offset can not be more than " + MAXOFFSET);
+		}
+		String field = parameters.get("field");
+		List<Address> addresses;
+		if (parameters.containsKey("prefix")) {
+			addresses = skip(DatabaseManager.searchAddressPrefix(user.getUsername(), field,
+					parameters.get("prefix"), offset + limit), offset);
+		} else if (parameters.containsKey("sounds")) {
+			addresses = skip(DatabaseManager.searchSimilarAddresses(user.getUsername(), field,
+					parameters.get("sounds"), offset + limit), offset);
+		} else {
+			Document query = new Document("username", user.getUsername());
+			for (String name : FIELDS) {
+				if (parameters.containsKey(name)) {
+					query.append(name, parameters.get(name));
+				}
+			}
+			addresses = readRange(query, offset, limit);
+		}
+		List<Map<String, Object>> out = new ArrayList<Map<String, Object>>(addresses.size());
+		for (Address address : addresses) {
+			out.add(toJson(address));
+		}
+		Responses.sendJson(exchange, 200, out);
+	}
+
+	/**
+	 * Drops the search results that come before an offset
+	 * 
+	 * @param addresses Search results
+	 * @param offset    Number of results dropped
+	 * @return Results after the offset
+	 */
+	private static List<Address> skip(List<Address> addresses, int offset) {
+		return addresses.subList(Math.min(offset, addresses.size()), addresses.size());
+	}
+
+	/**
+	 * Reads part of the addresses matching a query in sorted order. The addresses
+	 * are read a page at a time, so the whole address book is never held at once
+	 * 
+	 * @param query  Parameters for address search
+	 * @param offset Number of addresses skipped
+	 * @param limit  Largest number of addresses read
+	 * @return Addresses after the offset
+	 */
+	private static List<Address> readRange(Document query, int offset, int limit) {
+		if (limit == 0) {
+			return new ArrayList<Address>();
+		}
+		PageRequest request = new PageRequest(query, limit);
+		// Addresses before the offset are skipped in pages as large as a list
+		for (int skipped = 0; skipped < offset;) {
+			AddressPage page = DatabaseManager
+					.findAddressPage(request.withPageSize(Math.min(offset - skipped, MAXLIMIT)));
+			skipped += page.getAddresses().size();
+			if (!page.hasNext()) {
+				return new ArrayList<Address>();
+			}
+			request = page.next();
+		}
+		return DatabaseManager.findAddressPage(request.withPageSize(limit)).getAddresses();
+	}
+
+	/**
+	 * Sends one address
+	 * 
+	 * @param exchange Request being answered
+	 * @param query    Username and id of the address
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	private void getAddress(HttpExchange exchange, Document query) throws IOException {
+		List<Address> addresses = DatabaseManager.findAddress(query);
+		if (addresses.isEmpty()) {
+			Responses.sendError(exchange, 404, "There is no such address");
+		} else {
+			Responses.sendJson(exchange, 200, toJson(addresses.get(0)));
+		}
+	}
+
+	/**
+	 * Adds an address to the user's address book
+	 * 
+	 * @param exchange Request with a JSON body holding every address field
+	 * @param user     User the address is added for
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	private void addAddress(HttpExchange exchange, User user) throws IOException {
+		JsonNode body = readJson(exchange);
+		String[] values = new String[FIELDS.length];
+		for (int i = 0; i < FIELDS.length; i++) {
+			values[i] = field(body, FIELDS[i]);
+			if (values[i] == null) {
+				throw new IllegalArgumentException("Missing " + FIELDS[i]);
+			}
+		}
+		Address address = new Address(values[0], values[1], values[2], values[3], values[4], values[5],
+				user.getUsername());
+		DatabaseManager.insertAddress(address);
+		Responses.sendJson(exchange, 201, toJson(address));
+	}
+
+	/**
+	 * Changes the fields of an address given in the request
+	 * 
+	 * @param exchange Request with a JSON body holding the fields being changed
+	 * @param query    Username and id of the address
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	private void updateAddress(HttpExchange exchange, Document query) throws IOException {
+		JsonNode body = readJson(exchange);
+		Document update = new Document();
+		for (String name : FIELDS) {
+			String value = field(body, name);
+			if (value != null) {
+				update.append(name, value);
+			}
+		}
+		if (update.isEmpty()) {
+			throw new IllegalArgumentException("No address fields were given");
+		}
+		if (DatabaseManager.findAddress(new Document(query)).isEmpty()) {
+			Responses.sendError(exchange, 404, "There is no such address");
+			return;
+		}
+		DatabaseManager.updateAddress(query, update);
+		getAddress(exchange, query);
+	}
+
+	/**
+	 * Deletes an address
+	 * 
+	 * @param exchange Request being answered
+	 * @param query    Username and id of the address
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	private void deleteAddress(HttpExchange exchange, Document query) throws IOException {
+		if (DatabaseManager.findAddress(new Document(query)).isEmpty()) {
+			Responses.sendError(exchange, 404, "There is no such address");
+			return;
+		}
+		DatabaseManager.deleteAddress(query);
+		Responses.send(exchange, 204, "application/json; charset=utf-8", new byte[0]);
+	}
+
+	/**
+	 * Finds the user a request is made for from its bearer token, or from its
+	 * basic authentication header if it has no token
+	 * 
+	 * @param exchange Request being answered
+	 * @return User, or null if the header is missing or wrong
+	 */
+	private static User authenticate(HttpExchange exchange) {
+		String token = bearerToken(exchange);
+		if (token != null) {
+			return SessionManager.getUser(token);
+		}
+		String header = exchange.getRequestHeaders().getFirst("Authorization");
+		if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6)) {
+			return null;
+		}
+		String credentials;
+		try {
+			credentials = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		int colon = credentials.indexOf(':');
+		return colon < 0 ? null : findUser(credentials.substring(0, colon), credentials.substring(colon + 1));
+	}
+
+	/**
+	 * Returns the bearer token a request is sent with
+	 * 
+	 * @param exchange Request being answered
+	 * @return Token, or null if the request has none
+	 */
+	private static String bearerToken(HttpExchange exchange) {
+		String header = exchange.getRequestHeaders().getFirst("Authorization");
+		if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+			return null;
+		}
+		return header.substring(7).trim();
+	}
+
+	/**
+	 * Finds a user by username and password
+	 * 
+	 * @param username Username
+	 * @param password Password before it is hashed
+	 * @return User, or null if there is no user with that username and password
+	 */
+	private static User findUser(String username, String password) {
+		List<User> users = DatabaseManager
+				.findUser(new Document("username", username).append("hashedPassword", Utils.hash(password)));
+		return users.isEmpty() ? null : users.get(0);
+	}
+
+	/**
+	 * Checks that a request is made with a method the path allows, answering it
+	 * with a 405 if it is not
+	 * 
+	 * @param exchange Request being answered
+	 * @param method   Method of the request
+	 * @param allowed  Methods the path allows
+	 * @return If the method is allowed
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	private static boolean allow(HttpExchange exchange, String method, String... allowed) throws IOException {
+		for (String name : allowed) {
+			if (name.equals(method)) {
+				return true;
+			}
+		}
+		exchange.getResponseHeaders().set("Allow", String.join(", ", allowed));
+		Responses.sendError(exchange, 405, method + " is not allowed here");
+		return false;
+	}
+
+	/**
+	 * Reads the JSON body of a request
+	 * 
+	 * @param exchange Request being read
+	 * @return JSON object of the body
+	 * @throws IOException Thrown if the body can not be read
+	 */
+	private static JsonNode readJson(HttpExchange exchange) throws IOException {
+		JsonNode body = Responses.MAPPER.readTree(Responses.readBody(exchange));
+		if (body == null || !body.isObject()) {
+			throw new IllegalArgumentException("The request body must be a JSON object");
+		}
+		return body;
+	}
+
+	/**
+	 * Returns a text field of a JSON object
+	 * 
+	 * @param body JSON object
+	 * @param name Name of the field
+	 * @return Value, or an empty string if it is missing
+	 */
+	private static String text(JsonNode body, String name) {
+		return body.hasNonNull(name) ? body.get(name).asText() : "";
+	}
+
+	/**
+	 * Returns an address field of a JSON object
+	 * 
+	 * @param body JSON object
+	 * @param name Name of the field
+	 * @return Trimmed value, or null if it is missing
+	 * @throws IllegalArgumentException Thrown if the value is too long
+	 */
+	private static String field(JsonNode body, String name) {
+		if (!body.hasNonNull(name)) {
+			return null;
+		}
+		String value = body.get(name).asText().trim();
+		if (value.length() > MAXFIELDLENGTH) {
+			throw new IllegalArgumentException(name + " is longer than " + MAXFIELDLENGTH + " characters");
+		}
+		return value;
+	}
+
+	/**
+	 * Parses the id of an address from a path
+	 * 
+	 * @param id Hex string of the id
+	 * @return Id
+	 * @throws IllegalArgumentException Thrown if the id is not valid
+	 */
+	private static ObjectId toId(String id) {
+		if (!ObjectId.isValid(id)) {
+			throw new IllegalArgumentException(id + " is not an address id");
+		}
+		return new ObjectId(id);
+	}
+
+	/**
+	 * Parses the parameters of a query string
+	 * 
+	 * @param query Raw query string, or null if there is none
+	 * @return Each parameter mapped to its decoded value
+	 * @throws UnsupportedEncodingException Never thrown since UTF-8 is always
+	 *                                      supported
+	 */
+	private static Map<String, String> parameters(String query) throws UnsupportedEncodingException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (query == null) {
+			return parameters;
+		}
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0) {
+				parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+						URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Returns a parameter that must be a number that is not negative
+	 * 
+	 * @param parameters   Parameters of the request
+	 * @param name         Name of the parameter
+	 * @param defaultValue Value used if the parameter is missing
+	 * @return Value of the parameter
+	 */
+	private static int number(Map<String, String> parameters, String name, int defaultValue) {
+		if (!parameters.containsKey(name)) {
+			return defaultValue;
+		}
+		try {
+			int value = Integer.parseInt(parameters.get(name));
+			if (value >= 0) {
+				return value;
+			}
+		} catch (NumberFormatException e) {
+			// Falls through to the error below
+		}
+		throw new IllegalArgumentException(name + " must be a number that is not negative");
+	}
+
+	/**
+	 * Returns the fields of a user that are sent to the website. The hashed
+	 * password is never sent
+	 * 
+	 * @param user User being sent
+	 * @return Fields mapped to their values
+	 */
+	private static Map<String, Object> toJson(User user) {
+		Map<String, Object> out = new LinkedHashMap<String, Object>();
+		out.put("username", user.getUsername());
+		out.put("firstName", user.getFirstName());
+		out.put("lastName", user.getLastName());
+		out.put("email", user.getEmail());
+		return out;
+	}
+
+	/**
+	 * Returns the fields of a user that are sent to the website along with the
+	 * token of their session
+	 * 
+	 * @param user  User being sent
+	 * @param token Token of the user's session
+	 * @return Fields mapped to their values
+	 */
+	private static Map<String, Object> toJson(User user, String token) {
+		Map<String, Object> out = toJson(user);
+		out.put("token", token);
+		return out;
+	}
+
+	/**
+	 * Returns the fields of an address that are sent to the website
+	 * 
+	 * @param address Address being sent
+	 * @return Fields mapped to their values
+	 */
+	private static Map<String, Object> toJson(Address address) {
+		Map<String, Object> out = new LinkedHashMap<String, Object>();
+		out.put("id", address.getId() == null ? null : address.getId().toHexString());
+		out.put("firstName", address.getFirstName());
+		out.put("lastName", address.getLastName());
+		out.put("street", address.getStreet());
+		out.put("city", address.getCity());
+		out.put("state", address.getState());
+		out.put("zip", address.getZip());
+		return out;
+	}
+}
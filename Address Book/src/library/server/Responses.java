@@ -0,0 +1,151 @@
+package library.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Writes HTTP responses. Every response has a known length so the
+ *         connection can be kept alive for the next request, and bodies large
+ *         enough to be worth it are gzipped when the client accepts gzip
+ */
+class Responses {
+	// Smallest body that is gzipped. Smaller bodies do not get any smaller
+	private static final int MINGZIPSIZE = 1024;
+	// Largest request body that is read
+	static final int MAXBODYSIZE = 1 << 20;
+
+	static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/**
+	 * Sends a response
+	 * 
+	 * @param exchange    Request being answered
+	 * @param status      HTTP status code
+	 * @param contentType Type of the body
+	 * @param body        Body of the response
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		send(exchange, status, contentType, body, null);
+	}
+
+	/**
+	 * Sends a response, using a body that was gzipped ahead of time if there is
+	 * one
+	 * 
+	 * @param exchange    Request being answered
+	 * @param status      HTTP status code
+	 * @param contentType Type of the body
+	 * @param body        Body of the response
+	 * @param gzipped     Body gzipped ahead of time, or null to gzip it here if
+	 *                    it is worth it
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	static void send(HttpExchange exchange, int status, String contentType, byte[] body, byte[] gzipped)
+			throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+		if (acceptsGzip(exchange) && body.length >= MINGZIPSIZE) {
+			body = gzipped != null ? gzipped : gzip(body);
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		if (exchange.getRequestMethod().equals("HEAD") || status == 204) {
+			exchange.sendResponseHeaders(status, -1);
+		} else {
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+		exchange.close();
+	}
+
+	/**
+	 * Sends a value as JSON
+	 * 
+	 * @param exchange Request being answered
+	 * @param status   HTTP status code
+	 * @param value    Value written as JSON
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	static void sendJson(HttpExchange exchange, int status, Object value) throws IOException {
+		send(exchange, status, "application/json; charset=utf-8", MAPPER.writeValueAsBytes(value));
+	}
+
+	/**
+	 * Sends an error as a JSON object with an error field
+	 * 
+	 * @param exchange Request being answered
+	 * @param status   HTTP status code
+	 * @param message  Description of the error
+	 * @throws IOException Thrown if the response can not be written
+	 */
+	static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		sendJson(exchange, status, Collections.singletonMap("error", message));
+	}
+
+	/**
+	 * Reads the body of a request
+	 * 
+	 * @param exchange Request being read
+	 * @return Body of the request
+	 * @throws IOException Thrown if the body can not be read or is too large
+	 */
+	static byte[] readBody(HttpExchange exchange) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = exchange.getRequestBody()) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+				if (out.size() > MAXBODYSIZE) {
+					throw new IllegalArgumentException("The request body is too large");
+				}
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Gzips a body
+	 * 
+	 * @param body Body of a response
+	 * @return Gzipped body
+	 * @throws IOException Never thrown since it is written to memory
+	 */
+	static byte[] gzip(byte[] body) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(body);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns if the client accepts gzipped responses
+	 * 
+	 * @param exchange Request being answered
+	 * @return If gzip is in the Accept-Encoding header
+	 */
+	private static boolean acceptsGzip(HttpExchange exchange) {
+		List<String> encodings = exchange.getRequestHeaders().get("Accept-Encoding");
+		if (encodings != null) {
+			for (String encoding : encodings) {
+				if (encoding.contains("gzip")) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
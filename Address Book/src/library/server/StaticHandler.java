@@ -0,0 +1,129 @@
+package library.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Serves the pages of the website from a folder. Files are read once and
+ *         kept in memory along with a gzipped copy, and are read again when they
+ *         change on disk
+ */
+class StaticHandler implements HttpHandler {
+	private final File root;
+	// Files read so far by their canonical path, so the paths of many requests
+	// that name the same file share one entry
+	private final ConcurrentMap<File, Resource> resources = new ConcurrentHashMap<File, Resource>();
+
+	/**
+	 * Creates a handler that serves the files in a folder
+	 * 
+	 * @param root Folder of the website
+	 * @throws IOException Thrown if the folder does not exist
+	 */
+	StaticHandler(File root) throws IOException {
+		if (!root.isDirectory()) {
+			throw new IOException("The website folder " + root + " does not exist");
+		}
+		this.root = root.getCanonicalFile();
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			String method = exchange.getRequestMethod();
+			if (!method.equals("GET") && !method.equals("HEAD")) {
+				Responses.sendError(exchange, 405, "Only GET and HEAD are allowed");
+				return;
+			}
+			String path = exchange.getRequestURI().getPath();
+			Resource resource = find(path.equals("/") ? "/index.html" : path);
+			if (resource == null) {
+				Responses.sendError(exchange, 404, path + " was not found");
+				return;
+			}
+			Responses.send(exchange, 200, resource.contentType, resource.body, resource.gzipped);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Finds a file of the website, reading it if it is not in memory or has
+	 * changed
+	 * 
+	 * @param path Path of the request
+	 * @return File contents, or null if there is no such file in the folder
+	 * @throws IOException Thrown if the file can not be read
+	 */
+	private Resource find(String path) throws IOException {
+		File file = new File(root, path).getCanonicalFile();
+		// Paths such as /../secret must not leave the website folder
+		if (!file.toPath().startsWith(root.toPath()) || !file.isFile()) {
+			return null;
+		}
+		Resource resource = resources.get(file);
+		if (resource == null || resource.lastModified != file.lastModified()) {
+			byte[] body = Files.readAllBytes(file.toPath());
+			resource = new Resource(body, Responses.gzip(body), contentType(file.getName()), file.lastModified());
+			resources.put(file, resource);
+		}
+		return resource;
+	}
+
+	/**
+	 * Returns the content type of a file from its extension
+	 * 
+	 * @param name Name of the file
+	 * @return MIME type
+	 */
+	private static String contentType(String name) {
+		String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+		switch (extension) {
+			case "html":
+				return "text/html; charset=utf-8";
+			case "css":
+				return "text/css; charset=utf-8";
+			case "js":
+				return "application/javascript; charset=utf-8";
+			case "json":
+				return "application/json; charset=utf-8";
+			case "png":
+				return "image/png";
+			case "jpg":
+			case "jpeg":
+				return "image/jpeg";
+			case "svg":
+				return "image/svg+xml";
+			case "ico":
+				return "image/x-icon";
+			default:
+				return "application/octet-stream";
+		}
+	}
+
+	/**
+	 * A file of the website held in memory
+	 */
+	private static class Resource {
+		final byte[] body;
+		final byte[] gzipped;
+		final String contentType;
+		final long lastModified;
+
+		Resource(byte[] body, byte[] gzipped, String contentType, long lastModified) {
+			this.body = body;
+			this.gzipped = gzipped;
+			this.contentType = contentType;
+			this.lastModified = lastModified;
+		}
+	}
+}
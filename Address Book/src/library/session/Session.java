@@ -0,0 +1,77 @@
+package library.session;
+
+import library.database.User;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         A signed in user and when their session was last used. The user is
+ *         kept without their hashed password
+ */
+class Session {
+	private final String tokenHash;
+	private final User user;
+	private volatile long lastUsed;
+	// Last time the session was used that the store was marked changed for
+	private volatile long lastMarked;
+
+	/**
+	 * Constructor that sets up all necessary attributes of the session
+	 * 
+	 * @param tokenHash Hash of the session's token
+	 * @param user      Signed in user
+	 * @param lastUsed  Time the session was last used in milliseconds since the
+	 *                  epoch
+	 */
+	Session(String tokenHash, User user, long lastUsed) {
+		this.tokenHash = tokenHash;
+		this.user = user;
+		this.lastUsed = lastUsed;
+		this.lastMarked = lastUsed;
+	}
+
+	/**
+	 * Returns the hash of the session's token
+	 * 
+	 * @return Token hash
+	 */
+	String getTokenHash() {
+		return tokenHash;
+	}
+
+	/**
+	 * Returns the signed in user
+	 * 
+	 * @return User
+	 */
+	User getUser() {
+		return user;
+	}
+
+	/**
+	 * Returns the time the session was last used
+	 * 
+	 * @return Milliseconds since the epoch
+	 */
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * Marks the session as used, which pushes back when it times out
+	 * 
+	 * @param now   Current time in milliseconds since the epoch
+	 * @param slack Milliseconds the time out can move before it is worth saving
+	 * @return If the time out moved by at least the slack since the last time
+	 *         this returned true
+	 */
+	boolean touch(long now, long slack) {
+		lastUsed = now;
+		if (now - lastMarked < slack) {
+			return false;
+		}
+		lastMarked = now;
+		return true;
+	}
+}
@@ -0,0 +1,217 @@
+package library.session;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.Document;
+
+import library.database.DatabaseManager;
+import library.database.User;
+import library.storage.SessionRecord;
+import library.storage.SessionSettings;
+import library.storage.StorageManager;
+import library.utils.Utils;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Hands out a token when a user signs in so later requests can be
+ *         checked with the token instead of the username and password. Checking
+ *         a token finds the user in memory without going to the database.
+ * 
+ *         Tokens are random and say nothing about the user. Only a hash of each
+ *         token is kept, so neither memory nor the saved sessions hold a token
+ *         that can be used. Sessions time out when they are not used for a
+ *         while and can be saved so they last through a restart. Until start()
+ *         is called sessions use the default settings and are not saved
+ */
+public class SessionManager {
+	// Random bytes in a token
+	private static final int TOKENBYTES = 32;
+
+	private static final Logger logger = Logger.getLogger(SessionManager.class.getName());
+	private static final SecureRandom random = new SecureRandom();
+	private static final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+	private static volatile SessionStore store = createStore(new SessionSettings());
+	private static boolean persistent;
+	private static ScheduledExecutorService saveScheduler;
+	private static boolean shutdownHookAdded;
+
+	/**
+	 * Sets up sessions with the settings from long-term storage, loading the saved
+	 * sessions if they are persistent. Sessions that are already open are ended
+	 * 
+	 * @throws Exception Thrown if the settings or saved sessions can not be read
+	 */
+	public static void start() throws Exception {
+		start(StorageManager.getSessionSettings());
+	}
+
+	/**
+	 * Sets up sessions with the given settings, loading the saved sessions if they
+	 * are persistent. Sessions that are already open are ended
+	 * 
+	 * @param settings Session settings
+	 * @throws Exception Thrown if the saved sessions can not be read
+	 */
+	public static synchronized void start(SessionSettings settings) throws Exception {
+		stop();
+		SessionStore created = createStore(settings);
+		if (settings.isPersistent()) {
+			long now = System.currentTimeMillis();
+			for (SessionRecord record : StorageManager.getSessions()) {
+				if (now - record.getLastUsed() <= created.getTimeoutMillis()) {
+					User user = new User(record.getUsername(), record.getFirstName(), record.getLastName(),
+							record.getEmail(), null);
+					created.put(new Session(record.getTokenHash(), user, record.getLastUsed()));
+				}
+			}
+			created.takeChanged();
+			saveScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "session-save");
+				thread.setDaemon(true);
+				return thread;
+			});
+			long interval = Math.max(1, settings.getSaveIntervalSeconds());
+			saveScheduler.scheduleWithFixedDelay(SessionManager::runSave, interval, interval, TimeUnit.SECONDS);
+			if (!shutdownHookAdded) {
+				Runtime.getRuntime().addShutdownHook(new Thread(SessionManager::stop, "session-shutdown"));
+				shutdownHookAdded = true;
+			}
+		}
+		store = created;
+		persistent = settings.isPersistent();
+	}
+
+	/**
+	 * Stops saving sessions, saving them one last time first if they are
+	 * persistent. Open sessions keep working
+	 */
+	public static synchronized void stop() {
+		if (saveScheduler != null) {
+			saveScheduler.shutdownNow();
+			saveScheduler = null;
+		}
+		if (persistent) {
+			runSave();
+			persistent = false;
+		}
+	}
+
+	/**
+	 * Checks a username and password against the database and opens a session if
+	 * they are correct
+	 * 
+	 * @param username Username
+	 * @param password Password before it is hashed
+	 * @return Token of the new session, or null if the username or password is
+	 *         not correct
+	 */
+	public static String login(String username, String password) {
+		List<User> users = DatabaseManager
+				.findUser(new Document("username", username).append("hashedPassword", Utils.hash(password)));
+		return users.isEmpty() ? null : open(users.get(0));
+	}
+
+	/**
+	 * Opens a session for a user that has already been checked, such as one that
+	 * was just created
+	 * 
+	 * @param user Signed in user
+	 * @return Token of the new session
+	 */
+	public static String open(User user) {
+		byte[] bytes = new byte[TOKENBYTES];
+		random.nextBytes(bytes);
+		String token = encoder.encodeToString(bytes);
+		User kept = new User(user.getUsername(), user.getFirstName(), user.getLastName(), user.getEmail(), null);
+		store.put(new Session(Utils.hash(token), kept, System.currentTimeMillis()));
+		return token;
+	}
+
+	/**
+	 * Finds the user a token was handed out to and pushes back when the session
+	 * times out
+	 * 
+	 * @param token Token of the session
+	 * @return User without their hashed password, or null if the token is not
+	 *         one of an open session
+	 */
+	public static User getUser(String token) {
+		if (token == null || token.isEmpty()) {
+			return null;
+		}
+		Session session = store.get(Utils.hash(token), System.currentTimeMillis());
+		return session == null ? null : session.getUser();
+	}
+
+	/**
+	 * Ends a session
+	 * 
+	 * @param token Token of the session
+	 * @return If there was an open session with the token
+	 */
+	public static boolean logout(String token) {
+		return token != null && store.remove(Utils.hash(token));
+	}
+
+	/**
+	 * Ends every session of a user, such as after their account changes
+	 * 
+	 * @param username Username of the user
+	 * @return Number of sessions ended
+	 */
+	public static int logoutUser(String username) {
+		return store.removeUser(username);
+	}
+
+	/**
+	 * Returns the number of open sessions. Sessions that timed out a moment ago
+	 * may still be counted
+	 * 
+	 * @return Number of sessions
+	 */
+	public static long getSessionCount() {
+		return store.size();
+	}
+
+	/**
+	 * Saves the sessions if they changed since they were last saved. Failures
+	 * are logged so the next save still happens
+	 */
+	private static void runSave() {
+		SessionStore current = store;
+		if (!current.takeChanged()) {
+			return;
+		}
+		List<SessionRecord> records = new ArrayList<SessionRecord>();
+		for (Session session : current.snapshot(System.currentTimeMillis())) {
+			User user = session.getUser();
+			records.add(new SessionRecord(session.getTokenHash(), user.getUsername(), user.getFirstName(),
+					user.getLastName(), user.getEmail(), session.getLastUsed()));
+		}
+		try {
+			StorageManager.setSessions(records);
+		} catch (Exception e) {
+			current.markChanged();
+			logger.log(Level.WARNING, "Unable to save sessions", e);
+		}
+	}
+
+	/**
+	 * Creates an empty store with the given settings
+	 * 
+	 * @param settings Session settings
+	 * @return New store
+	 */
+	private static SessionStore createStore(SessionSettings settings) {
+		return new SessionStore(TimeUnit.MINUTES.toMillis(settings.getTimeoutMinutes()), settings.getMaxSessions());
+	}
+}
@@ -0,0 +1,173 @@
+package library.session;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Holds the open sessions in memory, found by the hash of their token.
+ * 
+ *         Sessions time out once they have not been used for a while, and every
+ *         use pushes the time out back. When there are too many sessions the
+ *         ones used longest ago are ended first. Lookups do not lock, so many
+ *         requests can check their session at once
+ */
+class SessionStore {
+	// A saved session may time out up to this fraction of the time out early
+	// after a restart, in exchange for not being saved on every use
+	private static final long TOUCHSLACKFRACTION = 100;
+
+	private final Cache<String, Session> sessions;
+	private final long timeoutMillis;
+	private final long touchSlackMillis;
+	private volatile boolean changed;
+
+	/**
+	 * Creates an empty store
+	 * 
+	 * @param timeoutMillis Time a session is kept after it was last used
+	 * @param maxSessions   Largest number of sessions kept
+	 */
+	SessionStore(long timeoutMillis, int maxSessions) {
+		if (timeoutMillis < 1 || maxSessions < 1) {
+			throw new IllegalArgumentException("The timeout and largest number of sessions must be at least 1");
+		}
+		this.timeoutMillis = timeoutMillis;
+		touchSlackMillis = Math.max(1, timeoutMillis / TOUCHSLACKFRACTION);
+		sessions = CacheBuilder.newBuilder().expireAfterAccess(timeoutMillis, TimeUnit.MILLISECONDS)
+				.maximumSize(maxSessions).concurrencyLevel(Runtime.getRuntime().availableProcessors()).build();
+	}
+
+	/**
+	 * Adds a session, replacing any session with the same token hash
+	 * 
+	 * @param session Session being added
+	 */
+	void put(Session session) {
+		sessions.put(session.getTokenHash(), session);
+		changed = true;
+	}
+
+	/**
+	 * Finds a session and marks it as used
+	 * 
+	 * @param tokenHash Hash of the session's token
+	 * @param now       Current time in milliseconds since the epoch
+	 * @return Session, or null if there is none or it has timed out
+	 */
+	Session get(String tokenHash, long now) {
+		Session session = sessions.getIfPresent(tokenHash);
+		if (session == null) {
+			return null;
+		}
+		// The cache times sessions from when they were added to it, which for a
+		// loaded session is later than when it was last used
+		if (now - session.getLastUsed() > timeoutMillis) {
+			sessions.invalidate(tokenHash);
+			changed = true;
+			return null;
+		}
+		// Sessions are only saved again once a use moves their time out by a
+		// meaningful part of it, so busy sessions do not cause a save each time
+		if (session.touch(now, touchSlackMillis)) {
+			changed = true;
+		}
+		return session;
+	}
+
+	/**
+	 * Ends a session
+	 * 
+	 * @param tokenHash Hash of the session's token
+	 * @return If there was a session to end
+	 */
+	boolean remove(String tokenHash) {
+		boolean removed = sessions.asMap().remove(tokenHash) != null;
+		if (removed) {
+			changed = true;
+		}
+		return removed;
+	}
+
+	/**
+	 * Ends every session of a user
+	 * 
+	 * @param username Username of the user
+	 * @return Number of sessions ended
+	 */
+	int removeUser(String username) {
+		int removed = 0;
+		Iterator<Session> iterator = sessions.asMap().values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getUser().getUsername().equals(username)) {
+				iterator.remove();
+				removed++;
+			}
+		}
+		if (removed > 0) {
+			changed = true;
+		}
+		return removed;
+	}
+
+	/**
+	 * Returns every session that has not timed out
+	 * 
+	 * @param now Current time in milliseconds since the epoch
+	 * @return Copy of the sessions
+	 */
+	List<Session> snapshot(long now) {
+		sessions.cleanUp();
+		List<Session> out = new ArrayList<Session>();
+		for (Session session : sessions.asMap().values()) {
+			if (now - session.getLastUsed() <= timeoutMillis) {
+				out.add(session);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Returns if sessions were added, used, or ended since the last call, and
+	 * starts tracking again
+	 * 
+	 * @return If the store changed
+	 */
+	boolean takeChanged() {
+		boolean out = changed;
+		changed = false;
+		return out;
+	}
+
+	/**
+	 * Marks the store as changed so the next save is not skipped
+	 */
+	void markChanged() {
+		changed = true;
+	}
+
+	/**
+	 * Returns the number of sessions, including ones that have timed out but are
+	 * not cleaned up yet
+	 * 
+	 * @return Number of sessions
+	 */
+	long size() {
+		return sessions.size();
+	}
+
+	/**
+	 * Returns the time a session is kept after it was last used
+	 * 
+	 * @return Timeout in milliseconds
+	 */
+	long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+}
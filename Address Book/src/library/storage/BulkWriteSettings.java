@@ -0,0 +1,71 @@
+package library.storage;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Settings for bulk edits and deletes. They are read from
+ *         bulk-write-settings.json, and any setting missing from the file keeps
+ *         its default
+ */
+public class BulkWriteSettings {
+	private int batchSize = 1000;
+	private String writeConcern = "ACKNOWLEDGED";
+	private long timeoutMillis = 0;
+
+	/**
+	 * Returns how many writes are sent to the database at a time
+	 * 
+	 * @return Writes per batch
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets how many writes are sent to the database at a time
+	 * 
+	 * @param batchSize Writes per batch
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns how many servers must have a write before it counts as done
+	 * 
+	 * @return Name of a MongoDB write concern, such as ACKNOWLEDGED, W2,
+	 *         MAJORITY, JOURNALED, or UNACKNOWLEDGED
+	 */
+	public String getWriteConcern() {
+		return writeConcern;
+	}
+
+	/**
+	 * Sets how many servers must have a write before it counts as done
+	 * 
+	 * @param writeConcern Name of a MongoDB write concern, such as ACKNOWLEDGED,
+	 *                     W2, MAJORITY, JOURNALED, or UNACKNOWLEDGED
+	 */
+	public void setWriteConcern(String writeConcern) {
+		this.writeConcern = writeConcern;
+	}
+
+	/**
+	 * Returns how long to wait for the write concern to be met
+	 * 
+	 * @return Milliseconds, 0 to wait as long as it takes
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * Sets how long to wait for the write concern to be met
+	 * 
+	 * @param timeoutMillis Milliseconds, 0 to wait as long as it takes
+	 */
+	public void setTimeoutMillis(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+}
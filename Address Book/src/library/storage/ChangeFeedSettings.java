@@ -0,0 +1,34 @@
+package library.storage;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Settings for the feed of changes made to the database. They are read
+ *         from change-feed-settings.json, and any setting missing from the file
+ *         keeps its default
+ */
+public class ChangeFeedSettings {
+	private boolean tailChangeStreams = false;
+
+	/**
+	 * Returns if the feed follows MongoDB change streams, which also carry the
+	 * changes made by other programs. Only replica sets and sharded clusters
+	 * have change streams, so it is ignored for a single server
+	 * 
+	 * @return If change streams are followed
+	 */
+	public boolean isTailChangeStreams() {
+		return tailChangeStreams;
+	}
+
+	/**
+	 * Sets if the feed follows MongoDB change streams, which also carry the
+	 * changes made by other programs
+	 * 
+	 * @param tailChangeStreams If change streams are followed
+	 */
+	public void setTailChangeStreams(boolean tailChangeStreams) {
+		this.tailChangeStreams = tailChangeStreams;
+	}
+}
@@ -0,0 +1,126 @@
+package library.storage;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Settings for the pool of connections kept open to a MongoDB server.
+ *         They are read from connection-settings.json next to the connection
+ *         string, and any setting missing from the file keeps its default
+ */
+public class ConnectionSettings {
+	private int minPoolSize = 0;
+	private int maxPoolSize = 20;
+	private int maxWaitMillis = 10000;
+	private int maxIdleMillis = 300000;
+	private int serverSelectionTimeoutMillis = 10000;
+	private int pingTimeoutMillis = 5000;
+
+	/**
+	 * Returns the number of connections kept open even when they are idle
+	 * 
+	 * @return Smallest pool size
+	 */
+	public int getMinPoolSize() {
+		return minPoolSize;
+	}
+
+	/**
+	 * Sets the number of connections kept open even when they are idle
+	 * 
+	 * @param minPoolSize Smallest pool size
+	 */
+	public void setMinPoolSize(int minPoolSize) {
+		this.minPoolSize = minPoolSize;
+	}
+
+	/**
+	 * Returns the largest number of connections open to a server at once
+	 * 
+	 * @return Largest pool size
+	 */
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	/**
+	 * Sets the largest number of connections open to a server at once
+	 * 
+	 * @param maxPoolSize Largest pool size
+	 */
+	public void setMaxPoolSize(int maxPoolSize) {
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	/**
+	 * Returns how long a request waits for a free connection before it fails
+	 * 
+	 * @return Milliseconds to wait
+	 */
+	public int getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	/**
+	 * Sets how long a request waits for a free connection before it fails
+	 * 
+	 * @param maxWaitMillis Milliseconds to wait
+	 */
+	public void setMaxWaitMillis(int maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * Returns how long a connection can sit idle before it is closed
+	 * 
+	 * @return Milliseconds a connection can be idle, 0 for no limit
+	 */
+	public int getMaxIdleMillis() {
+		return maxIdleMillis;
+	}
+
+	/**
+	 * Sets how long a connection can sit idle before it is closed
+	 * 
+	 * @param maxIdleMillis Milliseconds a connection can be idle, 0 for no limit
+	 */
+	public void setMaxIdleMillis(int maxIdleMillis) {
+		this.maxIdleMillis = maxIdleMillis;
+	}
+
+	/**
+	 * Returns how long a request waits to find a server that can serve it
+	 * 
+	 * @return Milliseconds to wait
+	 */
+	public int getServerSelectionTimeoutMillis() {
+		return serverSelectionTimeoutMillis;
+	}
+
+	/**
+	 * Sets how long a request waits to find a server that can serve it
+	 * 
+	 * @param serverSelectionTimeoutMillis Milliseconds to wait
+	 */
+	public void setServerSelectionTimeoutMillis(int serverSelectionTimeoutMillis) {
+		this.serverSelectionTimeoutMillis = serverSelectionTimeoutMillis;
+	}
+
+	/**
+	 * Returns how long a health check waits for the server to answer a ping
+	 * 
+	 * @return Milliseconds to wait
+	 */
+	public int getPingTimeoutMillis() {
+		return pingTimeoutMillis;
+	}
+
+	/**
+	 * Sets how long a health check waits for the server to answer a ping
+	 * 
+	 * @param pingTimeoutMillis Milliseconds to wait
+	 */
+	public void setPingTimeoutMillis(int pingTimeoutMillis) {
+		this.pingTimeoutMillis = pingTimeoutMillis;
+	}
+}
@@ -4,6 +4,10 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -33,6 +37,23 @@ class FileService {
 		return new File(dir).exists();
 	}
 
+	/**
+	 * Moves a file over another one in a single step where the file system allows
+	 * it
+	 * 
+	 * @param source path to the file being moved
+	 * @param target path to the file being replaced
+	 * @throws IOException Thrown when the file can not be moved
+	 */
+	static void replaceFile(String source, String target) throws IOException {
+		try {
+			Files.move(Paths.get(source), Paths.get(target), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(Paths.get(source), Paths.get(target), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
 	/**
 	 * Saves an object to a JSON file
 	 * 
@@ -0,0 +1,50 @@
+package library.storage;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Settings for the database metrics. They are read from
+ *         metrics-settings.json, and any setting missing from the file keeps its
+ *         default
+ */
+public class MetricsSettings {
+	private boolean jmxEnabled = true;
+	private int reportIntervalSeconds = 0;
+
+	/**
+	 * Returns if the metrics can be read through JMX
+	 * 
+	 * @return If the metrics are registered with JMX
+	 */
+	public boolean isJmxEnabled() {
+		return jmxEnabled;
+	}
+
+	/**
+	 * Sets if the metrics can be read through JMX
+	 * 
+	 * @param jmxEnabled If the metrics are registered with JMX
+	 */
+	public void setJmxEnabled(boolean jmxEnabled) {
+		this.jmxEnabled = jmxEnabled;
+	}
+
+	/**
+	 * Returns how often the metrics are written to the log
+	 * 
+	 * @return Seconds between reports, 0 if they are not written
+	 */
+	public int getReportIntervalSeconds() {
+		return reportIntervalSeconds;
+	}
+
+	/**
+	 * Sets how often the metrics are written to the log
+	 * 
+	 * @param reportIntervalSeconds Seconds between reports, 0 to not write them
+	 */
+	public void setReportIntervalSeconds(int reportIntervalSeconds) {
+		this.reportIntervalSeconds = reportIntervalSeconds;
+	}
+}
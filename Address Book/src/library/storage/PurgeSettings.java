@@ -0,0 +1,108 @@
+package library.storage;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Settings for the background job that archives and purges deleted
+ *         addresses. They are read from purge-settings.json, and any setting
+ *         missing from the file keeps its default
+ */
+public class PurgeSettings {
+	private boolean enabled = true;
+	private int retentionDays = 30;
+	private int intervalMinutes = 60;
+	private int batchSize = 500;
+	private int documentsPerSecond = 1000;
+
+	/**
+	 * Returns if the purge job runs
+	 * 
+	 * @return If purging is turned on
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Sets if the purge job runs
+	 * 
+	 * @param enabled If purging is turned on
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Returns how long deleted documents are kept before they are purged
+	 * 
+	 * @return Days a deleted document is kept
+	 */
+	public int getRetentionDays() {
+		return retentionDays;
+	}
+
+	/**
+	 * Sets how long deleted documents are kept before they are purged
+	 * 
+	 * @param retentionDays Days a deleted document is kept
+	 */
+	public void setRetentionDays(int retentionDays) {
+		this.retentionDays = retentionDays;
+	}
+
+	/**
+	 * Returns how long the job waits between runs
+	 * 
+	 * @return Minutes between runs
+	 */
+	public int getIntervalMinutes() {
+		return intervalMinutes;
+	}
+
+	/**
+	 * Sets how long the job waits between runs
+	 * 
+	 * @param intervalMinutes Minutes between runs
+	 */
+	public void setIntervalMinutes(int intervalMinutes) {
+		this.intervalMinutes = intervalMinutes;
+	}
+
+	/**
+	 * Returns how many documents are archived and purged together
+	 * 
+	 * @return Documents per batch
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets how many documents are archived and purged together
+	 * 
+	 * @param batchSize Documents per batch
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns the most documents purged each second, which keeps the job from
+	 * slowing down everything else using the database
+	 * 
+	 * @return Documents purged per second
+	 */
+	public int getDocumentsPerSecond() {
+		return documentsPerSecond;
+	}
+
+	/**
+	 * Sets the most documents purged each second
+	 * 
+	 * @param documentsPerSecond Documents purged per second
+	 */
+	public void setDocumentsPerSecond(int documentsPerSecond) {
+		this.documentsPerSecond = documentsPerSecond;
+	}
+}
@@ -0,0 +1,152 @@
+package library.storage;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         A session as it is saved in long-term storage. Only a hash of the
+ *         token is saved, so the file can not be used to sign in
+ */
+public class SessionRecord {
+	private String tokenHash;
+	private String username;
+	private String firstName;
+	private String lastName;
+	private String email;
+	private long lastUsed;
+
+	/**
+	 * Constructor used when a record is read from a file
+	 */
+	public SessionRecord() {
+	}
+
+	/**
+	 * Constructor that sets up every attribute of the record
+	 * 
+	 * @param tokenHash Hash of the session's token
+	 * @param username  Username of the signed in user
+	 * @param firstName First name of the user
+	 * @param lastName  Last name of the user
+	 * @param email     Email of the user
+	 * @param lastUsed  Time the session was last used in milliseconds since the
+	 *                  epoch
+	 */
+	public SessionRecord(String tokenHash, String username, String firstName, String lastName, String email,
+			long lastUsed) {
+		this.tokenHash = tokenHash;
+		this.username = username;
+		this.firstName = firstName;
+		this.lastName = lastName;
+		this.email = email;
+		this.lastUsed = lastUsed;
+	}
+
+	/**
+	 * Returns the hash of the session's token
+	 * 
+	 * @return Token hash
+	 */
+	public String getTokenHash() {
+		return tokenHash;
+	}
+
+	/**
+	 * Sets the hash of the session's token
+	 * 
+	 * @param tokenHash Token hash
+	 */
+	public void setTokenHash(String tokenHash) {
+		this.tokenHash = tokenHash;
+	}
+
+	/**
+	 * Returns username
+	 * 
+	 * @return Username
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * Sets username
+	 * 
+	 * @param username Username
+	 */
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	/**
+	 * Returns first name
+	 * 
+	 * @return First name
+	 */
+	public String getFirstName() {
+		return firstName;
+	}
+
+	/**
+	 * Sets first name
+	 * 
+	 * @param firstName First name
+	 */
+	public void setFirstName(String firstName) {
+		this.firstName = firstName;
+	}
+
+	/**
+	 * Returns last name
+	 * 
+	 * @return Last name
+	 */
+	public String getLastName() {
+		return lastName;
+	}
+
+	/**
+	 * Sets last name
+	 * 
+	 * @param lastName Last name
+	 */
+	public void setLastName(String lastName) {
+		this.lastName = lastName;
+	}
+
+	/**
+	 * Returns email
+	 * 
+	 * @return Email
+	 */
+	public String getEmail() {
+		return email;
+	}
+
+	/**
+	 * Sets email
+	 * 
+	 * @param email Email
+	 */
+	public void setEmail(String email) {
+		this.email = email;
+	}
+
+	/**
+	 * Returns the time the session was last used
+	 * 
+	 * @return Milliseconds since the epoch
+	 */
+	public long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * Sets the time the session was last used
+	 * 
+	 * @param lastUsed Milliseconds since the epoch
+	 */
+	public void setLastUsed(long lastUsed) {
+		this.lastUsed = lastUsed;
+	}
+}
@@ -0,0 +1,90 @@
+package library.storage;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Settings for the sessions handed out after a login. They are read from
+ *         session-settings.json, and any setting missing from the file keeps its
+ *         default
+ */
+public class SessionSettings {
+	private int timeoutMinutes = 30;
+	private int maxSessions = 100000;
+	private boolean persistent = false;
+	private int saveIntervalSeconds = 60;
+
+	/**
+	 * Returns how long a session lasts without being used
+	 * 
+	 * @return Minutes a session is kept after it was last used
+	 */
+	public int getTimeoutMinutes() {
+		return timeoutMinutes;
+	}
+
+	/**
+	 * Sets how long a session lasts without being used
+	 * 
+	 * @param timeoutMinutes Minutes a session is kept after it was last used
+	 */
+	public void setTimeoutMinutes(int timeoutMinutes) {
+		this.timeoutMinutes = timeoutMinutes;
+	}
+
+	/**
+	 * Returns the most sessions kept at once. The sessions used longest ago are
+	 * ended first when there are more
+	 * 
+	 * @return Largest number of sessions
+	 */
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	/**
+	 * Sets the most sessions kept at once
+	 * 
+	 * @param maxSessions Largest number of sessions
+	 */
+	public void setMaxSessions(int maxSessions) {
+		this.maxSessions = maxSessions;
+	}
+
+	/**
+	 * Returns if sessions are saved to long-term storage so they last through a
+	 * restart
+	 * 
+	 * @return If sessions are saved
+	 */
+	public boolean isPersistent() {
+		return persistent;
+	}
+
+	/**
+	 * Sets if sessions are saved to long-term storage
+	 * 
+	 * @param persistent If sessions are saved
+	 */
+	public void setPersistent(boolean persistent) {
+		this.persistent = persistent;
+	}
+
+	/**
+	 * Returns how often sessions are saved when they are persistent
+	 * 
+	 * @return Seconds between saves
+	 */
+	public int getSaveIntervalSeconds() {
+		return saveIntervalSeconds;
+	}
+
+	/**
+	 * Sets how often sessions are saved when they are persistent
+	 * 
+	 * @param saveIntervalSeconds Seconds between saves
+	 */
+	public void setSaveIntervalSeconds(int saveIntervalSeconds) {
+		this.saveIntervalSeconds = saveIntervalSeconds;
+	}
+}
@@ -1,5 +1,7 @@
 package library.storage;
 
+import java.util.ArrayList;
+import java.util.List;
 import com.fasterxml.jackson.core.type.TypeReference;
 
 /**
@@ -7,12 +9,30 @@ import com.fasterxml.jackson.core.type.TypeReference;
  * @author Logan Miller
  * 
  *         Manages reading and writing data to and from long term storage
- *
+ * 
  */
 public class StorageManager {
 	// Default location for connection string files
 	private static final String parentFolder = System.getProperty("user.home") + "/Documents/CFM-Address-Book/";
 	private static final String connectionStringFile = parentFolder + "database-credentials.json";
+	private static final String connectionSettingsFile = parentFolder + "connection-settings.json";
+	private static final String purgeSettingsFile = parentFolder + "purge-settings.json";
+	private static final String sessionSettingsFile = parentFolder + "session-settings.json";
+	private static final String metricsSettingsFile = parentFolder + "metrics-settings.json";
+	private static final String bulkWriteSettingsFile = parentFolder + "bulk-write-settings.json";
+	private static final String writeBehindSettingsFile = parentFolder + "write-behind-settings.json";
+	private static final String changeFeedSettingsFile = parentFolder + "change-feed-settings.json";
+	private static final String syncSettingsFile = parentFolder + "sync-settings.json";
+	// Sessions that are kept through a restart
+	private static final String sessionsFile = parentFolder + "sessions.json";
+	// Default location for data kept on the local machine
+	private static final String dataFolder = parentFolder + "data/";
+	// Location of deleted documents that have been purged from the database
+	private static final String archiveFolder = parentFolder + "archive/";
+	// Location of writes that have not reached the database yet
+	private static final String journalFolder = parentFolder + "journal/";
+	// Location of the copies of address books kept for working offline
+	private static final String replicaFolder = parentFolder + "replica/";
 
 	/**
 	 * Grabs the database connection string from long-term storage
@@ -49,4 +69,285 @@ public class StorageManager {
 	public static boolean connectionStringExists() {
 		return FileService.fileExists(connectionStringFile);
 	}
+
+	/**
+	 * Grabs the connection pool settings from long-term storage
+	 * 
+	 * @return Connection settings, or the defaults if they have not been saved
+	 * @throws Exception Thrown if the file can not be read
+	 */
+	public static ConnectionSettings getConnectionSettings() throws Exception {
+		if (FileService.fileExists(connectionSettingsFile)) {
+			return FileService.loadFromFile(connectionSettingsFile, new TypeReference<ConnectionSettings>() {
+			});
+		} else {
+			return new ConnectionSettings();
+		}
+	}
+
+	/**
+	 * Writes the connection pool settings to long-term storage
+	 * 
+	 * @param settings Connection settings
+	 * @throws Exception Thrown if there is an error writing to the file
+	 */
+	public static void setConnectionSettings(ConnectionSettings settings) throws Exception {
+		FileService.makeFolder(parentFolder);
+		FileService.saveToFile(connectionSettingsFile, settings);
+	}
+
+	/**
+	 * Grabs the purge settings from long-term storage
+	 * 
+	 * @return Purge settings, or the defaults if they have not been saved
+	 * @throws Exception Thrown if the file can not be read
+	 */
+	public static PurgeSettings getPurgeSettings() throws Exception {
+		if (FileService.fileExists(purgeSettingsFile)) {
+			return FileService.loadFromFile(purgeSettingsFile, new TypeReference<PurgeSettings>() {
+			});
+		} else {
+			return new PurgeSettings();
+		}
+	}
+
+	/**
+	 * Writes the purge settings to long-term storage
+	 * 
+	 * @param settings Purge settings
+	 * @throws Exception Thrown if there is an error writing to the file
+	 */
+	public static void setPurgeSettings(PurgeSettings settings) throws Exception {
+		FileService.makeFolder(parentFolder);
+		FileService.saveToFile(purgeSettingsFile, settings);
+	}
+
+	/**
+	 * Grabs the metrics settings from long-term storage
+	 * 
+	 * @return Metrics settings, or the defaults if they have not been saved
+	 * @throws Exception Thrown if the file can not be read
+	 */
+	public static MetricsSettings getMetricsSettings() throws Exception {
+		if (FileService.fileExists(metricsSettingsFile)) {
+			return FileService.loadFromFile(metricsSettingsFile, new TypeReference<MetricsSettings>() {
+			});
+		} else {
+			return new MetricsSettings();
+		}
+	}
+
+	/**
+	 * Writes the metrics settings to long-term storage
+	 * 
+	 * @param settings Metrics settings
+	 * @throws Exception Thrown if there is an error writing to the file
+	 */
+	public static void setMetricsSettings(MetricsSettings settings) throws Exception {
+		FileService.makeFolder(parentFolder);
+		FileService.saveToFile(metricsSettingsFile, settings);
+	}
+
+	/**
+	 * Grabs the bulk write settings from long-term storage
+	 * 
+	 * @return Bulk write settings, or the defaults if they have not been saved
+	 * @throws Exception Thrown if the file can not be read
+	 */
+	public static BulkWriteSettings getBulkWriteSettings() throws Exception {
+		if (FileService.fileExists(bulkWriteSettingsFile)) {
+			return FileService.loadFromFile(bulkWriteSettingsFile, new TypeReference<BulkWriteSettings>() {
+			});
+		} else {
+			return new BulkWriteSettings();
+		}
+	}
+
+	/**
+	 * Writes the bulk write settings to long-term storage
+	 * 
+	 * @param settings Bulk write settings
+	 * @throws Exception Thrown if there is an error writing to the file
+	 */
+	public static void setBulkWriteSettings(BulkWriteSettings settings) throws Exception {
+		FileService.makeFolder(parentFolder);
+		FileService.saveToFile(bulkWriteSettingsFile, settings);
+	}
+
+	/**
+	 * Grabs the write-behind settings from long-term storage
+	 * 
+	 * @return Write-behind settings, or the defaults if they have not been saved
+	 * @throws Exception Thrown if the file can not be read
+	 */
+	public static WriteBehindSettings getWriteBehindSettings() throws Exception {
+		if (FileService.fileExists(writeBehindSettingsFile)) {
+			return FileService.loadFromFile(writeBehindSettingsFile, new TypeReference<WriteBehindSettings>() {
+			});
+		} else {
+			return new WriteBehindSettings();
+		}
+	}
+
+	/**
+	 * Writes the write-behind settings to long-term storage
+	 * 
+	 * @param settings Write-behind settings
+	 * @throws Exception Thrown if there is an error writing to the file
+	 */
+	public static void setWriteBehindSettings(WriteBehindSettings settings) throws Exception {
+		FileService.makeFolder(parentFolder);
+		FileService.saveToFile(writeBehindSettingsFile, settings);
+	}
+
+	/**
+	 * Grabs the change feed settings from long-term storage
+	 * 
+	 * @return Change feed settings, or the defaults if they have not been saved
+	 * @throws Exception Thrown if the file can not be read
+	 */
+	public static ChangeFeedSettings getChangeFeedSettings() throws Exception {
+		if (FileService.fileExists(changeFeedSettingsFile)) {
+			return FileService.loadFromFile(changeFeedSettingsFile, new TypeReference<ChangeFeedSettings>() {
+			});
+		} else {
+			return new ChangeFeedSettings();
+		}
+	}
+
+	/**
+	 * Writes the change feed settings to long-term storage
+	 * 
+	 * @param settings Change feed settings
+	 * @throws Exception Thrown if there is an error writing to the file
+	 */
+	public static void setChangeFeedSettings(ChangeFeedSettings settings) throws Exception {
+		FileService.makeFolder(parentFolder);
+		FileService.saveToFile(changeFeedSettingsFile, settings);
+	}
+
+	/**
+	 * Grabs the local replica settings from long-term storage
+	 * 
+	 * @return Local replica settings, or the defaults if they have not been saved
+	 * @throws Exception Thrown if the file can not be read
+	 */
+	public static SyncSettings getSyncSettings() throws Exception {
+		if (FileService.fileExists(syncSettingsFile)) {
+			return FileService.loadFromFile(syncSettingsFile, new TypeReference<SyncSettings>() {
+			});
+		} else {
+			return new SyncSettings();
+		}
+	}
+
+	/**
+	 * Writes the local replica settings to long-term storage
+	 * 
+	 * @param settings Local replica settings
+	 * @throws Exception Thrown if there is an error writing to the file
+	 */
+	public static void setSyncSettings(SyncSettings settings) throws Exception {
+		FileService.makeFolder(parentFolder);
+		FileService.saveToFile(syncSettingsFile, settings);
+	}
+
+	/**
+	 * Grabs the session settings from long-term storage
+	 * 
+	 * @return Session settings, or the defaults if they have not been saved
+	 * @throws Exception Thrown if the file can not be read
+	 */
+	public static SessionSettings getSessionSettings() throws Exception {
+		if (FileService.fileExists(sessionSettingsFile)) {
+			return FileService.loadFromFile(sessionSettingsFile, new TypeReference<SessionSettings>() {
+			});
+		} else {
+			return new SessionSettings();
+		}
+	}
+
+	/**
+	 * Writes the session settings to long-term storage
+	 * 
+	 * @param settings Session settings
+	 * @throws Exception Thrown if there is an error writing to the file
+	 */
+	public static void setSessionSettings(SessionSettings settings) throws Exception {
+		FileService.makeFolder(parentFolder);
+		FileService.saveToFile(sessionSettingsFile, settings);
+	}
+
+	/**
+	 * Grabs the saved sessions from long-term storage
+	 * 
+	 * @return Saved sessions, or an empty list if none have been saved
+	 * @throws Exception Thrown if the file can not be read
+	 */
+	public static List<SessionRecord> getSessions() throws Exception {
+		if (FileService.fileExists(sessionsFile)) {
+			return FileService.loadFromFile(sessionsFile, new TypeReference<List<SessionRecord>>() {
+			});
+		} else {
+			return new ArrayList<SessionRecord>();
+		}
+	}
+
+	/**
+	 * Writes the sessions to long-term storage. They are written to a new file
+	 * that then replaces the old one, so a crash while saving never leaves half a
+	 * file behind
+	 * 
+	 * @param sessions Sessions being saved
+	 * @throws Exception Thrown if there is an error writing to the file
+	 */
+	public static void setSessions(List<SessionRecord> sessions) throws Exception {
+		FileService.makeFolder(parentFolder);
+		FileService.saveToFile(sessionsFile + ".tmp", sessions);
+		FileService.replaceFile(sessionsFile + ".tmp", sessionsFile);
+	}
+
+	/**
+	 * Returns the folder that purged documents are archived in, creating it if it
+	 * does not exist yet
+	 * 
+	 * @return Path to the archive folder
+	 */
+	public static String getArchiveFolder() {
+		FileService.makeFolder(archiveFolder);
+		return archiveFolder;
+	}
+
+	/**
+	 * Returns the folder that local data is stored in, creating it if it does not
+	 * exist yet
+	 * 
+	 * @return Path to the data folder
+	 */
+	public static String getDataFolder() {
+		FileService.makeFolder(dataFolder);
+		return dataFolder;
+	}
+
+	/**
+	 * Returns the folder that queued writes are journaled in, creating it if it
+	 * does not exist yet
+	 * 
+	 * @return Path to the journal folder
+	 */
+	public static String getJournalFolder() {
+		FileService.makeFolder(journalFolder);
+		return journalFolder;
+	}
+
+	/**
+	 * Returns the folder that local replicas are kept in, creating it if it does
+	 * not exist yet
+	 * 
+	 * @return Path to the replica folder
+	 */
+	public static String getReplicaFolder() {
+		FileService.makeFolder(replicaFolder);
+		return replicaFolder;
+	}
 }
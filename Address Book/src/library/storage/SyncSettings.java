@@ -0,0 +1,75 @@
+package library.storage;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Settings for the local replica, a copy of the signed-in user's
+ *         address book kept on this machine so it can be read and changed
+ *         without reaching the database. They are read from
+ *         sync-settings.json, and any setting missing from the file keeps its
+ *         default
+ */
+public class SyncSettings {
+	private boolean enabled = false;
+	private long syncMillis = 5000;
+	private int batchSize = 500;
+
+	/**
+	 * Returns if the replica is kept while the database can be reached. It is
+	 * always used when the application has to start without the database
+	 * 
+	 * @return If the replica is on
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Sets if the replica is kept while the database can be reached
+	 * 
+	 * @param enabled If the replica is on
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Returns how often the replica sends its changes to the database and reads
+	 * the changes made by others, which is also how often a lost database is
+	 * checked for
+	 * 
+	 * @return Milliseconds between syncs
+	 */
+	public long getSyncMillis() {
+		return syncMillis;
+	}
+
+	/**
+	 * Sets how often the replica sends its changes to the database and reads the
+	 * changes made by others
+	 * 
+	 * @param syncMillis Milliseconds between syncs
+	 */
+	public void setSyncMillis(long syncMillis) {
+		this.syncMillis = syncMillis;
+	}
+
+	/**
+	 * Returns how many changes are sent or copied at once
+	 * 
+	 * @return Changes per batch
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets how many changes are sent or copied at once
+	 * 
+	 * @param batchSize Changes per batch
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+}
@@ -0,0 +1,95 @@
+package library.storage;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Settings for write-behind, where new addresses are put in a queue and
+ *         written to the database in batches in the background. They are read
+ *         from write-behind-settings.json, and any setting missing from the
+ *         file keeps its default
+ */
+public class WriteBehindSettings {
+	private boolean enabled = false;
+	private int queueSize = 10000;
+	private int batchSize = 500;
+	private long flushMillis = 100;
+
+	/**
+	 * Returns if writes are queued instead of being sent right away
+	 * 
+	 * @return If write-behind is on
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Sets if writes are queued instead of being sent right away
+	 * 
+	 * @param enabled If write-behind is on
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Returns how many writes can wait in the queue. Callers wait for room once
+	 * it is full
+	 * 
+	 * @return Largest number of queued writes
+	 */
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * Sets how many writes can wait in the queue. Callers wait for room once it
+	 * is full
+	 * 
+	 * @param queueSize Largest number of queued writes
+	 */
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * Returns how many queued writes are sent at once. A batch is sent as soon as
+	 * this many are waiting
+	 * 
+	 * @return Writes per batch
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets how many queued writes are sent at once. A batch is sent as soon as
+	 * this many are waiting
+	 * 
+	 * @param batchSize Writes per batch
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns the longest a write waits in the queue before it is sent, even if
+	 * the batch is not full
+	 * 
+	 * @return Milliseconds
+	 */
+	public long getFlushMillis() {
+		return flushMillis;
+	}
+
+	/**
+	 * Sets the longest a write waits in the queue before it is sent, even if the
+	 * batch is not full
+	 * 
+	 * @param flushMillis Milliseconds
+	 */
+	public void setFlushMillis(long flushMillis) {
+		this.flushMillis = flushMillis;
+	}
+}
@@ -0,0 +1,293 @@
+package library.transfer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import org.bson.Document;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+
+import library.database.Address;
+import library.database.Cursor;
+import library.database.DatabaseManager;
+import library.database.User;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Writes address books to CSV, NDJSON, or JSON files.
+ * 
+ *         Addresses are written straight from a database cursor through a
+ *         buffered file channel as they are read, so memory use does not grow
+ *         with the size of the address book. Files can be gzipped, and the
+ *         address books of many users can be exported in parallel
+ */
+public class AddressExporter {
+	// Fields written for every address
+	private static final String[] FIELDS = { "firstName", "lastName", "street", "city", "state", "zip",
+			"dateCreated" };
+	// Size of the output buffer in bytes
+	private static final int BUFFERSIZE = 1 << 16;
+
+	private final JsonFactory jsonFactory = new JsonFactory();
+	private boolean gzip;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Sets if exported files are gzipped. Gzipped files get .gz added to their
+	 * name when exporting many users
+	 * 
+	 * @param gzip If files are gzipped
+	 */
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	/**
+	 * Sets how many address books are exported at once when exporting many users
+	 * 
+	 * @param threads Number of export threads
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("There must be at least 1 thread");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Exports a single user's address book
+	 * 
+	 * @param username User whose addresses are exported
+	 * @param filename File the addresses are written to. It is replaced if it
+	 *                 exists
+	 * @param format   Format of the file
+	 * @return Number of addresses written
+	 * @throws IOException Thrown if the file can not be written
+	 */
+	public long exportUser(String username, String filename, FileFormat format) throws IOException {
+		try (Cursor<Address> addresses = DatabaseManager
+				.openAddressCursor(new Document().append("username", username), Arrays.asList(FIELDS));
+				OutputStream out = openOutput(filename)) {
+			switch (format) {
+				case CSV:
+					return writeCsv(addresses, out);
+				case NDJSON:
+					return writeJson(addresses, out, false);
+				default:
+					return writeJson(addresses, out, true);
+			}
+		}
+	}
+
+	/**
+	 * Exports the address books of many users in parallel, one file per user
+	 * 
+	 * @param usernames Users whose addresses are exported
+	 * @param folder    Folder the files are written to. Each file is named after
+	 *                  its user, see fileName()
+	 * @param format    Format of the files
+	 * @return Number of addresses written for each user
+	 * @throws IOException Thrown if a file can not be written. Every other export
+	 *                     is still finished first
+	 */
+	public Map<String, Long> exportUsers(List<String> usernames, String folder, FileFormat format)
+			throws IOException {
+		new File(folder).mkdirs();
+		AtomicInteger threadNumber = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "address-export-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		Map<String, Future<Long>> exports = new LinkedHashMap<String, Future<Long>>();
+		Set<String> taken = new HashSet<String>();
+		try {
+			for (String username : usernames) {
+				String filename = new File(folder,
+						fileName(username, taken) + format.getExtension() + (gzip ? ".gz" : "")).getPath();
+				exports.put(username, workers.submit(() -> exportUser(username, filename, format)));
+			}
+			Map<String, Long> written = new LinkedHashMap<String, Long>();
+			IOException failure = null;
+			for (Map.Entry<String, Future<Long>> export : exports.entrySet()) {
+				try {
+					written.put(export.getKey(), export.getValue().get());
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = new IOException("Unable to export " + export.getKey(), e.getCause());
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return written;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Export was interrupted", e);
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Exports the address book of every user in parallel, one file per user
+	 * 
+	 * @param folder Folder the files are written to
+	 * @param format Format of the files
+	 * @return Number of addresses written for each user
+	 * @throws IOException Thrown if a file can not be written
+	 */
+	public Map<String, Long> exportAll(String folder, FileFormat format) throws IOException {
+		List<String> usernames = new ArrayList<String>();
+		for (User user : DatabaseManager.findUser(new Document())) {
+			usernames.add(user.getUsername());
+		}
+		return exportUsers(usernames, folder, format);
+	}
+
+	/**
+	 * Opens a file for writing through a buffered channel, gzipping it if needed
+	 * 
+	 * @param filename File being written
+	 * @return Stream the file is written through
+	 * @throws IOException Thrown if the file can not be opened
+	 */
+	private OutputStream openOutput(String filename) throws IOException {
+		FileChannel channel = FileChannel.open(new File(filename).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		OutputStream out = Channels.newOutputStream(channel);
+		if (gzip) {
+			return new GZIPOutputStream(out, BUFFERSIZE);
+		}
+		return new BufferedOutputStream(out, BUFFERSIZE);
+	}
+
+	/**
+	 * Writes addresses as CSV with a header row
+	 * 
+	 * @param addresses Addresses being written
+	 * @param out       Stream being written to
+	 * @return Number of addresses written
+	 * @throws IOException Thrown if the stream can not be written to
+	 */
+	private static long writeCsv(Cursor<Address> addresses, OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFERSIZE);
+		writer.write(String.join(",", FIELDS));
+		writer.write('\n');
+		StringBuilder line = new StringBuilder();
+		long written = 0;
+		while (addresses.hasNext()) {
+			String[] values = values(addresses.next());
+			line.setLength(0);
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					line.append(',');
+				}
+				CsvFormat.appendField(line, values[i]);
+			}
+			line.append('\n');
+			writer.append(line);
+			written++;
+		}
+		writer.flush();
+		return written;
+	}
+
+	/**
+	 * Writes addresses as JSON objects with Jackson's streaming generator
+	 * 
+	 * @param addresses Addresses being written
+	 * @param out       Stream being written to
+	 * @param array     If the objects are wrapped in a single array instead of
+	 *                  written one per line
+	 * @return Number of addresses written
+	 * @throws IOException Thrown if the stream can not be written to
+	 */
+	private long writeJson(Cursor<Address> addresses, OutputStream out, boolean array) throws IOException {
+		JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		if (array) {
+			generator.writeStartArray();
+		} else {
+			generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+		}
+		long written = 0;
+		while (addresses.hasNext()) {
+			String[] values = values(addresses.next());
+			generator.writeStartObject();
+			for (int i = 0; i < FIELDS.length; i++) {
+				generator.writeStringField(FIELDS[i], values[i]);
+			}
+			generator.writeEndObject();
+			written++;
+		}
+		if (array) {
+			generator.writeEndArray();
+		} else if (written > 0) {
+			generator.writeRaw('\n');
+		}
+		generator.close();
+		return written;
+	}
+
+	/**
+	 * Returns the value of each exported field of an address
+	 * 
+	 * @param address Address being exported
+	 * @return Values in the order of FIELDS
+	 */
+	private static String[] values(Address address) {
+		return new String[] { address.getFirstName(), address.getLastName(), address.getStreet(), address.getCity(),
+				address.getState(), address.getZip(), address.getDateCreated() };
+	}
+
+	/**
+	 * Turns a username into something that is safe to use as a file name and is
+	 * not used by another user of the same export. A username that had to be
+	 * changed, or whose name is already taken in any case, gets a short hash of
+	 * the username added, so two users never write to the same file
+	 * 
+	 * @param username Username
+	 * @param taken    Lower case names already given out, which the new name is
+	 *                 added to
+	 * @return File name without an extension
+	 */
+	private static String fileName(String username, Set<String> taken) {
+		String name = username.replaceAll("[^A-Za-z0-9._-]", "_");
+		if (!name.equals(username) || taken.contains(name.toLowerCase(Locale.ROOT))) {
+			name += String.format("-%08x", username.hashCode());
+		}
+		String unique = name;
+		for (int i = 2; !taken.add(unique.toLowerCase(Locale.ROOT)); i++) {
+			unique = name + "-" + i;
+		}
+		return unique;
+	}
+}
@@ -0,0 +1,366 @@
+package library.transfer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import library.database.Address;
+import library.database.DatabaseManager;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Loads addresses from a CSV or NDJSON (one JSON object per line) file
+ *         into a user's address book. Files ending with .gz are decompressed as
+ *         they are read.
+ * 
+ *         The file is read on the calling thread and cut into batches. Batches
+ *         are parsed, validated, and inserted by a pool of worker threads with
+ *         one unordered bulk insert per batch. Only a limited number of batches
+ *         can be in flight at once, so reading waits for the database instead of
+ *         filling up memory.
+ * 
+ *         Every row must have the fields firstName, lastName, street, city,
+ *         state, and zip. CSV files must start with a header naming those
+ *         columns
+ */
+public class AddressImporter {
+	// Fields every row must have
+	static final String[] FIELDS = { "firstName", "lastName", "street", "city", "state", "zip" };
+	// Longest value a field can have
+	private static final int MAXFIELDLENGTH = 256;
+	// Longest CSV record read across several lines, so a quote that is never
+	// closed does not pull the rest of the file into one row
+	private static final int MAXRECORDLENGTH = 1 << 16;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private int batchSize = 1000;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int maxInFlight = 4;
+
+	/**
+	 * Sets how many rows are inserted with each bulk insert
+	 * 
+	 * @param batchSize Rows per batch
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets how many threads parse and insert batches
+	 * 
+	 * @param threads Number of worker threads
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("There must be at least 1 thread");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets how many batches can be waiting to be parsed or inserted at once.
+	 * Reading the file stops until a batch finishes when this many are in flight
+	 * 
+	 * @param maxInFlight Largest number of batches in flight
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("At least 1 batch must be allowed in flight");
+		}
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Imports a file, picking its format from its extension
+	 * 
+	 * @param filename Path to the file
+	 * @param username User the addresses are added for
+	 * @return Counts of the rows read, inserted, and rejected
+	 * @throws IOException Thrown if the file can not be read or a batch can not be
+	 *                     inserted
+	 */
+	public ImportReport importFile(String filename, String username) throws IOException {
+		return importFile(filename, username, FileFormat.fromFileName(filename));
+	}
+
+	/**
+	 * Imports a file
+	 * 
+	 * @param filename Path to the file
+	 * @param username User the addresses are added for
+	 * @param format   Format of the file, either CSV or NDJSON
+	 * @return Counts of the rows read, inserted, and rejected
+	 * @throws IOException Thrown if the file can not be read or a batch can not be
+	 *                     inserted
+	 */
+	public ImportReport importFile(String filename, String username, FileFormat format) throws IOException {
+		if (format == FileFormat.JSON) {
+			throw new IllegalArgumentException("JSON files can not be imported, use NDJSON instead");
+		}
+		ImportReport report = new ImportReport();
+		AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		AtomicInteger threadNumber = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "address-import-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try (BufferedReader reader = openReader(filename)) {
+			long lineNumber = 0;
+			Map<String, Integer> columns = null;
+			if (format == FileFormat.CSV) {
+				String header = reader.readLine();
+				lineNumber++;
+				if (header == null) {
+					return report;
+				}
+				columns = readHeader(header);
+			}
+
+			List<String> lines = new ArrayList<String>(batchSize);
+			List<Long> lineNumbers = new ArrayList<Long>(batchSize);
+			String line;
+			while ((line = reader.readLine()) != null && failure.get() == null) {
+				lineNumber++;
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				long firstLine = lineNumber;
+				if (format == FileFormat.CSV && CsvFormat.isOpen(line)) {
+					line = readRecord(reader, line);
+					lineNumber += line.chars().filter(c -> c == '\n').count();
+				}
+				lines.add(line);
+				lineNumbers.add(firstLine);
+				if (lines.size() == batchSize) {
+					submit(workers, inFlight, failure, new Batch(lines, lineNumbers, columns, username), report);
+					lines = new ArrayList<String>(batchSize);
+					lineNumbers = new ArrayList<Long>(batchSize);
+				}
+			}
+			if (!lines.isEmpty()) {
+				submit(workers, inFlight, failure, new Batch(lines, lineNumbers, columns, username), report);
+			}
+			// Every batch has finished once all of the permits are back
+			inFlight.acquire(maxInFlight);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Import was interrupted");
+		} finally {
+			workers.shutdown();
+			report.finish();
+		}
+		if (failure.get() != null) {
+			throw new IOException("Unable to insert addresses", failure.get());
+		}
+		return report;
+	}
+
+	/**
+	 * Reads the rest of a CSV record whose first line ends inside a quoted field.
+	 * Lines are added until the field is closed, the file ends, or the record
+	 * grows past MAXRECORDLENGTH, leaving a record that fails to parse
+	 * 
+	 * @param reader Reader positioned after the first line
+	 * @param first  First line of the record
+	 * @return Lines of the record joined by line feeds
+	 * @throws IOException Thrown if the file can not be read
+	 */
+	private static String readRecord(BufferedReader reader, String first) throws IOException {
+		StringBuilder record = new StringBuilder(first);
+		String line;
+		while (CsvFormat.isOpen(record) && record.length() < MAXRECORDLENGTH && (line = reader.readLine()) != null) {
+			record.append('\n').append(line);
+		}
+		return record.toString();
+	}
+
+	/**
+	 * Opens a file for reading, decompressing it if it ends with .gz
+	 * 
+	 * @param filename Path to the file
+	 * @return Reader over the file
+	 * @throws IOException Thrown if the file can not be opened
+	 */
+	private static BufferedReader openReader(String filename) throws IOException {
+		InputStream in = Files.newInputStream(Paths.get(filename));
+		if (filename.toLowerCase(Locale.ROOT).endsWith(".gz")) {
+			in = new GZIPInputStream(in, 1 << 16);
+		}
+		return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	/**
+	 * Hands a batch to the workers once there is room for another batch in flight
+	 */
+	private void submit(ExecutorService workers, Semaphore inFlight, AtomicReference<RuntimeException> failure,
+			Batch batch, ImportReport report) throws InterruptedException {
+		inFlight.acquire();
+		workers.execute(() -> {
+			try {
+				importBatch(batch, report);
+			} catch (RuntimeException e) {
+				failure.compareAndSet(null, e);
+			} finally {
+				inFlight.release();
+			}
+		});
+	}
+
+	/**
+	 * Parses every row of a batch and inserts the valid ones
+	 * 
+	 * @param batch  Rows being imported
+	 * @param report Report the rows are counted in
+	 */
+	private void importBatch(Batch batch, ImportReport report) {
+		report.addRead(batch.lines.size());
+		List<Address> addresses = new ArrayList<Address>(batch.lines.size());
+		List<Long> addressLines = new ArrayList<Long>(batch.lines.size());
+		for (int i = 0; i < batch.lines.size(); i++) {
+			try {
+				addresses.add(batch.columns == null ? parseJson(batch.lines.get(i), batch.username)
+						: parseCsv(batch.lines.get(i), batch.columns, batch.username));
+				addressLines.add(batch.lineNumbers.get(i));
+			} catch (IOException | IllegalArgumentException e) {
+				report.reject(batch.lineNumbers.get(i), e.getMessage());
+			}
+		}
+		if (addresses.isEmpty()) {
+			return;
+		}
+		Map<Integer, String> errors = DatabaseManager.insertAddresses(addresses);
+		report.addInserted(addresses.size() - errors.size());
+		for (Map.Entry<Integer, String> error : errors.entrySet()) {
+			report.reject(addressLines.get(error.getKey()), error.getValue());
+		}
+	}
+
+	/**
+	 * Finds the column of each field in a CSV header
+	 * 
+	 * @param header First line of the file
+	 * @return Each field mapped to its column
+	 * @throws IOException Thrown if a field does not have a column
+	 */
+	private static Map<String, Integer> readHeader(String header) throws IOException {
+		List<String> names = CsvFormat.parse(header);
+		Map<String, Integer> columns = new HashMap<String, Integer>();
+		for (String field : FIELDS) {
+			for (int i = 0; i < names.size(); i++) {
+				if (names.get(i).trim().equalsIgnoreCase(field)) {
+					columns.put(field, i);
+				}
+			}
+			if (!columns.containsKey(field)) {
+				throw new IOException("The CSV header is missing the " + field + " column");
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Parses a CSV row
+	 * 
+	 * @param line     Row being parsed
+	 * @param columns  Column of each field
+	 * @param username User the address belongs to
+	 * @return Address in the row
+	 */
+	private static Address parseCsv(String line, Map<String, Integer> columns, String username) {
+		List<String> fields = CsvFormat.parse(line);
+		String[] values = new String[FIELDS.length];
+		for (int i = 0; i < FIELDS.length; i++) {
+			int column = columns.get(FIELDS[i]);
+			values[i] = column < fields.size() ? fields.get(column) : null;
+		}
+		return toAddress(values, username);
+	}
+
+	/**
+	 * Parses an NDJSON row
+	 * 
+	 * @param line     Row being parsed
+	 * @param username User the address belongs to
+	 * @return Address in the row
+	 * @throws IOException Thrown if the row is not valid JSON
+	 */
+	private Address parseJson(String line, String username) throws IOException {
+		JsonNode node = mapper.readTree(line);
+		if (node == null || !node.isObject()) {
+			throw new IllegalArgumentException("Row is not a JSON object");
+		}
+		String[] values = new String[FIELDS.length];
+		for (int i = 0; i < FIELDS.length; i++) {
+			values[i] = node.hasNonNull(FIELDS[i]) ? node.get(FIELDS[i]).asText() : null;
+		}
+		return toAddress(values, username);
+	}
+
+	/**
+	 * Validates the fields of a row and creates its address
+	 * 
+	 * @param values   Value of each field in the order of FIELDS
+	 * @param username User the address belongs to
+	 * @return Address of the row
+	 * @throws IllegalArgumentException Thrown if the row is not a valid address
+	 */
+	private static Address toAddress(String[] values, String username) {
+		for (int i = 0; i < FIELDS.length; i++) {
+			if (values[i] == null) {
+				throw new IllegalArgumentException("Missing " + FIELDS[i]);
+			}
+			values[i] = values[i].trim();
+			if (values[i].length() > MAXFIELDLENGTH) {
+				throw new IllegalArgumentException(FIELDS[i] + " is longer than " + MAXFIELDLENGTH + " characters");
+			}
+		}
+		if (values[0].isEmpty() && values[1].isEmpty()) {
+			throw new IllegalArgumentException("An address needs a first or last name");
+		}
+		return new Address(values[0], values[1], values[2], values[3], values[4], values[5], username);
+	}
+
+	/**
+	 * Rows of the file handed to a worker together
+	 */
+	private static class Batch {
+		final List<String> lines;
+		final List<Long> lineNumbers;
+		final Map<String, Integer> columns;
+		final String username;
+
+		Batch(List<String> lines, List<Long> lineNumbers, Map<String, Integer> columns, String username) {
+			this.lines = lines;
+			this.lineNumbers = lineNumbers;
+			this.columns = columns;
+			this.username = username;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package library.transfer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Reads and writes records of comma separated values. Fields that hold
+ *         a comma, a quote, or a line break are wrapped in quotes, and quotes
+ *         inside them are doubled. A record only spans several lines inside a
+ *         quoted field
+ */
+class CsvFormat {
+	/**
+	 * Splits a record into its fields
+	 * 
+	 * @param line Record being split, with the lines of a multi-line record
+	 *             joined by line feeds
+	 * @return Fields of the record
+	 * @throws IllegalArgumentException Thrown if a quoted field is not closed
+	 */
+	static List<String> parse(String line) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("Quoted field is not closed");
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	/**
+	 * Returns if a record ends inside a quoted field, meaning it continues on the
+	 * next line. Every quote opens or closes a field, including the doubled quotes
+	 * inside one, so a field is open after an odd number of quotes
+	 * 
+	 * @param record Lines of the record read so far
+	 * @return If the record continues on the next line
+	 */
+	static boolean isOpen(CharSequence record) {
+		boolean open = false;
+		for (int i = 0; i < record.length(); i++) {
+			if (record.charAt(i) == '"') {
+				open = !open;
+			}
+		}
+		return open;
+	}
+
+	/**
+	 * Appends a field to a line, quoting it if it needs to be
+	 * 
+	 * @param out   Line being written
+	 * @param field Field being added
+	 * @return The line being written
+	 */
+	static StringBuilder appendField(StringBuilder out, String field) {
+		if (field == null) {
+			return out;
+		}
+		boolean quote = false;
+		for (int i = 0; i < field.length() && !quote; i++) {
+			char c = field.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			return out.append(field);
+		}
+		out.append('"');
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == '"') {
+				out.append('"');
+			}
+			out.append(c);
+		}
+		return out.append('"');
+	}
+}
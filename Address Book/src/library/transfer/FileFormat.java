@@ -0,0 +1,65 @@
+package library.transfer;
+
+import java.util.Locale;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         File formats that address books can be imported from and exported to
+ */
+public enum FileFormat {
+	/**
+	 * Comma separated values with a header row
+	 */
+	CSV(".csv"),
+	/**
+	 * One JSON object per line
+	 */
+	NDJSON(".ndjson"),
+	/**
+	 * A single JSON array of objects. Can only be exported
+	 */
+	JSON(".json");
+
+	private final String extension;
+
+	FileFormat(String extension) {
+		this.extension = extension;
+	}
+
+	/**
+	 * Returns the file extension of the format
+	 * 
+	 * @return Extension including the dot
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Picks the format from a file's extension. A .gz extension after it is
+	 * ignored
+	 * 
+	 * @param filename Name of the file
+	 * @return Format of the file
+	 * @throws IllegalArgumentException Thrown if the extension is not .csv,
+	 *                                  .ndjson, .jsonl, or .json
+	 */
+	public static FileFormat fromFileName(String filename) {
+		String name = filename.toLowerCase(Locale.ROOT);
+		if (name.endsWith(".gz")) {
+			name = name.substring(0, name.length() - 3);
+		}
+		if (name.endsWith(".csv")) {
+			return CSV;
+		}
+		if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+			return NDJSON;
+		}
+		if (name.endsWith(".json")) {
+			return JSON;
+		}
+		throw new IllegalArgumentException("Unknown file type: " + filename);
+	}
+}
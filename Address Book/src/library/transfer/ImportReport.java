@@ -0,0 +1,130 @@
+package library.transfer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Counts the rows an import has read, inserted, and rejected. Rejected
+ *         rows are kept with the reason they were rejected, up to a limit so a
+ *         bad file can not use up all of the memory
+ */
+public class ImportReport {
+	// Largest number of rejected rows kept with their reason
+	private static final int MAXREJECTS = 1000;
+
+	private final AtomicLong read = new AtomicLong();
+	private final AtomicLong inserted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final List<String> rejects = new ArrayList<String>();
+	private final long started = System.nanoTime();
+	private long finished;
+
+	/**
+	 * Counts rows read from the file
+	 * 
+	 * @param rows Number of rows
+	 */
+	void addRead(long rows) {
+		read.addAndGet(rows);
+	}
+
+	/**
+	 * Counts rows inserted into the database
+	 * 
+	 * @param rows Number of rows
+	 */
+	void addInserted(long rows) {
+		inserted.addAndGet(rows);
+	}
+
+	/**
+	 * Records a rejected row
+	 * 
+	 * @param line   Line number of the row in the file
+	 * @param reason Why the row was rejected
+	 */
+	void reject(long line, String reason) {
+		rejected.incrementAndGet();
+		synchronized (rejects) {
+			if (rejects.size() < MAXREJECTS) {
+				rejects.add("Line " + line + ": " + reason);
+			}
+		}
+	}
+
+	/**
+	 * Marks the import as finished
+	 */
+	void finish() {
+		finished = System.nanoTime();
+	}
+
+	/**
+	 * Returns the number of rows read from the file
+	 * 
+	 * @return Rows read
+	 */
+	public long getRead() {
+		return read.get();
+	}
+
+	/**
+	 * Returns the number of rows inserted into the database
+	 * 
+	 * @return Rows inserted
+	 */
+	public long getInserted() {
+		return inserted.get();
+	}
+
+	/**
+	 * Returns the number of rows that were rejected
+	 * 
+	 * @return Rows rejected
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Returns the rejected rows with the reason each was rejected. Only the first
+	 * rejects are kept
+	 * 
+	 * @return Rejected rows
+	 */
+	public List<String> getRejects() {
+		synchronized (rejects) {
+			return new ArrayList<String>(rejects);
+		}
+	}
+
+	/**
+	 * Returns how long the import took
+	 * 
+	 * @return Seconds from the start of the import until it finished (or until
+	 *         now if it is still running)
+	 */
+	public double getSeconds() {
+		return ((finished == 0 ? System.nanoTime() : finished) - started) / 1e9;
+	}
+
+	/**
+	 * Returns how fast rows were read
+	 * 
+	 * @return Rows read per second
+	 */
+	public double getRowsPerSecond() {
+		double seconds = getSeconds();
+		return seconds == 0 ? 0 : read.get() / seconds;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Read %d rows in %.2f seconds (%.0f rows/sec): %d inserted, %d rejected", getRead(),
+				getSeconds(), getRowsPerSecond(), getInserted(), getRejected());
+	}
+}
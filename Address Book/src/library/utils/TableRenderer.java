@@ -0,0 +1,323 @@
+package library.utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 
+ * @author Logan Miller
+ * 
+ *         Draws rows as a text table with a column for each header:
+ * 
+ *         | First Name | Last Name |
+ * 
+ *         Column widths are taken from the first rows so that drawing can start
+ *         before every row has been read, which lets a table be drawn straight
+ *         from a database cursor. A later cell that is wider than its column is
+ *         cut short or wrapped onto more lines. Each line is filled into one
+ *         reused buffer that already holds its borders and padding, and is
+ *         written with a single call through one large buffered writer, so
+ *         drawing costs little more than writing the text itself.
+ * 
+ *         Widths are counted in chars, so characters that take up two columns
+ *         on the screen can still push a row over
+ * 
+ * @param <T> Type of the rows
+ */
+public class TableRenderer<T> {
+	/**
+	 * What happens to a cell that is wider than its column
+	 */
+	public enum Overflow {
+		// The end of the cell is cut off and marked with ...
+		TRUNCATE,
+		// The rest of the cell carries on in the same column on the next lines
+		WRAP
+	}
+
+	/**
+	 * Reads the value of one cell of a row
+	 * 
+	 * @param <T> Type of the rows
+	 */
+	@FunctionalInterface
+	public interface Cell<T> {
+		/**
+		 * Returns the value of a cell
+		 * 
+		 * @param row    Row being drawn
+		 * @param column Position of the column
+		 * @return Value, or null for an empty cell
+		 */
+		String get(T row, int column);
+	}
+
+	// Rows used to find the column widths by default
+	public static final int DEFAULTSAMPLESIZE = 100;
+	// Widest a column gets by default
+	public static final int DEFAULTMAXWIDTH = 40;
+	// Size of the output buffer in chars
+	private static final int BUFFERSIZE = 1 << 16;
+	// Marks the end of a cell that was cut short
+	private static final String ELLIPSIS = "...";
+
+	private final String[] headers;
+	private final Cell<T> cell;
+	private int sampleSize = DEFAULTSAMPLESIZE;
+	private int maxWidth = DEFAULTMAXWIDTH;
+	private Overflow overflow = Overflow.TRUNCATE;
+	private String rowSeparator;
+
+	/**
+	 * Creates a renderer for a table
+	 * 
+	 * @param cell    Reads the value of each cell of a row
+	 * @param headers Header of each column
+	 */
+	public TableRenderer(Cell<T> cell, String... headers) {
+		if (headers.length == 0) {
+			throw new IllegalArgumentException("A table needs at least 1 column");
+		}
+		this.cell = cell;
+		this.headers = headers.clone();
+	}
+
+	/**
+	 * Sets how many rows the column widths are taken from
+	 * 
+	 * @param sampleSize Number of rows
+	 */
+	public void setSampleSize(int sampleSize) {
+		if (sampleSize < 0) {
+			throw new IllegalArgumentException("The sample size can not be negative");
+		}
+		this.sampleSize = sampleSize;
+	}
+
+	/**
+	 * Sets the widest a column gets, not counting the space on each side of its
+	 * cells. A column is never narrower than its header
+	 * 
+	 * @param maxWidth Largest number of chars in a cell
+	 */
+	public void setMaxWidth(int maxWidth) {
+		if (maxWidth < ELLIPSIS.length() + 1) {
+			throw new IllegalArgumentException("Columns must be at least " + (ELLIPSIS.length() + 1) + " wide");
+		}
+		this.maxWidth = maxWidth;
+	}
+
+	/**
+	 * Sets what happens to a cell that is wider than its column
+	 * 
+	 * @param overflow Overflow mode
+	 */
+	public void setOverflow(Overflow overflow) {
+		this.overflow = overflow;
+	}
+
+	/**
+	 * Sets a line that is drawn under the header and every row
+	 * 
+	 * @param rowSeparator Line without its line break, or null for none
+	 */
+	public void setRowSeparator(String rowSeparator) {
+		this.rowSeparator = rowSeparator;
+	}
+
+	/**
+	 * Draws the table on the console
+	 * 
+	 * @param rows Rows being drawn, read as they are drawn
+	 * @return Number of rows drawn
+	 */
+	public long print(Iterator<T> rows) {
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out), BUFFERSIZE);
+		try {
+			long drawn = render(rows, out);
+			out.flush();
+			return drawn;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Draws the table
+	 * 
+	 * @param rows Rows being drawn, read as they are drawn
+	 * @param out  Writer the table is written to. It is not flushed or closed
+	 * @return Number of rows drawn
+	 * @throws IOException Thrown if the writer can not be written to
+	 */
+	public long render(Iterator<T> rows, Writer out) throws IOException {
+		Writer buffered = out instanceof BufferedWriter ? out : new BufferedWriter(out, BUFFERSIZE);
+		int[] widths = new int[headers.length];
+		for (int i = 0; i < headers.length; i++) {
+			widths[i] = headers[i].length() + 1;
+		}
+		List<T> sample = new ArrayList<T>();
+		while (sample.size() < sampleSize && rows.hasNext()) {
+			T row = rows.next();
+			sample.add(row);
+			for (int i = 0; i < widths.length; i++) {
+				String value = cell.get(row, i);
+				if (value != null && value.length() > widths[i]) {
+					widths[i] = Math.max(widths[i], Math.min(value.length(), maxWidth));
+				}
+			}
+		}
+		// Every line is the same length, so one buffer holds a whole line with its
+		// borders already in place and only the cells are filled in
+		int[] starts = new int[widths.length];
+		int length = 1;
+		for (int i = 0; i < widths.length; i++) {
+			starts[i] = length + 1;
+			length += widths[i] + 3;
+		}
+		char[] line = new char[length + 1 + (rowSeparator == null ? 0 : rowSeparator.length() + 1)];
+		Arrays.fill(line, ' ');
+		line[0] = '|';
+		for (int i = 0; i < widths.length; i++) {
+			line[starts[i] + widths[i] + 1] = '|';
+		}
+		line[length] = '\n';
+		if (rowSeparator != null) {
+			rowSeparator.getChars(0, rowSeparator.length(), line, length + 1);
+			line[line.length - 1] = '\n';
+		}
+		for (int i = 0; i < widths.length; i++) {
+			fillCell(line, starts[i], widths[i], headers[i], 0, headers[i].length());
+		}
+		buffered.write(line);
+		String[] values = new String[widths.length];
+		int[] offsets = new int[widths.length];
+		long drawn = 0;
+		for (T row : sample) {
+			writeRow(buffered, row, line, length + 1, starts, widths, values, offsets);
+			drawn++;
+		}
+		while (rows.hasNext()) {
+			writeRow(buffered, rows.next(), line, length + 1, starts, widths, values, offsets);
+			drawn++;
+		}
+		// Only a buffer made here is flushed, into the writer that was given
+		if (buffered != out) {
+			buffered.flush();
+		}
+		return drawn;
+	}
+
+	/**
+	 * Draws one row, on more than one line if a cell is wrapped. Each line is
+	 * written with a single call
+	 * 
+	 * @param out        Writer being written to
+	 * @param row        Row being drawn
+	 * @param line       Line buffer with the borders and row separator in place
+	 * @param lineLength Length of a line with its line break but without the
+	 *                   row separator
+	 * @param starts     Position in the line of each cell
+	 * @param widths     Width of each column
+	 * @param values     Reused to hold the value of each cell
+	 * @param offsets    Reused to hold how much of each cell has been drawn
+	 * @throws IOException Thrown if the writer can not be written to
+	 */
+	private void writeRow(Writer out, T row, char[] line, int lineLength, int[] starts, int[] widths,
+			String[] values, int[] offsets) throws IOException {
+		boolean more;
+		for (int i = 0; i < widths.length; i++) {
+			String value = cell.get(row, i);
+			values[i] = value == null ? "" : value;
+			offsets[i] = 0;
+		}
+		do {
+			more = false;
+			for (int i = 0; i < widths.length; i++) {
+				String value = values[i];
+				int start = offsets[i];
+				if (value.length() - start <= widths[i]) {
+					fillCell(line, starts[i], widths[i], value, start, value.length());
+					offsets[i] = value.length();
+				} else if (overflow == Overflow.TRUNCATE) {
+					int end = start + widths[i] - ELLIPSIS.length();
+					fillCell(line, starts[i], widths[i] - ELLIPSIS.length(), value, start, end);
+					ELLIPSIS.getChars(0, ELLIPSIS.length(), line, starts[i] + end - start);
+					offsets[i] = value.length();
+				} else {
+					int end = wrapPoint(value, start, widths[i]);
+					fillCell(line, starts[i], widths[i], value, start, end);
+					offsets[i] = skipSpaces(value, end);
+					if (offsets[i] < value.length()) {
+						more = true;
+					}
+				}
+			}
+			// The row separator is only drawn under the last line of the row
+			out.write(line, 0, more ? lineLength : line.length);
+		} while (more);
+	}
+
+	/**
+	 * Copies part of a value into its cell of the line buffer and pads the rest
+	 * of the cell with spaces. Line breaks, tabs, and other control chars are
+	 * turned into spaces so they can not break up the table
+	 * 
+	 * @param line  Line buffer
+	 * @param start Position of the cell in the line
+	 * @param width Width of the cell
+	 * @param value Value of the cell
+	 * @param from  Position in the value of the first char copied
+	 * @param to    Position in the value after the last char copied
+	 */
+	private static void fillCell(char[] line, int start, int width, String value, int from, int to) {
+		value.getChars(from, to, line, start);
+		int end = start + to - from;
+		for (int i = start; i < end; i++) {
+			if (line[i] < ' ') {
+				line[i] = ' ';
+			}
+		}
+		Arrays.fill(line, end, start + width, ' ');
+	}
+
+	/**
+	 * Finds where to break a wrapped cell, at the last space that fits if there
+	 * is one
+	 * 
+	 * @param value Value of the cell
+	 * @param start Position of the first char on this line
+	 * @param width Width of the column
+	 * @return Position after the last char on this line
+	 */
+	private static int wrapPoint(String value, int start, int width) {
+		int end = start + width;
+		if (value.charAt(end) == ' ') {
+			return end;
+		}
+		int space = value.lastIndexOf(' ', end - 1);
+		return space > start ? space : end;
+	}
+
+	/**
+	 * Skips the spaces a wrapped cell was broken at so the next line does not
+	 * start with them
+	 * 
+	 * @param value  Value of the cell
+	 * @param offset Position the next line would start at
+	 * @return Position of the first char that is not a space
+	 */
+	private static int skipSpaces(String value, int offset) {
+		while (offset < value.length() && value.charAt(offset) == ' ') {
+			offset++;
+		}
+		return offset;
+	}
+}
@@ -2,6 +2,7 @@ package library.utils;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import com.google.common.hash.Hashing;
 
@@ -30,11 +31,12 @@ public class Utils {
 	 * @return String of spaces
 	 */
 	public static String spaces(int numberOfSpaces) {
-		String out = "";
-		while (out.length() < numberOfSpaces) {
-			out += " ";
+		if (numberOfSpaces <= 0) {
+			return "";
 		}
-		return out;
+		char[] out = new char[numberOfSpaces];
+		Arrays.fill(out, ' ');
+		return new String(out);
 	}
 
 	/**
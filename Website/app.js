@@ -0,0 +1,92 @@
+// Connects the pages to the JSON API served by ServeWebsite. The token handed
+// back after logging in is kept for the session and sent with every address
+// request, so the password is never stored
+
+function authHeader() {
+    return "Bearer " + sessionStorage.getItem("token");
+}
+
+function saveLogin(token) {
+    sessionStorage.setItem("token", token);
+}
+
+function showError(message) {
+    document.getElementById("error").textContent = message;
+}
+
+function formJson(form) {
+    var out = {};
+    for (var i = 0; i < form.elements.length; i++) {
+        var element = form.elements[i];
+        if (element.name && element.type !== "submit") {
+            out[element.name] = element.value;
+        }
+    }
+    return out;
+}
+
+function submitLogin(form, path) {
+    var body = formJson(form);
+    fetch(path, { method: "POST", body: JSON.stringify(body) })
+        .then(function (response) {
+            return response.json().then(function (json) {
+                if (!response.ok) {
+                    throw new Error(json.error);
+                }
+                saveLogin(json.token);
+                window.location = "home.html";
+            });
+        })
+        .catch(function (error) { showError(error.message); });
+    return false;
+}
+
+function loadAddresses() {
+    if (!sessionStorage.getItem("token")) {
+        window.location = "login.html";
+        return;
+    }
+    fetch("/api/addresses?limit=1000", { headers: { "Authorization": authHeader() } })
+        .then(function (response) {
+            if (response.status === 401) {
+                sessionStorage.removeItem("token");
+                window.location = "login.html";
+                return null;
+            }
+            if (!response.ok) {
+                return response.json()
+                    .catch(function () { return {}; })
+                    .then(function (json) {
+                        throw new Error(json.error || "Could not load the addresses");
+                    });
+            }
+            return response.json();
+        })
+        .then(function (addresses) {
+            if (!addresses) {
+                return;
+            }
+            var rows = document.getElementById("addresses");
+            var fields = ["firstName", "lastName", "street", "city", "state", "zip"];
+            addresses.forEach(function (address) {
+                var row = document.createElement("tr");
+                row.className = "row";
+                fields.forEach(function (field) {
+                    var cell = document.createElement("td");
+                    cell.textContent = address[field];
+                    row.appendChild(cell);
+                });
+                rows.appendChild(row);
+            });
+        })
+        .catch(function (error) { showError(error.message); });
+}
+
+function logout() {
+    fetch("/api/logout", { method: "POST", headers: { "Authorization": authHeader() } })
+        .finally(function () {
+            sessionStorage.removeItem("token");
+            window.location = "index.html";
+        });
+    return false;
+}